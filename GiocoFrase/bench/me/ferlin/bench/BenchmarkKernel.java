@@ -0,0 +1,137 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import me.ferlin.KernelConteggio;
+import me.ferlin.KernelScalare;
+import me.ferlin.TabellaVocali;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Benchmark dei kernel di conteggio su un singolo thread,
+ * senza il costo di creare thread e dati condivisi.
+ *
+ * Il kernel vettoriale viene misurato solo se il modulo
+ * {@code jdk.incubator.vector} e' disponibile, altrimenti
+ * {@link KernelConteggio#per(TabellaVocali)} restituisce quello scalare.
+ *
+ * Ogni benchmark crea solo la rappresentazione del testo che misura.
+ * Con un miliardo di caratteri il vettore di caratteri occupa 2 GB e
+ * il buffer diretto circa 1,1 GB, per cui il fork viene avviato con un
+ * heap di 3 GB e fino a 2 GB di memoria diretta.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx3g", "-XX:MaxDirectMemorySize=2g"})
+public class BenchmarkKernel {
+
+    /**
+     * Numero di caratteri del testo
+     */
+    @Param({"10", "1000", "1000000", "100000000", "1000000000"})
+    public int dimensione;
+    /**
+     * Kernel misurato
+     */
+    @Param({"scalare", "migliore"})
+    public String kernel;
+
+    /**
+     * Testo come stringa, creato solo per {@link #stringa()}
+     */
+    private String testo;
+    /**
+     * Testo come vettore di caratteri, creato solo per {@link #vettoreCaratteri()}
+     */
+    private char[] caratteri;
+    /**
+     * Testo come byte UTF-8 fuori dall'heap, come un file mappato,
+     * creato solo per {@link #bufferByte()}
+     */
+    private ByteBuffer bytes;
+    /**
+     * Kernel misurato
+     */
+    private KernelConteggio k;
+
+    /**
+     * @brief Genera il testo nella rappresentazione usata dal benchmark
+     *        e crea il kernel
+     *
+     * @param parametri parametri del benchmark, da cui si ricava
+     *                  il metodo misurato
+     */
+    @Setup(Level.Trial)
+    public void setup(BenchmarkParams parametri) {
+        final String benchmark = parametri.getBenchmark();
+        switch(benchmark.substring(benchmark.lastIndexOf('.') + 1)) {
+            case "vettoreCaratteri":
+                caratteri = Testi.generaCaratteri(dimensione);
+                break;
+            case "bufferByte":
+                bytes = Testi.generaUtf8Diretto(dimensione);
+                break;
+            default:
+                testo = Testi.genera(dimensione);
+                break;
+        }
+
+        final TabellaVocali tabella = new TabellaVocali(Testi.VOCALI);
+        k = kernel.equals("scalare") ? new KernelScalare(tabella) : KernelConteggio.per(tabella);
+    }
+
+    /**
+     * @brief Conta le vocali di una stringa
+     *
+     * @return istogramma
+     */
+    @Benchmark
+    public int[] stringa() {
+        final int[] conteggi = new int[Testi.VOCALI.length];
+        k.conta(testo, 0, testo.length(), conteggi);
+        return conteggi;
+    }
+
+    /**
+     * @brief Conta le vocali di un vettore di caratteri
+     *
+     * @return istogramma
+     */
+    @Benchmark
+    public int[] vettoreCaratteri() {
+        final int[] conteggi = new int[Testi.VOCALI.length];
+        k.conta(caratteri, 0, caratteri.length, conteggi);
+        return conteggi;
+    }
+
+    /**
+     * @brief Conta le vocali di un buffer di byte UTF-8
+     *
+     * @return istogramma
+     */
+    @Benchmark
+    public int[] bufferByte() {
+        final int[] conteggi = new int[Testi.VOCALI.length];
+        k.conta(bytes, 0, bytes.capacity(), conteggi);
+        return conteggi;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin.bench;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import me.ferlin.DatiCondivisi;
+import me.ferlin.Schermo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark delle operazioni condivise tra i thread: la scrittura
+ * di un messaggio su {@link Schermo} e l'incremento di un conteggio
+ * in {@link DatiCondivisi}.
+ *
+ * Il gruppo {@code istantanea} misura insieme gli incrementi di tre
+ * thread e le istantanee lette da un quarto thread, per controllare
+ * che leggere i conteggi coerenti non rallenti chi scrive.
+ *
+ * Come riferimento viene misurata anche la versione originale di
+ * {@code Schermo.push}, che concatenava una stringa e la aggiungeva
+ * ad una {@link ArrayDeque} sotto lock. Il numero di thread si cambia
+ * con l'opzione {@code -t} di JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BenchmarkSincronizzazione {
+
+    /**
+     * Politica di overflow dello schermo
+     */
+    @Param({"SCARTA_VECCHI", "BLOCCA", "AGGREGA"})
+    public Schermo.PoliticaOverflow politica;
+
+    /**
+     * Schermo su cui scrivono i thread
+     */
+    private Schermo schermo;
+    /**
+     * Dati condivisi in cui incrementano i thread
+     */
+    private DatiCondivisi dati;
+    /**
+     * Coda della versione originale di {@code Schermo.push}
+     */
+    private Queue<String> codaSincronizzata;
+    /**
+     * Thread che svuota lo schermo come il render loop del main
+     */
+    private Thread consumatore;
+
+    /**
+     * @brief Crea schermo e dati e fa partire il consumatore
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        schermo = new Schermo(Schermo.CAPACITA_PREDEFINITA, politica);
+        dati = new DatiCondivisi(Testi.VOCALI, schermo);
+        codaSincronizzata = new ArrayDeque<>();
+
+        consumatore = new Thread(() -> {
+            while(!Thread.currentThread().isInterrupted()) {
+                schermo.svuota(msg -> {});
+                synchronized (codaSincronizzata) {
+                    codaSincronizzata.clear();
+                }
+            }
+        }, "Thread_consumatore");
+        consumatore.setDaemon(true);
+        consumatore.start();
+    }
+
+    /**
+     * @brief Ferma il consumatore
+     *
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        consumatore.interrupt();
+        consumatore.join();
+    }
+
+    /**
+     * @brief Scrive un evento sullo schermo
+     */
+    @Benchmark
+    public void pushEvento() {
+        schermo.push('a', 0);
+    }
+
+    /**
+     * @brief Scrive un messaggio come la versione originale di
+     *        {@code Schermo.push}
+     */
+    @Benchmark
+    public void pushStringaSincronizzata() {
+        final String msg = "Ho trovato la vocale " + Testi.VOCALI[0];
+        synchronized (codaSincronizzata) {
+            codaSincronizzata.offer(msg);
+        }
+    }
+
+    /**
+     * @brief Incrementa un conteggio dei dati condivisi
+     */
+    @Benchmark
+    public void incrementa() {
+        dati.incrementa(0);
+    }
+
+    /**
+     * @brief Incrementa un conteggio mentre un altro thread legge istantanee
+     */
+    @Benchmark
+    @Group("istantanea")
+    @GroupThreads(3)
+    public void incrementaConLettore() {
+        dati.incrementa(0, 1);
+    }
+
+    /**
+     * @brief Legge un'istantanea coerente dei dati condivisi
+     *
+     * @return istantanea letta, restituita per non essere eliminata dal JIT
+     */
+    @Benchmark
+    @Group("istantanea")
+    @GroupThreads(1)
+    public DatiCondivisi.Istantanea leggiIstantanea() {
+        return dati.getIstantanea();
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin.bench;
+
+import java.util.concurrent.TimeUnit;
+import me.ferlin.CercaVocaleRunnable;
+import me.ferlin.ContaVocaliForkJoin;
+import me.ferlin.ContaVocaliRunnable;
+import me.ferlin.DatiCondivisi;
+import me.ferlin.ModalitaConteggio;
+import me.ferlin.Schermo;
+import me.ferlin.ServizioAnalisi;
+import me.ferlin.StrategiaEsecuzione;
+import me.ferlin.TabellaVocali;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark di un round completo di conteggio per ogni
+ * {@link ModalitaConteggio}, con e senza {@link Thread#yield()}.
+ *
+ * Ogni invocazione crea schermo e dati condivisi come fa il main,
+ * fa partire i thread e attende che terminino. Lo schermo non viene
+ * svuotato, per cui i messaggi oltre la capacita' vengono gestiti
+ * dalla politica di overflow configurata.
+ *
+ * {@link #roundServizio()} esegue lo stesso round con un {@link ServizioAnalisi},
+ * che riutilizza thread, dati condivisi e schermo, per misurare il costo
+ * della creazione di thread e oggetti ad ogni round.
+ *
+ * Il delay randomico non viene misurato perche' il tempo sarebbe
+ * dominato dalle {@link Thread#sleep(long)}.
+ *
+ * La generazione di una frase di un miliardo di caratteri occupa fino
+ * a 2 GB, per cui il fork viene avviato con un heap di 4 GB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx4g"})
+public class BenchmarkStrategie {
+
+    /**
+     * Numero di caratteri della frase
+     */
+    @Param({"10", "1000", "1000000", "100000000", "1000000000"})
+    public int dimensione;
+    /**
+     * Modalita' di conteggio misurata
+     */
+    @Param({"THREAD_PER_VOCALE", "PASSATA_SINGOLA", "FORK_JOIN"})
+    public ModalitaConteggio modalita;
+    /**
+     * Se i thread devono chiamare {@link Thread#yield()} dopo ogni lettera
+     */
+    @Param({"false", "true"})
+    public boolean yield;
+
+    /**
+     * Frase da analizzare
+     */
+    private String frase;
+    /**
+     * Runnable della modalita' {@link ModalitaConteggio#THREAD_PER_VOCALE}
+     */
+    private CercaVocaleRunnable[] runnablesVocali;
+    /**
+     * Runnable della modalita' {@link ModalitaConteggio#PASSATA_SINGOLA}
+     */
+    private ContaVocaliRunnable runnablePassataSingola;
+    /**
+     * Runnable della modalita' {@link ModalitaConteggio#FORK_JOIN}
+     */
+    private ContaVocaliForkJoin runnableForkJoin;
+    /**
+     * Servizio usato da {@link #roundServizio()}
+     */
+    private ServizioAnalisi servizio;
+    /**
+     * Round eseguito da {@link #roundServizio()}
+     */
+    private ServizioAnalisi.Richiesta richiesta;
+
+    /**
+     * @brief Genera la frase e crea i runnable
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        frase = Testi.genera(dimensione);
+
+        runnablesVocali = new CercaVocaleRunnable[Testi.VOCALI.length];
+        for(int i = 0; i < runnablesVocali.length; i++)
+            runnablesVocali[i] = new CercaVocaleRunnable(Testi.VOCALI[i], frase);
+        runnablePassataSingola = new ContaVocaliRunnable();
+        runnableForkJoin = new ContaVocaliForkJoin();
+
+        servizio = new ServizioAnalisi(TabellaVocali.configurata(Testi.VOCALI), null, 1,
+                Math.max(Testi.VOCALI.length, Runtime.getRuntime().availableProcessors()));
+        richiesta = new ServizioAnalisi.Richiesta(frase, modalita, StrategiaEsecuzione.POOL_FISSO, false, yield);
+    }
+
+    /**
+     * @brief Chiude il servizio e il pool del runnable fork/join
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        servizio.close();
+        runnableForkJoin.close();
+    }
+
+    /**
+     * @brief Esegue un round completo nella modalita' misurata
+     *
+     * @return vocale piu' usata
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    @Benchmark
+    public char round() throws InterruptedException {
+        final DatiCondivisi dati = new DatiCondivisi(Testi.VOCALI, new Schermo());
+
+        final Thread[] threads;
+        switch(modalita) {
+            case PASSATA_SINGOLA:
+                runnablePassataSingola.setDaAnalizzare(frase);
+                runnablePassataSingola.setPtrDati(dati);
+                runnablePassataSingola.setUsaYield(yield);
+                threads = new Thread[] { new Thread(runnablePassataSingola) };
+                break;
+            case FORK_JOIN:
+                runnableForkJoin.setDaAnalizzare(frase);
+                runnableForkJoin.setPtrDati(dati);
+                threads = new Thread[] { new Thread(runnableForkJoin) };
+                break;
+            case THREAD_PER_VOCALE:
+            default:
+                threads = new Thread[runnablesVocali.length];
+                for(int i = 0; i < threads.length; i++) {
+                    runnablesVocali[i].setPtrDati(dati);
+                    runnablesVocali[i].setUsaYield(yield);
+                    threads[i] = new Thread(runnablesVocali[i]);
+                }
+                break;
+        }
+
+        for(Thread th : threads)
+            th.start();
+        for(Thread th : threads)
+            th.join();
+
+        return dati.getPiuUsata();
+    }
+
+    /**
+     * @brief Esegue un round completo nella modalita' misurata
+     *        con i lavoratori e le postazioni del servizio
+     *
+     * @return vocale piu' usata
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    @Benchmark
+    public char roundServizio() throws InterruptedException {
+        try (ServizioAnalisi.Round round = servizio.avvia(richiesta)) {
+            return round.getRisultato().join().getPiuUsata();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import me.ferlin.DatiCondivisi;
+import me.ferlin.Schermo;
+
+/**
+ * Stress test e benchmark dei contatori di {@link DatiCondivisi}.
+ *
+ * Il programma esegue tre fasi:
+ * - Stress: molti thread incrementano contemporaneamente vocali casuali
+ *           e alla fine si controlla che nessun incremento sia andato perso;
+ * - Istantanee: molti thread aggiungono istogrammi con tutte le vocali
+ *               mentre un thread legge istantanee e controlla che ognuna
+ *               contenga solo istogrammi interi;
+ * - Benchmark: si misura il numero di incrementi al secondo
+ *              all'aumentare del numero di thread.
+ *
+ * Termina con codice di uscita diverso da 0 se i conteggi non sono esatti
+ * o un'istantanea non e' coerente.
+ */
+public final class StressContatori {
+
+    /**
+     * Vocali usate dai thread
+     */
+    private static final char[] VOCALI = new char[] {'a', 'e', 'i', 'o', 'u'};
+    /**
+     * Incrementi eseguiti da ogni thread nella fase di stress
+     */
+    private static final int INCREMENTI_STRESS = 2_000_000;
+    /**
+     * Incrementi eseguiti da ogni thread nella fase di benchmark
+     */
+    private static final int INCREMENTI_BENCHMARK = 20_000_000;
+    /**
+     * Istogrammi aggiunti da ogni thread nella fase delle istantanee
+     */
+    private static final int ISTOGRAMMI_ISTANTANEE = 1_000_000;
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private StressContatori() {}
+
+    /**
+     * @brief Entry point, esegue lo stress test e il benchmark
+     *
+     * @param args parametri passati da command line (ignorati)
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final int core = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Stress test con " + (2 * core) + " thread...");
+        if(!stress(2 * core)) {
+            System.out.println("Conteggi errati!");
+            System.exit(1);
+        }
+        System.out.println("Conteggi esatti");
+
+        System.out.println("Istantanee con " + (2 * core) + " thread...");
+        if(!istantanee(2 * core)) {
+            System.out.println("Istantanea non coerente!");
+            System.exit(1);
+        }
+
+        System.out.println("Benchmark (incrementi al secondo):");
+        for(int thread = 1; thread <= 2 * core; thread *= 2) {
+            benchmark(thread); // warm-up
+            System.out.println(String.format("%4d thread: %,15.0f", thread, benchmark(thread)));
+        }
+    }
+
+    /**
+     * @brief Incrementa vocali casuali da piu' thread e controlla i conteggi
+     *
+     * @param numeroThread numero di thread che incrementano
+     * @return true se tutti i conteggi sono esatti
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static boolean stress(int numeroThread) throws InterruptedException {
+        final DatiCondivisi dati = new DatiCondivisi(VOCALI, new Schermo());
+        final long[][] attesi = new long[numeroThread][VOCALI.length];
+
+        esegui(numeroThread, t -> {
+            final Random rn = new Random(t);
+            for(int i = 0; i < INCREMENTI_STRESS; i++) {
+                final int index = rn.nextInt(VOCALI.length);
+                attesi[t][index]++;
+
+                if((i & 1) == 0)
+                    dati.incrementa(index);
+                else
+                    dati.incrementa(Character.toUpperCase(VOCALI[index]));
+            }
+        });
+
+        boolean esatti = true;
+        for(int v = 0; v < VOCALI.length; v++) {
+            long atteso = 0;
+            for(long[] perThread : attesi)
+                atteso += perThread[v];
+
+            final long trovato = dati.getConteggio(v);
+            System.out.println(String.format("  %s: atteso %d, trovato %d", VOCALI[v], atteso, trovato));
+            esatti &= atteso == trovato;
+        }
+        return esatti;
+    }
+
+    /**
+     * @brief Aggiunge istogrammi da piu' thread e controlla le istantanee lette
+     *        nel frattempo
+     *
+     * Ogni istogramma contiene una vocale per tipo e un carattere per vocale,
+     * per cui in un'istantanea coerente tutti i conteggi sono uguali e i
+     * caratteri sono il loro totale.
+     * @param numeroThread numero di thread che aggiungono
+     * @return true se tutte le istantanee sono coerenti
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static boolean istantanee(int numeroThread) throws InterruptedException {
+        final DatiCondivisi dati = new DatiCondivisi(VOCALI, new Schermo());
+        final int[] istogramma = new int[VOCALI.length];
+        Arrays.fill(istogramma, 1);
+
+        final AtomicBoolean fine = new AtomicBoolean();
+        final long[] lette = new long[1];
+        final String[] errore = new String[1];
+        final Thread lettore = new Thread(() -> {
+            long versione = 0;
+            while(errore[0] == null) {
+                final boolean ultima = fine.get();
+                final DatiCondivisi.Istantanea istantanea = dati.getIstantanea();
+                lette[0]++;
+                for(int v = 1; v < VOCALI.length; v++)
+                    if(istantanea.getConteggio(v) != istantanea.getConteggio(0))
+                        errore[0] = istantanea.toString();
+                if(istantanea.getCaratteri() != VOCALI.length * istantanea.getConteggio(0))
+                    errore[0] = istantanea + " con " + istantanea.getCaratteri() + " caratteri";
+                if(istantanea.getVersione() < versione)
+                    errore[0] = "versione " + istantanea.getVersione() + " dopo " + versione;
+                versione = istantanea.getVersione();
+                if(ultima)
+                    break;
+            }
+        }, "Thread_lettore");
+        lettore.start();
+
+        esegui(numeroThread, t -> {
+            for(int i = 0; i < ISTOGRAMMI_ISTANTANEE; i++)
+                dati.aggiungi(istogramma, VOCALI.length);
+        });
+        fine.set(true);
+        lettore.join();
+
+        final long attesi = (long) numeroThread * ISTOGRAMMI_ISTANTANEE;
+        final DatiCondivisi.Istantanea finale = dati.getIstantanea();
+        System.out.println(String.format("  %d istantanee lette, finale %s", lette[0], finale));
+        if(errore[0] != null) {
+            System.out.println("  " + errore[0]);
+            return false;
+        }
+        for(int v = 0; v < VOCALI.length; v++)
+            if(finale.getConteggio(v) != attesi)
+                return false;
+        return true;
+    }
+
+    /**
+     * @brief Misura gli incrementi al secondo con il numero di thread dato
+     *
+     * @param numeroThread numero di thread che incrementano
+     * @return incrementi al secondo
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static double benchmark(int numeroThread) throws InterruptedException {
+        final DatiCondivisi dati = new DatiCondivisi(VOCALI, new Schermo());
+
+        final long inizio = System.nanoTime();
+        esegui(numeroThread, t -> {
+            for(int i = 0; i < INCREMENTI_BENCHMARK; i++)
+                dati.incrementa(i % VOCALI.length);
+        });
+        final long durata = System.nanoTime() - inizio;
+
+        return (double) numeroThread * INCREMENTI_BENCHMARK / durata * 1e9;
+    }
+
+    /**
+     * Lavoro eseguito da ogni thread
+     */
+    private interface Lavoro {
+        /**
+         * @brief Esegue il lavoro del thread
+         *
+         * @param indiceThread indice del thread
+         */
+        void esegui(int indiceThread);
+    }
+
+    /**
+     * @brief Fa partire i thread insieme e attende che finiscano
+     *
+     * @param numeroThread numero di thread da far partire
+     * @param lavoro lavoro eseguito da ogni thread
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static void esegui(int numeroThread, Lavoro lavoro) throws InterruptedException {
+        final CountDownLatch via = new CountDownLatch(1);
+        final Thread[] threads = new Thread[numeroThread];
+
+        for(int t = 0; t < numeroThread; t++) {
+            final int indice = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    via.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                lavoro.esegui(indice);
+            }, "Thread_stress_" + t);
+            threads[t].start();
+        }
+
+        via.countDown();
+        for(Thread th : threads)
+            th.join();
+    }
+}
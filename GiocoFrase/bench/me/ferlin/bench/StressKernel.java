@@ -0,0 +1,236 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import me.ferlin.KernelConteggio;
+import me.ferlin.KernelScalare;
+import me.ferlin.TabellaVocali;
+
+/**
+ * Stress test che confronta {@link me.ferlin.KernelVettoriale} con
+ * {@link KernelScalare}.
+ *
+ * Per ogni tabella (solo vocali ASCII, vocali accentate e lettere
+ * qualsiasi) il programma genera testi casuali di tre tipi:
+ * - ASCII: tutti i caratteri da 0 a 127, comprese le lettere che differiscono
+ *          da una vocale solo per il bit 0x20;
+ * - Accentati: lettere accentate e caratteri del Basic Multilingual Plane
+ *              il cui byte basso e' una vocale;
+ * - Code: intervalli lunghi da 0 a qualche vettore piu' un resto e con
+ *         inizi non allineati, per controllare le code che non riempiono
+ *         un vettore.
+ * Ogni testo viene contato con tutti i metodi dei due kernel ({@link String},
+ * {@link StringBuilder}, {@code char[]}, {@link ByteBuffer} su array e
+ * diretto) e i conteggi devono essere uguali a quelli di
+ * {@link TabellaVocali#conta(CharSequence, int, int, int[])}; sui byte UTF-8
+ * i conteggi devono essere quelli delle sole vocali ASCII.
+ * Parametri: {@code [testi]}, il numero di testi per ogni tipo e tabella
+ * (predefinito 20000).
+ *
+ * Deve essere avviato con {@code --add-modules jdk.incubator.vector};
+ * termina con codice di uscita diverso da 0 se il kernel vettoriale non
+ * e' disponibile o se un conteggio e' diverso.
+ */
+public final class StressKernel {
+
+    /**
+     * Lunghezza massima dei testi brevi, alcuni vettori anche con le
+     * specie piu' larghe
+     */
+    private static final int MAX_BREVE = 300;
+    /**
+     * Lunghezza massima dei testi lunghi, che attraversano i blocchi
+     * copiati dai kernel
+     */
+    private static final int MAX_LUNGO = 20_000;
+    /**
+     * Caratteri non ASCII usati nei testi accentati: vocali accentate,
+     * consonanti accentate, greco, cirillico e caratteri con il byte
+     * basso uguale a una vocale ASCII
+     */
+    private static final String NON_ASCII =
+            "àèéìòùÀÈÉÌÒÙäöüâêîôûāēīōūǎěǐǒǔạệịọụçñßÿ"
+            + "αεοΑΕΟаеоАЕОšťũůŁŅŉŏ\u2061づａ";
+
+    /**
+     * Numero di confronti eseguiti
+     */
+    private static long confronti;
+    /**
+     * Numero di confronti falliti
+     */
+    private static long errori;
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private StressKernel() {}
+
+    /**
+     * @brief Entry point, esegue lo stress test
+     *
+     * @param args parametri passati da command line
+     */
+    public static void main(String[] args) {
+        final int testi = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        final TabellaVocali[] tabelle = new TabellaVocali[] {
+            new TabellaVocali(Testi.VOCALI, false),
+            new TabellaVocali(Testi.VOCALI, true),
+            new TabellaVocali("xyzAQ".toCharArray(), true)
+        };
+        final String[] nomi = new String[] {"vocali ASCII", "vocali accentate", "lettere xyzaq"};
+
+        for(int t = 0; t < tabelle.length; t++) {
+            final KernelConteggio vettoriale = KernelConteggio.per(tabelle[t]);
+            if(!vettoriale.getClass().getSimpleName().equals("KernelVettoriale")) {
+                System.out.println("ERRORE: kernel vettoriale non disponibile, "
+                        + "avviare con --add-modules jdk.incubator.vector");
+                System.exit(1);
+            }
+            final KernelScalare scalare = new KernelScalare(tabelle[t]);
+
+            final Random rn = new Random(t);
+            final long erroriPrima = errori;
+            for(int i = 0; i < testi; i++) {
+                confronta(tabelle[t], vettoriale, scalare, ascii(rn, lunghezza(rn)), rn);
+                confronta(tabelle[t], vettoriale, scalare, accentato(rn, lunghezza(rn)), rn);
+                confronta(tabelle[t], vettoriale, scalare, ascii(rn, rn.nextInt(4 * 64 + 1)), rn);
+            }
+            System.out.println(String.format("%s: %d testi, %s", nomi[t], 3L * testi,
+                    errori == erroriPrima ? "OK" : (errori - erroriPrima) + " conteggi diversi"));
+        }
+
+        System.out.println(confronti + " confronti, " + errori + " errori");
+        if(errori > 0)
+            System.exit(1);
+    }
+
+    /**
+     * @brief Sceglie la lunghezza di un testo, lungo una volta su dieci
+     *
+     * @param rn generatore casuale
+     * @return lunghezza del testo
+     */
+    private static int lunghezza(Random rn) {
+        return rn.nextInt(10) == 0 ? rn.nextInt(MAX_LUNGO) : rn.nextInt(MAX_BREVE);
+    }
+
+    /**
+     * @brief Genera un testo di caratteri ASCII qualsiasi
+     *
+     * @param rn generatore casuale
+     * @param lunghezza numero di caratteri
+     * @return testo generato
+     */
+    private static String ascii(Random rn, int lunghezza) {
+        final char[] testo = new char[lunghezza];
+        for(int i = 0; i < lunghezza; i++)
+            testo[i] = (char) rn.nextInt(128);
+        return new String(testo);
+    }
+
+    /**
+     * @brief Genera un testo in cui circa un carattere su tre non e' ASCII
+     *
+     * @param rn generatore casuale
+     * @param lunghezza numero di caratteri
+     * @return testo generato
+     */
+    private static String accentato(Random rn, int lunghezza) {
+        final char[] testo = new char[lunghezza];
+        for(int i = 0; i < lunghezza; i++)
+            testo[i] = rn.nextInt(3) == 0 ?
+                    NON_ASCII.charAt(rn.nextInt(NON_ASCII.length())) : (char) rn.nextInt(128);
+        return new String(testo);
+    }
+
+    /**
+     * @brief Conta un intervallo casuale del testo con tutti i metodi
+     *        dei due kernel e controlla che i conteggi coincidano
+     *
+     * Anche i byte UTF-8 del testo vengono contati su un intervallo casuale:
+     * su questi i kernel contano solo le vocali ASCII.
+     * @param tabella tabella delle vocali
+     * @param vettoriale kernel vettoriale
+     * @param scalare kernel scalare
+     * @param testo testo da contare
+     * @param rn generatore casuale
+     */
+    private static void confronta(TabellaVocali tabella, KernelConteggio vettoriale,
+                                  KernelScalare scalare, String testo, Random rn) {
+        final int numeroVocali = tabella.getNumeroVocali();
+        final int da = rn.nextInt(Math.min(testo.length(), 67) + 1);
+        final int a = da + rn.nextInt(testo.length() - da + 1);
+        final int[] atteso = new int[numeroVocali];
+        tabella.conta(testo, da, a, atteso);
+
+        final char[] caratteri = testo.toCharArray();
+        final StringBuilder sb = new StringBuilder(testo);
+
+        final byte[] utf8 = testo.getBytes(StandardCharsets.UTF_8);
+        final int daByte = rn.nextInt(Math.min(utf8.length, 67) + 1);
+        final int aByte = daByte + rn.nextInt(utf8.length - daByte + 1);
+        final int[] attesoByte = new int[numeroVocali];
+        for(int i = daByte; i < aByte; i++) {
+            final int slot = utf8[i] >= 0 ? tabella.getSlot((char) utf8[i]) : TabellaVocali.NESSUNO;
+            if(slot != TabellaVocali.NESSUNO)
+                attesoByte[slot]++;
+        }
+
+        // Buffer su un array con offset e buffer diretto
+        final byte[] spostati = new byte[utf8.length + 5];
+        System.arraycopy(utf8, 0, spostati, 3, utf8.length);
+        final ByteBuffer array = ByteBuffer.wrap(spostati, 3, utf8.length).slice();
+        final ByteBuffer diretto = ByteBuffer.allocateDirect(utf8.length).put(utf8).clear();
+
+        for(KernelConteggio kernel : new KernelConteggio[] {vettoriale, scalare}) {
+            final String nome = kernel == vettoriale ? "vettoriale" : "scalare";
+            int[] conteggi = new int[numeroVocali];
+            kernel.conta(testo, da, a, conteggi);
+            verifica(nome + " String", atteso, conteggi, testo, da, a);
+
+            conteggi = new int[numeroVocali];
+            kernel.conta(sb, da, a, conteggi);
+            verifica(nome + " StringBuilder", atteso, conteggi, testo, da, a);
+
+            conteggi = new int[numeroVocali];
+            kernel.conta(caratteri, da, a, conteggi);
+            verifica(nome + " char[]", atteso, conteggi, testo, da, a);
+
+            conteggi = new int[numeroVocali];
+            kernel.conta(array, daByte, aByte, conteggi);
+            verifica(nome + " ByteBuffer su array", attesoByte, conteggi, testo, daByte, aByte);
+
+            conteggi = new int[numeroVocali];
+            kernel.conta(diretto, daByte, aByte, conteggi);
+            verifica(nome + " ByteBuffer diretto", attesoByte, conteggi, testo, daByte, aByte);
+        }
+    }
+
+    /**
+     * @brief Controlla un conteggio e segnala i primi errori
+     *
+     * @param metodo kernel e metodo usati
+     * @param atteso conteggi attesi
+     * @param ottenuto conteggi del kernel
+     * @param testo testo contato
+     * @param da inizio dell'intervallo
+     * @param a fine dell'intervallo
+     */
+    private static void verifica(String metodo, int[] atteso, int[] ottenuto, String testo, int da, int a) {
+        confronti++;
+        if(Arrays.equals(atteso, ottenuto))
+            return;
+
+        if(errori++ < 10)
+            System.out.println("ERRORE: " + metodo + " su " + testo.length() + " caratteri, intervallo ["
+                    + da + ", " + a + "): " + Arrays.toString(ottenuto) + " invece di " + Arrays.toString(atteso));
+    }
+}
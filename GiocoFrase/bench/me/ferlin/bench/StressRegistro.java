@@ -0,0 +1,287 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import me.ferlin.RegistroRisultati;
+import me.ferlin.TabellaVocali;
+
+/**
+ * Stress test e benchmark di {@link RegistroRisultati}.
+ *
+ * Il programma esegue quattro fasi su un registro temporaneo:
+ * - Scrittura: molti thread registrano round senza aspettare la forzatura,
+ *              che avviene in background;
+ * - Group commit: molti thread registrano round e aspettano ognuno che
+ *                 il proprio sia persistente, e si misura quanti round
+ *                 vengono serviti da ogni forzatura;
+ * - Ricostruzione: il registro viene riaperto e si controlla che le
+ *                  statistiche ricostruite siano uguali a quelle calcolate
+ *                  dai thread, misurandone il tempo;
+ * - Crash: in coda al file vengono scritti un record incompleto e poi un
+ *          record corrotto, e si controlla che la riapertura li tronchi.
+ *
+ * Ogni thread gioca con un proprio giocatore, per cui anche le serie di
+ * vittorie attese sono note. Parametri: {@code [thread] [round]}, cioe' il
+ * numero di thread e i round registrati da ognuno in ogni fase
+ * (predefiniti 8 e 200000).
+ *
+ * Termina con codice di uscita diverso da 0 se un controllo fallisce.
+ */
+public final class StressRegistro {
+
+    /**
+     * Esiti registrati dai thread
+     */
+    private static final RegistroRisultati.Esito[] ESITI = RegistroRisultati.Esito.values();
+
+    /**
+     * Indica se un controllo e' fallito
+     */
+    private static final AtomicBoolean fallito = new AtomicBoolean();
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private StressRegistro() {}
+
+    /**
+     * Round attesi registrati da un thread
+     */
+    private static final class Atteso {
+
+        /**
+         * Round per esito
+         */
+        private final long[] esiti = new long[ESITI.length];
+        /**
+         * Conteggi totali delle vocali
+         */
+        private final long[] conteggi = new long[Testi.VOCALI.length];
+        /**
+         * Serie di vittorie in corso e migliore
+         */
+        private int serieCorrente, serieMigliore;
+    }
+
+    /**
+     * @brief Entry point, esegue lo stress test e il benchmark
+     *
+     * @param args parametri passati da command line
+     * @throws IOException se il registro temporaneo non puo' essere usato
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int thread = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int round = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        final TabellaVocali tabella = new TabellaVocali(Testi.VOCALI);
+        final Path file = Files.createTempFile("registro", ".giocofrase");
+        Files.delete(file);
+
+        final Atteso[] attesi = new Atteso[thread];
+        for(int t = 0; t < thread; t++)
+            attesi[t] = new Atteso();
+
+        try {
+            try (RegistroRisultati registro = RegistroRisultati.apri(file, tabella)) {
+                esegui("Scrittura", registro, attesi, round, false);
+                esegui("Group commit", registro, attesi, round / 10, true);
+                controlla("Statistiche in memoria", registro, attesi);
+            }
+
+            final long record = (long) thread * (round + round / 10);
+            final long inizio = System.nanoTime();
+            try (RegistroRisultati registro = RegistroRisultati.apri(file, tabella)) {
+                final long nanosecondi = System.nanoTime() - inizio;
+                System.out.println(String.format(
+                        "Ricostruzione: %d record in %.1f ms (%.0f record/s)",
+                        registro.getNumeroRecord(), nanosecondi / 1e6, registro.getNumeroRecord() / (nanosecondi / 1e9)
+                ));
+                verifica(registro.getNumeroRecord() == record, "Record dopo la riapertura: " + registro.getNumeroRecord());
+                controlla("Statistiche ricostruite", registro, attesi);
+            }
+
+            crash(file, tabella, record, attesi);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        if(fallito.get())
+            System.exit(1);
+    }
+
+    /**
+     * @brief Registra round casuali da molti thread e misura i round al secondo
+     *
+     * @param nome nome della fase
+     * @param registro registro in cui scrivere
+     * @param attesi round attesi di ogni thread, aggiornati
+     * @param round round registrati da ogni thread
+     * @param attendi se ogni thread aspetta che il proprio round sia persistente
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static void esegui(String nome, RegistroRisultati registro, Atteso[] attesi,
+                               int round, boolean attendi) throws InterruptedException {
+        final Thread[] threads = new Thread[attesi.length];
+        final long forzature = registro.getForzature();
+        final long inizio = System.nanoTime();
+
+        for(int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                final Random rn = new Random(id * 31L + (attendi ? 1 : 0));
+                final Atteso atteso = attesi[id];
+                final long[] conteggi = new long[Testi.VOCALI.length];
+                try {
+                    for(int i = 0; i < round; i++) {
+                        final RegistroRisultati.Esito esito = ESITI[rn.nextInt(ESITI.length)];
+                        for(int v = 0; v < conteggi.length; v++) {
+                            conteggi[v] = rn.nextInt(100);
+                            atteso.conteggi[v] += conteggi[v];
+                        }
+                        atteso.esiti[esito.ordinal()]++;
+                        if(esito == RegistroRisultati.Esito.VINTO)
+                            atteso.serieMigliore = Math.max(atteso.serieMigliore, ++atteso.serieCorrente);
+                        else if(esito != RegistroRisultati.Esito.ERRORE)
+                            atteso.serieCorrente = 0;
+
+                        final long indice = registro.registra(esito, "giocatore-" + id, "frase di prova " + i,
+                                Testi.VOCALI[rn.nextInt(conteggi.length)], 'a', conteggi, 1000);
+                        if(attendi)
+                            registro.attendi(indice);
+                    }
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "Thread_registro_" + t);
+            threads[t].start();
+        }
+        for(Thread th : threads)
+            th.join();
+
+        final long nanosecondi = System.nanoTime() - inizio;
+        final long totale = (long) round * threads.length;
+        final long forzatureFase = Math.max(1, registro.getForzature() - forzature);
+        System.out.println(String.format(
+                "%s: %d round da %d thread in %.1f ms (%.0f round/s), %d forzature (%.1f round per forzatura)",
+                nome, totale, threads.length, nanosecondi / 1e6, totale / (nanosecondi / 1e9),
+                forzatureFase, (double) totale / forzatureFase
+        ));
+    }
+
+    /**
+     * @brief Controlla che le statistiche del registro siano quelle attese
+     *
+     * @param fase nome del controllo
+     * @param registro registro da controllare
+     * @param attesi round attesi di ogni thread
+     */
+    private static void controlla(String fase, RegistroRisultati registro, Atteso[] attesi) {
+        final RegistroRisultati.Statistiche statistiche = registro.getStatistiche();
+        boolean ok = statistiche.getGiocatori() == attesi.length;
+
+        for(RegistroRisultati.Esito esito : ESITI) {
+            long atteso = 0;
+            for(Atteso a : attesi)
+                atteso += a.esiti[esito.ordinal()];
+            ok &= statistiche.getRound(esito) == atteso;
+        }
+        for(int v = 0; v < Testi.VOCALI.length; v++) {
+            long atteso = 0;
+            for(Atteso a : attesi)
+                atteso += a.conteggi[v];
+            ok &= statistiche.getConteggio(v) == atteso;
+        }
+        for(int t = 0; t < attesi.length; t++) {
+            final RegistroRisultati.Giocatore giocatore = registro.getGiocatore("giocatore-" + t);
+            ok &= giocatore != null
+                    && giocatore.getRound(RegistroRisultati.Esito.VINTO) == attesi[t].esiti[RegistroRisultati.Esito.VINTO.ordinal()]
+                    && giocatore.getSerieCorrente() == attesi[t].serieCorrente
+                    && giocatore.getSerieMigliore() == attesi[t].serieMigliore;
+        }
+
+        System.out.println(fase + ": " + (ok ? "OK" : "ERRATE")
+                + ", vittorie " + String.format("%.1f%%", statistiche.getPercentualeVittorie())
+                + ", primo in classifica " + registro.getClassifica(1));
+        verifica(ok, fase + " diverse da quelle attese");
+    }
+
+    /**
+     * @brief Simula un crash durante la scrittura di un record e controlla
+     *        che la riapertura lo tronchi
+     *
+     * @param file registro chiuso
+     * @param tabella tabella delle vocali
+     * @param record record validi nel registro
+     * @param attesi round attesi di ogni thread
+     * @throws IOException se il registro non puo' essere usato
+     */
+    private static void crash(Path file, TabellaVocali tabella, long record, Atteso[] attesi) throws IOException {
+        // Un record in piu' permette di ricavare la dimensione dei record
+        // e l'inizio del primo dalla lunghezza del file
+        final long prima = Files.size(file);
+        try (RegistroRisultati registro = RegistroRisultati.apri(file, tabella)) {
+            registro.registra(RegistroRisultati.Esito.ERRORE, "crash", "", '\0', '\0', null, 0);
+        }
+        final long dimensione = Files.size(file) - prima;
+        final long inizio = prima - record * dimensione;
+        record++;
+
+        // Record scritto solo a meta'
+        final byte[] casuali = new byte[(int) dimensione];
+        new Random(7).nextBytes(casuali);
+        casuali[4] = 1;
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            canale.write(ByteBuffer.wrap(casuali, 0, casuali.length / 2));
+        }
+        try (RegistroRisultati registro = RegistroRisultati.apri(file, tabella)) {
+            verifica(registro.getNumeroRecord() == record, "Record dopo un record incompleto: " + registro.getNumeroRecord());
+            final RegistroRisultati.Giocatore crash = registro.getGiocatore("crash");
+            verifica(crash != null && crash.getRound(RegistroRisultati.Esito.ERRORE) == 1,
+                    "Ultimo record completo perso");
+        }
+        verifica(Files.size(file) == inizio + record * dimensione, "Record incompleto non troncato");
+
+        // Ultimo record con un byte alterato: viene scartato anche se completo
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer b = ByteBuffer.allocate(1);
+            final long posizione = inizio + (record - 1) * dimensione + dimensione / 2;
+            canale.read(b, posizione);
+            b.put(0, (byte) ~b.get(0));
+            canale.write(b.clear(), posizione);
+        }
+        try (RegistroRisultati registro = RegistroRisultati.apri(file, tabella)) {
+            verifica(registro.getNumeroRecord() == record - 1, "Record dopo un record corrotto: " + registro.getNumeroRecord());
+            verifica(registro.getGiocatore("crash") == null, "Il record corrotto e\' stato letto");
+            controlla("Statistiche dopo un record corrotto", registro, attesi);
+
+            final RegistroRisultati.Voce ultima = registro.leggi(record - 2);
+            verifica(ultima.getGiocatore().startsWith("giocatore-") && ultima.getInizioFrase().startsWith("frase di prova"),
+                    "Ultimo record valido illeggibile");
+        }
+        verifica(Files.size(file) == inizio + (record - 1) * dimensione, "Record corrotto non troncato");
+        System.out.println("Crash: " + (fallito.get() ? "ERRATO" : "OK"));
+    }
+
+    /**
+     * @brief Segnala un controllo fallito
+     *
+     * @param condizione risultato del controllo
+     * @param messaggio messaggio scritto se il controllo e' fallito
+     */
+    private static void verifica(boolean condizione, String messaggio) {
+        if(!condizione) {
+            System.out.println("ERRORE: " + messaggio);
+            fallito.set(true);
+        }
+    }
+}
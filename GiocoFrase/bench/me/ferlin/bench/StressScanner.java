@@ -0,0 +1,229 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import me.ferlin.AsyncScanner;
+
+/**
+ * Stress test e benchmark di {@link AsyncScanner} letto da una {@link Pipe},
+ * senza console.
+ *
+ * Il programma esegue tre fasi:
+ * - Script: un thread scrive molte righe numerate (con righe vuote in mezzo)
+ *           il piu' velocemente possibile, mentre il main tiene in attesa
+ *           diverse promesse alla volta e controlla che ricevano le righe
+ *           non vuote in ordine, misurando le righe al secondo;
+ * - Latenza: il main chiede una riga, la scrive nella pipe e misura il
+ *            tempo fino al completamento della promessa;
+ * - Chiusura: con una promessa in attesa e nessun input in arrivo,
+ *             {@link AsyncScanner#close()} deve terminare subito e far
+ *             fallire la promessa.
+ * Parametri: {@code [righe]}, il numero di righe della fase di script
+ * (predefinito 1000000).
+ *
+ * Termina con codice di uscita diverso da 0 se un controllo fallisce.
+ */
+public final class StressScanner {
+
+    /**
+     * Promesse tenute in attesa contemporaneamente nella fase di script
+     */
+    private static final int IN_ATTESA = 16;
+    /**
+     * Righe misurate nella fase di latenza
+     */
+    private static final int RIGHE_LATENZA = 20_000;
+    /**
+     * Tempo massimo concesso a {@link AsyncScanner#close()}, in millisecondi
+     */
+    private static final long MAX_CHIUSURA = 1000;
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private StressScanner() {}
+
+    /**
+     * @brief Entry point, esegue lo stress test e il benchmark
+     *
+     * @param args parametri passati da command line
+     * @throws Exception se la pipe non puo' essere usata o un controllo fallisce
+     */
+    public static void main(String[] args) throws Exception {
+        final int righe = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        final boolean ok = script(righe) & latenza() & chiusura();
+        if(!ok)
+            System.exit(1);
+    }
+
+    /**
+     * @brief Legge da molte promesse in attesa le righe scritte da un thread
+     *
+     * @param righe numero di righe non vuote da scrivere
+     * @return true se tutte le righe sono arrivate in ordine
+     * @throws Exception se la pipe non puo' essere usata
+     */
+    private static boolean script(int righe) throws Exception {
+        final Pipe pipe = Pipe.open();
+        final Thread scrittore = new Thread(() -> {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                for(int i = 0; i < righe; i++) {
+                    sb.append("riga ").append(i).append('\n');
+                    if(i % 7 == 0)
+                        sb.append('\n');
+                    if(sb.length() > 8192) {
+                        scrivi(pipe.sink(), sb.toString());
+                        sb.setLength(0);
+                    }
+                }
+                scrivi(pipe.sink(), sb.toString());
+                pipe.sink().close();
+            } catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }, "Thread_script");
+
+        boolean ok = true;
+        final long inizio = System.nanoTime();
+        try (AsyncScanner scanner = new AsyncScanner(pipe.source())) {
+            scrittore.start();
+
+            final Queue<CompletableFuture<String>> attese = new ArrayDeque<>();
+            int richieste = 0;
+            for(int i = 0; i < righe && ok; i++) {
+                while(richieste < righe && attese.size() < IN_ATTESA) {
+                    attese.add(scanner.nextLine());
+                    richieste++;
+                }
+                final String riga = attese.poll().get(10, TimeUnit.SECONDS);
+                if(!riga.equals("riga " + i)) {
+                    System.out.println("ERRORE: attesa \"riga " + i + "\", letta \"" + riga + "\"");
+                    ok = false;
+                }
+            }
+
+            // Dopo l'ultima riga la promessa successiva fallisce per la fine dell'input
+            if(ok && !fallita(scanner.nextLine())) {
+                System.out.println("ERRORE: nessun errore alla fine dell\'input");
+                ok = false;
+            }
+        }
+        scrittore.join();
+
+        final double secondi = (System.nanoTime() - inizio) / 1e9;
+        System.out.println(String.format("Script: %d righe in %.2f s (%.0f righe/s), %s",
+                righe, secondi, righe / secondi, ok ? "OK" : "ERRATO"));
+        return ok;
+    }
+
+    /**
+     * @brief Misura il tempo tra la scrittura di una riga e il completamento
+     *        della promessa che la aspetta
+     *
+     * @return true se tutte le righe sono arrivate
+     * @throws Exception se la pipe non puo' essere usata
+     */
+    private static boolean latenza() throws Exception {
+        final Pipe pipe = Pipe.open();
+        final long[] nanosecondi = new long[RIGHE_LATENZA];
+        boolean ok = true;
+
+        try (AsyncScanner scanner = new AsyncScanner(pipe.source())) {
+            for(int i = 0; i < RIGHE_LATENZA && ok; i++) {
+                final CompletableFuture<String> future = scanner.nextLine();
+                final long inizio = System.nanoTime();
+                scrivi(pipe.sink(), i + "\n");
+                ok = future.get(10, TimeUnit.SECONDS).equals(Integer.toString(i));
+                nanosecondi[i] = System.nanoTime() - inizio;
+            }
+        }
+        pipe.sink().close();
+
+        // Le prime righe scaldano la JIT
+        final long[] misurati = Arrays.copyOfRange(nanosecondi, RIGHE_LATENZA / 10, RIGHE_LATENZA);
+        Arrays.sort(misurati);
+        System.out.println(String.format("Latenza: mediana %.1f us, p99 %.1f us, massima %.1f us, %s",
+                misurati[misurati.length / 2] / 1e3, misurati[misurati.length * 99 / 100] / 1e3,
+                misurati[misurati.length - 1] / 1e3, ok ? "OK" : "ERRATA"));
+        return ok;
+    }
+
+    /**
+     * @brief Chiude lo scanner mentre il thread aspetta una riga
+     *        che non arrivera' mai
+     *
+     * @return true se la chiusura e' stata immediata e la promessa e' fallita
+     * @throws Exception se la pipe non puo' essere usata
+     */
+    private static boolean chiusura() throws Exception {
+        final Pipe pipe = Pipe.open();
+        final AsyncScanner scanner = new AsyncScanner(pipe.source());
+        final CompletableFuture<String> future = scanner.nextLine();
+        // Il thread deve essere gia' bloccato nella lettura
+        Thread.sleep(100);
+
+        final Thread chiusura = new Thread(() -> {
+            try {
+                scanner.close();
+            } catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }, "Thread_chiusura");
+        final long inizio = System.nanoTime();
+        chiusura.start();
+        chiusura.join(MAX_CHIUSURA);
+        final long millisecondi = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inizio);
+        pipe.sink().close();
+
+        final boolean ok = !chiusura.isAlive() && fallita(future);
+        System.out.println("Chiusura: " + (chiusura.isAlive() ? "non terminata dopo " : "") + millisecondi
+                + " ms, " + (ok ? "OK" : "ERRATA"));
+        return ok;
+    }
+
+    /**
+     * @brief Restituisce se la promessa fallisce entro un secondo
+     *
+     * @param future promessa da controllare
+     * @return true se la promessa e' fallita
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static boolean fallita(CompletableFuture<String> future) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            return false;
+        } catch(ExecutionException ex) {
+            return true;
+        } catch(TimeoutException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief Scrive tutto il testo dato nella pipe
+     *
+     * @param sink lato di scrittura della pipe
+     * @param testo testo da scrivere
+     * @throws IOException se la pipe non puo' essere scritta
+     */
+    private static void scrivi(Pipe.SinkChannel sink, String testo) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(testo.getBytes(StandardCharsets.UTF_8));
+        while(buffer.hasRemaining())
+            sink.write(buffer);
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.ferlin.CacheIstogrammi;
+import me.ferlin.IstogrammaLatenze;
+import me.ferlin.ModalitaConteggio;
+import me.ferlin.ServerGioco;
+import me.ferlin.ServizioAnalisi;
+import me.ferlin.TabellaVocali;
+
+/**
+ * Client di carico per {@link ServerGioco}.
+ *
+ * Un solo thread apre molte connessioni non bloccanti e ognuna gioca
+ * round consecutivi: invia la frase e subito la vocale scelta e, ricevuto
+ * l'esito, inizia il round successivo. Una frazione delle connessioni
+ * non sceglie mai la vocale, per cui i loro round terminano per tempo
+ * scaduto e mettono alla prova la ruota temporale del server.
+ *
+ * Parametri: {@code [sessioni] [secondi] [silenziosi] [host porta]}
+ * (predefiniti 1000, 10, 0.1). Senza host e porta viene avviato un server
+ * locale nello stesso processo, con 2 secondi per rispondere.
+ * Alla fine vengono scritti i round al secondo, gli esiti e la latenza
+ * dall'invio della frase all'esito dei round con risposta.
+ *
+ * Termina con codice di uscita diverso da 0 se il server ha segnalato
+ * errori o ha chiuso delle connessioni.
+ */
+public final class StressServer {
+
+    /**
+     * Connessioni aperte ad ogni iterazione, per non riempire
+     * la coda delle connessioni del server
+     */
+    private static final int CONNESSIONI_PER_GIRO = 500;
+    /**
+     * Secondi per rispondere del server locale
+     */
+    private static final int SECONDI_SERVER_LOCALE = 2;
+    /**
+     * Lunghezza massima delle frasi inviate
+     */
+    private static final int MAX_FRASE = 200;
+
+    /**
+     * Testo da cui vengono prese le frasi
+     */
+    private static final String TESTO = Testi.genera(64 * 1024);
+
+    /**
+     * Latenza dei round con risposta
+     */
+    private static final IstogrammaLatenze latenza = new IstogrammaLatenze();
+    /**
+     * Round vinti, persi e scaduti
+     */
+    private static long vinti, persi, scaduti;
+    /**
+     * Errori segnalati dal server e connessioni chiuse dal server
+     */
+    private static long errori, chiuse;
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private StressServer() {}
+
+    /**
+     * Connessione di un giocatore simulato
+     */
+    private static final class Giocatore {
+
+        /**
+         * Canale della connessione
+         */
+        private final SocketChannel canale;
+        /**
+         * Indica se il giocatore non sceglie mai la vocale
+         */
+        private final boolean silenzioso;
+        /**
+         * Caratteri della riga in lettura
+         */
+        private final StringBuilder riga = new StringBuilder();
+        /**
+         * Istante di invio della frase del round corrente
+         */
+        private long inizio;
+
+        /**
+         * @brief Costruisce un giocatore
+         *
+         * @param canale canale della connessione
+         * @param silenzioso true se non deve mai scegliere la vocale
+         */
+        private Giocatore(SocketChannel canale, boolean silenzioso) {
+            this.canale = canale;
+            this.silenzioso = silenzioso;
+        }
+    }
+
+    /**
+     * @brief Entry point, esegue il test di carico
+     *
+     * @param args parametri passati da command line
+     * @throws IOException se le connessioni non possono essere aperte
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int sessioni = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int secondi = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final double silenziosi = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+
+        ServizioAnalisi servizio = null;
+        ServerGioco server = null;
+        final InetSocketAddress indirizzo;
+        if(args.length > 4) {
+            indirizzo = new InetSocketAddress(args[3], Integer.parseInt(args[4]));
+        } else {
+            final TabellaVocali tabella = new TabellaVocali(Testi.VOCALI);
+            servizio = new ServizioAnalisi(tabella, CacheIstogrammi.configurata(tabella));
+            server = new ServerGioco(
+                    servizio, new InetSocketAddress("127.0.0.1", 0),
+                    ModalitaConteggio.PASSATA_SINGOLA, SECONDI_SERVER_LOCALE, 64 * 1024
+            );
+            final Thread th = new Thread(server, "Thread_server");
+            th.setDaemon(true);
+            th.start();
+            indirizzo = new InetSocketAddress("127.0.0.1", server.getPorta());
+        }
+
+        System.out.println(String.format(
+                "%d sessioni (%.0f%% silenziose) verso %s per %d s...",
+                sessioni, 100 * silenziosi, indirizzo, secondi
+        ));
+
+        final long round = esegui(indirizzo, sessioni, secondi, silenziosi);
+
+        System.out.println(String.format(
+                "Round: %d (%.0f/s), vinti %d, persi %d, scaduti %d, errori %d, connessioni chiuse %d",
+                round, (double) round / secondi, vinti, persi, scaduti, errori, chiuse
+        ));
+        System.out.println(String.format(
+                "Latenza: p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                latenza.getPercentile(50) / 1e6, latenza.getPercentile(99) / 1e6, latenza.getMassimo() / 1e6
+        ));
+
+        if(server != null) {
+            server.close();
+            servizio.close();
+        }
+        if(errori > 0 || chiuse > 0)
+            System.exit(1);
+    }
+
+    /**
+     * @brief Apre le connessioni e gioca fino alla scadenza del tempo dato
+     *
+     * @param indirizzo indirizzo del server
+     * @param sessioni numero di connessioni
+     * @param secondi durata del test
+     * @param silenziosi frazione delle connessioni che non sceglie la vocale
+     * @return numero di round terminati
+     * @throws IOException se il selector non puo' essere usato
+     */
+    private static long esegui(InetSocketAddress indirizzo, int sessioni, int secondi, double silenziosi)
+            throws IOException {
+        final Random rn = new Random(42);
+        final ByteBuffer lettura = ByteBuffer.allocateDirect(64 * 1024);
+        final long fine = System.nanoTime() + TimeUnit.SECONDS.toNanos(secondi);
+        long round = 0;
+        int aperte = 0;
+        int connesse = 0;
+
+        try (Selector selector = Selector.open()) {
+            while(System.nanoTime() < fine) {
+                for(int i = 0; i < CONNESSIONI_PER_GIRO && aperte < sessioni; i++, aperte++) {
+                    final SocketChannel canale = SocketChannel.open();
+                    canale.configureBlocking(false);
+                    canale.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    canale.connect(indirizzo);
+                    canale.register(selector, SelectionKey.OP_CONNECT,
+                            new Giocatore(canale, aperte < sessioni * silenziosi));
+                }
+
+                selector.select(10);
+                for(SelectionKey chiave : selector.selectedKeys()) {
+                    final Giocatore g = (Giocatore) chiave.attachment();
+                    try {
+                        if(chiave.isConnectable()) {
+                            g.canale.finishConnect();
+                            chiave.interestOps(SelectionKey.OP_READ);
+                            if(++connesse == sessioni)
+                                System.out.println("Tutte le sessioni sono connesse");
+                            continue;
+                        }
+
+                        lettura.clear();
+                        if(g.canale.read(lettura) < 0) {
+                            chiuse++;
+                            chiave.cancel();
+                            g.canale.close();
+                            continue;
+                        }
+
+                        lettura.flip();
+                        while(lettura.hasRemaining()) {
+                            final char c = (char) (lettura.get() & 0xFF);
+                            if(c != '\n') {
+                                g.riga.append(c);
+                                continue;
+                            }
+
+                            final String riga = g.riga.toString();
+                            g.riga.setLength(0);
+                            if(riga.startsWith("INDOVINA"))
+                                continue;
+
+                            if(riga.startsWith("VINTO") || riga.startsWith("PERSO") || riga.startsWith("TEMPO")) {
+                                round++;
+                                if(riga.startsWith("VINTO"))
+                                    vinti++;
+                                else if(riga.startsWith("PERSO"))
+                                    persi++;
+                                else
+                                    scaduti++;
+                                if(!g.silenzioso)
+                                    latenza.registra(System.nanoTime() - g.inizio);
+                            } else if(riga.startsWith("ERRORE")) {
+                                errori++;
+                            }
+                            // Dopo il benvenuto, un esito o un errore inizia il round successivo
+                            gioca(g, rn);
+                        }
+                    } catch(IOException ex) {
+                        chiuse++;
+                        chiave.cancel();
+                        g.canale.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+
+            for(SelectionKey chiave : selector.keys())
+                chiave.channel().close();
+        }
+        return round;
+    }
+
+    /**
+     * @brief Invia un nuovo round
+     *
+     * @param g giocatore che gioca il round
+     * @param rn generatore usato per la frase e la vocale
+     * @throws IOException se la connessione non puo' essere scritta
+     */
+    private static void gioca(Giocatore g, Random rn) throws IOException {
+        final int lunghezza = 1 + rn.nextInt(MAX_FRASE);
+        final int da = rn.nextInt(TESTO.length() - lunghezza);
+        final StringBuilder sb = new StringBuilder("FRASE ").append(TESTO, da, da + lunghezza).append('\n');
+        if(!g.silenzioso)
+            sb.append("VOCALE ").append(Testi.VOCALI[rn.nextInt(Testi.VOCALI.length)]).append('\n');
+
+        // I comandi sono brevi e il buffer di invio del socket e' vuoto,
+        // per cui la scrittura non bloccante li invia interamente
+        final ByteBuffer dati = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        g.inizio = System.nanoTime();
+        while(dati.hasRemaining())
+            g.canale.write(dati);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Classe che genera i testi usati dai benchmark.
+ *
+ * Lo stesso testo puo' essere generato come stringa, come vettore di
+ * caratteri o come byte UTF-8 in un buffer diretto, senza passare per
+ * una stringa intermedia che con i testi piu' lunghi occuperebbe
+ * un altro gigabyte di heap.
+ */
+final class Testi {
+
+    /**
+     * Vocali usate dai benchmark
+     */
+    static final char[] VOCALI = new char[] {'a', 'e', 'i', 'o', 'u'};
+
+    /**
+     * Lunghezza del blocco casuale ripetuto per costruire i testi lunghi
+     */
+    private static final int BLOCCO = 64 * 1024;
+    /**
+     * Caratteri usati per generare il testo, con una distribuzione
+     * simile a quella di un testo italiano
+     */
+    private static final String ALFABETO =
+            "aaaaaeeeeeiiiiooooouu bcdfglmnprsttvz AEIOU ,.'àèéìòù";
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private Testi() {}
+
+    /**
+     * @brief Genera un testo della lunghezza data
+     *
+     * Il testo e' sempre lo stesso a parita' di lunghezza.
+     * @param lunghezza numero di caratteri del testo
+     * @return testo generato
+     */
+    static String genera(int lunghezza) {
+        final String blocco = blocco(lunghezza);
+        if(lunghezza <= BLOCCO)
+            return blocco;
+
+        return blocco.repeat(lunghezza / BLOCCO) + blocco.substring(0, lunghezza % BLOCCO);
+    }
+
+    /**
+     * @brief Genera lo stesso testo di {@link #genera(int)}
+     *        come vettore di caratteri
+     *
+     * @param lunghezza numero di caratteri del testo
+     * @return caratteri del testo generato
+     */
+    static char[] generaCaratteri(int lunghezza) {
+        final char[] blocco = blocco(lunghezza).toCharArray();
+        final char[] testo = new char[lunghezza];
+        for(int i = 0; i < lunghezza; i += blocco.length)
+            System.arraycopy(blocco, 0, testo, i, Math.min(blocco.length, lunghezza - i));
+        return testo;
+    }
+
+    /**
+     * @brief Genera lo stesso testo di {@link #genera(int)} come byte UTF-8
+     *        in un buffer diretto
+     *
+     * @param lunghezza numero di caratteri del testo
+     * @return buffer diretto con i byte del testo generato, pronto
+     *         per essere letto dall'inizio
+     */
+    static ByteBuffer generaUtf8Diretto(int lunghezza) {
+        final String blocco = blocco(lunghezza);
+        final byte[] intero = blocco.getBytes(StandardCharsets.UTF_8);
+        final int ripetizioni = blocco.isEmpty() ? 0 : lunghezza / blocco.length();
+        final byte[] resto = blocco.substring(0, lunghezza - ripetizioni * blocco.length())
+                .getBytes(StandardCharsets.UTF_8);
+
+        final ByteBuffer testo = ByteBuffer.allocateDirect(Math.toIntExact(
+                (long) intero.length * ripetizioni + resto.length));
+        for(int i = 0; i < ripetizioni; i++)
+            testo.put(intero);
+        return testo.put(resto).flip();
+    }
+
+    /**
+     * @brief Genera il blocco casuale con cui vengono costruiti i testi
+     *
+     * @param lunghezza numero di caratteri del testo
+     * @return blocco di al massimo {@link #BLOCCO} caratteri
+     */
+    private static String blocco(int lunghezza) {
+        final Random rn = new Random(42);
+        final StringBuilder sb = new StringBuilder(Math.min(lunghezza, BLOCCO));
+        for(int i = 0; i < Math.min(lunghezza, BLOCCO); i++)
+            sb.append(ALFABETO.charAt(rn.nextInt(ALFABETO.length())));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Buffer circolare limitato e lock-free che contiene gli eventi
+ * scritti dai thread su {@link Schermo}.
+ *
+ * Ogni evento e' un record compatto (vocale, posizione, id del thread,
+ * ripetizioni) salvato in vettori preallocati, per cui aggiungere un
+ * evento non alloca memoria.
+ *
+ * L'algoritmo e' quello della coda limitata di D. Vyukov: ogni slot ha
+ * un numero di sequenza che indica se e' libero o pieno, e produttori
+ * e consumatori si contendono le posizioni con una CAS. Puo' essere
+ * usato da piu' produttori e piu' consumatori, anche se {@link Schermo}
+ * ha un solo consumatore (i produttori consumano solo per scartare gli
+ * eventi piu' vecchi).
+ */
+final class AnelloEventi {
+
+    /**
+     * Maschera usata per trasformare una posizione in un indice
+     */
+    private final int maschera;
+    /**
+     * Numero di sequenza di ogni slot
+     */
+    private final AtomicLongArray sequenze;
+    /**
+     * Vocale di ogni evento
+     */
+    private final char[] vocali;
+    /**
+     * Posizione nella frase di ogni evento
+     */
+    private final long[] posizioni;
+    /**
+     * Id del thread che ha generato ogni evento
+     */
+    private final long[] threadIds;
+    /**
+     * Numero di vocali rappresentate da ogni evento
+     */
+    private final long[] ripetizioni;
+    /**
+     * Numero di CAS fallite dai produttori perche' un altro 
+     * produttore ha preso la stessa posizione
+     */
+    private final LongAdder conflitti = new LongAdder();
+    /**
+     * Prossima posizione in cui scrivere
+     */
+    private final AtomicLong coda = new AtomicLong();
+    /**
+     * Prossima posizione da cui leggere
+     */
+    private final AtomicLong testa = new AtomicLong();
+
+    /**
+     * Evento letto dal buffer
+     */
+    interface Visitatore {
+        /**
+         * @brief Riceve un evento letto dal buffer
+         *
+         * @param vocale vocale trovata
+         * @param posizione posizione della vocale nella frase o -1
+         * @param threadId id del thread che ha trovato la vocale
+         * @param ripetizioni numero di vocali rappresentate dall'evento
+         */
+        void evento(char vocale, long posizione, long threadId, long ripetizioni);
+    }
+
+    /**
+     * @brief Costruisce un buffer con la capacita' data
+     *
+     * La capacita' viene arrotondata alla potenza di 2 successiva.
+     * @param capacita numero massimo di eventi contenuti
+     * @throws RuntimeException se la capacita' non e' positiva
+     */
+    AnelloEventi(int capacita) {
+        if(capacita <= 0 || capacita > (1 << 30))
+            throw new RuntimeException("Capacita\' non valida: " + capacita);
+
+        final int dimensione = Integer.highestOneBit(capacita) == capacita ?
+                capacita : Integer.highestOneBit(capacita) << 1;
+
+        this.maschera = dimensione - 1;
+        this.sequenze = new AtomicLongArray(dimensione);
+        this.vocali = new char[dimensione];
+        this.posizioni = new long[dimensione];
+        this.threadIds = new long[dimensione];
+        this.ripetizioni = new long[dimensione];
+
+        for(int i = 0; i < dimensione; i++)
+            sequenze.set(i, i);
+    }
+
+    /**
+     * @brief Prova ad aggiungere un evento
+     *
+     * @param vocale vocale trovata
+     * @param posizione posizione della vocale nella frase o -1
+     * @param threadId id del thread che ha trovato la vocale
+     * @param rip numero di vocali rappresentate dall'evento
+     * @return false se il buffer e' pieno
+     */
+    boolean offri(char vocale, long posizione, long threadId, long rip) {
+        long pos;
+        int index;
+
+        while(true) {
+            pos = coda.get();
+            index = (int) pos & maschera;
+
+            final long diff = sequenze.get(index) - pos;
+            if(diff == 0) {
+                if(coda.compareAndSet(pos, pos + 1))
+                    break;
+                conflitti.increment();
+            } else if(diff < 0) {
+                return false;
+            }
+        }
+
+        vocali[index] = vocale;
+        posizioni[index] = posizione;
+        threadIds[index] = threadId;
+        ripetizioni[index] = rip;
+        sequenze.set(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * @brief Rimuove l'evento piu' vecchio e lo passa al visitatore dato
+     *
+     * @param visitatore visitatore che riceve l'evento o null per scartarlo
+     * @return false se il buffer e' vuoto
+     */
+    boolean prendi(Visitatore visitatore) {
+        long pos;
+        int index;
+
+        while(true) {
+            pos = testa.get();
+            index = (int) pos & maschera;
+
+            final long diff = sequenze.get(index) - (pos + 1);
+            if(diff == 0) {
+                if(testa.compareAndSet(pos, pos + 1))
+                    break;
+            } else if(diff < 0) {
+                return false;
+            }
+        }
+
+        final char vocale = vocali[index];
+        final long posizione = posizioni[index];
+        final long threadId = threadIds[index];
+        final long rip = ripetizioni[index];
+        sequenze.set(index, pos + maschera + 1);
+
+        if(visitatore != null)
+            visitatore.evento(vocale, posizione, threadId, rip);
+        return true;
+    }
+
+    /**
+     * @brief Restituisce e azzera il numero di conflitti tra i produttori
+     *
+     * @return numero di CAS fallite da {@link #offri} dall'ultima chiamata
+     */
+    long prendiConflitti() {
+        return conflitti.sumThenReset();
+    }
+
+    /**
+     * @brief Restituisce il numero di eventi nel buffer
+     *
+     * Il valore e' approssimato se ci sono scritture o letture in corso.
+     * @return numero di eventi nel buffer
+     */
+    int getDimensione() {
+        final long diff = coda.get() - testa.get();
+        return (int) Math.max(0, Math.min(diff, maschera + 1));
+    }
+
+    /**
+     * @brief Restituisce il numero massimo di eventi contenuti
+     *
+     * @return capacita' del buffer
+     */
+    int getCapacita() {
+        return maschera + 1;
+    }
+}
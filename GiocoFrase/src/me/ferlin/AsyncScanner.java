@@ -1,126 +1,222 @@
-/**
- * @author Francesco Ferlin
- * @version 3.0
- */
-package me.ferlin;
-
-import java.io.*;
-import java.util.Set;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-/**
- * Scanner in grado di leggere input da tastiera in modo
- * non bloccante e asincrono
- */
-public class AsyncScanner implements Closeable {
-
-    /**
-     * InputStream da cui leggere
-     */
-    private final InputStream source;
-    /**
-     * Esecutore a thread singolo che gestisce le richieste di input
-     */
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
-        final Thread th = new Thread(r);
-        th.setName(AsyncScanner.class.getName() + "#" + System.identityHashCode(AsyncScanner.this) + "_thread");
-        th.setDaemon(true);
-        return th;
-    });
-    /**
-     * Promesse in attesa di input
-     */
-    private final Set<CompletableFuture<String>> futures = ConcurrentHashMap.newKeySet();
-    /**
-     * Booleano che indica se l'{@link #executor} sta eseguendo un thread
-     */
-    private final AtomicBoolean isExecuting = new AtomicBoolean(false);
-    /**
-     * Booleano che indica se questo scanner e' stato aperto
-     */
-    private boolean closed = false;
-
-    /**
-     * @brief Costruisce un oggetto in grado di leggere input in maniera 
-     *        non bloccante dallo stream dato
-     * 
-     * @param source InputStream da cui leggere
-     */
-    public AsyncScanner(InputStream source) {
-        this.source = source;
-    }
-
-    @Override
-    public void close() throws IOException {
-        if (closed)
-            return;
-
-        source.close();
-        executor.shutdown();
-        closed = true;
-    }
-
-    /**
-     * Runnable in grado di leggere input da {@link #source}
-     * e adempiere alle promesse contenute in {@link #futures}
-     */
-    private final class ScannerHandler implements Runnable {
-
-        @Override
-        public void run()  {
-            final BufferedReader br = new BufferedReader(new InputStreamReader(source));
-
-            try {
-                while(!Thread.interrupted()) {
-                    
-                    while (!br.ready()) {
-                        // System.out.println("not ready");
-                        Thread.sleep(200);
-                    }
-
-                    // System.out.println("ready");
-                    final String in = br.readLine();
-                    // System.out.println("in " + in);
-                    
-                    if(in.equals(""))
-                        continue;
-
-                    // System.out.println("remove future");
-                    futures.removeIf(f -> {
-                        f.complete(in);
-                        return true;
-                    });
-
-                    isExecuting.set(false);
-                    break;
-                }
-            } catch (InterruptedException e) {
-                // ignored
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-    }
-
-    /**
-     * @brief Legge una linea da input in maniera asyncrona
-     * 
-     * @see BufferedReader#readLine()
-     * 
-     * @return promessa di completamento dell'operazione
-     */
-    public Future<String> nextLine() {
-
-        if(closed)
-            throw new RuntimeException("AsyncScanner has been closed");
-
-        final CompletableFuture<String> future = new CompletableFuture<>();
-        futures.add(future);
-
-        if(!isExecuting.getAndSet(true))
-            executor.submit(new ScannerHandler());
-        
-        return future;
-    }
-}
+/**
+ * @author Francesco Ferlin
+ * @version 4.1
+ */
+package me.ferlin;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Scanner in grado di leggere input da tastiera in modo
+ * non bloccante e asincrono
+ * 
+ * Un unico thread legge le linee con una lettura bloccante (senza polling)
+ * e le usa per completare le promesse in attesa, in ordine FIFO; le linee
+ * lette quando non ci sono promesse in attesa vengono messe in coda e 
+ * restituite dalle chiamate successive a {@link #nextLine()}.
+ * 
+ * {@link #close()} interrompe il thread e chiude lo stream o il canale
+ * sottostante, non il {@link BufferedReader}: la chiusura del reader 
+ * aspetterebbe il lock tenuto dal thread bloccato in 
+ * {@link BufferedReader#readLine()} finche' non arriva una linea.
+ */
+public class AsyncScanner implements Closeable {
+
+    /**
+     * Reader da cui leggere
+     */
+    private final BufferedReader reader;
+    /**
+     * Stream o canale sottostante a {@link #reader}, chiuso da {@link #close()}
+     */
+    private final Closeable sorgente;
+    /**
+     * Thread che legge le linee da {@link #reader}, 
+     * creato alla prima chiamata a {@link #nextLine()}
+     */
+    private Thread lettore;
+    /**
+     * Promesse in attesa di input, in ordine di richiesta
+     */
+    private final Queue<CompletableFuture<String>> futures = new ArrayDeque<>();
+    /**
+     * Linee lette e non ancora richieste, in ordine di lettura
+     */
+    private final Queue<String> linee = new ArrayDeque<>();
+    /**
+     * Errore che ha fermato {@link #lettore} o null se sta ancora leggendo
+     */
+    private IOException errore;
+    /**
+     * Booleano che indica se questo scanner e' stato chiuso
+     */
+    private boolean closed = false;
+
+    /**
+     * @brief Costruisce un oggetto in grado di leggere input in maniera 
+     *        non bloccante dallo stream dato
+     * 
+     * @param source InputStream da cui leggere
+     */
+    public AsyncScanner(InputStream source) {
+        this(new InputStreamReader(source), source);
+    }
+
+    /**
+     * @brief Costruisce un oggetto in grado di leggere input in maniera 
+     *        non bloccante dal canale dato
+     * 
+     * Permette di leggere da un {@link java.nio.channels.Pipe} 
+     * o da un socket invece che dalla console.
+     * @param source canale da cui leggere, codificato in UTF-8
+     */
+    public AsyncScanner(ReadableByteChannel source) {
+        this(Channels.newReader(source, StandardCharsets.UTF_8), source);
+    }
+
+    /**
+     * @brief Costruisce un oggetto in grado di leggere input in maniera 
+     *        non bloccante dal reader dato
+     * 
+     * @param source reader da cui leggere
+     * @param sorgente stream o canale letto da source
+     */
+    private AsyncScanner(Reader source, Closeable sorgente) {
+        this.reader = new BufferedReader(source);
+        this.sorgente = sorgente;
+    }
+
+    /**
+     * @brief Chiude lo scanner e fa fallire le promesse in attesa
+     * 
+     * Non si blocca anche se il thread sta aspettando una linea: 
+     * un canale interrompibile, come quello di una {@link java.nio.channels.Pipe},
+     * viene sbloccato dall'interruzione e dalla chiusura.
+     * @throws IOException se la sorgente non puo' essere chiusa
+     */
+    @Override
+    public void close() throws IOException {
+        final Thread th;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            th = lettore;
+            fallisci(new IOException("AsyncScanner has been closed"));
+        }
+
+        if (th != null)
+            th.interrupt();
+        sorgente.close();
+    }
+
+    /**
+     * Runnable in grado di leggere input da {@link #reader}
+     * e adempiere alle promesse contenute in {@link #futures}
+     */
+    private final class ScannerHandler implements Runnable {
+
+        @Override
+        public void run()  {
+            try {
+                String in;
+                while((in = reader.readLine()) != null) {
+                    if(!in.isEmpty())
+                        consegna(in);
+                }
+                
+                synchronized (AsyncScanner.this) {
+                    fallisci(new EOFException("Fine dell'input"));
+                }
+            } catch (IOException e) {
+                synchronized (AsyncScanner.this) {
+                    fallisci(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Completa la promessa in attesa da piu' tempo con la linea data
+     * 
+     * Le promesse gia' completate (ad esempio annullate dopo un timeout) 
+     * vengono scartate; se non ci sono promesse in attesa la linea 
+     * viene messa in coda.
+     * @param linea linea letta
+     */
+    private void consegna(String linea) {
+        while(true) {
+            final CompletableFuture<String> future;
+            synchronized (this) {
+                future = futures.poll();
+                if(future == null) {
+                    linee.add(linea);
+                    return;
+                }
+            }
+            
+            // Completata fuori dal lock per non eseguire le callback sotto lock
+            if(future.complete(linea))
+                return;
+        }
+    }
+
+    /**
+     * @brief Fa fallire tutte le promesse in attesa e quelle future
+     * 
+     * Deve essere chiamato tenendo il lock su this.
+     * @param e errore con cui far fallire le promesse
+     */
+    private void fallisci(IOException e) {
+        if(errore == null)
+            errore = e;
+
+        CompletableFuture<String> future;
+        while((future = futures.poll()) != null)
+            future.completeExceptionally(errore);
+    }
+
+    /**
+     * @brief Legge una linea non vuota da input in maniera asyncrona
+     * 
+     * Le promesse vengono completate nell'ordine in cui sono state richieste.
+     * Se la promessa viene annullata prima di essere completata, 
+     * la linea passa alla promessa successiva.
+     * 
+     * @see BufferedReader#readLine()
+     * 
+     * @return promessa di completamento dell'operazione
+     */
+    public synchronized CompletableFuture<String> nextLine() {
+
+        if(closed)
+            throw new RuntimeException("AsyncScanner has been closed");
+
+        final String linea = linee.poll();
+        if(linea != null)
+            return CompletableFuture.completedFuture(linea);
+        
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        if(errore != null) {
+            future.completeExceptionally(errore);
+            return future;
+        }
+        
+        futures.add(future);
+
+        if(lettore == null) {
+            lettore = new Thread(new ScannerHandler(),
+                    AsyncScanner.class.getName() + "#" + System.identityHashCode(this) + "_thread");
+            lettore.setDaemon(true);
+            lettore.start();
+        }
+        
+        return future;
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cache limitata degli istogrammi delle frasi gia' analizzate.
+ *
+ * Le frasi sono le chiavi di una mappa hash, per cui non ci sono falsi
+ * positivi. {@link String#hashCode()} viene calcolato una sola volta per
+ * stringa, quindi una stringa gia' cercata viene ritrovata in tempo costante;
+ * una nuova stringa con lo stesso testo viene invece letta una volta per
+ * calcolarne l'hash e una per confrontarla.
+ * Quando viene cercata una frase presente in cache il suo istogramma viene
+ * restituito senza contare nulla. Altrimenti vengono cercati i suoi prefissi
+ * lunghi quanto le frasi in cache (al massimo {@link #MAX_PREFISSI},
+ * dai piu' lunghi): se un prefisso e' presente vengono contate solo
+ * le vocali dei caratteri aggiunti. Gli hash dei prefissi vengono calcolati
+ * in una sola passata sulla frase e i prefissi vengono cercati come viste
+ * della frase, senza copiarli.
+ *
+ * Quando la cache supera il numero massimo di frasi o di byte vengono rimosse
+ * le frasi usate meno di recente; una frase piu' grande dell'intera cache
+ * non viene salvata. Il numero di frasi e i byte si configurano con le
+ * proprieta' {@code giocofrase.cache.capacita} e {@code giocofrase.cache.byte}
+ * (vedi {@link Configurazione}). Puo' essere usata da piu' thread: una frase
+ * in cache costa una sola acquisizione del lock.
+ *
+ * Per frasi brevi ricontare le vocali con {@link KernelVettoriale} costa meno
+ * di cercare una nuova stringa, per cui la cache e' utile solo con frasi
+ * lunghe e ripetute e va abilitata esplicitamente (vedi {@link #configurata}).
+ */
+public class CacheIstogrammi {
+
+    /**
+     * Capacita' predefinita della cache
+     */
+    public static final int CAPACITA_PREDEFINITA = 1024;
+    /**
+     * Byte massimi predefiniti delle frasi e degli istogrammi in cache
+     */
+    public static final long BYTE_PREDEFINITI = 16L * 1024 * 1024;
+    /**
+     * Numero massimo di prefissi cercati per ogni frase non in cache,
+     * a partire dai piu' lunghi
+     */
+    private static final int MAX_PREFISSI = 4;
+    /**
+     * Stima dei byte occupati da una voce oltre ai caratteri della frase
+     * e all'istogramma: nodo della mappa, chiave, stringa e intestazioni
+     * degli array
+     */
+    private static final int BYTE_VOCE = 128;
+
+    /**
+     * Kernel usato per contare le vocali
+     */
+    private final KernelConteggio kernel;
+    /**
+     * Numero di vocali di ogni istogramma
+     */
+    private final int numeroVocali;
+    /**
+     * Numero massimo di frasi in cache
+     */
+    private final int capacita;
+    /**
+     * Byte massimi occupati dalle voci in cache
+     */
+    private final long maxByte;
+    /**
+     * Istogrammi delle frasi, in ordine di utilizzo
+     */
+    private final LinkedHashMap<Chiave, int[]> istogrammi = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Numero di frasi in cache per ogni lunghezza
+     */
+    private final TreeMap<Integer, Integer> lunghezze = new TreeMap<>();
+    /**
+     * Byte occupati dalle voci in cache
+     */
+    private long occupati;
+    /**
+     * Numero di frasi trovate in cache
+     */
+    private long colpi;
+    /**
+     * Numero di frasi di cui e' stato trovato in cache un prefisso
+     */
+    private long estensioni;
+    /**
+     * Numero di frasi contate da capo
+     */
+    private long mancati;
+
+    /**
+     * @brief Costruisce una cache configurata secondo le proprieta' di sistema
+     *
+     * @see Configurazione
+     * @param tabella tabella delle vocali da contare
+     */
+    public CacheIstogrammi(TabellaVocali tabella) {
+        this(
+            tabella,
+            Configurazione.getInt("cache.capacita", CAPACITA_PREDEFINITA),
+            Configurazione.getLong("cache.byte", BYTE_PREDEFINITI)
+        );
+    }
+
+    /**
+     * @brief Costruisce una cache con la capacita' data
+     *        e {@link #BYTE_PREDEFINITI} byte
+     *
+     * @param tabella tabella delle vocali da contare
+     * @param capacita numero massimo di frasi in cache
+     * @throws RuntimeException se la capacita' non e' positiva
+     */
+    public CacheIstogrammi(TabellaVocali tabella, int capacita) {
+        this(tabella, capacita, BYTE_PREDEFINITI);
+    }
+
+    /**
+     * @brief Costruisce una cache con la capacita' data
+     *
+     * @param tabella tabella delle vocali da contare
+     * @param capacita numero massimo di frasi in cache
+     * @param maxByte byte massimi delle frasi e degli istogrammi in cache
+     * @throws RuntimeException se la capacita' o i byte non sono positivi
+     */
+    public CacheIstogrammi(TabellaVocali tabella, int capacita, long maxByte) {
+        if(capacita <= 0)
+            throw new RuntimeException("La capacita\' deve essere positiva.");
+        if(maxByte <= 0)
+            throw new RuntimeException("I byte della cache devono essere positivi.");
+
+        this.kernel = KernelConteggio.per(tabella);
+        this.numeroVocali = tabella.getNumeroVocali();
+        this.capacita = capacita;
+        this.maxByte = maxByte;
+    }
+
+    /**
+     * @brief Restituisce la cache da usare nei round del gioco e del server
+     *
+     * La cache viene creata solo se la proprieta' {@code giocofrase.cache}
+     * e' true (predefinita false).
+     * @see Configurazione
+     * @param tabella tabella delle vocali da contare
+     * @return cache configurata o null se non deve essere usata
+     */
+    public static CacheIstogrammi configurata(TabellaVocali tabella) {
+        return Configurazione.getBoolean("cache", false) ? new CacheIstogrammi(tabella) : null;
+    }
+
+    /**
+     * @brief Restituisce l'istogramma delle vocali della frase data
+     *
+     * L'istogramma viene preso dalla cache o calcolato a partire da quello
+     * del prefisso piu' lungo in cache, e la frase viene aggiunta alla cache.
+     * @param frase frase da analizzare
+     * @return nuovo istogramma ordinato secondo gli slot della tabella
+     */
+    public int[] conta(String frase) {
+        final Chiave chiave = new Chiave(frase, frase.length(), frase.hashCode());
+        final int[] candidate;
+        synchronized(this) {
+            final int[] trovato = istogrammi.get(chiave);
+            if(trovato != null) {
+                colpi++;
+                return trovato.clone();
+            }
+
+            // Lunghezze dei prefissi da cercare, dalla piu' lunga
+            final int[] trovate = new int[MAX_PREFISSI];
+            int n = 0;
+            for(int lunghezza : lunghezze.headMap(frase.length(), false).descendingKeySet()) {
+                if(n == trovate.length || lunghezza == 0)
+                    break;
+                trovate[n++] = lunghezza;
+            }
+            candidate = Arrays.copyOf(trovate, n);
+        }
+
+        // Gli hash dei prefissi vengono calcolati fuori dal lock, in una
+        // sola passata fino al piu' lungo, con la formula di String.hashCode()
+        final Chiave[] prefissi = new Chiave[candidate.length];
+        int hash = 0;
+        int calcolati = 0;
+        for(int i = prefissi.length - 1; i >= 0; i--) {
+            for(; calcolati < candidate[i]; calcolati++)
+                hash = 31 * hash + frase.charAt(calcolati);
+            prefissi[i] = new Chiave(frase, candidate[i], hash);
+        }
+
+        int[] istogramma = null;
+        int da = 0;
+
+        synchronized(this) {
+            for(int i = 0; i < prefissi.length && istogramma == null; i++) {
+                istogramma = istogrammi.get(prefissi[i]);
+                da = candidate[i];
+            }
+
+            if(istogramma != null) {
+                estensioni++;
+                istogramma = istogramma.clone();
+            } else {
+                mancati++;
+                istogramma = new int[numeroVocali];
+                da = 0;
+            }
+        }
+
+        kernel.conta(frase, da, frase.length(), istogramma);
+
+        final long dimensione = dimensione(frase.length());
+        if(dimensione > maxByte)
+            return istogramma;
+
+        final int[] copia = istogramma.clone();
+        synchronized(this) {
+            if(istogrammi.put(chiave, copia) == null) {
+                lunghezze.merge(frase.length(), 1, Integer::sum);
+                occupati += dimensione;
+                rimuoviVecchie();
+            }
+        }
+
+        return istogramma;
+    }
+
+    /**
+     * @brief Rimuove le frasi usate meno di recente finche' la cache
+     *        non rispetta i limiti
+     *
+     * Deve essere chiamato tenendo il lock.
+     */
+    private void rimuoviVecchie() {
+        final Iterator<Map.Entry<Chiave, int[]>> it = istogrammi.entrySet().iterator();
+        while((istogrammi.size() > capacita || occupati > maxByte) && it.hasNext()) {
+            final int lunghezza = it.next().getKey().lunghezza;
+            it.remove();
+            occupati -= dimensione(lunghezza);
+            if(lunghezze.merge(lunghezza, -1, Integer::sum) == 0)
+                lunghezze.remove(lunghezza);
+        }
+    }
+
+    /**
+     * @brief Stima i byte occupati da una frase in cache
+     *
+     * @param lunghezza caratteri della frase
+     * @return byte della frase, del suo istogramma e della voce della mappa
+     */
+    private long dimensione(int lunghezza) {
+        return (long) Character.BYTES * lunghezza + (long) Integer.BYTES * numeroVocali + BYTE_VOCE;
+    }
+
+    /**
+     * @brief Restituisce il numero di vocali di ogni istogramma
+     *
+     * @return numero di vocali
+     */
+    public int getNumeroVocali() {
+        return numeroVocali;
+    }
+
+    /**
+     * @brief Restituisce il numero di frasi trovate in cache
+     *
+     * @return numero di frasi trovate
+     */
+    public synchronized long getColpi() {
+        return colpi;
+    }
+
+    /**
+     * @brief Restituisce il numero di frasi contate a partire
+     *        da un prefisso in cache
+     *
+     * @return numero di frasi estese
+     */
+    public synchronized long getEstensioni() {
+        return estensioni;
+    }
+
+    /**
+     * @brief Restituisce il numero di frasi contate da capo
+     *
+     * @return numero di frasi non trovate
+     */
+    public synchronized long getMancati() {
+        return mancati;
+    }
+
+    /**
+     * @brief Restituisce il numero di frasi in cache
+     *
+     * @return numero di frasi in cache
+     */
+    public synchronized int getDimensione() {
+        return istogrammi.size();
+    }
+
+    /**
+     * @brief Restituisce la stima dei byte occupati dalla cache
+     *
+     * @return byte delle frasi e degli istogrammi in cache
+     */
+    public synchronized long getByte() {
+        return occupati;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "cache: %d/%d frasi, %d/%d KiB, %d colpi, %d estensioni, %d mancati",
+                istogrammi.size(), capacita, occupati / 1024, maxByte / 1024, colpi, estensioni, mancati
+        );
+    }
+
+    /**
+     * Prefisso di una frase usato come chiave, immutabile.
+     *
+     * Permette di cercare un prefisso senza copiarlo in una nuova stringa.
+     */
+    private static final class Chiave {
+
+        /**
+         * Frase di cui la chiave e' un prefisso
+         */
+        private final String frase;
+        /**
+         * Caratteri del prefisso
+         */
+        private final int lunghezza;
+        /**
+         * Hash del prefisso, uguale a quello della stringa del prefisso
+         */
+        private final int hash;
+
+        /**
+         * @brief Costruisce la chiave di un prefisso
+         *
+         * @param frase frase di cui la chiave e' un prefisso
+         * @param lunghezza caratteri del prefisso
+         * @param hash hash del prefisso
+         */
+        private Chiave(String frase, int lunghezza, int hash) {
+            this.frase = frase;
+            this.lunghezza = lunghezza;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof Chiave))
+                return false;
+
+            final Chiave altra = (Chiave) obj;
+            return lunghezza == altra.lunghezza && hash == altra.hash
+                    && frase.regionMatches(0, altra.frase, 0, lunghezza);
+        }
+    }
+}
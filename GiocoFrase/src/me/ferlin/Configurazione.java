@@ -0,0 +1,113 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+/**
+ * Classe che legge i parametri di configurazione del programma
+ * dalle proprieta' di sistema.
+ *
+ * Ogni parametro viene letto dalla proprieta' {@code giocofrase.<nome>},
+ * ad esempio {@code -Dgiocofrase.forkjoin.chunk=65536}.
+ */
+public final class Configurazione {
+
+    /**
+     * Prefisso comune a tutte le proprieta' del programma
+     */
+    public static final String PREFISSO = "giocofrase.";
+
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private Configurazione() {}
+
+    /**
+     * @brief Restituisce il valore testuale del parametro dato
+     *
+     * @param nome nome del parametro senza {@link #PREFISSO}
+     * @param predefinito valore usato se il parametro non e' settato
+     * @return valore del parametro
+     */
+    public static String getString(String nome, String predefinito) {
+        return System.getProperty(PREFISSO + nome, predefinito);
+    }
+
+    /**
+     * @brief Restituisce il valore intero del parametro dato
+     *
+     * @param nome nome del parametro senza {@link #PREFISSO}
+     * @param predefinito valore usato se il parametro non e' settato
+     * @return valore del parametro
+     * @throws RuntimeException se il parametro non e' un intero positivo
+     *                          o e' maggiore di {@link Integer#MAX_VALUE}
+     */
+    public static int getInt(String nome, int predefinito) {
+        final long res = getLong(nome, predefinito);
+        if(res > Integer.MAX_VALUE)
+            throw new RuntimeException("Il parametro " + PREFISSO + nome + " non puo' superare " + Integer.MAX_VALUE + ".");
+        return (int) res;
+    }
+
+    /**
+     * @brief Restituisce il valore intero del parametro dato
+     *
+     * @param nome nome del parametro senza {@link #PREFISSO}
+     * @param predefinito valore usato se il parametro non e' settato
+     * @return valore del parametro
+     * @throws RuntimeException se il parametro non e' un intero positivo
+     */
+    public static long getLong(String nome, long predefinito) {
+        final String valore = getString(nome, null);
+        if(valore == null)
+            return predefinito;
+
+        try {
+            final long res = Long.parseLong(valore.trim());
+            if(res <= 0)
+                throw new RuntimeException("Il parametro " + PREFISSO + nome + " deve essere positivo.");
+            return res;
+        } catch(NumberFormatException ex) {
+            throw new RuntimeException("Il parametro " + PREFISSO + nome + " non e\' un numero valido.", ex);
+        }
+    }
+
+    /**
+     * @brief Restituisce il valore frazionario del parametro dato
+     *
+     * @param nome nome del parametro senza {@link #PREFISSO}
+     * @param predefinito valore usato se il parametro non e' settato
+     * @return valore del parametro
+     * @throws RuntimeException se il parametro non e' un numero
+     *                          strettamente compreso tra 0 e 1
+     */
+    public static double getFrazione(String nome, double predefinito) {
+        final String valore = getString(nome, null);
+        if(valore == null)
+            return predefinito;
+
+        try {
+            final double res = Double.parseDouble(valore.trim());
+            if(!(res > 0 && res < 1))
+                throw new RuntimeException("Il parametro " + PREFISSO + nome + " deve essere compreso tra 0 e 1.");
+            return res;
+        } catch(NumberFormatException ex) {
+            throw new RuntimeException("Il parametro " + PREFISSO + nome + " non e\' un numero valido.", ex);
+        }
+    }
+
+    /**
+     * @brief Restituisce il valore booleano del parametro dato
+     *
+     * @param nome nome del parametro senza {@link #PREFISSO}
+     * @param predefinito valore usato se il parametro non e' settato
+     * @return valore del parametro
+     */
+    public static boolean getBoolean(String nome, boolean predefinito) {
+        final String valore = getString(nome, null);
+        if(valore == null)
+            return predefinito;
+        return Boolean.parseBoolean(valore.trim());
+    }
+}
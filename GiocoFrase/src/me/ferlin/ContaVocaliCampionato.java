@@ -0,0 +1,650 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+/**
+ * Classe runnable che stima la vocale piu' usata di un testo molto grande
+ * contando solo dei blocchi scelti a caso.
+ *
+ * Il testo (una stringa o un file ASCII/UTF-8) viene diviso in blocchi
+ * di dimensione fissa, che vengono estratti senza ripetizioni. Dopo
+ * {@link #CAMPIONI_INIZIALI} blocchi, e poi ogni volta che il loro numero
+ * raddoppia, per ogni altra vocale viene calcolato l'intervallo di confidenza
+ * della differenza tra la sua frequenza e quella della vocale in testa
+ * (stimatore di rapporto sui blocchi, con correzione per popolazione finita).
+ * Il campionamento si ferma appena tutti gli intervalli sono sopra lo zero.
+ *
+ * La probabilita' di errore {@code 1 - confidenza} viene divisa tra le
+ * vocali confrontate e tra i controlli (meta' al primo, un quarto al
+ * secondo, ...), in modo che controllare piu' volte non la aumenti.
+ * Se dopo aver campionato la frazione massima dei blocchi la vocale
+ * in testa non e' ancora separata, i blocchi rimanenti vengono contati
+ * e il risultato e' esatto.
+ *
+ * I conteggi di ogni blocco analizzato vengono aggiunti subito ai dati
+ * condivisi, come in {@link ContaVocaliMappato}, per cui i totali pubblicati
+ * sono quelli dei soli blocchi analizzati e il loro
+ * numero di caratteri viene salvato con
+ * {@link DatiCondivisi#setCaratteriAllaDecisione(long)}; le frequenze
+ * stimate sono salvate con {@link DatiCondivisi#setStima(StimaVocali)}.
+ *
+ * La dimensione dei blocchi, la confidenza e la frazione massima si
+ * configurano con le proprieta' {@code giocofrase.campionamento.blocco},
+ * {@code giocofrase.campionamento.confidenza} e
+ * {@code giocofrase.campionamento.frazione} (vedi {@link Configurazione}).
+ */
+public class ContaVocaliCampionato implements Runnable {
+
+    // Constants
+
+    /**
+     * Dimensione predefinita dei blocchi
+     */
+    public static final int BLOCCO_PREDEFINITO = 4096;
+    /**
+     * Confidenza predefinita con cui la vocale piu' usata deve essere separata
+     */
+    public static final double CONFIDENZA_PREDEFINITA = 0.99;
+    /**
+     * Frazione predefinita dei blocchi oltre la quale il testo viene contato tutto
+     */
+    public static final double FRAZIONE_PREDEFINITA = 0.1;
+    /**
+     * Numero di blocchi campionati prima del primo controllo
+     */
+    private static final int CAMPIONI_INIZIALI = 32;
+    /**
+     * Numero massimo di byte di continuazione di un carattere UTF-8
+     */
+    private static final int MAX_CONTINUAZIONE = 3;
+
+
+    // Attributes
+
+    /**
+     * Numero di caratteri (o di byte per i file) di ogni blocco
+     */
+    private final int dimensioneBlocco;
+    /**
+     * Confidenza con cui la vocale piu' usata deve essere separata
+     */
+    private final double confidenza;
+    /**
+     * Frazione dei blocchi oltre la quale il testo viene contato tutto
+     */
+    private final double frazioneMassima;
+    /**
+     * Generatore usato per scegliere i blocchi
+     */
+    private SplittableRandom casuale = new SplittableRandom();
+    /**
+     * Stringa da analizzare o null se va analizzato {@link #percorso}
+     */
+    private String daAnalizzare;
+    /**
+     * File da analizzare o null se va analizzata {@link #daAnalizzare}
+     */
+    private Path percorso;
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+
+    /**
+     * @brief Costruisce un runnable configurato secondo le proprieta' di sistema
+     *
+     * @see Configurazione
+     */
+    public ContaVocaliCampionato() {
+        this(
+            Configurazione.getInt("campionamento.blocco", BLOCCO_PREDEFINITO),
+            Configurazione.getFrazione("campionamento.confidenza", CONFIDENZA_PREDEFINITA),
+            Configurazione.getFrazione("campionamento.frazione", FRAZIONE_PREDEFINITA)
+        );
+    }
+
+    /**
+     * @brief Costruisce un runnable con i parametri dati
+     *
+     * @param dimensioneBlocco caratteri (o byte) di ogni blocco
+     * @param confidenza confidenza con cui la vocale piu' usata
+     *                   deve essere separata
+     * @param frazioneMassima frazione dei blocchi oltre la quale
+     *                        il testo viene contato tutto
+     * @throws RuntimeException se la dimensione non e' positiva o se
+     *                          le frazioni non sono comprese tra 0 e 1
+     */
+    public ContaVocaliCampionato(int dimensioneBlocco, double confidenza, double frazioneMassima) {
+        if(dimensioneBlocco <= 0)
+            throw new RuntimeException("La dimensione dei blocchi deve essere positiva.");
+        if(!(confidenza > 0 && confidenza < 1))
+            throw new RuntimeException("La confidenza deve essere compresa tra 0 e 1.");
+        if(!(frazioneMassima > 0 && frazioneMassima < 1))
+            throw new RuntimeException("La frazione massima deve essere compresa tra 0 e 1.");
+
+        this.dimensioneBlocco = dimensioneBlocco;
+        this.confidenza = confidenza;
+        this.frazioneMassima = frazioneMassima;
+    }
+
+    /**
+     * @brief Campiona il testo finche' la vocale piu' usata non e' separata
+     *        dalle altre o finche' non e' stato contato tutto
+     *
+     * Alla fine i conteggi vengono aggiunti a {@link #ptrDati}
+     * e tutte le vocali vengono segnate come terminate.
+     *
+     * @throws RuntimeException se {@link #ptrDati} e' nullo o se non e'
+     *                          stato settato esattamente uno tra
+     *                          {@link #daAnalizzare} e {@link #percorso}.
+     * @throws UncheckedIOException se il file non puo' essere letto.
+     */
+    @Override
+    public void run() {
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+        if((daAnalizzare == null) == (percorso == null))
+            throw new RuntimeException("Deve essere settata la stringa o il file da analizzare.");
+
+        final TabellaVocali tabella = ptrDati.getTabella();
+        final Campionamento campionamento = new Campionamento(tabella.getNumeroVocali());
+        final long inizio = System.nanoTime();
+        StimaVocali stima = null;
+
+        try (Sorgente sorgente = daAnalizzare != null ?
+                new SorgenteStringa(daAnalizzare, ptrDati.getKernel()) :
+                new SorgenteFile(percorso, tabella, ptrDati.getKernel(), dimensioneBlocco)) {
+            stima = campiona(sorgente, tabella, campionamento);
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            Metriche.get().registraAnalisi(campionamento.caratteri, System.nanoTime() - inizio);
+            if(stima != null) {
+                ptrDati.setStima(stima);
+                ptrDati.setCaratteriAllaDecisione(stima.isEsatta() ? -1 : stima.getCaratteriAnalizzati());
+            }
+            for(int i = 0; i < campionamento.totale.length; i++)
+                ptrDati.getSchermo().push(tabella.getVocale(i), -1, campionamento.totale[i]);
+            ptrDati.terminaTutti();
+        }
+    }
+
+    /**
+     * @brief Campiona i blocchi della sorgente e ne stima le frequenze
+     *
+     * @param sorgente testo da analizzare
+     * @param tabella tabella delle vocali contate
+     * @param campionamento conteggi dei blocchi analizzati
+     * @return stima delle frequenze
+     * @throws IOException se il file non puo' essere letto
+     */
+    private StimaVocali campiona(Sorgente sorgente, TabellaVocali tabella, Campionamento campionamento)
+            throws IOException {
+        final long lunghezza = sorgente.lunghezza();
+        final long numeroBlocchi = (lunghezza + dimensioneBlocco - 1) / dimensioneBlocco;
+        if(numeroBlocchi > Integer.MAX_VALUE)
+            throw new RuntimeException("Il testo e\' troppo grande per la dimensione dei blocchi.");
+
+        final int blocchi = (int) numeroBlocchi;
+        final int massimo = (int) (blocchi * frazioneMassima);
+        final int confronti = Math.max(1, tabella.getNumeroVocali() - 1);
+        final HashMap<Integer, Integer> scambi = new HashMap<>();
+
+        int controllo = 0;
+        for(int obiettivo = CAMPIONI_INIZIALI; obiettivo <= massimo; obiettivo *= 2) {
+            while(campionamento.blocchi < obiettivo) {
+                // Fisher-Yates parziale: le posizioni scambiate sono salvate
+                // in una mappa, per cui non serve un vettore di tutti i blocchi
+                final int k = campionamento.blocchi;
+                final int j = k + casuale.nextInt(blocchi - k);
+                final int estratto = scambi.getOrDefault(j, j);
+                scambi.put(j, scambi.getOrDefault(k, k));
+                scambi.remove(k);
+                campionamento.aggiungi(sorgente, estratto);
+            }
+
+            controllo++;
+            final double alfa = (1 - confidenza) / Math.pow(2, controllo) / confronti;
+            if(campionamento.isSeparata(blocchi, quantileNormale(1 - alfa)))
+                return campionamento.stima(tabella, blocchi, false);
+        }
+
+        // Vocale non separata: vengono contati anche i blocchi rimanenti
+        for(int k = campionamento.blocchi; k < blocchi; k++)
+            campionamento.aggiungi(sorgente, scambi.getOrDefault(k, k));
+        return campionamento.stima(tabella, blocchi, true);
+    }
+
+    /**
+     * @brief Restituisce il quantile della distribuzione normale standard
+     *
+     * Approssimazione razionale di Acklam, con errore relativo
+     * inferiore a 1.2e-9.
+     * @param p probabilita', compresa tra 0 e 1
+     * @return valore z tale che P(Z &lt;= z) = p
+     */
+    static double quantileNormale(double p) {
+        final double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                              1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+        final double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                              6.680131188771972e+01, -1.328068155288572e+01 };
+        final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                             -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+        final double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                             3.754408661907416e+00 };
+        final double basso = 0.02425;
+
+        if(p < basso) {
+            final double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if(p > 1 - basso)
+            return -quantileNormale(1 - p);
+
+        final double q = p - 0.5;
+        final double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    /**
+     * @brief Setta il seme del generatore usato per scegliere i blocchi
+     *
+     * Setta {@link #casuale}, in modo che i blocchi scelti siano riproducibili.
+     * @param seme seme del generatore
+     */
+    public void setSeme(long seme) {
+        this.casuale = new SplittableRandom(seme);
+    }
+
+    /**
+     * @brief Setta la stringa da analizzare
+     *
+     * Setta {@link #daAnalizzare} e azzera {@link #percorso}.
+     * @param daAnalizzare stringa in cui vanno contate le vocali
+     */
+    public void setDaAnalizzare(String daAnalizzare) {
+        this.daAnalizzare = daAnalizzare;
+        this.percorso = null;
+    }
+
+    /**
+     * @brief Setta il file da analizzare
+     *
+     * Setta {@link #percorso} e azzera {@link #daAnalizzare}. Il file
+     * viene letto solo nei blocchi campionati, senza mapparlo.
+     * @param percorso file ASCII/UTF-8 in cui vanno contate le vocali
+     */
+    public void setPercorso(Path percorso) {
+        this.percorso = percorso;
+        this.daAnalizzare = null;
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+
+    /**
+     * Conteggi dei blocchi analizzati durante un campionamento
+     */
+    private final class Campionamento {
+
+        /**
+         * Numero di vocali contate
+         */
+        private final int numeroVocali;
+        /**
+         * Conteggi di ogni blocco analizzato, seguiti dal suo numero
+         * di caratteri: il blocco i occupa gli elementi da
+         * {@code i * (numeroVocali + 1)} a {@code (i + 1) * (numeroVocali + 1)}
+         */
+        private int[] blocco;
+        /**
+         * Conteggi totali dei blocchi analizzati, che su file di molti
+         * GB superano il valore massimo di un int
+         */
+        private final long[] totale;
+        /**
+         * Numero di blocchi analizzati
+         */
+        private int blocchi;
+        /**
+         * Numero di caratteri analizzati
+         */
+        private long caratteri;
+
+        /**
+         * @brief Costruisce un campionamento vuoto
+         *
+         * @param numeroVocali numero di vocali contate
+         */
+        private Campionamento(int numeroVocali) {
+            this.numeroVocali = numeroVocali;
+            this.blocco = new int[CAMPIONI_INIZIALI * (numeroVocali + 1)];
+            this.totale = new long[numeroVocali];
+        }
+
+        /**
+         * @brief Conta un blocco della sorgente
+         *
+         * L'istogramma del blocco viene subito aggiunto a {@link #ptrDati}.
+         * @param sorgente testo da analizzare
+         * @param indice indice del blocco
+         * @throws IOException se il file non puo' essere letto
+         */
+        private void aggiungi(Sorgente sorgente, int indice) throws IOException {
+            final int riga = numeroVocali + 1;
+            if((blocchi + 1) * riga > blocco.length)
+                blocco = Arrays.copyOf(blocco, blocco.length * 2);
+
+            final long da = (long) indice * dimensioneBlocco;
+            final int lunghezza = (int) Math.min(dimensioneBlocco, sorgente.lunghezza() - da);
+            final int[] istogramma = new int[numeroVocali];
+            final int letti = sorgente.conta(da, lunghezza, istogramma);
+
+            final int base = blocchi * riga;
+            for(int i = 0; i < numeroVocali; i++) {
+                blocco[base + i] = istogramma[i];
+                totale[i] += istogramma[i];
+            }
+            blocco[base + numeroVocali] = letti;
+            blocchi++;
+            caratteri += letti;
+            ptrDati.aggiungi(istogramma, letti);
+        }
+
+        /**
+         * @brief Restituisce lo slot della vocale in testa
+         *
+         * @return slot con il conteggio piu' alto, il minore in caso di pareggio
+         */
+        private int getPiuUsata() {
+            int testa = 0;
+            for(int i = 1; i < numeroVocali; i++)
+                if(totale[i] > totale[testa])
+                    testa = i;
+            return testa;
+        }
+
+        /**
+         * @brief Restituisce l'errore standard dello stimatore di rapporto
+         *        della differenza tra due vocali
+         *
+         * Con {@code meno} uguale a -1 restituisce quello della frequenza
+         * della sola vocale {@code piu}.
+         * @param piu slot della vocale sommata
+         * @param meno slot della vocale sottratta o -1
+         * @param rapporto valore stimato del rapporto
+         * @param blocchiTotali numero di blocchi del testo
+         * @return errore standard
+         */
+        private double erroreStandard(int piu, int meno, double rapporto, int blocchiTotali) {
+            final int riga = numeroVocali + 1;
+            double quadrati = 0;
+            for(int i = 0; i < blocchi; i++) {
+                final int base = i * riga;
+                final int valore = blocco[base + piu] - (meno < 0 ? 0 : blocco[base + meno]);
+                final double residuo = valore - rapporto * blocco[base + numeroVocali];
+                quadrati += residuo * residuo;
+            }
+
+            final double media = (double) caratteri / blocchi;
+            final double varianza = quadrati / (blocchi - 1);
+            final double correzione = 1 - (double) blocchi / blocchiTotali;
+            return Math.sqrt(varianza / blocchi * correzione) / media;
+        }
+
+        /**
+         * @brief Restituisce se la vocale in testa e' separata da tutte le altre
+         *
+         * @param blocchiTotali numero di blocchi del testo
+         * @param z quantile della normale corrispondente alla confidenza
+         *          del controllo
+         * @return true se per ogni altra vocale il limite inferiore
+         *         della differenza e' positivo
+         */
+        private boolean isSeparata(int blocchiTotali, double z) {
+            final int testa = getPiuUsata();
+            for(int i = 0; i < numeroVocali; i++) {
+                if(i == testa)
+                    continue;
+
+                final double differenza = (double) (totale[testa] - totale[i]) / caratteri;
+                if(differenza - z * erroreStandard(testa, i, differenza, blocchiTotali) <= 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * @brief Restituisce la stima delle frequenze
+         *
+         * @param tabella tabella delle vocali contate
+         * @param blocchiTotali numero di blocchi del testo
+         * @param esatta true se sono stati contati tutti i blocchi
+         * @return stima delle frequenze
+         */
+        private StimaVocali stima(TabellaVocali tabella, int blocchiTotali, boolean esatta) {
+            final double z = quantileNormale(1 - (1 - confidenza) / 2);
+            final double[] frequenze = new double[numeroVocali];
+            final double[] semiampiezze = new double[numeroVocali];
+
+            for(int i = 0; i < numeroVocali; i++) {
+                frequenze[i] = caratteri == 0 ? 0 : (double) totale[i] / caratteri;
+                if(!esatta)
+                    semiampiezze[i] = z * erroreStandard(i, -1, frequenze[i], blocchiTotali);
+            }
+            return new StimaVocali(
+                    tabella, frequenze, semiampiezze, confidenza,
+                    caratteri, blocchi, blocchiTotali, esatta
+            );
+        }
+    }
+
+    /**
+     * Testo da cui vengono letti i blocchi
+     */
+    private interface Sorgente extends AutoCloseable {
+
+        /**
+         * @brief Restituisce la lunghezza del testo
+         *
+         * @return caratteri della stringa o byte del file
+         */
+        long lunghezza();
+
+        /**
+         * @brief Conta le vocali di un blocco
+         *
+         * @param da inizio del blocco
+         * @param lunghezza lunghezza del blocco
+         * @param istogramma istogramma a cui aggiungere i conteggi
+         * @return numero di caratteri contati
+         * @throws IOException se il file non puo' essere letto
+         */
+        int conta(long da, int lunghezza, int[] istogramma) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * Sorgente che legge i blocchi da una stringa
+     */
+    private static final class SorgenteStringa implements Sorgente {
+
+        /**
+         * Stringa da analizzare
+         */
+        private final String testo;
+        /**
+         * Kernel usato per contare le vocali
+         */
+        private final KernelConteggio kernel;
+
+        /**
+         * @brief Costruisce una sorgente per la stringa data
+         *
+         * @param testo stringa da analizzare
+         * @param kernel kernel usato per contare le vocali
+         */
+        private SorgenteStringa(String testo, KernelConteggio kernel) {
+            this.testo = testo;
+            this.kernel = kernel;
+        }
+
+        @Override
+        public long lunghezza() {
+            return testo.length();
+        }
+
+        @Override
+        public int conta(long da, int lunghezza, int[] istogramma) {
+            kernel.conta(testo, (int) da, (int) da + lunghezza, istogramma);
+            return lunghezza;
+        }
+    }
+
+    /**
+     * Sorgente che legge i blocchi da un file ASCII/UTF-8 con letture
+     * posizionali, per cui i blocchi non campionati non vengono mai letti.
+     *
+     * Se la tabella contiene vocali non ASCII ogni blocco viene decodificato
+     * da UTF-8 come in {@link ContaVocaliMappato}: i byte di continuazione
+     * iniziali appartengono al blocco precedente e l'ultimo carattere viene
+     * completato con i byte successivi, per cui ogni carattere viene contato
+     * in un solo blocco.
+     */
+    private static final class SorgenteFile implements Sorgente {
+
+        /**
+         * Canale del file
+         */
+        private final FileChannel canale;
+        /**
+         * Dimensione del file
+         */
+        private final long dimensione;
+        /**
+         * Indica se basta contare i byte
+         */
+        private final boolean ascii;
+        /**
+         * Kernel usato per contare le vocali
+         */
+        private final KernelConteggio kernel;
+        /**
+         * Byte del blocco letto
+         */
+        private final ByteBuffer byteLetti;
+        /**
+         * Caratteri del blocco decodificato
+         */
+        private final CharBuffer caratteri;
+        /**
+         * Decoder UTF-8 riutilizzato per ogni blocco
+         */
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        /**
+         * @brief Apre il file dato
+         *
+         * @param percorso file da analizzare
+         * @param tabella tabella delle vocali contate
+         * @param kernel kernel usato per contare le vocali
+         * @param dimensioneBlocco byte di ogni blocco
+         * @throws IOException se il file non puo' essere aperto
+         */
+        private SorgenteFile(Path percorso, TabellaVocali tabella, KernelConteggio kernel,
+                int dimensioneBlocco) throws IOException {
+            this.canale = FileChannel.open(percorso, StandardOpenOption.READ);
+            this.dimensione = canale.size();
+            this.ascii = tabella.isAscii();
+            this.kernel = kernel;
+            this.byteLetti = ByteBuffer.allocate(dimensioneBlocco + MAX_CONTINUAZIONE);
+            this.caratteri = ascii ? null : CharBuffer.allocate(dimensioneBlocco + MAX_CONTINUAZIONE);
+        }
+
+        @Override
+        public long lunghezza() {
+            return dimensione;
+        }
+
+        @Override
+        public int conta(long da, int lunghezza, int[] istogramma) throws IOException {
+            final int daLeggere = ascii ? lunghezza :
+                    (int) Math.min(lunghezza + MAX_CONTINUAZIONE, dimensione - da);
+
+            byteLetti.clear().limit(daLeggere);
+            while(byteLetti.hasRemaining())
+                if(canale.read(byteLetti, da + byteLetti.position()) < 0)
+                    break;
+            byteLetti.flip();
+
+            if(ascii) {
+                kernel.conta(byteLetti, 0, byteLetti.limit(), istogramma);
+                return byteLetti.limit();
+            }
+
+            int inizio = 0;
+            if(da > 0)
+                while(inizio < lunghezza && isContinuazione(byteLetti.get(inizio)))
+                    inizio++;
+
+            int fine = Math.min(lunghezza, byteLetti.limit());
+            while(fine < byteLetti.limit() && isContinuazione(byteLetti.get(fine)))
+                fine++;
+
+            byteLetti.position(inizio).limit(Math.max(inizio, fine));
+            caratteri.clear();
+            decoder.reset();
+            decoder.decode(byteLetti, caratteri, true);
+            decoder.flush(caratteri);
+
+            kernel.conta(caratteri.array(), 0, caratteri.position(), istogramma);
+            return caratteri.position();
+        }
+
+        /**
+         * @brief Restituisce se il byte dato e' un byte di continuazione UTF-8
+         *
+         * @param b byte da controllare
+         * @return true se il byte e' nella forma 10xxxxxx
+         */
+        private static boolean isContinuazione(byte b) {
+            return (b & 0xC0) == 0x80;
+        }
+
+        @Override
+        public void close() throws IOException {
+            canale.close();
+        }
+    }
+}
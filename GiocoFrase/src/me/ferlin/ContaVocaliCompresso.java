@@ -0,0 +1,1042 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Classe runnable che conta le vocali di un file gzip, zip o di testo
+ * senza decomprimerlo su disco o in una {@link String}.
+ *
+ * Il lavoro e' diviso in due stadi che girano contemporaneamente su
+ * thread diversi:
+ * - i decompressori riempiono dei buffer di byte presi da una coda
+ *   di buffer liberi e li mettono in una coda limitata di buffer pieni;
+ * - i contatori prendono i buffer pieni, ne contano le vocali, aggiungono
+ *   i conteggi ai dati condivisi e rimettono i buffer tra quelli liberi.
+ * I buffer vengono quindi riutilizzati e la memoria usata dipende solo
+ * dal loro numero; se i contatori sono piu' lenti i decompressori
+ * si fermano in attesa di un buffer libero.
+ *
+ * Le voci di un file zip vengono decompresse in parallelo. Un file gzip
+ * viene mappato in memoria a finestre, per cui puo' superare i 2 GiB, e se
+ * ha piu' membri (ad esempio creato con {@code cat} o con {@code bgzip})
+ * viene diviso in segmenti che iniziano con un'intestazione gzip, cercata
+ * dal decompressore di ogni segmento nella propria parte del file: ogni
+ * segmento viene decompresso in parallelo e i suoi conteggi vengono
+ * pubblicati solo quando si verifica che il segmento precedente finisce
+ * esattamente dove inizia il suo, per cui un'intestazione trovata per
+ * caso nei dati compressi non viene mai contata. Un file gzip con un solo
+ * membro viene decompresso da un solo thread, sempre in parallelo ai contatori.
+ *
+ * Se la tabella contiene vocali non ASCII i buffer vengono decodificati da
+ * UTF-8 e ogni buffer termina al confine di un carattere; i caratteri divisi
+ * tra due segmenti gzip vengono ricomposti quando i segmenti sono confermati.
+ *
+ * Thread, dimensione e numero dei buffer si configurano con le proprieta'
+ * {@code giocofrase.compresso.decompressori}, {@code giocofrase.compresso.contatori},
+ * {@code giocofrase.compresso.buffer} e {@code giocofrase.compresso.buffer.numero}
+ * (vedi {@link Configurazione}).
+ */
+public class ContaVocaliCompresso implements Runnable {
+
+    // Constants
+
+    /**
+     * Dimensione predefinita dei buffer
+     */
+    public static final int BUFFER_PREDEFINITO = 256 * 1024;
+    /**
+     * Segmenti gzip per decompressore, per bilanciare il lavoro
+     */
+    private static final int SEGMENTI_PER_DECOMPRESSORE = 4;
+    /**
+     * Dimensione minima di un segmento gzip
+     */
+    private static final long SEGMENTO_MINIMO = 1024 * 1024;
+    /**
+     * Logaritmo in base 2 della dimensione delle finestre in cui viene
+     * mappato un file gzip
+     */
+    private static final int BIT_FINESTRA = 30;
+    /**
+     * Inizio di un segmento gzip non ancora cercato
+     */
+    private static final long SCONOSCIUTO = -2;
+    /**
+     * Inizio di un segmento gzip la cui parte non contiene intestazioni
+     */
+    private static final long NESSUNO = -1;
+    /**
+     * Numero massimo di byte di continuazione di un carattere UTF-8
+     */
+    private static final int MAX_CONTINUAZIONE = 3;
+    /**
+     * Flag dell'intestazione gzip
+     */
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    /**
+     * Formato del file
+     */
+    private enum Formato {
+        GZIP, ZIP, TESTO
+    }
+
+
+    // Attributes
+
+    /**
+     * File da analizzare
+     */
+    private final Path percorso;
+    /**
+     * Numero di thread che decomprimono
+     */
+    private final int decompressori;
+    /**
+     * Numero di thread che contano
+     */
+    private final int contatori;
+    /**
+     * Dimensione di ogni buffer
+     */
+    private final int dimensioneBuffer;
+    /**
+     * Numero di buffer in circolazione tra i due stadi
+     */
+    private final int numeroBuffer;
+    /**
+     * Buffer liberi, da riempire
+     */
+    private BlockingQueue<Pezzo> liberi;
+    /**
+     * Buffer pieni, da contare
+     */
+    private BlockingQueue<Pezzo> pieni;
+    /**
+     * Conteggi di tutti i segmenti pubblicati
+     */
+    private long[] totale;
+    /**
+     * Byte decompressi
+     */
+    private final AtomicLong decompressi = new AtomicLong();
+    /**
+     * Se le vocali sono tutte ASCII e i byte possono essere contati
+     * senza decodificarli
+     */
+    private boolean ascii;
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+
+    /**
+     * @brief Costruisce un runnable configurato secondo le proprieta' di sistema
+     *
+     * Di default i core vengono divisi a meta' tra decompressori e contatori.
+     * @see Configurazione
+     * @param percorso file da analizzare
+     */
+    public ContaVocaliCompresso(Path percorso) {
+        this(
+            percorso,
+            Configurazione.getInt("compresso.decompressori",
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Configurazione.getInt("compresso.contatori",
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Configurazione.getInt("compresso.buffer", BUFFER_PREDEFINITO),
+            Configurazione.getInt("compresso.buffer.numero",
+                    4 * Runtime.getRuntime().availableProcessors())
+        );
+    }
+
+    /**
+     * @brief Costruisce un runnable con i thread e i buffer dati
+     *
+     * @param percorso file da analizzare
+     * @param decompressori numero di thread che decomprimono
+     * @param contatori numero di thread che contano
+     * @param dimensioneBuffer dimensione di ogni buffer
+     * @param numeroBuffer numero di buffer in circolazione
+     * @throws RuntimeException se uno dei parametri non e' positivo
+     */
+    public ContaVocaliCompresso(Path percorso, int decompressori, int contatori,
+                                int dimensioneBuffer, int numeroBuffer) {
+        if(decompressori <= 0 || contatori <= 0)
+            throw new RuntimeException("Il numero di thread deve essere positivo.");
+        if(dimensioneBuffer <= MAX_CONTINUAZIONE || numeroBuffer <= 0)
+            throw new RuntimeException("La dimensione e il numero dei buffer devono essere positivi.");
+
+        this.percorso = percorso;
+        this.decompressori = decompressori;
+        this.contatori = contatori;
+        this.dimensioneBuffer = dimensioneBuffer;
+        // Ogni decompressore tiene un buffer mentre lo riempie
+        this.numeroBuffer = Math.max(numeroBuffer, decompressori + 1);
+    }
+
+    /**
+     * @brief Decomprime il file e ne conta le vocali
+     *
+     * Alla fine viene scritto un messaggio su schermo per ogni vocale
+     * e tutte le vocali vengono segnate come terminate.
+     *
+     * @throws RuntimeException se {@link #ptrDati} e' nullo o se il file
+     *                          compresso non e' valido.
+     * @throws UncheckedIOException se il file non puo' essere letto.
+     */
+    @Override
+    public void run() {
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+
+        final TabellaVocali tabella = ptrDati.getTabella();
+        ascii = tabella.isAscii();
+        totale = new long[tabella.getNumeroVocali()];
+        decompressi.set(0);
+        liberi = new ArrayBlockingQueue<>(numeroBuffer);
+        pieni = new ArrayBlockingQueue<>(numeroBuffer + contatori);
+        for(int i = 0; i < numeroBuffer; i++)
+            liberi.add(new Pezzo(dimensioneBuffer));
+
+        final AtomicInteger numeroThread = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(decompressori, r -> {
+            final Thread th = new Thread(r, "Thread_decompressore_" + numeroThread.getAndIncrement());
+            th.setDaemon(true);
+            return th;
+        });
+        final Thread[] threadContatori = new Thread[contatori];
+        for(int i = 0; i < contatori; i++) {
+            threadContatori[i] = new Thread(this::conta, "Thread_contatore_" + i);
+            threadContatori[i].setDaemon(true);
+            threadContatori[i].start();
+        }
+
+        final long inizio = System.nanoTime();
+        try (FileChannel canale = FileChannel.open(percorso, StandardOpenOption.READ)) {
+            switch(riconosci(canale)) {
+                case GZIP:
+                    gzip(canale, pool);
+                    break;
+                case ZIP:
+                    zip(pool);
+                    break;
+                case TESTO:
+                default:
+                    attendi(pool.submit(() -> leggi(Channels.newInputStream(canale), new Flusso(true, false))));
+                    break;
+            }
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            pool.shutdownNow();
+            try {
+                for(Thread th : threadContatori)
+                    pieni.put(new Pezzo(0));
+                for(Thread th : threadContatori)
+                    th.join();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            Metriche.get().registraAnalisi(decompressi.get(), System.nanoTime() - inizio);
+            for(int i = 0; i < totale.length; i++)
+                ptrDati.getSchermo().push(tabella.getVocale(i), -1, totale[i]);
+            ptrDati.terminaTutti();
+        }
+    }
+
+    /**
+     * @brief Riconosce il formato del file dai primi byte
+     *
+     * @param canale canale del file
+     * @return formato del file
+     * @throws IOException se il file non puo' essere letto
+     */
+    private static Formato riconosci(FileChannel canale) throws IOException {
+        final ByteBuffer magia = ByteBuffer.allocate(4);
+        while(magia.hasRemaining() && canale.read(magia, magia.position()) > 0);
+
+        if(magia.position() >= 2 && (magia.get(0) & 0xFF) == 0x1F && (magia.get(1) & 0xFF) == 0x8B)
+            return Formato.GZIP;
+        if(magia.position() == 4 && magia.get(0) == 'P' && magia.get(1) == 'K'
+                && magia.get(2) == 3 && magia.get(3) == 4)
+            return Formato.ZIP;
+        return Formato.TESTO;
+    }
+
+    /**
+     * @brief Decomprime in parallelo le voci di un file zip
+     *
+     * @param pool pool dei decompressori
+     * @throws IOException se il file non puo' essere letto
+     */
+    private void zip(ExecutorService pool) throws IOException {
+        try (ZipFile zip = new ZipFile(percorso.toFile())) {
+            final List<Future<?>> voci = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while(entries.hasMoreElements()) {
+                final ZipEntry voce = entries.nextElement();
+                if(!voce.isDirectory())
+                    voci.add(pool.submit(() -> leggi(zip.getInputStream(voce), new Flusso(true, false))));
+            }
+            for(Future<?> voce : voci)
+                attendi(voce);
+        }
+    }
+
+    /**
+     * @brief Decomprime un file gzip, dividendolo in segmenti se ha piu' membri
+     *
+     * Il file viene diviso in parti uguali, una per segmento, e il
+     * decompressore di ogni segmento cerca l'inizio del segmento nella
+     * propria parte, in parallelo agli altri. I segmenti vengono confermati
+     * in ordine: un segmento e' confermato se inizia dove finisce l'ultimo
+     * confermato, mentre quelli saltati iniziavano con un'intestazione
+     * trovata per caso e vengono scartati.
+     * @param canale canale del file
+     * @param pool pool dei decompressori
+     * @throws IOException se il file non puo' essere letto
+     */
+    private void gzip(FileChannel canale, ExecutorService pool) throws IOException {
+        final Mappa mappa = new Mappa(canale);
+        final long passo = Math.max(SEGMENTO_MINIMO,
+                mappa.dimensione / ((long) decompressori * SEGMENTI_PER_DECOMPRESSORE));
+        final int numeroSegmenti = (int) ((mappa.dimensione + passo - 1) / passo);
+
+        final AtomicLongArray inizi = new AtomicLongArray(numeroSegmenti);
+        for(int k = 1; k < numeroSegmenti; k++)
+            inizi.set(k, SCONOSCIUTO);
+        final Flusso[] flussi = new Flusso[numeroSegmenti];
+        final List<Future<?>> futures = new ArrayList<>();
+        for(int k = 0; k < numeroSegmenti; k++) {
+            final int segmento = k;
+            flussi[k] = new Flusso(k == 0, true);
+            futures.add(pool.submit(() -> decomprimiSegmento(mappa, inizi, passo, segmento, flussi[segmento])));
+        }
+
+        Flusso precedente = null;
+        int atteso = 0;
+        try {
+            for(int k = 0; k < numeroSegmenti; k++) {
+                if(k < atteso)
+                    continue;
+
+                attendi(futures.get(k));
+                if(!flussi[k].valido)
+                    throw new RuntimeException("Il file " + percorso + " non e\' un file gzip valido.");
+
+                if(precedente != null)
+                    contaGiunzione(precedente.coda, flussi[k].testa);
+                flussi[k].conferma();
+                precedente = flussi[k];
+
+                // Il decompressore si ferma solo all'inizio di un altro segmento
+                // o alla fine del file
+                final long fine = flussi[k].fine;
+                final int successivo = fine < mappa.dimensione ? (int) (fine / passo) : numeroSegmenti;
+                atteso = successivo > k ? successivo : numeroSegmenti;
+                for(int j = k + 1; j < atteso; j++)
+                    flussi[j].scarta();
+            }
+            if(precedente != null)
+                contaGiunzione(precedente.coda, new byte[0]);
+        } finally {
+            for(Flusso flusso : flussi)
+                if(!flusso.certo)
+                    flusso.scarta();
+            for(Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch(ExecutionException ex) {
+                    // Segmento scartato o errore gia' segnalato
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Restituisce l'inizio di un segmento di un file gzip,
+     *        cercandolo se non e' ancora noto
+     *
+     * Un segmento inizia alla prima intestazione gzip plausibile della
+     * propria parte del file. Se il file ha un solo membro le intestazioni
+     * trovate sono casuali e i loro segmenti verranno scartati. L'inizio
+     * puo' essere cercato sia dal decompressore del segmento che da quello
+     * di un segmento precedente, senza che nessuno dei due aspetti l'altro:
+     * il risultato e' lo stesso.
+     * @param mappa contenuto del file
+     * @param inizi inizi dei segmenti gia' noti
+     * @param passo dimensione delle parti del file
+     * @param segmento indice del segmento
+     * @return offset dell'inizio o {@link #NESSUNO} se la parte
+     *         non contiene intestazioni
+     */
+    private static long inizio(Mappa mappa, AtomicLongArray inizi, long passo, int segmento) {
+        long inizio = inizi.get(segmento);
+        if(inizio != SCONOSCIUTO)
+            return inizio;
+
+        inizio = NESSUNO;
+        final long fine = Math.min(mappa.dimensione, (segmento + 1) * passo);
+        for(long p = segmento * passo; p < fine; p++) {
+            if(isIntestazionePlausibile(mappa, p) && leggiIntestazione(mappa, p) >= 0) {
+                inizio = p;
+                break;
+            }
+        }
+        inizi.set(segmento, inizio);
+        return inizio;
+    }
+
+    /**
+     * @brief Restituisce se all'offset dato puo' iniziare un membro gzip
+     *
+     * Oltre al numero magico controlla i bit riservati dei flag,
+     * il campo XFL e il sistema operativo, per scartare velocemente
+     * la maggior parte dei falsi positivi.
+     * @param mappa contenuto del file
+     * @param p offset da controllare
+     * @return true se l'intestazione e' plausibile
+     */
+    private static boolean isIntestazionePlausibile(Mappa mappa, long p) {
+        if(p + 10 > mappa.dimensione)
+            return false;
+        if((mappa.get(p) & 0xFF) != 0x1F || (mappa.get(p + 1) & 0xFF) != 0x8B || mappa.get(p + 2) != 8)
+            return false;
+
+        final int flag = mappa.get(p + 3) & 0xFF;
+        final int xfl = mappa.get(p + 8) & 0xFF;
+        final int os = mappa.get(p + 9) & 0xFF;
+        return (flag & 0xE0) == 0 && (xfl == 0 || xfl == 2 || xfl == 4) && (os <= 13 || os == 255);
+    }
+
+    /**
+     * @brief Legge l'intestazione del membro gzip all'offset dato
+     *
+     * @param mappa contenuto del file
+     * @param p offset dell'intestazione
+     * @return offset dei dati compressi o -1 se l'intestazione non e' valida
+     */
+    private static long leggiIntestazione(Mappa mappa, long p) {
+        final long limite = mappa.dimensione;
+        if(p + 10 > limite || (mappa.get(p) & 0xFF) != 0x1F || (mappa.get(p + 1) & 0xFF) != 0x8B
+                || mappa.get(p + 2) != 8)
+            return -1;
+
+        final int flag = mappa.get(p + 3) & 0xFF;
+        if((flag & 0xE0) != 0)
+            return -1;
+
+        long q = p + 10;
+        if((flag & FEXTRA) != 0) {
+            if(q + 2 > limite)
+                return -1;
+            q += 2 + ((mappa.get(q) & 0xFF) | (mappa.get(q + 1) & 0xFF) << 8);
+        }
+        if((flag & FNAME) != 0) {
+            while(q < limite && mappa.get(q) != 0)
+                q++;
+            q++;
+        }
+        if((flag & FCOMMENT) != 0) {
+            while(q < limite && mappa.get(q) != 0)
+                q++;
+            q++;
+        }
+        if((flag & FHCRC) != 0)
+            q += 2;
+        return q <= limite ? q : -1;
+    }
+
+    /**
+     * @brief Decomprime i membri gzip di un segmento
+     *
+     * Il segmento finisce quando un membro termina all'inizio di un altro
+     * segmento o alla fine del file. Ogni membro viene controllato con
+     * il CRC32 e la lunghezza scritti dopo i dati compressi; se un membro
+     * non e' valido il flusso viene segnato come non valido. I dati compressi
+     * vengono passati all'{@link Inflater} una finestra della mappa alla volta.
+     * @param mappa contenuto del file
+     * @param inizi inizi dei segmenti gia' noti
+     * @param passo dimensione delle parti del file
+     * @param segmento indice del segmento
+     * @param flusso flusso del segmento
+     */
+    private void decomprimiSegmento(Mappa mappa, AtomicLongArray inizi, long passo, int segmento, Flusso flusso) {
+        final long dimensione = mappa.dimensione;
+        final long inizioSegmento = inizio(mappa, inizi, passo, segmento);
+        if(inizioSegmento == NESSUNO)
+            return;
+
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        // I caratteri iniziali di un segmento possono appartenere al precedente
+        Pezzo pezzo = prendi(flusso, null, segmento > 0);
+
+        try {
+            long posizione = inizioSegmento;
+            while(true) {
+                final long dati = leggiIntestazione(mappa, posizione);
+                if(dati < 0) {
+                    // Byte dopo l'ultimo membro, ignorati come fa GZIPInputStream
+                    flusso.valido = posizione != inizioSegmento;
+                    posizione = dimensione;
+                    break;
+                }
+
+                inflater.reset();
+                inflater.setInput(mappa.finestra(dati));
+                crc.reset();
+                long prodotti = 0;
+                while(!inflater.finished()) {
+                    if(flusso.scartato || pezzo == null)
+                        return;
+                    if(pezzo.lunghezza == pezzo.dati.length)
+                        pezzo = consegna(pezzo, false);
+                    if(pezzo == null)
+                        return;
+
+                    final int n = inflater.inflate(pezzo.dati, pezzo.lunghezza, pezzo.dati.length - pezzo.lunghezza);
+                    if(n == 0 && inflater.needsInput()) {
+                        final long letti = dati + inflater.getBytesRead();
+                        if(letti >= dimensione) {
+                            flusso.valido = false;
+                            return;
+                        }
+                        inflater.setInput(mappa.finestra(letti));
+                        continue;
+                    }
+                    if(n == 0 && inflater.needsDictionary()) {
+                        flusso.valido = false;
+                        return;
+                    }
+                    crc.update(pezzo.dati, pezzo.lunghezza, n);
+                    pezzo.lunghezza += n;
+                    prodotti += n;
+                }
+
+                final long fineDati = dati + inflater.getBytesRead();
+                if(fineDati + 8 > dimensione
+                        || mappa.getIntLittleEndian(fineDati) != (int) crc.getValue()
+                        || mappa.getIntLittleEndian(fineDati + 4) != (int) prodotti) {
+                    flusso.valido = false;
+                    return;
+                }
+                posizione = fineDati + 8;
+
+                // Un membro che finisce nella parte di un segmento successivo
+                // termina questo segmento solo se il successivo inizia li'
+                final long parte = posizione / passo;
+                if(posizione >= dimensione
+                        || parte > segmento && inizio(mappa, inizi, passo, (int) parte) == posizione)
+                    break;
+            }
+
+            flusso.fine = posizione;
+            consegna(pezzo, true);
+            pezzo = null;
+        } catch(DataFormatException ex) {
+            flusso.valido = false;
+        } finally {
+            inflater.end();
+            if(pezzo != null)
+                rilascia(pezzo);
+        }
+    }
+
+    /**
+     * @brief Legge tutto lo stream dato nei buffer
+     *
+     * @param stream stream decompresso
+     * @param flusso flusso dello stream
+     * @return null
+     * @throws IOException se lo stream non puo' essere letto
+     */
+    private Void leggi(InputStream stream, Flusso flusso) throws IOException {
+        try (InputStream in = stream) {
+            Pezzo pezzo = prendi(flusso, null, false);
+            while(pezzo != null) {
+                final int n = in.read(pezzo.dati, pezzo.lunghezza, pezzo.dati.length - pezzo.lunghezza);
+                if(n < 0) {
+                    consegna(pezzo, true);
+                    break;
+                }
+                pezzo.lunghezza += n;
+                if(pezzo.lunghezza == pezzo.dati.length)
+                    pezzo = consegna(pezzo, false);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @brief Prende un buffer libero per il flusso dato
+     *
+     * @param flusso flusso che riempira' il buffer
+     * @param riporto byte da copiare all'inizio del buffer o null
+     * @param saltaTesta se i byte di continuazione iniziali vanno messi
+     *                   da parte in {@link Flusso#testa}
+     * @return buffer libero o null se il thread e' stato interrotto
+     */
+    private Pezzo prendi(Flusso flusso, byte[] riporto, boolean saltaTesta) {
+        final Pezzo pezzo;
+        try {
+            pezzo = liberi.take();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        pezzo.flusso = flusso;
+        pezzo.saltaTesta = saltaTesta;
+        pezzo.lunghezza = 0;
+        if(riporto != null) {
+            System.arraycopy(riporto, 0, pezzo.dati, 0, riporto.length);
+            pezzo.lunghezza = riporto.length;
+        }
+        return pezzo;
+    }
+
+    /**
+     * @brief Passa un buffer pieno ai contatori
+     *
+     * Se le vocali non sono tutte ASCII i byte di un carattere non ancora
+     * completo restano per il buffer successivo o, alla fine di un segmento
+     * gzip, in {@link Flusso#coda}.
+     * @param pezzo buffer pieno
+     * @param finale true se e' l'ultimo buffer del flusso
+     * @return nuovo buffer dello stesso flusso o null se il flusso e' finito
+     *         o il thread e' stato interrotto
+     */
+    private Pezzo consegna(Pezzo pezzo, boolean finale) {
+        final Flusso flusso = pezzo.flusso;
+        byte[] riporto = null;
+
+        if(!ascii) {
+            if(pezzo.saltaTesta) {
+                int testa = 0;
+                while(testa < Math.min(MAX_CONTINUAZIONE, pezzo.lunghezza) && isContinuazione(pezzo.dati[testa]))
+                    testa++;
+                flusso.testa = Arrays.copyOf(pezzo.dati, testa);
+                pezzo.inizio = testa;
+            }
+            if(!finale || flusso.segmento) {
+                final int taglio = confineUtf8(pezzo.dati, pezzo.inizio, pezzo.lunghezza);
+                riporto = Arrays.copyOfRange(pezzo.dati, taglio, pezzo.lunghezza);
+                pezzo.lunghezza = taglio;
+            }
+        }
+
+        decompressi.addAndGet(pezzo.lunghezza - pezzo.inizio);
+        try {
+            pieni.put(pezzo);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        if(!finale)
+            return prendi(flusso, riporto, false);
+        if(riporto != null)
+            // Fine del segmento: il carattere viene completato dal segmento successivo
+            flusso.coda = riporto;
+        return null;
+    }
+
+    /**
+     * @brief Conta i buffer pieni finche' non riceve un buffer vuoto
+     *
+     * Eseguito da ogni thread contatore.
+     */
+    private void conta() {
+        final KernelConteggio kernel = ptrDati.getKernel();
+        final int[] istogramma = new int[totale.length];
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer caratteri = CharBuffer.allocate(dimensioneBuffer);
+
+        try {
+            while(true) {
+                final Pezzo pezzo = pieni.take();
+                if(pezzo.flusso == null)
+                    return;
+
+                Arrays.fill(istogramma, 0);
+                final long contati;
+                if(ascii) {
+                    kernel.conta(pezzo.vista, pezzo.inizio, pezzo.lunghezza, istogramma);
+                    contati = pezzo.lunghezza - pezzo.inizio;
+                } else {
+                    decoder.reset();
+                    caratteri.clear();
+                    final ByteBuffer byteBuffer = ByteBuffer.wrap(pezzo.dati, pezzo.inizio, pezzo.lunghezza - pezzo.inizio);
+                    decoder.decode(byteBuffer, caratteri, true);
+                    decoder.flush(caratteri);
+                    kernel.conta(caratteri.array(), 0, caratteri.position(), istogramma);
+                    contati = caratteri.position();
+                }
+                pezzo.flusso.aggiungi(istogramma, contati);
+                rilascia(pezzo);
+            }
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @brief Rimette un buffer tra quelli liberi
+     *
+     * @param pezzo buffer da liberare
+     */
+    private void rilascia(Pezzo pezzo) {
+        pezzo.flusso = null;
+        pezzo.inizio = 0;
+        pezzo.lunghezza = 0;
+        liberi.add(pezzo);
+    }
+
+    /**
+     * @brief Conta il carattere diviso tra due segmenti gzip
+     *
+     * @param coda byte finali del segmento precedente
+     * @param testa byte iniziali del segmento successivo
+     */
+    private void contaGiunzione(byte[] coda, byte[] testa) {
+        if(coda.length + testa.length == 0)
+            return;
+
+        final byte[] giunzione = Arrays.copyOf(coda, coda.length + testa.length);
+        System.arraycopy(testa, 0, giunzione, coda.length, testa.length);
+        final int[] istogramma = new int[totale.length];
+        final String testo = new String(giunzione, StandardCharsets.UTF_8);
+        ptrDati.getKernel().conta(testo, 0, testo.length(), istogramma);
+        pubblica(istogramma, testo.length());
+    }
+
+    /**
+     * @brief Aggiunge i conteggi ai dati condivisi e al totale
+     *
+     * @param istogramma conteggi ordinati secondo gli slot della tabella
+     * @param caratteri caratteri contati
+     */
+    private void pubblica(int[] istogramma, long caratteri) {
+        synchronized(totale) {
+            for(int i = 0; i < totale.length; i++)
+                totale[i] += istogramma[i];
+        }
+        ptrDati.aggiungi(istogramma, caratteri);
+    }
+
+    /**
+     * @brief Attende un decompressore e ne rilancia gli errori
+     *
+     * @param future decompressore da attendere
+     * @throws IOException se il decompressore non ha potuto leggere il file
+     */
+    private static void attendi(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Decompressione interrotta.", ex);
+        } catch(ExecutionException ex) {
+            if(ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * @brief Restituisce l'indice dopo l'ultimo carattere UTF-8 completo
+     *
+     * @param dati byte del buffer
+     * @param da primo byte da considerare
+     * @param a fine dei byte del buffer
+     * @return fine dell'ultimo carattere completo
+     */
+    private static int confineUtf8(byte[] dati, int da, int a) {
+        int inizio = a - 1;
+        while(inizio > da && inizio >= a - MAX_CONTINUAZIONE && isContinuazione(dati[inizio]))
+            inizio--;
+        if(inizio < da)
+            return a;
+
+        final int primo = dati[inizio] & 0xFF;
+        final int lunghezza = primo < 0x80 ? 1 : primo >= 0xF0 ? 4 : primo >= 0xE0 ? 3 : primo >= 0xC0 ? 2 : 1;
+        return inizio + lunghezza <= a ? a : inizio;
+    }
+
+    /**
+     * @brief Restituisce se il byte dato e' un byte di continuazione UTF-8
+     *
+     * @param b byte da controllare
+     * @return true se il byte e' nella forma 10xxxxxx
+     */
+    private static boolean isContinuazione(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * File mappato in memoria a finestre di 2^{@link #BIT_FINESTRA} byte,
+     * perche' un solo {@link MappedByteBuffer} non puo' superare i 2 GiB
+     */
+    private static final class Mappa {
+
+        /**
+         * Finestre consecutive del file
+         */
+        private final MappedByteBuffer[] finestre;
+        /**
+         * Dimensione del file
+         */
+        private final long dimensione;
+
+        /**
+         * @brief Mappa tutto il file
+         *
+         * @param canale canale del file
+         * @throws IOException se il file non puo' essere mappato
+         */
+        private Mappa(FileChannel canale) throws IOException {
+            final long finestra = 1L << BIT_FINESTRA;
+            this.dimensione = canale.size();
+            this.finestre = new MappedByteBuffer[(int) ((dimensione + finestra - 1) >>> BIT_FINESTRA)];
+            for(int i = 0; i < finestre.length; i++) {
+                final long da = (long) i << BIT_FINESTRA;
+                finestre[i] = canale.map(FileChannel.MapMode.READ_ONLY, da, Math.min(finestra, dimensione - da));
+            }
+        }
+
+        /**
+         * @brief Restituisce il byte all'offset dato
+         *
+         * @param p offset nel file
+         * @return byte del file
+         */
+        private byte get(long p) {
+            return finestre[(int) (p >>> BIT_FINESTRA)].get((int) (p & ((1L << BIT_FINESTRA) - 1)));
+        }
+
+        /**
+         * @brief Restituisce l'intero little-endian all'offset dato,
+         *        anche a cavallo di due finestre
+         *
+         * @param p offset nel file
+         * @return intero del file
+         */
+        private int getIntLittleEndian(long p) {
+            return (get(p) & 0xFF) | (get(p + 1) & 0xFF) << 8
+                    | (get(p + 2) & 0xFF) << 16 | (get(p + 3) & 0xFF) << 24;
+        }
+
+        /**
+         * @brief Restituisce i byte dall'offset dato alla fine della sua finestra
+         *
+         * @param p offset nel file
+         * @return vista dei byte, senza copiarli
+         */
+        private ByteBuffer finestra(long p) {
+            final MappedByteBuffer finestra = finestre[(int) (p >>> BIT_FINESTRA)];
+            final int da = (int) (p & ((1L << BIT_FINESTRA) - 1));
+            return finestra.slice(da, finestra.limit() - da);
+        }
+    }
+
+    /**
+     * Buffer riutilizzato tra decompressori e contatori
+     */
+    private static final class Pezzo {
+
+        /**
+         * Byte decompressi
+         */
+        private final byte[] dati;
+        /**
+         * {@link ByteBuffer} che avvolge {@link #dati}, per i kernel di conteggio
+         */
+        private final ByteBuffer vista;
+        /**
+         * Primo byte da contare
+         */
+        private int inizio;
+        /**
+         * Fine dei byte da contare
+         */
+        private int lunghezza;
+        /**
+         * Flusso a cui appartengono i byte o null per fermare un contatore
+         */
+        private Flusso flusso;
+        /**
+         * Se i byte di continuazione iniziali appartengono al segmento precedente
+         */
+        private boolean saltaTesta;
+
+        /**
+         * @brief Costruisce un buffer vuoto
+         *
+         * @param dimensione dimensione del buffer
+         */
+        private Pezzo(int dimensione) {
+            this.dati = new byte[dimensione];
+            this.vista = ByteBuffer.wrap(dati);
+        }
+    }
+
+    /**
+     * Testo decompresso da un decompressore: una voce zip, un segmento
+     * gzip o tutto il file. I conteggi di un flusso non ancora certo
+     * vengono tenuti da parte finche' non viene confermato o scartato.
+     */
+    private final class Flusso {
+
+        /**
+         * Conteggi tenuti da parte
+         */
+        private final long[] conteggi = new long[totale.length];
+        /**
+         * Caratteri tenuti da parte
+         */
+        private long caratteri;
+        /**
+         * Se e' un segmento gzip, il cui ultimo carattere puo' continuare
+         * nel segmento successivo
+         */
+        private final boolean segmento;
+        /**
+         * Se i conteggi vanno pubblicati subito
+         */
+        private boolean certo;
+        /**
+         * Se i conteggi vanno ignorati
+         */
+        private volatile boolean scartato;
+        /**
+         * Se tutti i membri gzip del segmento sono validi
+         */
+        private volatile boolean valido = true;
+        /**
+         * Offset nel file compresso della fine del segmento o -1 se non e' finito
+         */
+        private volatile long fine = -1;
+        /**
+         * Byte di continuazione iniziali, che completano un carattere del
+         * segmento precedente
+         */
+        private byte[] testa = new byte[0];
+        /**
+         * Byte di un carattere incompleto alla fine del segmento
+         */
+        private byte[] coda = new byte[0];
+
+        /**
+         * @brief Costruisce un flusso
+         *
+         * @param certo true se i conteggi vanno pubblicati subito
+         * @param segmento true se e' un segmento gzip
+         */
+        private Flusso(boolean certo, boolean segmento) {
+            this.certo = certo;
+            this.segmento = segmento;
+        }
+
+        /**
+         * @brief Aggiunge i conteggi di un buffer
+         *
+         * @param istogramma conteggi del buffer
+         * @param contati caratteri del buffer
+         */
+        private synchronized void aggiungi(int[] istogramma, long contati) {
+            if(scartato)
+                return;
+            if(certo) {
+                pubblica(istogramma, contati);
+                return;
+            }
+            for(int i = 0; i < conteggi.length; i++)
+                conteggi[i] += istogramma[i];
+            caratteri += contati;
+        }
+
+        /**
+         * @brief Pubblica i conteggi tenuti da parte e quelli futuri
+         */
+        private synchronized void conferma() {
+            if(certo)
+                return;
+            certo = true;
+
+            final int[] parte = new int[conteggi.length];
+            boolean resto = true;
+            while(resto) {
+                resto = false;
+                for(int i = 0; i < conteggi.length; i++) {
+                    parte[i] = (int) Math.min(conteggi[i], Integer.MAX_VALUE);
+                    conteggi[i] -= parte[i];
+                    resto |= conteggi[i] > 0;
+                }
+                pubblica(parte, caratteri);
+                caratteri = 0;
+            }
+        }
+
+        /**
+         * @brief Scarta i conteggi e ferma il decompressore del flusso
+         */
+        private synchronized void scarta() {
+            scartato = true;
+        }
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+}
@@ -0,0 +1,419 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classe runnable che legge un flusso di testo senza fine e mantiene
+ * i conteggi delle vocali negli ultimi N caratteri o negli ultimi T
+ * millisecondi.
+ *
+ * Il testo viene letto e decodificato come in {@link ContaVocaliStream},
+ * ma i conteggi vengono tenuti in una {@link FinestraScorrevole}: ogni
+ * pezzo contato viene aggiunto ai dati condivisi insieme alla sottrazione
+ * dei blocchi usciti dalla finestra, per cui {@link DatiCondivisi#getIstantanea()}
+ * restituisce in ogni momento i conteggi della finestra e i caratteri che
+ * contiene. Ogni volta che cambia la vocale piu' usata nella finestra
+ * viene avvisato l'{@link Ascoltatore} settato.
+ *
+ * La finestra e' divisa in blocchi (al massimo 64 di default) ed e' precisa
+ * a meno di un blocco: la lunghezza dei blocchi viene arrotondata per eccesso
+ * e i blocchi sono quelli che servono a coprire la finestra. In una finestra
+ * di tempo i blocchi scadono solo quando arriva nuovo testo, per cui con un
+ * flusso fermo i conteggi restano quelli dell'ultima lettura.
+ *
+ * La finestra si configura con le proprieta' {@code giocofrase.finestra.caratteri},
+ * {@code giocofrase.finestra.millisecondi} (se settata la finestra e' di tempo)
+ * e {@code giocofrase.finestra.blocchi} (vedi {@link Configurazione}).
+ */
+public final class ContaVocaliFinestra implements Runnable {
+
+    // Constants
+
+    /**
+     * Caratteri predefiniti della finestra
+     */
+    public static final long CARATTERI_PREDEFINITI = 1 << 20;
+    /**
+     * Numero predefinito di blocchi della finestra
+     */
+    public static final int BLOCCHI_PREDEFINITI = 64;
+
+
+    /**
+     * Riceve i cambi della vocale piu' usata nella finestra
+     */
+    public interface Ascoltatore {
+        /**
+         * @brief Chiamato dal thread del runnable quando cambia
+         *        la vocale piu' usata nella finestra
+         *
+         * @param precedente vocale piu' usata prima del cambio o
+         *                   il carattere nullo se la finestra era vuota
+         * @param piuUsata nuova vocale piu' usata o il carattere nullo
+         *                 se la finestra non contiene piu' vocali
+         * @param posizione caratteri letti dall'inizio del flusso
+         */
+        void cambiata(char precedente, char piuUsata, long posizione);
+    }
+
+
+    // Attributes
+
+    /**
+     * Canale da cui leggere il testo
+     */
+    private final ReadableByteChannel sorgente;
+    /**
+     * Decoder usato per trasformare i byte in caratteri
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * Buffer dei byte letti da {@link #sorgente}
+     */
+    private final ByteBuffer byteBuffer;
+    /**
+     * Buffer dei caratteri decodificati
+     */
+    private final CharBuffer charBuffer;
+    /**
+     * Numero massimo di blocchi della finestra
+     */
+    private int numeroBlocchi = Configurazione.getInt("finestra.blocchi", BLOCCHI_PREDEFINITI);
+    /**
+     * Caratteri della finestra o 0 se la finestra e' di tempo
+     */
+    private long caratteriFinestra;
+    /**
+     * Durata della finestra in nanosecondi o 0 se la finestra e' di caratteri
+     */
+    private long nanosecondiFinestra;
+    /**
+     * Orologio usato per le finestre di tempo
+     */
+    private Orologio orologio = Orologio.reale();
+    /**
+     * Ascoltatore dei cambi della vocale piu' usata o null
+     */
+    private Ascoltatore ascoltatore;
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+
+    /**
+     * @brief Costruisce un runnable che legge dal canale dato
+     *
+     * Finestra, dimensione dei buffer e charset vengono letti
+     * dalle proprieta' di sistema.
+     * @param sorgente canale da cui leggere il testo
+     */
+    public ContaVocaliFinestra(ReadableByteChannel sorgente) {
+        this(
+            sorgente,
+            Charset.forName(Configurazione.getString("stream.charset", "UTF-8")),
+            Configurazione.getInt("stream.buffer", ContaVocaliStream.BUFFER_PREDEFINITO)
+        );
+
+        final long millisecondi = Configurazione.getLong("finestra.millisecondi", 0);
+        if(millisecondi > 0)
+            setFinestraTempo(millisecondi);
+        else
+            setFinestraCaratteri(Configurazione.getLong("finestra.caratteri", CARATTERI_PREDEFINITI));
+    }
+
+    /**
+     * @brief Costruisce un runnable che legge dal canale dato
+     *
+     * La finestra predefinita e' di {@link #CARATTERI_PREDEFINITI} caratteri.
+     * @param sorgente canale da cui leggere il testo
+     * @param charset charset del testo
+     * @param dimensioneBuffer dimensione dei buffer
+     */
+    public ContaVocaliFinestra(ReadableByteChannel sorgente, Charset charset, int dimensioneBuffer) {
+        this.sorgente = sorgente;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.byteBuffer = ByteBuffer.allocate(dimensioneBuffer);
+        this.charBuffer = CharBuffer.allocate(dimensioneBuffer);
+        this.caratteriFinestra = CARATTERI_PREDEFINITI;
+    }
+
+    /**
+     * @brief Legge il canale fino alla fine aggiornando la finestra
+     *
+     * Dopo ogni pezzo contato la differenza dei conteggi della finestra
+     * viene aggiunta a {@link #ptrDati} e, se e' cambiata la vocale piu'
+     * usata, viene avvisato {@link #ascoltatore}. Alla fine viene scritto
+     * un messaggio su schermo per ogni vocale con i conteggi di tutto il
+     * flusso e tutte le vocali vengono segnate come terminate.
+     *
+     * @throws RuntimeException se {@link #ptrDati} e' nullo.
+     * @throws UncheckedIOException se la lettura fallisce.
+     */
+    @Override
+    public void run() {
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+
+        final TabellaVocali tabella = ptrDati.getTabella();
+        final Lettura lettura = new Lettura(tabella);
+        final long inizio = System.nanoTime();
+
+        try {
+            boolean fineInput = false;
+            while(!fineInput) {
+                fineInput = sorgente.read(byteBuffer) < 0;
+
+                byteBuffer.flip();
+                CoderResult res;
+                do {
+                    res = decoder.decode(byteBuffer, charBuffer, fineInput);
+                    if(res.isError())
+                        res.throwException();
+                    lettura.conta(charBuffer);
+                } while(res.isOverflow());
+
+                while(fineInput && decoder.flush(charBuffer).isOverflow())
+                    lettura.conta(charBuffer);
+                lettura.conta(charBuffer);
+                byteBuffer.compact();
+            }
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            Metriche.get().registraAnalisi(lettura.posizione, System.nanoTime() - inizio);
+            for(int i = 0; i < lettura.totale.length; i++)
+                ptrDati.getSchermo().push(tabella.getVocale(i), -1, lettura.totale[i]);
+            ptrDati.terminaTutti();
+        }
+    }
+
+    /**
+     * Stato di una lettura del flusso
+     */
+    private final class Lettura {
+
+        /**
+         * Tabella usata per riconoscere le vocali
+         */
+        private final TabellaVocali tabella;
+        /**
+         * Kernel usato per contare le vocali
+         */
+        private final KernelConteggio kernel;
+        /**
+         * Conteggi della finestra
+         */
+        private final FinestraScorrevole finestra;
+        /**
+         * Conteggi del pezzo corrente
+         */
+        private final int[] pezzo;
+        /**
+         * Differenza dei conteggi della finestra da aggiungere ai dati condivisi
+         */
+        private final int[] differenza;
+        /**
+         * Conteggi di tutto il flusso
+         */
+        private final long[] totale;
+        /**
+         * Caratteri per blocco o 0 se la finestra e' di tempo
+         */
+        private final long caratteriBlocco;
+        /**
+         * Durata di un blocco in nanosecondi o 0 se la finestra e' di caratteri
+         */
+        private final long nanosecondiBlocco;
+        /**
+         * Istante di inizio della lettura secondo {@link #orologio}
+         */
+        private final long inizio;
+        /**
+         * Caratteri letti dall'inizio del flusso
+         */
+        private long posizione;
+        /**
+         * Slot della vocale piu' usata nella finestra
+         */
+        private int piuUsata = TabellaVocali.NESSUNO;
+
+        /**
+         * @brief Prepara la lettura con la finestra configurata
+         *
+         * @param tabella tabella usata per riconoscere le vocali
+         */
+        private Lettura(TabellaVocali tabella) {
+            final int numeroVocali = tabella.getNumeroVocali();
+            this.tabella = tabella;
+            this.kernel = ptrDati.getKernel();
+            // Blocchi arrotondati per eccesso, tanti quanti ne servono
+            // a coprire la finestra
+            final long lunghezza = caratteriFinestra > 0 ? caratteriFinestra : nanosecondiFinestra;
+            final long blocco = Math.ceilDiv(lunghezza, numeroBlocchi);
+            this.finestra = new FinestraScorrevole(numeroVocali, (int) Math.ceilDiv(lunghezza, blocco));
+            this.pezzo = new int[numeroVocali];
+            this.differenza = new int[numeroVocali];
+            this.totale = new long[numeroVocali];
+            this.caratteriBlocco = caratteriFinestra > 0 ? blocco : 0;
+            this.nanosecondiBlocco = caratteriFinestra > 0 ? 0 : blocco;
+            this.inizio = orologio.adesso();
+        }
+
+        /**
+         * @brief Conta i caratteri decodificati in {@link #charBuffer} e lo svuota
+         *
+         * In una finestra di caratteri il buffer viene diviso ai confini
+         * dei blocchi, in una finestra di tempo tutto il buffer appartiene
+         * al blocco dell'istante corrente.
+         * @param buffer buffer dei caratteri decodificati
+         */
+        private void conta(CharBuffer buffer) {
+            final char[] caratteri = buffer.array();
+            final int fine = buffer.position();
+            int da = 0;
+
+            while(da < fine) {
+                final int a;
+                final long rimossi;
+                if(caratteriBlocco > 0) {
+                    rimossi = finestra.sposta(posizione / caratteriBlocco, differenza);
+                    a = (int) Math.min(fine, da + caratteriBlocco - posizione % caratteriBlocco);
+                } else {
+                    rimossi = finestra.sposta((orologio.adesso() - inizio) / nanosecondiBlocco, differenza);
+                    a = fine;
+                }
+
+                Arrays.fill(pezzo, 0);
+                kernel.conta(caratteri, da, a, pezzo);
+                finestra.aggiungi(pezzo, a - da);
+                for(int i = 0; i < pezzo.length; i++) {
+                    differenza[i] += pezzo[i];
+                    totale[i] += pezzo[i];
+                }
+
+                // Conteggi aggiunti e rimossi compaiono insieme nelle istantanee
+                ptrDati.aggiungi(differenza, a - da - rimossi);
+                Arrays.fill(differenza, 0);
+                posizione += a - da;
+                da = a;
+                controllaPiuUsata();
+            }
+            buffer.clear();
+        }
+
+        /**
+         * @brief Avvisa {@link #ascoltatore} se e' cambiata la vocale piu' usata
+         */
+        private void controllaPiuUsata() {
+            final int nuova = finestra.getPiuUsata();
+            if(nuova == piuUsata)
+                return;
+
+            final char precedente = piuUsata == TabellaVocali.NESSUNO ? '\0' : tabella.getVocale(piuUsata);
+            final char vocale = nuova == TabellaVocali.NESSUNO ? '\0' : tabella.getVocale(nuova);
+            piuUsata = nuova;
+
+            final EventiJfr.CambioPiuUsata evento = new EventiJfr.CambioPiuUsata();
+            if(evento.shouldCommit()) {
+                evento.precedente = precedente;
+                evento.piuUsata = vocale;
+                evento.posizione = posizione;
+                evento.caratteriFinestra = finestra.getCaratteri();
+                evento.commit();
+            }
+            if(ascoltatore != null)
+                ascoltatore.cambiata(precedente, vocale, posizione);
+        }
+    }
+
+    /**
+     * @brief Setta una finestra degli ultimi caratteri letti
+     *
+     * @param caratteri caratteri della finestra
+     * @throws RuntimeException se caratteri non e' positivo
+     */
+    public void setFinestraCaratteri(long caratteri) {
+        if(caratteri <= 0)
+            throw new RuntimeException("La finestra deve contenere almeno un carattere.");
+        this.caratteriFinestra = caratteri;
+        this.nanosecondiFinestra = 0;
+    }
+
+    /**
+     * @brief Setta una finestra del testo letto negli ultimi millisecondi
+     *
+     * @param millisecondi durata della finestra
+     * @throws RuntimeException se millisecondi non e' positivo
+     */
+    public void setFinestraTempo(long millisecondi) {
+        if(millisecondi <= 0)
+            throw new RuntimeException("La durata della finestra deve essere positiva.");
+        this.nanosecondiFinestra = TimeUnit.MILLISECONDS.toNanos(millisecondi);
+        this.caratteriFinestra = 0;
+    }
+
+    /**
+     * @brief Setta il numero massimo di blocchi in cui e' divisa la finestra
+     *
+     * Setta {@link #numeroBlocchi}. Piu' blocchi rendono la finestra
+     * piu' precisa e ogni blocco piu' piccolo; una finestra piu' corta del
+     * numero di blocchi usa blocchi di un carattere o di un nanosecondo.
+     * @param numeroBlocchi numero di blocchi
+     * @throws RuntimeException se numeroBlocchi non e' positivo
+     */
+    public void setNumeroBlocchi(int numeroBlocchi) {
+        if(numeroBlocchi <= 0)
+            throw new RuntimeException("Il numero di blocchi deve essere positivo.");
+        this.numeroBlocchi = numeroBlocchi;
+    }
+
+    /**
+     * @brief Setta l'orologio usato per le finestre di tempo
+     *
+     * Setta {@link #orologio}. Di default viene usato {@link Orologio#reale()}.
+     * @param orologio orologio da usare
+     * @throws RuntimeException se orologio e' null
+     */
+    public void setOrologio(Orologio orologio) {
+        if(orologio == null)
+            throw new RuntimeException("L'oggetto orologio non puo\' essere null.");
+        this.orologio = orologio;
+    }
+
+    /**
+     * @brief Setta l'ascoltatore dei cambi della vocale piu' usata
+     *
+     * Setta {@link #ascoltatore}
+     * @param ascoltatore ascoltatore o null per non avvisare nessuno
+     */
+    public void setAscoltatore(Ascoltatore ascoltatore) {
+        this.ascoltatore = ascoltatore;
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Classe runnable che divide la frase in chunk e li conta in parallelo
+ * su un {@link ForkJoinPool}.
+ *
+ * A differenza di {@link CercaVocaleRunnable}, il lavoro viene diviso
+ * per porzione di frase e non per vocale, quindi il numero di core
+ * utilizzati non e' limitato dal numero di vocali.
+ *
+ * La dimensione dei chunk e il parallelismo si configurano con le
+ * proprieta' {@code giocofrase.forkjoin.chunk} e
+ * {@code giocofrase.forkjoin.parallelismo} (vedi {@link Configurazione}).
+ *
+ * Il pool puo' essere condiviso tra piu' runnable passandolo al costruttore,
+ * altrimenti ogni runnable crea il proprio, che viene terminato da
+ * {@link #close()}.
+ */
+public class ContaVocaliForkJoin implements Runnable, AutoCloseable {
+
+    // Constants
+
+    /**
+     * Dimensione predefinita dei chunk analizzati da ogni task
+     */
+    public static final int CHUNK_PREDEFINITO = 64 * 1024;
+
+
+    // Attributes
+
+    /**
+     * Pool su cui vengono eseguiti i task
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Indica se {@link #pool} e' stato creato da questo runnable
+     * e deve essere terminato da {@link #close()}
+     */
+    private final boolean poolProprio;
+    /**
+     * Numero massimo di caratteri analizzati da ogni task
+     */
+    private final int dimensioneChunk;
+    /**
+     * Stringa in cui questo runnable deve contare le vocali.
+     *
+     * Quando viene chiamato il metodo {@link #run()},
+     * non deve essere nulla.
+     */
+    private String daAnalizzare;
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+    /**
+     * Indica se l'analisi deve fermarsi appena la vocale piu' usata e' certa
+     */
+    private boolean terminazioneAnticipata;
+
+    /**
+     * @brief Costruisce un runnable configurato secondo le proprieta' di sistema
+     *
+     * @see Configurazione
+     */
+    public ContaVocaliForkJoin() {
+        this(
+            Configurazione.getInt("forkjoin.parallelismo", Runtime.getRuntime().availableProcessors()),
+            Configurazione.getInt("forkjoin.chunk", CHUNK_PREDEFINITO)
+        );
+    }
+
+    /**
+     * @brief Costruisce un runnable con il parallelismo
+     *        e la dimensione dei chunk dati
+     *
+     * Il pool viene creato dal runnable e terminato da {@link #close()}.
+     * @param parallelismo numero di thread del pool
+     * @param dimensioneChunk numero massimo di caratteri per task
+     * @throws RuntimeException se uno dei parametri non e' positivo
+     */
+    public ContaVocaliForkJoin(int parallelismo, int dimensioneChunk) {
+        if(parallelismo <= 0)
+            throw new RuntimeException("Il parallelismo deve essere positivo.");
+        if(dimensioneChunk <= 0)
+            throw new RuntimeException("La dimensione dei chunk deve essere positiva.");
+
+        this.pool = new ForkJoinPool(parallelismo);
+        this.poolProprio = true;
+        this.dimensioneChunk = dimensioneChunk;
+    }
+
+    /**
+     * @brief Costruisce un runnable che esegue i task sul pool dato
+     *
+     * Il pool puo' essere condiviso con altri runnable e non viene
+     * terminato da {@link #close()}.
+     * @param pool pool su cui eseguire i task
+     * @param dimensioneChunk numero massimo di caratteri per task
+     * @throws RuntimeException se il pool e' nullo o
+     *                          la dimensione dei chunk non e' positiva
+     */
+    public ContaVocaliForkJoin(ForkJoinPool pool, int dimensioneChunk) {
+        if(pool == null)
+            throw new RuntimeException("Il pool non puo\' essere null.");
+        if(dimensioneChunk <= 0)
+            throw new RuntimeException("La dimensione dei chunk deve essere positiva.");
+
+        this.pool = pool;
+        this.poolProprio = false;
+        this.dimensioneChunk = dimensioneChunk;
+    }
+
+    /**
+     * @brief Conta in parallelo tutte le vocali nella stringa data
+     *
+     * Gli istogrammi dei chunk vengono uniti e aggiunti a {@link #ptrDati}
+     * una sola volta alla fine dell'analisi. Con la terminazione anticipata
+     * i conteggi sono quelli dei soli chunk analizzati e il punto di decisione
+     * viene salvato con {@link DatiCondivisi#setCaratteriAllaDecisione(long)}.
+     *
+     * @throws RuntimeException se {@link #daAnalizzare} o {@link #ptrDati}
+     *                          sono nulli.
+     */
+    @Override
+    public void run() {
+        if(daAnalizzare == null)
+            throw new RuntimeException("L'oggetto daAnalizzare non puo\' essere null.");
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+
+        final int numeroVocali = ptrDati.getTabella().getNumeroVocali();
+        final ProgressoConteggio progresso = terminazioneAnticipata ?
+                new ProgressoConteggio(numeroVocali, daAnalizzare.length()) : null;
+
+        final long inizio = System.nanoTime();
+        final int[] istogramma = pool.invoke(new ContaVocaliTask(
+                daAnalizzare, ptrDati.getKernel(), numeroVocali,
+                0, daAnalizzare.length(), dimensioneChunk, progresso
+        ));
+        final long analizzati = progresso == null ? daAnalizzare.length() : progresso.getAnalizzati();
+        Metriche.get().registraAnalisi(analizzati, System.nanoTime() - inizio);
+
+        if(progresso != null)
+            ptrDati.setCaratteriAllaDecisione(progresso.getAnalizzatiAllaDecisione());
+        ContaVocaliRunnable.pubblica(ptrDati, istogramma, analizzati);
+    }
+
+    /**
+     * @brief Setta la stringa da analizzare
+     *
+     * Setta l'attributo {@link #daAnalizzare}.
+     * @param daAnalizzare stringa in cui vanno contate le vocali
+     */
+    public void setDaAnalizzare(String daAnalizzare) {
+        this.daAnalizzare = daAnalizzare;
+    }
+
+    /**
+     * @brief Setta se l'analisi deve fermarsi appena la vocale 
+     *        piu' usata e' certa
+     *
+     * Setta {@link #terminazioneAnticipata}.
+     * @see ProgressoConteggio
+     * @param terminazioneAnticipata true se i chunk rimanenti possono
+     *                               essere saltati
+     */
+    public void setTerminazioneAnticipata(boolean terminazioneAnticipata) {
+        this.terminazioneAnticipata = terminazioneAnticipata;
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+
+    /**
+     * @brief Termina il pool se e' stato creato da questo runnable
+     *
+     * I task gia' avviati vengono completati. Un pool passato al
+     * costruttore non viene terminato.
+     */
+    @Override
+    public void close() {
+        if(poolProprio)
+            pool.shutdown();
+    }
+}
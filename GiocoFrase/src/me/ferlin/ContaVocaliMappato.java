@@ -0,0 +1,273 @@
+/**
+ * @author Francesco Ferlin
+ * @version 2.2
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Classe runnable che conta le vocali di un file ASCII/UTF-8 mappandolo
+ * in memoria con {@link FileChannel#map}.
+ *
+ * Il file viene diviso in regioni mappate separatamente e contate in
+ * parallelo direttamente sui byte, senza decodificarli in una
+ * {@link String} o in un {@code char[]}; i conteggi di ogni regione
+ * vengono aggiunti ai dati condivisi non appena la regione e' terminata.
+ *
+ * Se la tabella contiene vocali non ASCII (ad esempio le vocali accentate,
+ * contate con la configurazione predefinita) le vocali ASCII vengono
+ * comunque contate sui byte, mentre una seconda passata cerca i byte non
+ * ASCII otto alla volta e decodifica solo le sequenze UTF-8 che iniziano
+ * nella regione, completandole con i byte successivi. Nel testo
+ * prevalentemente ASCII la seconda passata costa molto meno di decodificare
+ * tutta la regione, e nessun carattere viene contato da due regioni.
+ *
+ * Le regioni vengono contate su un {@link ForkJoinPool} creato ad ogni
+ * chiamata di {@link #run()} e terminato alla fine dell'analisi.
+ *
+ * La dimensione delle regioni e il parallelismo si configurano con le
+ * proprieta' {@code giocofrase.mmap.regione} e
+ * {@code giocofrase.mmap.parallelismo} (vedi {@link Configurazione}).
+ */
+public class ContaVocaliMappato implements Runnable {
+
+    // Constants
+
+    /**
+     * Dimensione predefinita delle regioni mappate
+     */
+    public static final int REGIONE_PREDEFINITA = 64 * 1024 * 1024;
+    /**
+     * Maschera dei bit piu' alti di otto byte, usata per cercare
+     * i byte non ASCII
+     */
+    private static final long BIT_NON_ASCII = 0x8080808080808080L;
+    /**
+     * Numero massimo di byte di continuazione di un carattere UTF-8
+     */
+    private static final int MAX_CONTINUAZIONE = 3;
+
+
+    // Attributes
+
+    /**
+     * File da analizzare
+     */
+    private final Path percorso;
+    /**
+     * Numero di regioni contate contemporaneamente
+     */
+    private final int parallelismo;
+    /**
+     * Dimensione massima di ogni regione mappata
+     */
+    private final int dimensioneRegione;
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+
+    /**
+     * @brief Costruisce un runnable configurato secondo le proprieta' di sistema
+     *
+     * @see Configurazione
+     * @param percorso file da analizzare
+     */
+    public ContaVocaliMappato(Path percorso) {
+        this(
+            percorso,
+            Configurazione.getInt("mmap.parallelismo", Runtime.getRuntime().availableProcessors()),
+            Configurazione.getInt("mmap.regione", REGIONE_PREDEFINITA)
+        );
+    }
+
+    /**
+     * @brief Costruisce un runnable con il parallelismo
+     *        e la dimensione delle regioni dati
+     *
+     * @param percorso file da analizzare
+     * @param parallelismo numero di regioni contate contemporaneamente
+     * @param dimensioneRegione dimensione massima di ogni regione, che
+     *                          insieme ai byte che completano l'ultimo
+     *                          carattere deve poter essere mappata
+     * @throws RuntimeException se uno dei parametri non e' positivo o
+     *                          se le regioni sono troppo grandi
+     */
+    public ContaVocaliMappato(Path percorso, int parallelismo, int dimensioneRegione) {
+        if(parallelismo <= 0)
+            throw new RuntimeException("Il parallelismo deve essere positivo.");
+        if(dimensioneRegione <= 0)
+            throw new RuntimeException("La dimensione delle regioni deve essere positiva.");
+        if(dimensioneRegione > Integer.MAX_VALUE - MAX_CONTINUAZIONE)
+            throw new RuntimeException("La dimensione delle regioni non puo\' superare "
+                    + (Integer.MAX_VALUE - MAX_CONTINUAZIONE) + " byte.");
+
+        this.percorso = percorso;
+        this.parallelismo = parallelismo;
+        this.dimensioneRegione = dimensioneRegione;
+    }
+
+    /**
+     * @brief Mappa il file a regioni e ne conta le vocali in parallelo
+     *
+     * Alla fine viene scritto un messaggio su schermo per ogni vocale
+     * e tutte le vocali vengono segnate come terminate.
+     *
+     * @throws RuntimeException se {@link #ptrDati} e' nullo.
+     * @throws UncheckedIOException se il file non puo' essere letto.
+     */
+    @Override
+    public void run() {
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+
+        final TabellaVocali tabella = ptrDati.getTabella();
+        final long[] totale = new long[tabella.getNumeroVocali()];
+        final long inizioAnalisi = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool(parallelismo);
+        long byteAnalizzati = 0;
+
+        try (FileChannel canale = FileChannel.open(percorso, StandardOpenOption.READ)) {
+            final long dimensione = canale.size();
+
+            final List<ForkJoinTask<int[]>> regioni = new ArrayList<>();
+            for(long inizio = 0; inizio < dimensione; inizio += dimensioneRegione) {
+                final long da = inizio;
+                final int lunghezza = (int) Math.min(dimensioneRegione, dimensione - inizio);
+                regioni.add(pool.submit(() -> contaRegione(canale, tabella, da, lunghezza)));
+            }
+
+            for(ForkJoinTask<int[]> regione : regioni) {
+                final int[] istogramma = regione.join();
+                for(int i = 0; i < totale.length; i++)
+                    totale[i] += istogramma[i];
+            }
+            byteAnalizzati = dimensione;
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            pool.shutdownNow();
+            // Per i file ASCII i byte coincidono con i caratteri
+            Metriche.get().registraAnalisi(byteAnalizzati, System.nanoTime() - inizioAnalisi);
+            for(int i = 0; i < totale.length; i++)
+                ptrDati.getSchermo().push(tabella.getVocale(i), -1, totale[i]);
+            ptrDati.terminaTutti();
+        }
+    }
+
+    /**
+     * @brief Mappa e conta una regione del file
+     *
+     * L'istogramma della regione viene subito aggiunto a {@link #ptrDati}.
+     * @param canale canale del file
+     * @param tabella tabella usata per riconoscere le vocali
+     * @param da offset della regione nel file
+     * @param lunghezza lunghezza della regione
+     * @return istogramma della regione
+     */
+    private int[] contaRegione(FileChannel canale, TabellaVocali tabella, long da, int lunghezza) {
+        final int[] istogramma = new int[tabella.getNumeroVocali()];
+
+        try {
+            if(tabella.isAscii()) {
+                final MappedByteBuffer regione = canale.map(FileChannel.MapMode.READ_ONLY, da, lunghezza);
+                ptrDati.getKernel().conta(regione, 0, lunghezza, istogramma);
+            } else {
+                // L'ultimo carattere della regione viene completato
+                // con i byte successivi
+                final int mappati = (int) Math.min((long) lunghezza + MAX_CONTINUAZIONE, canale.size() - da);
+                final MappedByteBuffer regione = canale.map(FileChannel.MapMode.READ_ONLY, da, mappati);
+                ptrDati.getKernel().conta(regione, 0, lunghezza, istogramma);
+                contaNonAscii(regione, tabella, lunghezza, istogramma);
+            }
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        // Come nelle metriche, i byte della regione valgono come caratteri analizzati
+        ptrDati.aggiungi(istogramma, lunghezza);
+        return istogramma;
+    }
+
+    /**
+     * @brief Conta le vocali non ASCII delle sequenze UTF-8
+     *        che iniziano nella regione
+     *
+     * I byte ASCII vengono saltati otto alla volta. I byte di continuazione
+     * all'inizio della regione appartengono al carattere della regione
+     * precedente e vengono saltati, mentre l'ultimo carattere viene
+     * completato con i byte successivi alla regione. Le sequenze non valide
+     * vengono ignorate, come i caratteri sostituiti da un decoder UTF-8.
+     * @param regione byte della regione seguiti da quelli successivi
+     * @param tabella tabella usata per riconoscere le vocali
+     * @param lunghezza lunghezza della regione
+     * @param istogramma istogramma a cui aggiungere i conteggi
+     */
+    private static void contaNonAscii(MappedByteBuffer regione, TabellaVocali tabella,
+                                      int lunghezza, int[] istogramma) {
+        int i = 0;
+        while(i < lunghezza) {
+            if(i + Long.BYTES <= lunghezza && (regione.getLong(i) & BIT_NON_ASCII) == 0) {
+                i += Long.BYTES;
+                continue;
+            }
+
+            final int primo = regione.get(i++) & 0xFF;
+            final int continuazioni;
+            int carattere;
+            if(primo < 0xC2)
+                continue; // ASCII, continuazione o sequenza troppo lunga
+            else if(primo < 0xE0) {
+                continuazioni = 1;
+                carattere = primo & 0x1F;
+            } else if(primo < 0xF0) {
+                continuazioni = 2;
+                carattere = primo & 0x0F;
+            } else
+                continue; // Fuori dal Basic Multilingual Plane: mai una vocale
+
+            int j = i;
+            for(; j < i + continuazioni && j < regione.limit() && isContinuazione(regione.get(j)); j++)
+                carattere = carattere << 6 | (regione.get(j) & 0x3F);
+            if(j < i + continuazioni || carattere < 0x800 && continuazioni == 2
+                    || carattere >= 0xD800 && carattere < 0xE000)
+                continue;
+
+            final int slot = tabella.getSlot((char) carattere);
+            if(slot != TabellaVocali.NESSUNO)
+                istogramma[slot]++;
+            i = j;
+        }
+    }
+
+    /**
+     * @brief Restituisce se il byte dato e' un byte di continuazione UTF-8
+     *
+     * @param b byte da controllare
+     * @return true se il byte e' nella forma 10xxxxxx
+     */
+    private static boolean isContinuazione(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+}
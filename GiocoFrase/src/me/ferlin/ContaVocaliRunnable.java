@@ -0,0 +1,231 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+/**
+ * Classe runnable che conta in una sola passata tutte le vocali
+ * presenti in una stringa data.
+ *
+ * A differenza di {@link CercaVocaleRunnable}, la frase viene letta
+ * una sola volta senza creare copie in lower-case e i conteggi vengono
+ * scritti nei dati condivisi tutti insieme alla fine dell'analisi.
+ */
+public class ContaVocaliRunnable implements Runnable {
+
+    // Constants
+
+    /**
+     * Delay massimo in millisecondi da usare in {@link Orologio#dormi(long)}
+     */
+    private static final int MAX_DELAY = 50;
+
+
+    // Attributes
+
+    /**
+     * Stringa in cui questo runnable deve contare le vocali.
+     *
+     * Quando viene chiamato il metodo {@link #run()},
+     * non deve essere nulla.
+     */
+    private String daAnalizzare;
+    /**
+     * Indica se, dopo ogni lettera, il
+     * runnable deve aspettare un tempo random
+     */
+    private boolean usaDelay;
+    /**
+     * Indica se, dopo ogni lettera, il runnable
+     * deve usare {@link Thread#yield()}
+     */
+    private boolean usaYield;
+    /**
+     * Orologio usato per il delay randomico e per lo yield
+     */
+    private Orologio orologio = Orologio.reale();
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+    /**
+     * Cache degli istogrammi delle frasi gia' analizzate 
+     * o null se non deve essere usata
+     */
+    private CacheIstogrammi cache;
+
+    /**
+     * @brief Costruisce un nuovo runnable che conta le vocali.
+     *
+     * Prima della chiamata al metodo {@link #run()} e' necessario
+     * utilizzare i setter {@link #setDaAnalizzare(java.lang.String)} e
+     * {@link #setPtrDati(me.ferlin.DatiCondivisi)}.
+     */
+    public ContaVocaliRunnable() {
+    }
+
+    /**
+     * @brief Conta tutte le vocali nella stringa data
+     *
+     * La stringa e' {@link #daAnalizzare} e, una volta terminata l'analisi,
+     * l'istogramma viene aggiunto a {@link #ptrDati} e tutte le vocali
+     * vengono segnate come terminate. Se non vengono usati ne' il delay 
+     * ne' lo yield, l'istogramma viene preso da {@link #cache} quando possibile.
+     *
+     * @throws RuntimeException se {@link #daAnalizzare} o {@link #ptrDati}
+     *                          sono nulli o se {@link #cache} conta 
+     *                          un numero di vocali diverso.
+     */
+    @Override
+    public void run() {
+        if(daAnalizzare == null)
+            throw new RuntimeException("L'oggetto daAnalizzare non puo\' essere null.");
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+
+        final TabellaVocali tabella = ptrDati.getTabella();
+        if(cache != null && cache.getNumeroVocali() != tabella.getNumeroVocali())
+            throw new RuntimeException("La cache non corrisponde alle vocali di ptrDati.");
+
+        final long inizio = System.nanoTime();
+
+        if(cache != null && !usaDelay && !usaYield) {
+            final int[] istogramma = cache.conta(daAnalizzare);
+            Metriche.get().registraAnalisi(daAnalizzare.length(), System.nanoTime() - inizio);
+            pubblica(ptrDati, istogramma, daAnalizzare.length());
+            return;
+        }
+
+        final int[] istogramma = new int[tabella.getNumeroVocali()];
+        long nanosecondiSleep = 0;
+        long nanosecondiYield = 0;
+        int analizzati = 0;
+
+        try {
+            if(!usaDelay && !usaYield) {
+                ptrDati.getKernel().conta(daAnalizzare, 0, daAnalizzare.length(), istogramma);
+                analizzati = daAnalizzare.length();
+            } else {
+                for(; analizzati < daAnalizzare.length(); analizzati++) {
+                    if(usaDelay) {
+                        final long t = orologio.adesso();
+                        orologio.dormi(orologio.casuale(MAX_DELAY));
+                        nanosecondiSleep += orologio.adesso() - t;
+                    }
+
+                    if(usaYield) {
+                        final long t = orologio.adesso();
+                        orologio.cedi();
+                        nanosecondiYield += orologio.adesso() - t;
+                    }
+
+                    tabella.conta(daAnalizzare, analizzati, analizzati + 1, istogramma);
+                }
+            }
+        } catch(InterruptedException ex) {
+            // E' stato richiesto l'interrompimento del thread
+            System.err.println(String.format(
+                    "Il thread %s è stato interrotto",
+                    Thread.currentThread()
+            ));
+            ex.printStackTrace();
+        }
+
+        // Con un orologio virtuale le attese sono simulate
+        if(!orologio.isVirtuale()) {
+            final Metriche metriche = Metriche.get();
+            metriche.registraAnalisi(analizzati, System.nanoTime() - inizio);
+            metriche.registraAttese(nanosecondiSleep, nanosecondiYield);
+        }
+
+        pubblica(ptrDati, istogramma, analizzati);
+    }
+
+    /**
+     * @brief Pubblica l'istogramma calcolato nei dati condivisi
+     *
+     * L'istogramma viene aggiunto ai dati, viene scritto un messaggio
+     * su schermo per ogni vocale e tutte le vocali vengono segnate
+     * come terminate.
+     * @param ptrDati dati condivisi in cui pubblicare l'istogramma
+     * @param istogramma conteggi ordinati secondo gli slot della tabella
+     * @param caratteri caratteri in cui sono state contate le vocali
+     */
+    static void pubblica(DatiCondivisi ptrDati, int[] istogramma, long caratteri) {
+        final TabellaVocali tabella = ptrDati.getTabella();
+
+        ptrDati.aggiungi(istogramma, caratteri);
+        for(int i = 0; i < istogramma.length; i++)
+            ptrDati.getSchermo().push(tabella.getVocale(i), -1, istogramma[i]);
+
+        ptrDati.terminaTutti();
+    }
+
+    /**
+     * @brief Setta la stringa da analizzare
+     *
+     * Setta l'attributo {@link #daAnalizzare}.
+     * @param daAnalizzare stringa in cui vanno contate le vocali
+     */
+    public void setDaAnalizzare(String daAnalizzare) {
+        this.daAnalizzare = daAnalizzare;
+    }
+
+    /**
+     * @brief Setta se, dopo ogni lettera,
+     *        il runnable deve aspettare un tempo random
+     *
+     * Setta l'attributo {@link #usaDelay}.
+     * @param usaDelay true se il runnable deve aspettare
+     */
+    public void setUsaDelay(boolean usaDelay) {
+        this.usaDelay = usaDelay;
+    }
+
+    /**
+     * @brief Setta se, dopo ogni lettera, il runnable
+     *        deve usare {@link Thread#yield()}
+     *
+     * Setta l'attributo {@link #usaYield}.
+     * @param usaYield true se il runnable deve aspettare
+     */
+    public void setUsaYield(boolean usaYield) {
+        this.usaYield = usaYield;
+    }
+
+    /**
+     * @brief Setta l'orologio usato per il delay randomico e per lo yield
+     * 
+     * Setta {@link #orologio}. Di default viene usato {@link Orologio#reale()}.
+     * @param orologio orologio da usare
+     * @throws RuntimeException se orologio e' null
+     */
+    public void setOrologio(Orologio orologio) {
+        if(orologio == null)
+            throw new RuntimeException("L'oggetto orologio non puo\' essere null.");
+        this.orologio = orologio;
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+
+    /**
+     * @brief Setta la cache degli istogrammi delle frasi gia' analizzate
+     *
+     * Setta {@link #cache}. La cache deve contare le stesse vocali 
+     * di {@link #ptrDati}.
+     * @param cache cache da usare o null per non usarla
+     */
+    public void setCache(CacheIstogrammi cache) {
+        this.cache = cache;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Classe runnable che conta le vocali leggendo il testo da un canale
+ * (file o standard input) senza caricarlo tutto in memoria.
+ *
+ * I byte vengono letti in un {@link ByteBuffer} di dimensione fissa,
+ * decodificati in un {@link CharBuffer} anch'esso di dimensione fissa e
+ * contati; dopo ogni buffer i conteggi parziali vengono pubblicati nei
+ * dati condivisi, per cui la memoria usata e' costante qualunque sia
+ * la dimensione dell'input.
+ *
+ * La dimensione dei buffer e il charset si configurano con le proprieta'
+ * {@code giocofrase.stream.buffer} e {@code giocofrase.stream.charset}
+ * (vedi {@link Configurazione}).
+ */
+public class ContaVocaliStream implements Runnable {
+
+    // Constants
+
+    /**
+     * Dimensione predefinita dei buffer
+     */
+    public static final int BUFFER_PREDEFINITO = 64 * 1024;
+
+
+    // Attributes
+
+    /**
+     * Canale da cui leggere il testo
+     */
+    private final ReadableByteChannel sorgente;
+    /**
+     * Decoder usato per trasformare i byte in caratteri
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * Buffer dei byte letti da {@link #sorgente}
+     */
+    private final ByteBuffer byteBuffer;
+    /**
+     * Buffer dei caratteri decodificati
+     */
+    private final CharBuffer charBuffer;
+    /**
+     * Puntatore all'oggetto contenente
+     * i dati condivisi tra i thread e il main
+     */
+    private DatiCondivisi ptrDati;
+
+    /**
+     * @brief Costruisce un runnable che legge dal canale dato
+     *
+     * Dimensione dei buffer e charset vengono letti dalle proprieta' di sistema.
+     * @param sorgente canale da cui leggere il testo
+     */
+    public ContaVocaliStream(ReadableByteChannel sorgente) {
+        this(
+            sorgente,
+            Charset.forName(Configurazione.getString("stream.charset", "UTF-8")),
+            Configurazione.getInt("stream.buffer", BUFFER_PREDEFINITO)
+        );
+    }
+
+    /**
+     * @brief Costruisce un runnable che legge dal canale dato
+     *
+     * @param sorgente canale da cui leggere il testo
+     * @param charset charset del testo
+     * @param dimensioneBuffer dimensione dei buffer
+     */
+    public ContaVocaliStream(ReadableByteChannel sorgente, Charset charset, int dimensioneBuffer) {
+        this.sorgente = sorgente;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.byteBuffer = ByteBuffer.allocate(dimensioneBuffer);
+        this.charBuffer = CharBuffer.allocate(dimensioneBuffer);
+    }
+
+    /**
+     * @brief Apre il file dato o lo standard input
+     *
+     * @param percorso percorso del file o "-" per lo standard input
+     * @return canale da cui leggere
+     * @throws IOException se il file non puo' essere aperto
+     */
+    public static ReadableByteChannel apri(String percorso) throws IOException {
+        if(percorso.equals("-"))
+            return Channels.newChannel(System.in);
+        return FileChannel.open(Paths.get(percorso), StandardOpenOption.READ);
+    }
+
+    /**
+     * @brief Legge tutto il canale e conta le vocali
+     *
+     * Dopo ogni buffer i conteggi parziali vengono aggiunti a
+     * {@link #ptrDati}; alla fine viene scritto un messaggio su schermo
+     * per ogni vocale e tutte le vocali vengono segnate come terminate.
+     *
+     * @throws RuntimeException se {@link #ptrDati} e' nullo.
+     * @throws UncheckedIOException se la lettura fallisce.
+     */
+    @Override
+    public void run() {
+        if(ptrDati == null)
+            throw new RuntimeException("L'oggetto ptrDati non puo\' essere null.");
+
+        final TabellaVocali tabella = ptrDati.getTabella();
+        final KernelConteggio kernel = ptrDati.getKernel();
+        final int[] parziale = new int[tabella.getNumeroVocali()];
+        final long[] totale = new long[tabella.getNumeroVocali()];
+        final long inizio = System.nanoTime();
+        long caratteri = 0;
+        long riportati = 0;
+
+        try {
+            boolean fineInput = false;
+            while(!fineInput) {
+                fineInput = sorgente.read(byteBuffer) < 0;
+
+                byteBuffer.flip();
+                CoderResult res;
+                do {
+                    res = decoder.decode(byteBuffer, charBuffer, fineInput);
+                    if(res.isError())
+                        res.throwException();
+                    caratteri += contaCaratteri(kernel, parziale);
+                } while(res.isOverflow());
+
+                while(fineInput && decoder.flush(charBuffer).isOverflow())
+                    caratteri += contaCaratteri(kernel, parziale);
+                caratteri += contaCaratteri(kernel, parziale);
+                byteBuffer.compact();
+
+                ptrDati.aggiungi(parziale, caratteri - riportati);
+                riportati = caratteri;
+                for(int i = 0; i < parziale.length; i++) {
+                    totale[i] += parziale[i];
+                    parziale[i] = 0;
+                }
+            }
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            Metriche.get().registraAnalisi(caratteri, System.nanoTime() - inizio);
+            for(int i = 0; i < totale.length; i++)
+                ptrDati.getSchermo().push(tabella.getVocale(i), -1, totale[i]);
+            ptrDati.terminaTutti();
+        }
+    }
+
+    /**
+     * @brief Conta le vocali decodificate in {@link #charBuffer} e lo svuota
+     *
+     * @param kernel kernel usato per contare le vocali
+     * @param parziale istogramma a cui aggiungere i conteggi
+     * @return numero di caratteri contati
+     */
+    private int contaCaratteri(KernelConteggio kernel, int[] parziale) {
+        final int caratteri = charBuffer.position();
+        kernel.conta(charBuffer.array(), 0, caratteri, parziale);
+        charBuffer.clear();
+        return caratteri;
+    }
+
+    /**
+     * @brief Setta il puntatore all'oggetto contenente i dati condivisi
+     *
+     * Setta {@link #ptrDati}
+     * @param ptrDati puntatore all'oggetto
+     */
+    public void setPtrDati(DatiCondivisi ptrDati) {
+        this.ptrDati = ptrDati;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Task fork/join che conta le vocali presenti in un intervallo di una frase.
+ *
+ * Se l'intervallo e' piu' grande della dimensione dei chunk, viene diviso
+ * a meta' e le due parti vengono contate in parallelo; gli istogrammi
+ * parziali vengono poi sommati.
+ *
+ * Con la terminazione anticipata ogni chunk viene aggiunto ad un
+ * {@link ProgressoConteggio} condiviso e i chunk non ancora iniziati
+ * vengono saltati quando la vocale piu' usata e' gia' certa.
+ */
+public class ContaVocaliTask extends RecursiveTask<int[]> {
+
+    /**
+     * Versione della forma serializzata, ereditata da {@link RecursiveTask}:
+     * i task non vengono mai serializzati, per cui i campi che non sono
+     * serializzabili sono transient
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Testo da analizzare
+     */
+    private final transient CharSequence testo;
+    /**
+     * Kernel usato per contare le vocali
+     */
+    private final transient KernelConteggio kernel;
+    /**
+     * Numero di vocali contate
+     */
+    private final int numeroVocali;
+    /**
+     * Indice (incluso) da cui iniziare
+     */
+    private final int da;
+    /**
+     * Indice (escluso) a cui fermarsi
+     */
+    private final int a;
+    /**
+     * Numero massimo di caratteri contati senza dividere il task
+     */
+    private final int dimensioneChunk;
+    /**
+     * Progresso condiviso con gli altri task o null se tutti i chunk
+     * devono essere contati
+     */
+    private final transient ProgressoConteggio progresso;
+
+    /**
+     * @brief Costruisce un task che conta le vocali nell'intervallo dato
+     *
+     * @param testo testo da analizzare
+     * @param kernel kernel usato per contare le vocali
+     * @param numeroVocali numero di vocali contate
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param dimensioneChunk numero massimo di caratteri per task
+     */
+    public ContaVocaliTask(CharSequence testo, KernelConteggio kernel, int numeroVocali,
+                           int da, int a, int dimensioneChunk) {
+        this(testo, kernel, numeroVocali, da, a, dimensioneChunk, null);
+    }
+
+    /**
+     * @brief Costruisce un task che conta le vocali nell'intervallo dato
+     *        fermandosi quando la vocale piu' usata e' certa
+     *
+     * @param testo testo da analizzare
+     * @param kernel kernel usato per contare le vocali
+     * @param numeroVocali numero di vocali contate
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param dimensioneChunk numero massimo di caratteri per task
+     * @param progresso progresso condiviso da tutti i task della frase
+     *                  o null se tutti i chunk devono essere contati
+     */
+    public ContaVocaliTask(CharSequence testo, KernelConteggio kernel, int numeroVocali,
+                           int da, int a, int dimensioneChunk, ProgressoConteggio progresso) {
+        this.testo = testo;
+        this.kernel = kernel;
+        this.numeroVocali = numeroVocali;
+        this.da = da;
+        this.a = a;
+        this.dimensioneChunk = dimensioneChunk;
+        this.progresso = progresso;
+    }
+
+    @Override
+    protected int[] compute() {
+        if(progresso != null && progresso.isDeciso())
+            return new int[numeroVocali];
+
+        if(a - da <= dimensioneChunk) {
+            final int[] istogramma = new int[numeroVocali];
+            kernel.conta(testo, da, a, istogramma);
+            if(progresso != null)
+                progresso.aggiungi(istogramma, a - da);
+            return istogramma;
+        }
+
+        final int meta = (da + a) >>> 1;
+        final ContaVocaliTask sinistra = new ContaVocaliTask(
+                testo, kernel, numeroVocali, da, meta, dimensioneChunk, progresso);
+        final ContaVocaliTask destra = new ContaVocaliTask(
+                testo, kernel, numeroVocali, meta, a, dimensioneChunk, progresso);
+
+        sinistra.fork();
+        final int[] istogramma = destra.compute();
+        final int[] parziale = sinistra.join();
+
+        for(int i = 0; i < istogramma.length; i++)
+            istogramma[i] += parziale[i];
+        return istogramma;
+    }
+}
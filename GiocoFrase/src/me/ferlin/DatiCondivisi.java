@@ -1,165 +1,731 @@
-/**
- * @author Francesco Ferlin
- * @version 4.0
- */
-package me.ferlin;
-
-/**
- * Classe che gestisce le variabili condivise tra i thread e il main
- */
-public class DatiCondivisi {
-
-    /**
-     * Vocali utilizzate dai thread
-     */
-    private final char[] vocali;
-    /**
-     * Conteggi delle lettere trovate da ogni thread ordinate
-     * rispettivamente secondo l'ordine di {@link #vocali}
-     */
-    private final int[] conteggi;
-    /**
-     * Vettore di booleani che indicano quali thread sono stati completati 
-     * ordinato secondo l'ordine di {@link #vocali}
-     */
-    private final boolean[] terminati;
-    /**
-     * Oggetto attraverso cui i thread scrivono su schermo
-     */
-    private final Schermo schermo;
-
-    /**
-     * @brief Costruisce una classe di dati condivisi
-     * 
-     * @param vocali vocali usate dai thread
-     * @param schermo oggetto attraverso cui i thread devono scrivere
-     */
-    public DatiCondivisi(char[] vocali, Schermo schermo) {
-        this.schermo = schermo;
-        this.vocali = vocali;
-        this.conteggi = new int[vocali.length];
-        this.terminati = new boolean[vocali.length];
-    }
-
-    /**
-     * @brief Restituisce la vocale più usata
-     * 
-     * Cerca la vocale tra {@link #vocali} con il conteggio 
-     * in {@link #conteggi} più alto
-     * @return  la vocale più usata
-     */
-    public char getPiuUsata() {
-        
-        int index = -1;
-        int maxValue = -1;
-        
-        for(int i = 0; i < vocali.length; i++) {
-            final int currMax = getConteggio(i);
-            if(currMax > maxValue) {
-                maxValue = currMax;
-                index = i;
-            }
-        }
-        
-        if(index >= 0 && index < vocali.length)
-            return vocali[index];
-        return vocali[0];
-    }
-
-    /**
-     * @brief Restituisce l'indice del thread che cerca la vocale data
-     * 
-     * Cerca la vocale in {@link #vocali} o restituisce -1 se non la trova.
-     * @param carattere vocale da cercare
-     * @return indice del thread o -1 se non esiste
-     */
-    private int getIndex(char carattere) {
-        final char toFind = Character.toLowerCase(carattere);
-        for(int i = 0; i < vocali.length; i++)
-            if(toFind == vocali[i])
-                return i;
-        return -1;
-    }
-    
-    /**
-     * @brief Restituisce il numero di vocali trovate nella frase
-     * 
-     * Il numero viene preso da {@link #conteggi}
-     * @param index indice del thread
-     * @return numero di vocali trovate
-     */
-    public int getConteggio(int index) {
-        return conteggi[index];
-    }
-    
-    /**
-     * @brief Restituisce il numero di vocali trovate nella frase
-     * 
-     * @param carattere vocale che il thread deve cercare
-     * @return numero di vocali trovate
-     */
-    public int getConteggio(char carattere) {
-        return getConteggio(getIndex(carattere));
-    }
-
-    /**
-     * @brief Incrementa il numero di vocali trovate nella frase
-     * 
-     * Viene incrementato il numero in {@link #conteggi}
-     * @param index indice del thread
-     */
-    public void incrementa(int index) {
-        conteggi[index]++;
-    }
-    
-    /**
-     * @brief Incrementa il numero di vocali trovate nella frase
-     * 
-     * @param carattere vocale che il thread deve cercare
-     */
-    public void incrementa(char carattere) {
-        incrementa(getIndex(carattere));
-    }
-    
-    /**
-     * @brief Setta il Thread con indice dato come terminato
-     * 
-     * Setta il booleano nel vettore {@link #terminati}
-     * @param index indice del thread
-     */
-    public void termina(int index) {
-        terminati[index] = true;
-    }
-    
-    /**
-     * @brief Setta il Thread con indice dato come terminato
-     * 
-     * Setta il booleano nel vettore {@link #terminati}
-     * @param carattere vocale che il thread deve cercare
-     */
-    public void termina(char carattere) {
-        termina(getIndex(carattere));
-    }
-    
-    /**
-     * @brief Restituisce se tutti i thread sono stati completati
-     * 
-     * @return true se tutti i thread sono stati completati
-     */
-    public boolean isAllOver() {
-        for(boolean b : terminati)
-            if(!b)
-                return false;
-        return true;
-    }
-
-    /**
-     * @brief Restituisce l'oggetto attraverso cui i thread scrivono su schermo
-     * 
-     * Restituisce {@link #schermo}
-     * @return oggetto attraverso cui i thread scrivono su schermo
-     */
-    public Schermo getSchermo() {
-        return schermo;
-    }
-}
+/**
+ * @author Francesco Ferlin
+ * @version 5.0
+ */
+package me.ferlin;
+
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Classe che gestisce le variabili condivise tra i thread e il main
+ * 
+ * I conteggi sono divisi in celle, una per ogni thread che scrive: 
+ * ogni cella ha un solo scrittore, quindi gli incrementi non richiedono 
+ * lock o CAS e non si perdono aggiornamenti, mentre i lettori sommano 
+ * le celle di tutti i thread.
+ * 
+ * Ogni cella e' protetta da un seqlock: lo scrittore rende dispari la
+ * versione della cella prima di modificarla e pari dopo, senza mai 
+ * attendere, mentre un lettore rilegge la cella finche' la versione
+ * non e' pari e uguale prima e dopo la lettura. In questo modo
+ * {@link #getIstantanea()} restituisce conteggi coerenti (ad esempio
+ * un istogramma aggiunto con {@link #aggiungi(int[], long)} compare
+ * tutto o per niente) a qualsiasi frequenza venga chiamato.
+ */
+public class DatiCondivisi {
+
+    /**
+     * Numero di long lasciati vuoti prima e dopo i conteggi di ogni cella
+     * per evitare che celle di thread diversi condividano la stessa
+     * cache line
+     */
+    private static final int PADDING = 16;
+    /**
+     * Posizione della versione in ogni cella
+     */
+    private static final int VERSIONE = PADDING;
+    /**
+     * Posizione dei caratteri analizzati in ogni cella, seguiti dai conteggi
+     */
+    private static final int CARATTERI = PADDING + 1;
+    /**
+     * Posizione del primo conteggio in ogni cella
+     */
+    private static final int CONTEGGI = PADDING + 2;
+
+    /**
+     * Vocali utilizzate dai thread
+     */
+    private final char[] vocali;
+    /**
+     * Tabella di lookup che associa ogni carattere alla propria vocale
+     */
+    private final TabellaVocali tabella;
+    /**
+     * Kernel usato dai thread per contare le vocali di {@link #tabella}
+     */
+    private final KernelConteggio kernel;
+    /**
+     * Celle dei conteggi delle lettere trovate da ogni thread, 
+     * ognuna ordinata rispettivamente secondo l'ordine di {@link #vocali}
+     */
+    private final List<Cella> celle = new CopyOnWriteArrayList<>();
+    /**
+     * Cella in cui scrive il thread corrente
+     */
+    private final ThreadLocal<Cella> cellaCorrente = ThreadLocal.withInitial(this::nuovaCella);
+    /**
+     * Vettore che indica quali thread sono stati completati (1) 
+     * ordinato secondo l'ordine di {@link #vocali}
+     */
+    private final AtomicIntegerArray terminati;
+    /**
+     * Latch che arriva a zero quando tutti i thread sono stati completati,
+     * sostituito ad ogni {@link #azzera()}
+     */
+    private volatile CountDownLatch fine;
+    /**
+     * Promessa completata quando tutti i thread sono stati completati,
+     * sostituita ad ogni {@link #azzera()}
+     */
+    private volatile CompletableFuture<Void> completamento = new CompletableFuture<>();
+    /**
+     * Oggetto attraverso cui i thread scrivono su schermo
+     */
+    private final Schermo schermo;
+    /**
+     * Numero di caratteri analizzati quando la vocale piu' usata
+     * e' diventata certa o -1 se e' stata analizzata tutta la frase
+     */
+    private volatile long caratteriAllaDecisione = -1;
+    /**
+     * Frequenze stimate dal campionamento o null se le vocali
+     * sono state contate senza campionare
+     */
+    private volatile StimaVocali stima;
+
+    /**
+     * @brief Costruisce una classe di dati condivisi
+     * 
+     * @see TabellaVocali#configurata(char[])
+     * @param vocali vocali usate dai thread
+     * @param schermo oggetto attraverso cui i thread devono scrivere
+     */
+    public DatiCondivisi(char[] vocali, Schermo schermo) {
+        this(TabellaVocali.configurata(vocali), schermo);
+    }
+
+    /**
+     * @brief Costruisce una classe di dati condivisi per la tabella data
+     * 
+     * @param tabella tabella delle vocali usate dai thread
+     * @param schermo oggetto attraverso cui i thread devono scrivere
+     */
+    public DatiCondivisi(TabellaVocali tabella, Schermo schermo) {
+        this.schermo = schermo;
+        this.tabella = tabella;
+        this.vocali = new char[tabella.getNumeroVocali()];
+        for(int i = 0; i < vocali.length; i++)
+            vocali[i] = tabella.getVocale(i);
+        this.kernel = KernelConteggio.per(tabella);
+        this.terminati = new AtomicIntegerArray(vocali.length);
+        this.fine = new CountDownLatch(vocali.length);
+    }
+
+    /**
+     * Conteggi scritti da un solo thread, protetti da un seqlock
+     */
+    private static final class Cella {
+        
+        /**
+         * Versione, caratteri analizzati e conteggi della cella, preceduti 
+         * e seguiti da {@link #PADDING} elementi vuoti. La versione e' 
+         * dispari mentre il proprietario sta modificando la cella.
+         */
+        private final AtomicLongArray valori;
+        /**
+         * Thread che scrive nella cella
+         */
+        private final Thread proprietario;
+
+        /**
+         * @brief Costruisce una cella vuota per il thread corrente
+         * 
+         * @param numeroVocali numero di vocali contate
+         */
+        private Cella(int numeroVocali) {
+            this.valori = new AtomicLongArray(numeroVocali + 2 + 2 * PADDING);
+            this.proprietario = Thread.currentThread();
+        }
+
+        /**
+         * @brief Rende dispari la versione prima di una modifica
+         * 
+         * @return versione prima della modifica
+         */
+        private long inizia() {
+            final long versione = valori.getPlain(VERSIONE);
+            valori.setOpaque(VERSIONE, versione + 1);
+            VarHandle.storeStoreFence();
+            return versione;
+        }
+
+        /**
+         * @brief Somma il valore dato alla posizione data
+         * 
+         * Puo' essere chiamato solo dal proprietario tra {@link #inizia()}
+         * e {@link #termina(long)}, per cui basta una scrittura al posto di una CAS.
+         * @param posizione posizione nella cella
+         * @param valore valore da sommare
+         */
+        private void somma(int posizione, long valore) {
+            valori.setOpaque(posizione, valori.getPlain(posizione) + valore);
+        }
+
+        /**
+         * @brief Rende di nuovo pari la versione dopo una modifica
+         * 
+         * @param versione versione restituita da {@link #inizia()}
+         */
+        private void termina(long versione) {
+            valori.setRelease(VERSIONE, versione + 2);
+        }
+
+        /**
+         * @brief Somma un istogramma e dei caratteri analizzati alla cella
+         * 
+         * Puo' essere chiamato solo dal thread proprietario della cella.
+         * @param istogramma conteggi ordinati secondo gli slot
+         * @param caratteri caratteri analizzati
+         */
+        private void aggiungi(int[] istogramma, long caratteri) {
+            final long versione = inizia();
+            for(int i = 0; i < istogramma.length; i++)
+                if(istogramma[i] != 0)
+                    somma(CONTEGGI + i, istogramma[i]);
+            if(caratteri != 0)
+                somma(CARATTERI, caratteri);
+            termina(versione);
+        }
+
+        /**
+         * @brief Incrementa il conteggio di una vocale e somma 
+         *        dei caratteri analizzati alla cella
+         * 
+         * Puo' essere chiamato solo dal thread proprietario della cella.
+         * @param index indice della vocale
+         * @param caratteri caratteri analizzati
+         */
+        private void incrementa(int index, long caratteri) {
+            final long versione = inizia();
+            somma(CONTEGGI + index, 1);
+            if(caratteri != 0)
+                somma(CARATTERI, caratteri);
+            termina(versione);
+        }
+
+        /**
+         * @brief Azzera i caratteri e i conteggi della cella
+         * 
+         * Puo' essere chiamato da un altro thread solo quando
+         * il proprietario non sta scrivendo.
+         */
+        private void azzera() {
+            final long versione = inizia();
+            for(int i = CARATTERI; i < valori.length() - PADDING; i++)
+                valori.setOpaque(i, 0);
+            termina(versione);
+        }
+
+        /**
+         * @brief Restituisce il conteggio della vocale
+         * 
+         * @param index indice della vocale
+         * @return conteggio della vocale in questa cella
+         */
+        private long get(int index) {
+            return valori.get(CONTEGGI + index);
+        }
+
+        /**
+         * @brief Legge caratteri e conteggi in uno stato coerente
+         * 
+         * Non blocca mai lo scrittore: se la cella viene modificata 
+         * durante la lettura, la lettura viene ripetuta.
+         * @param copia vettore in cui copiare i caratteri analizzati 
+         *              seguiti dai conteggi
+         * @return versione letta
+         */
+        private long leggi(long[] copia) {
+            while(true) {
+                final long prima = valori.getAcquire(VERSIONE);
+                if((prima & 1) == 0) {
+                    for(int i = 0; i < copia.length; i++)
+                        copia[i] = valori.getOpaque(CARATTERI + i);
+                    VarHandle.loadLoadFence();
+                    if(valori.getOpaque(VERSIONE) == prima)
+                        return prima;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Stato immutabile dell'analisi in un istante, restituito
+     * da {@link #getIstantanea()}
+     */
+    public static final class Istantanea {
+
+        /**
+         * Vocali contate, ordinate secondo gli slot della tabella
+         */
+        private final char[] vocali;
+        /**
+         * Conteggi delle vocali, ordinati secondo gli slot della tabella
+         */
+        private final long[] conteggi;
+        /**
+         * Caratteri analizzati da tutti i thread
+         */
+        private final long caratteri;
+        /**
+         * Numero di vocali segnate come terminate
+         */
+        private final int terminati;
+        /**
+         * Numero di modifiche ai conteggi
+         */
+        private final long versione;
+
+        /**
+         * @brief Costruisce un'istantanea
+         * 
+         * @param vocali vocali contate
+         * @param conteggi conteggi delle vocali
+         * @param caratteri caratteri analizzati
+         * @param terminati numero di vocali terminate
+         * @param versione numero di modifiche ai conteggi
+         */
+        private Istantanea(char[] vocali, long[] conteggi, long caratteri,
+                           int terminati, long versione) {
+            this.vocali = vocali;
+            this.conteggi = conteggi;
+            this.caratteri = caratteri;
+            this.terminati = terminati;
+            this.versione = versione;
+        }
+
+        /**
+         * @brief Restituisce il conteggio della vocale data
+         * 
+         * @param index slot della vocale
+         * @return numero di vocali trovate
+         */
+        public long getConteggio(int index) {
+            return conteggi[index];
+        }
+
+        /**
+         * @brief Restituisce la vocale piu' usata
+         * 
+         * @return vocale con il conteggio piu' alto, quella con lo slot
+         *         minore in caso di pareggio
+         */
+        public char getPiuUsata() {
+            int index = 0;
+            for(int i = 1; i < conteggi.length; i++)
+                if(conteggi[i] > conteggi[index])
+                    index = i;
+            return vocali[index];
+        }
+
+        /**
+         * @brief Restituisce il numero di caratteri analizzati
+         * 
+         * Con un thread per vocale ogni carattere viene analizzato
+         * da tutti i thread e contato una volta per thread.
+         * @return caratteri analizzati da tutti i thread
+         */
+        public long getCaratteri() {
+            return caratteri;
+        }
+
+        /**
+         * @brief Restituisce il numero di vocali segnate come terminate
+         * 
+         * I conteggi delle vocali terminate sono gia' definitivi.
+         * @return vocali terminate
+         */
+        public int getTerminati() {
+            return terminati;
+        }
+
+        /**
+         * @brief Restituisce se tutti i thread sono stati completati
+         * 
+         * @return true se i conteggi sono definitivi
+         */
+        public boolean isFinito() {
+            return terminati == vocali.length;
+        }
+
+        /**
+         * @brief Restituisce il numero di modifiche ai conteggi
+         * 
+         * Non diminuisce mai durante un round, per cui un lettore puo'
+         * confrontarlo con quello dell'istantanea precedente per sapere
+         * se qualcosa e' cambiato.
+         * @return versione dell'istantanea
+         */
+        public long getVersione() {
+            return versione;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < vocali.length; i++) {
+                if(i > 0)
+                    sb.append(' ');
+                sb.append(vocali[i]).append('=').append(conteggi[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * @brief Crea e registra la cella di un nuovo thread
+     * 
+     * @return cella del thread corrente
+     */
+    private Cella nuovaCella() {
+        final Cella cella = new Cella(vocali.length);
+        celle.add(cella);
+        return cella;
+    }
+
+    /**
+     * @brief Restituisce la vocale più usata
+     * 
+     * Cerca la vocale con il conteggio più alto in un'istantanea coerente
+     * @see #getIstantanea()
+     * @return  la vocale più usata
+     */
+    public char getPiuUsata() {
+        return getIstantanea().getPiuUsata();
+    }
+
+    /**
+     * @brief Restituisce lo stato coerente dell'analisi in questo istante
+     * 
+     * Ogni cella viene letta con il proprio seqlock, senza bloccare i thread
+     * che scrivono. Le vocali terminate vengono lette prima dei conteggi,
+     * per cui i conteggi di una vocale terminata sono sempre definitivi.
+     * @return istantanea dei conteggi, dei caratteri e delle vocali terminate
+     */
+    public Istantanea getIstantanea() {
+        int finiti = 0;
+        for(int i = 0; i < vocali.length; i++)
+            finiti += terminati.get(i);
+
+        final long[] conteggi = new long[vocali.length];
+        final long[] copia = new long[vocali.length + 1];
+        long caratteri = 0;
+        long versione = 0;
+        for(Cella cella : celle) {
+            versione += cella.leggi(copia) / 2;
+            caratteri += copia[0];
+            for(int i = 0; i < conteggi.length; i++)
+                conteggi[i] += copia[i + 1];
+        }
+        return new Istantanea(vocali, conteggi, caratteri, finiti, versione);
+    }
+
+    /**
+     * @brief Restituisce l'indice del thread che cerca la vocale data
+     * 
+     * Cerca la vocale in {@link #tabella} o restituisce -1 se non la trova.
+     * @param carattere vocale da cercare
+     * @return indice del thread o -1 se non esiste
+     */
+    private int getIndex(char carattere) {
+        return tabella.getSlot(carattere);
+    }
+    
+    /**
+     * @brief Restituisce il numero di vocali trovate nella frase
+     * 
+     * Il numero e' la somma dei conteggi in tutte le {@link #celle}
+     * @param index indice del thread
+     * @return numero di vocali trovate
+     */
+    public long getConteggio(int index) {
+        long somma = 0;
+        for(Cella cella : celle)
+            somma += cella.get(index);
+        return somma;
+    }
+    
+    /**
+     * @brief Restituisce il numero di vocali trovate nella frase
+     * 
+     * @param carattere vocale che il thread deve cercare
+     * @return numero di vocali trovate
+     */
+    public long getConteggio(char carattere) {
+        return getConteggio(getIndex(carattere));
+    }
+
+    /**
+     * @brief Incrementa il numero di vocali trovate nella frase
+     * 
+     * Viene incrementato il numero nella cella del thread corrente
+     * @param index indice del thread
+     */
+    public void incrementa(int index) {
+        cellaCorrente.get().incrementa(index, 0);
+    }
+
+    /**
+     * @brief Incrementa il numero di vocali trovate nella frase e
+     *        aggiunge i caratteri analizzati dall'ultimo aggiornamento
+     * 
+     * Le due modifiche compaiono insieme in {@link #getIstantanea()}
+     * @param index indice del thread
+     * @param caratteri caratteri analizzati
+     */
+    public void incrementa(int index, long caratteri) {
+        cellaCorrente.get().incrementa(index, caratteri);
+    }
+    
+    /**
+     * @brief Incrementa il numero di vocali trovate nella frase
+     * 
+     * @param carattere vocale che il thread deve cercare
+     */
+    public void incrementa(char carattere) {
+        incrementa(getIndex(carattere));
+    }
+    
+    /**
+     * @brief Aggiunge in una sola volta un istogramma di vocali
+     * 
+     * I conteggi vengono sommati a quelli nella cella del thread corrente
+     * @param istogramma conteggi ordinati secondo gli slot di {@link #tabella}
+     */
+    public void aggiungi(int[] istogramma) {
+        aggiungi(istogramma, 0);
+    }
+    
+    /**
+     * @brief Aggiunge in una sola volta un istogramma di vocali 
+     *        e i caratteri in cui sono state contate
+     * 
+     * I conteggi vengono sommati a quelli nella cella del thread corrente
+     * e compaiono tutti insieme in {@link #getIstantanea()}
+     * @param istogramma conteggi ordinati secondo gli slot di {@link #tabella}
+     * @param caratteri caratteri analizzati
+     */
+    public void aggiungi(int[] istogramma, long caratteri) {
+        cellaCorrente.get().aggiungi(istogramma, caratteri);
+    }
+    
+    /**
+     * @brief Aggiunge dei caratteri analizzati senza vocali
+     * 
+     * @param caratteri caratteri analizzati
+     */
+    public void avanza(long caratteri) {
+        if(caratteri != 0)
+            cellaCorrente.get().aggiungi(new int[0], caratteri);
+    }
+    
+    /**
+     * @brief Setta il Thread con indice dato come terminato
+     * 
+     * Setta il valore nel vettore {@link #terminati} e, se e' la prima
+     * volta che il thread viene terminato, decrementa {@link #fine}.
+     * Se abilitato viene emesso l'evento JFR {@link EventiJfr.Termina}.
+     * @param index indice del thread
+     */
+    public void termina(int index) {
+        final boolean primaVolta = terminati.compareAndSet(index, 0, 1);
+        boolean ultima = false;
+        if(primaVolta) {
+            final CountDownLatch latch = fine;
+            latch.countDown();
+            ultima = latch.getCount() == 0;
+            if(ultima)
+                completamento.complete(null);
+        }
+        
+        final EventiJfr.Termina evento = new EventiJfr.Termina();
+        if(evento.isEnabled()) {
+            evento.vocale = vocali[index];
+            evento.primaVolta = primaVolta;
+            evento.ultima = ultima;
+            evento.commit();
+        }
+    }
+    
+    /**
+     * @brief Setta il Thread con indice dato come terminato
+     * 
+     * Setta il valore nel vettore {@link #terminati}
+     * @param carattere vocale che il thread deve cercare
+     */
+    public void termina(char carattere) {
+        termina(getIndex(carattere));
+    }
+    
+    /**
+     * @brief Setta tutte le vocali come terminate
+     * 
+     * Usato dai runnable che cercano tutte le vocali contemporaneamente.
+     */
+    public void terminaTutti() {
+        for(int i = 0; i < vocali.length; i++)
+            termina(i);
+    }
+    
+    /**
+     * @brief Azzera i conteggi e segna tutte le vocali come non terminate
+     * 
+     * Permette di riutilizzare lo stesso oggetto per analizzare 
+     * un'altra frase. Deve essere chiamato solo quando nessun thread 
+     * sta scrivendo, cioe' prima di avviarli o dopo che sono terminati.
+     * Le celle dei thread terminati vengono rimosse, in modo che non si 
+     * accumulino quando ogni round usa nuovi thread.
+     */
+    public void azzera() {
+        celle.removeIf(cella -> !cella.proprietario.isAlive());
+        for(Cella cella : celle)
+            cella.azzera();
+        
+        for(int i = 0; i < vocali.length; i++)
+            terminati.set(i, 0);
+        
+        caratteriAllaDecisione = -1;
+        stima = null;
+        completamento = new CompletableFuture<>();
+        fine = new CountDownLatch(vocali.length);
+    }
+    
+    /**
+     * @brief Restituisce se tutti i thread sono stati completati
+     * 
+     * Se abilitato viene emesso l'evento JFR {@link EventiJfr.ControlloFine}.
+     * @return true se tutti i thread sono stati completati
+     */
+    public boolean isAllOver() {
+        final long mancanti = fine.getCount();
+        
+        final EventiJfr.ControlloFine evento = new EventiJfr.ControlloFine();
+        if(evento.isEnabled()) {
+            evento.finito = mancanti == 0;
+            evento.mancanti = mancanti;
+            evento.commit();
+        }
+        
+        return mancanti == 0;
+    }
+    
+    /**
+     * @brief Attende che tutti i thread siano completati 
+     *        per al massimo il tempo dato
+     * 
+     * @param timeout tempo massimo da attendere
+     * @param unit unita' di misura di timeout
+     * @return true se tutti i thread sono stati completati
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public boolean attendiFine(long timeout, TimeUnit unit) throws InterruptedException {
+        return fine.await(timeout, unit);
+    }
+    
+    /**
+     * @brief Restituisce la promessa di completamento di tutti i thread
+     * 
+     * Restituisce {@link #completamento}
+     * @return promessa completata quando tutti i thread sono stati completati
+     */
+    public CompletableFuture<Void> getCompletamento() {
+        return completamento;
+    }
+
+    /**
+     * @brief Setta il punto in cui la vocale piu' usata e' diventata certa
+     * 
+     * Setta {@link #caratteriAllaDecisione}. Deve essere chiamato prima
+     * di segnare le vocali come terminate.
+     * @see ProgressoConteggio
+     * @param caratteriAllaDecisione caratteri analizzati alla decisione
+     *                               o -1 se e' stata analizzata tutta la frase
+     */
+    public void setCaratteriAllaDecisione(long caratteriAllaDecisione) {
+        this.caratteriAllaDecisione = caratteriAllaDecisione;
+    }
+
+    /**
+     * @brief Restituisce il punto in cui la vocale piu' usata e' diventata certa
+     * 
+     * Restituisce {@link #caratteriAllaDecisione}. Se non e' -1 i conteggi
+     * sono quelli dei soli caratteri analizzati.
+     * @return caratteri analizzati alla decisione o -1 se e' stata
+     *         analizzata tutta la frase
+     */
+    public long getCaratteriAllaDecisione() {
+        return caratteriAllaDecisione;
+    }
+
+    /**
+     * @brief Setta le frequenze stimate dal campionamento
+     * 
+     * Setta {@link #stima}. Deve essere chiamato prima
+     * di segnare le vocali come terminate.
+     * @see ContaVocaliCampionato
+     * @param stima frequenze stimate
+     */
+    public void setStima(StimaVocali stima) {
+        this.stima = stima;
+    }
+
+    /**
+     * @brief Restituisce le frequenze stimate dal campionamento
+     * 
+     * Restituisce {@link #stima}
+     * @return frequenze stimate o null se le vocali sono state
+     *         contate senza campionare
+     */
+    public StimaVocali getStima() {
+        return stima;
+    }
+
+    /**
+     * @brief Restituisce la tabella di lookup delle vocali
+     * 
+     * Restituisce {@link #tabella}
+     * @return tabella di lookup delle vocali
+     */
+    public TabellaVocali getTabella() {
+        return tabella;
+    }
+
+    /**
+     * @brief Restituisce il kernel usato per contare le vocali
+     * 
+     * Restituisce {@link #kernel}
+     * @return kernel usato per contare le vocali
+     */
+    public KernelConteggio getKernel() {
+        return kernel;
+    }
+
+    /**
+     * @brief Restituisce l'oggetto attraverso cui i thread scrivono su schermo
+     * 
+     * Restituisce {@link #schermo}
+     * @return oggetto attraverso cui i thread scrivono su schermo
+     */
+    public Schermo getSchermo() {
+        return schermo;
+    }
+}
@@ -0,0 +1,497 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.2
+ */
+package me.ferlin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Classe che analizza senza interazione con l'utente tutte le frasi
+ * di un input, una per riga, e scrive i risultati in un formato
+ * leggibile da altri programmi (vedi {@link Formato}).
+ *
+ * Le frasi vengono lette dal thread chiamante e messe in una coda limitata
+ * da cui le prendono un numero fisso di lavoratori. Ogni lavoratore
+ * riutilizza per tutte le frasi gli stessi {@link DatiCondivisi} e
+ * gli stessi runnable, eseguendoli direttamente sul proprio thread.
+ * Con {@link ModalitaConteggio#FORK_JOIN} e {@link ModalitaConteggio#ANTICIPATA}
+ * i lavoratori condividono un solo {@link ForkJoinPool}, terminato alla fine
+ * di {@link #esegui(BufferedReader, Writer)}.
+ *
+ * I risultati vengono scritti nell'ordine in cui vengono completati
+ * e contengono il numero della riga analizzata. Con 
+ * {@link ModalitaConteggio#PASSATA_SINGOLA} i lavoratori possono condividere
+ * una {@link CacheIstogrammi}, utile quando l'input contiene frasi ripetute.
+ * Con {@link ModalitaConteggio#ANTICIPATA} e {@link ModalitaConteggio#CAMPIONATA}
+ * i conteggi sono parziali e ogni risultato contiene anche il numero di
+ * caratteri analizzati quando la vocale piu' usata e' diventata certa
+ * (-1 se e' stata analizzata tutta la frase).
+ *
+ * Se in una frase non viene trovata nessuna vocale, la vocale piu' usata
+ * e' {@code null} in JSON e un campo vuoto in CSV.
+ */
+public class ElaboratoreBatch {
+
+    /**
+     * Numero di frasi in coda per ogni lavoratore
+     */
+    private static final int FRASI_PER_LAVORATORE = 64;
+    /**
+     * Intervallo in millisecondi con cui il thread che legge
+     * controlla se un lavoratore e' fallito mentre la coda e' piena
+     */
+    private static final long INTERVALLO_CONTROLLO = 100;
+
+    /**
+     * Formato in cui vengono scritti i risultati
+     */
+    public enum Formato {
+        /**
+         * Un oggetto JSON per riga
+         */
+        JSON,
+        /**
+         * Valori separati da virgola, preceduti da una riga di intestazione.
+         * I campi che contengono virgole, virgolette o a capo vengono
+         * racchiusi tra virgolette, raddoppiando quelle interne (RFC 4180)
+         */
+        CSV;
+
+        /**
+         * @brief Restituisce il formato con il nome dato
+         *
+         * @param nome nome del formato (case-insensitive)
+         * @return formato con il nome dato
+         * @throws RuntimeException se il formato non esiste
+         */
+        public static Formato daNome(String nome) {
+            for(Formato f : values())
+                if(f.name().equalsIgnoreCase(nome.trim()))
+                    return f;
+            throw new RuntimeException("Formato sconosciuto: " + nome);
+        }
+    }
+
+    /**
+     * Frase letta dall'input
+     */
+    private static final class Frase {
+        /**
+         * Numero della riga, a partire da 1
+         */
+        private final long riga;
+        /**
+         * Testo della frase
+         */
+        private final String testo;
+
+        /**
+         * @brief Costruisce una frase
+         *
+         * @param riga numero della riga
+         * @param testo testo della frase
+         */
+        private Frase(long riga, String testo) {
+            this.riga = riga;
+            this.testo = testo;
+        }
+    }
+
+    /**
+     * Frase messa in coda per fermare un lavoratore
+     */
+    private static final Frase FINE = new Frase(-1, null);
+
+    /**
+     * Vocali da contare
+     */
+    private final char[] vocali;
+    /**
+     * Tabella delle vocali condivisa da tutti i lavoratori
+     */
+    private final TabellaVocali tabella;
+    /**
+     * Cache condivisa da tutti i lavoratori o null se non deve essere usata
+     */
+    private final CacheIstogrammi cache;
+    /**
+     * Modalita' con cui ogni lavoratore conta le vocali di una frase
+     */
+    private final ModalitaConteggio modalita;
+    /**
+     * Numero di frasi analizzate contemporaneamente
+     */
+    private final int parallelismo;
+    /**
+     * Formato dei risultati
+     */
+    private final Formato formato;
+
+    /**
+     * @brief Costruisce un elaboratore con i parametri dati
+     *
+     * @param vocali vocali da contare
+     * @param modalita modalita' con cui contare le vocali di ogni frase
+     * @param parallelismo numero di frasi analizzate contemporaneamente
+     * @param formato formato dei risultati
+     * @param cache cache degli istogrammi da usare con 
+     *              {@link ModalitaConteggio#PASSATA_SINGOLA} o null
+     * @throws RuntimeException se il parallelismo non e' positivo
+     */
+    public ElaboratoreBatch(char[] vocali,
+                            ModalitaConteggio modalita,
+                            int parallelismo,
+                            Formato formato,
+                            CacheIstogrammi cache) {
+        if(parallelismo <= 0)
+            throw new RuntimeException("Il parallelismo deve essere positivo.");
+
+        this.vocali = vocali;
+        this.tabella = TabellaVocali.configurata(vocali);
+        this.cache = cache;
+        this.modalita = modalita;
+        this.parallelismo = parallelismo;
+        this.formato = formato;
+    }
+
+    /**
+     * @brief Analizza tutte le righe dell'input e ne scrive i risultati
+     *
+     * Ogni riga, anche vuota, e' una frase. Alla fine l'output
+     * viene svuotato ma non chiuso.
+     * @param input reader da cui leggere le frasi
+     * @param output writer su cui scrivere i risultati
+     * @return numero di frasi analizzate
+     * @throws IOException se non e' possibile leggere l'input
+     *                     o scrivere l'output
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public long esegui(BufferedReader input, Writer output) throws IOException, InterruptedException {
+        final BlockingQueue<Frase> coda = new ArrayBlockingQueue<>(parallelismo * FRASI_PER_LAVORATORE);
+        final AtomicReference<Throwable> errore = new AtomicReference<>();
+
+        if(formato == Formato.CSV)
+            output.write(intestazioneCsv());
+
+        final ForkJoinPool pool =
+                modalita == ModalitaConteggio.FORK_JOIN || modalita == ModalitaConteggio.ANTICIPATA ?
+                new ForkJoinPool(Runtime.getRuntime().availableProcessors()) : null;
+
+        final Thread[] lavoratori = new Thread[parallelismo];
+        long righe = 0;
+        try {
+            for(int i = 0; i < lavoratori.length; i++) {
+                lavoratori[i] = new Thread(new Lavoratore(coda, output, errore, pool), "Thread_batch_" + i);
+                lavoratori[i].setUncaughtExceptionHandler((t, ex) -> errore.compareAndSet(null, ex));
+                lavoratori[i].start();
+            }
+
+            String linea;
+            while((linea = input.readLine()) != null) {
+                if(!metti(coda, new Frase(righe + 1, linea), errore))
+                    break;
+                righe++;
+            }
+        } finally {
+            for(int i = 0; i < lavoratori.length; i++)
+                if(!metti(coda, FINE, errore))
+                    break;
+
+            if(errore.get() != null)
+                for(Thread th : lavoratori)
+                    if(th != null)
+                        th.interrupt();
+
+            for(Thread th : lavoratori)
+                if(th != null)
+                    th.join();
+
+            if(pool != null)
+                pool.shutdown();
+        }
+
+        output.flush();
+
+        final Throwable ex = errore.get();
+        if(ex instanceof IOException)
+            throw (IOException) ex;
+        if(ex != null)
+            throw new RuntimeException("Errore durante l'analisi delle frasi", ex);
+
+        return righe;
+    }
+
+    /**
+     * @brief Mette la frase in coda, aspettando se la coda e' piena
+     *
+     * @param coda coda in cui mettere la frase
+     * @param frase frase da mettere in coda
+     * @param errore primo errore dei lavoratori
+     * @return false se un lavoratore e' fallito e la frase non e' stata messa
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static boolean metti(BlockingQueue<Frase> coda,
+                                 Frase frase,
+                                 AtomicReference<Throwable> errore) throws InterruptedException {
+        while(!coda.offer(frase, INTERVALLO_CONTROLLO, TimeUnit.MILLISECONDS))
+            if(errore.get() != null)
+                return false;
+        return errore.get() == null;
+    }
+
+    /**
+     * @brief Restituisce l'intestazione del formato CSV
+     *
+     * @return riga con i nomi delle colonne
+     */
+    private String intestazioneCsv() {
+        final StringBuilder sb = new StringBuilder("riga");
+        for(char vocale : vocali)
+            appendCsv(sb.append(','), vocale);
+        sb.append(",piu_usata");
+        if(modalita.isParziale())
+            sb.append(",caratteri_alla_decisione");
+        return sb.append(",nanosecondi").append('\n').toString();
+    }
+
+    /**
+     * @brief Scrive il carattere dato come campo CSV
+     *
+     * Il carattere viene racchiuso tra virgolette se e' una virgola,
+     * una virgoletta o un a capo.
+     * @param sb buffer su cui scrivere
+     * @param c carattere da scrivere
+     */
+    private static void appendCsv(StringBuilder sb, char c) {
+        if(c == '"')
+            sb.append("\"\"\"\"");
+        else if(c == ',' || c == '\n' || c == '\r')
+            sb.append('"').append(c).append('"');
+        else
+            sb.append(c);
+    }
+
+    /**
+     * Runnable che analizza le frasi in coda finche' non trova {@link #FINE}
+     */
+    private final class Lavoratore implements Runnable {
+
+        /**
+         * Coda da cui prendere le frasi
+         */
+        private final BlockingQueue<Frase> coda;
+        /**
+         * Writer condiviso su cui scrivere i risultati
+         */
+        private final Writer output;
+        /**
+         * Primo errore dei lavoratori
+         */
+        private final AtomicReference<Throwable> errore;
+        /**
+         * Dati riutilizzati per tutte le frasi
+         */
+        private final DatiCondivisi dati = new DatiCondivisi(tabella, Schermo.muto());
+        /**
+         * Runnable usati con {@link ModalitaConteggio#THREAD_PER_VOCALE}
+         */
+        private final CercaVocaleRunnable[] runnablesVocali = new CercaVocaleRunnable[vocali.length];
+        /**
+         * Runnable usato con {@link ModalitaConteggio#PASSATA_SINGOLA}
+         */
+        private final ContaVocaliRunnable runnablePassataSingola = new ContaVocaliRunnable();
+        /**
+         * Runnable usato con {@link ModalitaConteggio#FORK_JOIN} e
+         * {@link ModalitaConteggio#ANTICIPATA}, creato solo se necessario
+         * sul pool condiviso dai lavoratori
+         */
+        private ContaVocaliForkJoin runnableForkJoin;
+        /**
+         * Runnable usato con {@link ModalitaConteggio#CAMPIONATA},
+         * creato solo se necessario
+         */
+        private ContaVocaliCampionato runnableCampionato;
+        /**
+         * Buffer in cui viene formattato ogni risultato
+         */
+        private final StringBuilder sb = new StringBuilder();
+
+        /**
+         * @brief Costruisce un lavoratore
+         *
+         * @param coda coda da cui prendere le frasi
+         * @param output writer su cui scrivere i risultati
+         * @param errore primo errore dei lavoratori
+         * @param pool pool condiviso dai runnable fork/join o null
+         *             se la modalita' non lo usa
+         */
+        private Lavoratore(BlockingQueue<Frase> coda,
+                           Writer output,
+                           AtomicReference<Throwable> errore,
+                           ForkJoinPool pool) {
+            this.coda = coda;
+            this.output = output;
+            this.errore = errore;
+
+            for(int i = 0; i < runnablesVocali.length; i++) {
+                runnablesVocali[i] = new CercaVocaleRunnable(vocali[i]);
+                runnablesVocali[i].setPtrDati(dati);
+            }
+            runnablePassataSingola.setPtrDati(dati);
+            runnablePassataSingola.setCache(cache);
+
+            if(modalita == ModalitaConteggio.FORK_JOIN || modalita == ModalitaConteggio.ANTICIPATA) {
+                runnableForkJoin = new ContaVocaliForkJoin(pool, ContaVocaliForkJoin.CHUNK_PREDEFINITO);
+                runnableForkJoin.setPtrDati(dati);
+                runnableForkJoin.setTerminazioneAnticipata(modalita == ModalitaConteggio.ANTICIPATA);
+            }
+
+            if(modalita == ModalitaConteggio.CAMPIONATA) {
+                runnableCampionato = new ContaVocaliCampionato();
+                runnableCampionato.setPtrDati(dati);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frase frase;
+                while((frase = coda.take()) != FINE) {
+                    final long nanosecondi = analizza(frase.testo);
+                    Metriche.get().registraRound(nanosecondi);
+
+                    sb.setLength(0);
+                    if(formato == Formato.CSV)
+                        formattaCsv(frase.riga, nanosecondi);
+                    else
+                        formattaJson(frase.riga, nanosecondi);
+
+                    synchronized(output) {
+                        output.append(sb);
+                    }
+                }
+            } catch(InterruptedException ex) {
+                // Un altro lavoratore e' fallito
+            } catch(IOException ex) {
+                errore.compareAndSet(null, ex);
+            }
+        }
+
+        /**
+         * @brief Conta le vocali della frase data in {@link #dati}
+         *
+         * @param testo frase da analizzare
+         * @return tempo impiegato in nanosecondi
+         */
+        private long analizza(String testo) {
+            dati.azzera();
+            final long inizio = System.nanoTime();
+
+            switch(modalita) {
+                case PASSATA_SINGOLA:
+                    runnablePassataSingola.setDaAnalizzare(testo);
+                    runnablePassataSingola.run();
+                    break;
+                case FORK_JOIN:
+                case ANTICIPATA:
+                    runnableForkJoin.setDaAnalizzare(testo);
+                    runnableForkJoin.run();
+                    break;
+                case CAMPIONATA:
+                    runnableCampionato.setDaAnalizzare(testo);
+                    runnableCampionato.run();
+                    break;
+                case THREAD_PER_VOCALE:
+                default:
+                    for(CercaVocaleRunnable runn : runnablesVocali) {
+                        runn.setDaAnalizzare(testo);
+                        runn.run();
+                    }
+                    break;
+            }
+
+            return System.nanoTime() - inizio;
+        }
+
+        /**
+         * @brief Scrive in {@link #sb} il risultato in formato JSON
+         *
+         * @param riga numero della riga analizzata
+         * @param nanosecondi tempo impiegato
+         */
+        private void formattaJson(long riga, long nanosecondi) {
+            final DatiCondivisi.Istantanea istantanea = dati.getIstantanea();
+            sb.append("{\"riga\":").append(riga).append(",\"conteggi\":{");
+            for(int i = 0; i < vocali.length; i++) {
+                if(i > 0)
+                    sb.append(',');
+                appendJson(vocali[i]);
+                sb.append(':').append(istantanea.getConteggio(i));
+            }
+            sb.append("},\"piuUsata\":");
+            if(trovata(istantanea))
+                appendJson(istantanea.getPiuUsata());
+            else
+                sb.append("null");
+            if(modalita.isParziale())
+                sb.append(",\"caratteriAllaDecisione\":").append(dati.getCaratteriAllaDecisione());
+            sb.append(",\"nanosecondi\":").append(nanosecondi).append("}\n");
+        }
+
+        /**
+         * @brief Restituisce se nella frase e' stata trovata almeno una vocale
+         *
+         * @param istantanea conteggi della frase
+         * @return true se almeno un conteggio e' positivo
+         */
+        private boolean trovata(DatiCondivisi.Istantanea istantanea) {
+            for(int i = 0; i < vocali.length; i++)
+                if(istantanea.getConteggio(i) > 0)
+                    return true;
+            return false;
+        }
+
+        /**
+         * @brief Scrive in {@link #sb} il carattere dato come stringa JSON
+         *
+         * @param c carattere da scrivere
+         */
+        private void appendJson(char c) {
+            sb.append('"');
+            if(c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if(c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+            sb.append('"');
+        }
+
+        /**
+         * @brief Scrive in {@link #sb} il risultato in formato CSV
+         *
+         * @param riga numero della riga analizzata
+         * @param nanosecondi tempo impiegato
+         */
+        private void formattaCsv(long riga, long nanosecondi) {
+            final DatiCondivisi.Istantanea istantanea = dati.getIstantanea();
+            sb.append(riga);
+            for(int i = 0; i < vocali.length; i++)
+                sb.append(',').append(istantanea.getConteggio(i));
+            sb.append(',');
+            if(trovata(istantanea))
+                appendCsv(sb, istantanea.getPiuUsata());
+            if(modalita.isParziale())
+                sb.append(',').append(dati.getCaratteriAllaDecisione());
+            sb.append(',').append(nanosecondi).append('\n');
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventi di Java Flight Recorder emessi durante i round.
+ *
+ * Tutti gli eventi sono disabilitati anche quando una registrazione e' attiva
+ * e vanno abilitati esplicitamente, ad esempio con
+ * {@code jcmd <pid> JFR.start +me.ferlin.Round#enabled=true +me.ferlin.Worker#enabled=true}
+ * oppure con il file {@code giocofrase.jfc} del progetto:
+ * {@code jcmd <pid> JFR.start settings=default settings=giocofrase.jfc}.
+ *
+ * Quando un evento e' disabilitato {@link Event#isEnabled()} restituisce
+ * false e il compilatore JIT elimina sia l'oggetto che i campi calcolati
+ * solo per l'evento, per cui il codice strumentato non costa nulla.
+ */
+public final class EventiJfr {
+
+    /**
+     * Categoria di tutti gli eventi
+     */
+    private static final String CATEGORIA = "GiocoFrase";
+
+    /**
+     * Classe non istanziabile
+     */
+    private EventiJfr() {
+    }
+
+    /**
+     * Round del gioco, dall'avvio dei thread alla fine della visualizzazione
+     */
+    @Name("me.ferlin.Round")
+    @Label("Round")
+    @Description("Round del gioco, dall\'avvio dei thread alla fine della visualizzazione")
+    @Category(CATEGORIA)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Round extends Event {
+
+        @Label("Lunghezza della frase")
+        public int lunghezzaFrase;
+
+        @Label("Delay")
+        public boolean delay;
+
+        @Label("Yield")
+        public boolean yield;
+
+        @Label("Modalita\' di conteggio")
+        public String modalita;
+
+        @Label("Strategia di esecuzione")
+        public String strategia;
+
+        @Label("Vocale scelta")
+        public char vocaleScelta;
+
+        @Label("Vocale piu\' usata")
+        public char piuUsata;
+
+        @Label("Esito")
+        @Description("indovinato, perso, tempo scaduto o errore")
+        public String esito;
+    }
+
+    /**
+     * Esecuzione di un {@link CercaVocaleRunnable}
+     */
+    @Name("me.ferlin.Worker")
+    @Label("Worker")
+    @Description("Ricerca di una vocale da parte di un thread")
+    @Category(CATEGORIA)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Worker extends Event {
+
+        @Label("Vocale")
+        public char vocale;
+
+        @Label("Caratteri analizzati")
+        public int caratteri;
+
+        @Label("Vocali trovate")
+        public int trovate;
+
+        @Label("Delay")
+        public boolean delay;
+
+        @Label("Yield")
+        public boolean yield;
+    }
+
+    /**
+     * Chiamata a {@link DatiCondivisi#termina(int)}
+     */
+    @Name("me.ferlin.Termina")
+    @Label("Termina")
+    @Description("Un thread segna la propria vocale come terminata")
+    @Category(CATEGORIA)
+    @Enabled(false)
+    public static final class Termina extends Event {
+
+        @Label("Vocale")
+        public char vocale;
+
+        @Label("Prima volta")
+        @Description("false se la vocale era gia\' terminata")
+        public boolean primaVolta;
+
+        @Label("Ultima vocale")
+        @Description("true se tutte le vocali sono terminate")
+        public boolean ultima;
+    }
+
+    /**
+     * Chiamata a {@link DatiCondivisi#isAllOver()}
+     */
+    @Name("me.ferlin.ControlloFine")
+    @Label("Controllo fine")
+    @Description("Controllo della terminazione di tutti i thread")
+    @Category(CATEGORIA)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ControlloFine extends Event {
+
+        @Label("Finito")
+        public boolean finito;
+
+        @Label("Thread mancanti")
+        public long mancanti;
+    }
+
+    /**
+     * Chiamata a {@link Schermo#push(char, long, long)}, compresa
+     * l'eventuale attesa con lo schermo pieno
+     */
+    @Name("me.ferlin.Push")
+    @Label("Push")
+    @Description("Evento di una vocale aggiunto alla coda dello schermo")
+    @Category(CATEGORIA)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Push extends Event {
+
+        @Label("Vocale")
+        public char vocale;
+
+        @Label("Posizione")
+        public long posizione;
+
+        @Label("Ripetizioni")
+        public long ripetizioni;
+
+        @Label("Tentativi falliti")
+        @Description("Tentativi di inserimento falliti con lo schermo pieno")
+        public int tentativi;
+
+        @Label("Aggregato")
+        @Description("true se l\'evento e\' stato aggregato perche\' lo schermo era pieno")
+        public boolean aggregato;
+    }
+
+    /**
+     * Cambio della vocale piu' usata nella finestra di {@link ContaVocaliFinestra}
+     */
+    @Name("me.ferlin.CambioPiuUsata")
+    @Label("Cambio piu\' usata")
+    @Description("La vocale piu\' usata nella finestra scorrevole e\' cambiata")
+    @Category(CATEGORIA)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class CambioPiuUsata extends Event {
+
+        @Label("Precedente")
+        public char precedente;
+
+        @Label("Vocale piu\' usata")
+        public char piuUsata;
+
+        @Label("Posizione")
+        @Description("Caratteri letti dall\'inizio del flusso")
+        public long posizione;
+
+        @Label("Caratteri nella finestra")
+        public long caratteriFinestra;
+    }
+}
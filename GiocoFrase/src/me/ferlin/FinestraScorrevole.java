@@ -0,0 +1,170 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+/**
+ * Conteggi delle vocali in una finestra scorrevole, divisa in blocchi.
+ *
+ * La finestra contiene gli ultimi {@code numeroBlocchi} blocchi,
+ * compreso quello corrente: ogni blocco ha il proprio istogramma in un
+ * anello e i totali della finestra vengono aggiornati sommando i nuovi
+ * conteggi e sottraendo quelli dei blocchi che escono. Aggiornare la
+ * finestra costa quindi O(numero di vocali) per blocco invece di
+ * ricontare tutta la finestra, e la memoria usata non dipende dalla
+ * sua lunghezza. La precisione della finestra e' di un blocco.
+ *
+ * I blocchi sono identificati da un indice crescente, per cui la stessa
+ * finestra puo' essere misurata in caratteri (indice = posizione /
+ * caratteri per blocco) o in tempo (indice = istante / durata del blocco).
+ *
+ * Non e' thread-safe: deve essere usata da un solo thread.
+ */
+public class FinestraScorrevole {
+
+    /**
+     * Numero di vocali contate
+     */
+    private final int numeroVocali;
+    /**
+     * Numero di blocchi nella finestra
+     */
+    private final int numeroBlocchi;
+    /**
+     * Istogrammi dei blocchi: il blocco b occupa gli elementi da
+     * {@code (b % numeroBlocchi) * numeroVocali} in poi
+     */
+    private final int[] blocchi;
+    /**
+     * Caratteri di ogni blocco
+     */
+    private final long[] caratteriBlocchi;
+    /**
+     * Conteggi delle vocali nella finestra
+     */
+    private final long[] totale;
+    /**
+     * Caratteri nella finestra
+     */
+    private long caratteri;
+    /**
+     * Indice del blocco corrente
+     */
+    private long blocco;
+
+    /**
+     * @brief Costruisce una finestra vuota
+     *
+     * @param numeroVocali numero di vocali contate
+     * @param numeroBlocchi numero di blocchi nella finestra
+     * @throws RuntimeException se il numero di blocchi non e' positivo
+     */
+    public FinestraScorrevole(int numeroVocali, int numeroBlocchi) {
+        if(numeroBlocchi <= 0)
+            throw new RuntimeException("Il numero di blocchi deve essere positivo.");
+
+        this.numeroVocali = numeroVocali;
+        this.numeroBlocchi = numeroBlocchi;
+        this.blocchi = new int[numeroBlocchi * numeroVocali];
+        this.caratteriBlocchi = new long[numeroBlocchi];
+        this.totale = new long[numeroVocali];
+    }
+
+    /**
+     * @brief Sposta la finestra fino al blocco dato
+     *
+     * I blocchi che escono dalla finestra vengono svuotati e i loro conteggi
+     * sottratti da {@code rimossi}. Se il salto e' piu' lungo della finestra
+     * vengono svuotati solo i blocchi presenti, per cui il costo e' limitato
+     * anche dopo una lunga pausa.
+     * @param nuovo indice del nuovo blocco corrente, non minore di quello attuale
+     * @param rimossi istogramma da cui sottrarre i conteggi rimossi
+     * @return numero di caratteri rimossi dalla finestra
+     */
+    public long sposta(long nuovo, int[] rimossi) {
+        if(nuovo <= blocco)
+            return 0;
+
+        final long da = Math.max(blocco + 1, nuovo - numeroBlocchi + 1);
+        blocco = nuovo;
+        long caratteriRimossi = 0;
+        for(long b = da; b <= nuovo; b++) {
+            final int slot = (int) Math.floorMod(b, (long) numeroBlocchi);
+            final int base = slot * numeroVocali;
+            for(int i = 0; i < numeroVocali; i++) {
+                final int n = blocchi[base + i];
+                if(n != 0) {
+                    totale[i] -= n;
+                    rimossi[i] -= n;
+                    blocchi[base + i] = 0;
+                }
+            }
+            caratteriRimossi += caratteriBlocchi[slot];
+            caratteriBlocchi[slot] = 0;
+        }
+        caratteri -= caratteriRimossi;
+        return caratteriRimossi;
+    }
+
+    /**
+     * @brief Aggiunge un istogramma al blocco corrente
+     *
+     * @param istogramma conteggi ordinati secondo gli slot della tabella
+     * @param caratteriIstogramma caratteri in cui sono state contate le vocali
+     */
+    public void aggiungi(int[] istogramma, int caratteriIstogramma) {
+        final int slot = (int) Math.floorMod(blocco, (long) numeroBlocchi);
+        final int base = slot * numeroVocali;
+        for(int i = 0; i < numeroVocali; i++) {
+            blocchi[base + i] += istogramma[i];
+            totale[i] += istogramma[i];
+        }
+        caratteriBlocchi[slot] += caratteriIstogramma;
+        caratteri += caratteriIstogramma;
+    }
+
+    /**
+     * @brief Restituisce lo slot della vocale piu' usata nella finestra
+     *
+     * Come in {@link DatiCondivisi#getPiuUsata()} un pareggio viene vinto
+     * dalla vocale con lo slot minore.
+     * @return slot della vocale piu' usata o {@link TabellaVocali#NESSUNO}
+     *         se la finestra non contiene vocali
+     */
+    public int getPiuUsata() {
+        int index = 0;
+        for(int i = 1; i < numeroVocali; i++)
+            if(totale[i] > totale[index])
+                index = i;
+        return totale[index] > 0 ? index : TabellaVocali.NESSUNO;
+    }
+
+    /**
+     * @brief Restituisce il conteggio di una vocale nella finestra
+     *
+     * @param index slot della vocale
+     * @return numero di vocali nella finestra
+     */
+    public long getConteggio(int index) {
+        return totale[index];
+    }
+
+    /**
+     * @brief Restituisce il numero di caratteri nella finestra
+     *
+     * @return caratteri nella finestra
+     */
+    public long getCaratteri() {
+        return caratteri;
+    }
+
+    /**
+     * @brief Restituisce l'indice del blocco corrente
+     *
+     * @return indice del blocco corrente
+     */
+    public long getBlocco() {
+        return blocco;
+    }
+}
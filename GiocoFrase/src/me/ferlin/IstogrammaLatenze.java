@@ -0,0 +1,145 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Istogramma log-lineare di durate in nanosecondi, sullo stile di
+ * HdrHistogram.
+ *
+ * Ogni potenza di 2 e' divisa in {@link #SOTTO_BUCKET} bucket lineari,
+ * per cui l'errore relativo dei percentili e' al massimo del 3% circa
+ * indipendentemente dal valore, usando una quantita' fissa di memoria.
+ * Puo' essere aggiornato da piu' thread senza lock.
+ */
+public class IstogrammaLatenze {
+
+    /**
+     * Numero di bit usati per dividere ogni potenza di 2
+     */
+    private static final int BIT_SOTTO_BUCKET = 5;
+    /**
+     * Numero di bucket lineari per ogni potenza di 2
+     */
+    private static final int SOTTO_BUCKET = 1 << BIT_SOTTO_BUCKET;
+    /**
+     * Numero totale di bucket, sufficiente per ogni long positivo
+     */
+    private static final int NUMERO_BUCKET = (63 - BIT_SOTTO_BUCKET) * SOTTO_BUCKET + 2 * SOTTO_BUCKET;
+
+    /**
+     * Numero di valori in ogni bucket
+     */
+    private final AtomicLongArray bucket = new AtomicLongArray(NUMERO_BUCKET);
+    /**
+     * Numero di valori registrati
+     */
+    private final LongAdder conteggio = new LongAdder();
+    /**
+     * Somma dei valori registrati
+     */
+    private final LongAdder somma = new LongAdder();
+    /**
+     * Valore massimo registrato
+     */
+    private final LongAccumulator massimo = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @brief Registra un valore
+     *
+     * @param nanosecondi durata da registrare, i valori negativi valgono 0
+     */
+    public void registra(long nanosecondi) {
+        final long valore = Math.max(0, nanosecondi);
+        bucket.incrementAndGet(indice(valore));
+        conteggio.increment();
+        somma.add(valore);
+        massimo.accumulate(valore);
+    }
+
+    /**
+     * @brief Restituisce il bucket del valore dato
+     *
+     * @param valore valore non negativo
+     * @return indice del bucket
+     */
+    private static int indice(long valore) {
+        if(valore < 2 * SOTTO_BUCKET)
+            return (int) valore;
+
+        final int esponente = 63 - Long.numberOfLeadingZeros(valore);
+        final int mantissa = (int) (valore >>> (esponente - BIT_SOTTO_BUCKET));
+        return (esponente - BIT_SOTTO_BUCKET) * SOTTO_BUCKET + mantissa;
+    }
+
+    /**
+     * @brief Restituisce il valore piu' alto contenuto nel bucket dato
+     *
+     * @param indice indice del bucket
+     * @return valore piu' alto del bucket
+     */
+    private static long massimoBucket(int indice) {
+        if(indice < 2 * SOTTO_BUCKET)
+            return indice;
+
+        final int esponente = indice / SOTTO_BUCKET + BIT_SOTTO_BUCKET - 1;
+        final long mantissa = indice % SOTTO_BUCKET + SOTTO_BUCKET;
+        final int scala = esponente - BIT_SOTTO_BUCKET;
+        return (mantissa << scala) + (1L << scala) - 1;
+    }
+
+    /**
+     * @brief Restituisce il percentile dato
+     *
+     * @param percentile percentile da 0 a 100
+     * @return valore sotto cui si trova la percentuale data di valori
+     *         o 0 se non ci sono valori
+     */
+    public long getPercentile(double percentile) {
+        final long totale = conteggio.sum();
+        if(totale == 0)
+            return 0;
+
+        final long obiettivo = Math.max(1, (long) Math.ceil(totale * percentile / 100));
+        long visti = 0;
+        for(int i = 0; i < NUMERO_BUCKET; i++) {
+            visti += bucket.get(i);
+            if(visti >= obiettivo)
+                return Math.min(massimoBucket(i), massimo.get());
+        }
+        return massimo.get();
+    }
+
+    /**
+     * @brief Restituisce il numero di valori registrati
+     *
+     * @return numero di valori
+     */
+    public long getConteggio() {
+        return conteggio.sum();
+    }
+
+    /**
+     * @brief Restituisce la media dei valori registrati
+     *
+     * @return media dei valori o 0 se non ci sono valori
+     */
+    public double getMedia() {
+        final long totale = conteggio.sum();
+        return totale == 0 ? 0 : (double) somma.sum() / totale;
+    }
+
+    /**
+     * @brief Restituisce il valore massimo registrato
+     *
+     * @return valore massimo o 0 se non ci sono valori
+     */
+    public long getMassimo() {
+        return massimo.get();
+    }
+}
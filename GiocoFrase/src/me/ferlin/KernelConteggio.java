@@ -0,0 +1,79 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ciclo interno usato dai thread per contare le vocali di un intervallo
+ * di testo e riempire l'istogramma da aggiungere a {@link DatiCondivisi}.
+ *
+ * Sono disponibili due implementazioni:
+ * - {@link KernelVettoriale}: usa le istruzioni SIMD attraverso il modulo
+ *                             {@code jdk.incubator.vector};
+ * - {@link KernelScalare}: ciclo scalare srotolato, usato quando il modulo
+ *                          non e' disponibile o le vocali non lo permettono.
+ *
+ * @see #per(TabellaVocali)
+ */
+public interface KernelConteggio {
+
+    /**
+     * @brief Conta le vocali presenti nell'intervallo dato
+     *
+     * @param testo testo da analizzare
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    void conta(CharSequence testo, int da, int a, int[] conteggi);
+
+    /**
+     * @brief Conta le vocali presenti nell'intervallo dato
+     *        di un vettore di caratteri
+     *
+     * @param testo caratteri da analizzare
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    void conta(char[] testo, int da, int a, int[] conteggi);
+
+    /**
+     * @brief Conta le vocali ASCII presenti nell'intervallo dato
+     *        di un buffer di byte ASCII/UTF-8
+     *
+     * @see TabellaVocali#isAscii()
+     * @param testo byte da analizzare
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    void conta(ByteBuffer testo, int da, int a, int[] conteggi);
+
+    /**
+     * @brief Restituisce il kernel piu' veloce per la tabella data
+     *
+     * Il kernel vettoriale viene caricato per riflessione, in modo che
+     * il programma funzioni anche se la JVM e' stata avviata senza
+     * {@code --add-modules jdk.incubator.vector}. Puo' essere disabilitato
+     * con la proprieta' {@code giocofrase.kernel.vettoriale=false}.
+     * @param tabella tabella delle vocali da contare
+     * @return kernel vettoriale se disponibile, altrimenti scalare
+     */
+    static KernelConteggio per(TabellaVocali tabella) {
+        if(Configurazione.getBoolean("kernel.vettoriale", true)
+                && tabella.isSoloLettereAscii()) {
+            try {
+                return (KernelConteggio) Class.forName("me.ferlin.KernelVettoriale")
+                        .getConstructor(TabellaVocali.class)
+                        .newInstance(tabella);
+            } catch(ReflectiveOperationException | LinkageError ex) {
+                // Modulo jdk.incubator.vector non disponibile
+            }
+        }
+        return new KernelScalare(tabella);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Kernel di conteggio scalare.
+ *
+ * Il ciclo e' srotolato di 4 caratteri e non ha salti: i caratteri che
+ * non sono vocali vengono contati in uno slot di scarto, per cui l'unico
+ * confronto rimasto (quello sulla lunghezza della tabella) viene
+ * compilato in una mossa condizionale.
+ */
+public final class KernelScalare implements KernelConteggio {
+
+    /**
+     * Numero di caratteri copiati alla volta da una {@link CharSequence}
+     */
+    private static final int BLOCCO = 4096;
+
+    /**
+     * Slot di ogni carattere (vedi {@link TabellaVocali#getSlot(char)})
+     */
+    private final short[] slots;
+    /**
+     * Slot di ogni byte senza segno
+     */
+    private final int[] slotsByte;
+    /**
+     * Numero di vocali contate
+     */
+    private final int numeroVocali;
+
+    /**
+     * @brief Costruisce il kernel per la tabella data
+     *
+     * @param tabella tabella delle vocali da contare
+     */
+    public KernelScalare(TabellaVocali tabella) {
+        this.numeroVocali = tabella.getNumeroVocali();
+        this.slots = new short[tabella.getLunghezza()];
+        this.slotsByte = new int[256];
+
+        for(int c = 0; c < slots.length; c++)
+            slots[c] = (short) tabella.getSlot((char) c);
+        for(int b = 0; b < slotsByte.length; b++)
+            slotsByte[b] = b < 128 ? tabella.getSlot((char) b) : TabellaVocali.NESSUNO;
+    }
+
+    @Override
+    public void conta(CharSequence testo, int da, int a, int[] conteggi) {
+        if(testo instanceof String) {
+            final String s = (String) testo;
+            final char[] blocco = new char[Math.min(BLOCCO, a - da)];
+
+            for(int i = da; i < a; i += blocco.length) {
+                final int fine = Math.min(a, i + blocco.length);
+                s.getChars(i, fine, blocco, 0);
+                conta(blocco, 0, fine - i, conteggi);
+            }
+            return;
+        }
+
+        final int[] locali = new int[numeroVocali + 1];
+        for(int i = da; i < a; i++)
+            locali[slot(testo.charAt(i)) + 1]++;
+        somma(locali, conteggi);
+    }
+
+    @Override
+    public void conta(char[] testo, int da, int a, int[] conteggi) {
+        final int[] locali = new int[numeroVocali + 1];
+
+        int i = da;
+        for(; i + 3 < a; i += 4) {
+            final int s0 = slot(testo[i]);
+            final int s1 = slot(testo[i + 1]);
+            final int s2 = slot(testo[i + 2]);
+            final int s3 = slot(testo[i + 3]);
+            locali[s0 + 1]++;
+            locali[s1 + 1]++;
+            locali[s2 + 1]++;
+            locali[s3 + 1]++;
+        }
+        for(; i < a; i++)
+            locali[slot(testo[i]) + 1]++;
+
+        somma(locali, conteggi);
+    }
+
+    @Override
+    public void conta(ByteBuffer testo, int da, int a, int[] conteggi) {
+        final int[] tab = slotsByte;
+        final int[] locali = new int[numeroVocali + 1];
+
+        int i = da;
+        for(; i + 3 < a; i += 4) {
+            final int s0 = tab[testo.get(i) & 0xFF];
+            final int s1 = tab[testo.get(i + 1) & 0xFF];
+            final int s2 = tab[testo.get(i + 2) & 0xFF];
+            final int s3 = tab[testo.get(i + 3) & 0xFF];
+            locali[s0 + 1]++;
+            locali[s1 + 1]++;
+            locali[s2 + 1]++;
+            locali[s3 + 1]++;
+        }
+        for(; i < a; i++)
+            locali[tab[testo.get(i) & 0xFF] + 1]++;
+
+        somma(locali, conteggi);
+    }
+
+    /**
+     * @brief Restituisce lo slot del carattere dato
+     *
+     * @param c carattere da cercare
+     * @return slot della vocale o {@link TabellaVocali#NESSUNO}
+     */
+    private int slot(char c) {
+        return c < slots.length ? slots[c] : TabellaVocali.NESSUNO;
+    }
+
+    /**
+     * @brief Somma i conteggi locali (senza lo slot di scarto) all'istogramma
+     *
+     * @param locali conteggi locali, con lo scarto in posizione 0
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    private void somma(int[] locali, int[] conteggi) {
+        for(int s = 0; s < numeroVocali; s++)
+            conteggi[s] += locali[s + 1];
+    }
+}
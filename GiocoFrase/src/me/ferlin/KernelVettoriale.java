@@ -0,0 +1,195 @@
+/**
+ * @author Francesco Ferlin
+ * @version 2.0
+ */
+package me.ferlin;
+
+import java.nio.ByteBuffer;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel di conteggio SIMD basato su {@code jdk.incubator.vector}.
+ *
+ * Ogni iterazione carica tanti caratteri quanti ne contiene un registro
+ * vettoriale (da 8 a 32 caratteri o da 16 a 64 byte a seconda della CPU),
+ * li porta in lower-case con un OR di 0x20 e li confronta con ogni vocale,
+ * contando i risultati con un popcount della maschera.
+ *
+ * L'OR di 0x20 e' corretto solo per le lettere ASCII, per cui il kernel
+ * puo' essere usato solo se i caratteri ASCII della tabella sono lettere
+ * (vedi {@link TabellaVocali#isSoloLettereAscii()}). Se la tabella contiene
+ * anche caratteri non ASCII (ad esempio le vocali accentate), i vettori che
+ * contengono almeno un carattere non ASCII vengono ricontrollati con la
+ * tabella solo per quei caratteri. Questa classe deve essere
+ * caricata solo attraverso {@link KernelConteggio#per(TabellaVocali)}.
+ */
+public final class KernelVettoriale implements KernelConteggio {
+
+    /**
+     * Specie dei vettori di caratteri
+     */
+    private static final VectorSpecies<Short> SPECIE_CHAR = ShortVector.SPECIES_PREFERRED;
+    /**
+     * Specie dei vettori di byte
+     */
+    private static final VectorSpecies<Byte> SPECIE_BYTE = ByteVector.SPECIES_PREFERRED;
+    /**
+     * Bit che distingue le lettere ASCII minuscole dalle maiuscole
+     */
+    private static final int BIT_MINUSCOLA = 0x20;
+    /**
+     * Numero di elementi copiati alla volta da una {@link CharSequence}
+     * o da un {@link ByteBuffer} senza array
+     */
+    private static final int BLOCCO = 4096;
+
+    /**
+     * Tabella delle vocali da contare
+     */
+    private final TabellaVocali tabella;
+    /**
+     * Vocali minuscole ASCII della tabella
+     */
+    private final char[] vocali;
+    /**
+     * Slot di ogni vocale in {@link #vocali}
+     */
+    private final int[] slotVocali;
+    /**
+     * Indica se la tabella contiene caratteri non ASCII
+     */
+    private final boolean nonAscii;
+    /**
+     * Kernel usato per le code che non riempiono un vettore
+     */
+    private final KernelScalare scalare;
+
+    /**
+     * @brief Costruisce il kernel per la tabella data
+     *
+     * @param tabella tabella delle vocali da contare
+     * @throws RuntimeException se la tabella non e' supportata
+     */
+    public KernelVettoriale(TabellaVocali tabella) {
+        if(!tabella.isSoloLettereAscii())
+            throw new RuntimeException("La tabella non e\' supportata dal kernel vettoriale.");
+
+        int ascii = 0;
+        for(int i = 0; i < tabella.getNumeroVocali(); i++)
+            if(tabella.getVocale(i) < 128)
+                ascii++;
+
+        this.tabella = tabella;
+        this.vocali = new char[ascii];
+        this.slotVocali = new int[ascii];
+        for(int i = 0, j = 0; i < tabella.getNumeroVocali(); i++) {
+            if(tabella.getVocale(i) < 128) {
+                vocali[j] = tabella.getVocale(i);
+                slotVocali[j++] = i;
+            }
+        }
+        this.nonAscii = !tabella.isAscii();
+        this.scalare = new KernelScalare(tabella);
+    }
+
+    @Override
+    public void conta(CharSequence testo, int da, int a, int[] conteggi) {
+        if(!(testo instanceof String)) {
+            scalare.conta(testo, da, a, conteggi);
+            return;
+        }
+
+        final String s = (String) testo;
+        final char[] blocco = new char[Math.min(BLOCCO, a - da)];
+
+        for(int i = da; i < a; i += blocco.length) {
+            final int fine = Math.min(a, i + blocco.length);
+            s.getChars(i, fine, blocco, 0);
+            conta(blocco, 0, fine - i, conteggi);
+        }
+    }
+
+    @Override
+    public void conta(char[] testo, int da, int a, int[] conteggi) {
+        final int passo = SPECIE_CHAR.length();
+        final int limite = da + SPECIE_CHAR.loopBound(a - da);
+
+        int i = da;
+        for(; i < limite; i += passo) {
+            final ShortVector v = ShortVector
+                    .fromCharArray(SPECIE_CHAR, testo, i)
+                    .or((short) BIT_MINUSCOLA);
+
+            for(int s = 0; s < vocali.length; s++)
+                conteggi[slotVocali[s]] += v.eq((short) vocali[s]).trueCount();
+
+            if(nonAscii && v.compare(VectorOperators.UNSIGNED_GE, (short) 128).anyTrue())
+                contaNonAscii(testo, i, i + passo, conteggi);
+        }
+
+        scalare.conta(testo, i, a, conteggi);
+    }
+
+    @Override
+    public void conta(ByteBuffer testo, int da, int a, int[] conteggi) {
+        if(testo.hasArray()) {
+            final int offset = testo.arrayOffset();
+            conta(testo.array(), offset + da, offset + a, conteggi);
+            return;
+        }
+
+        final byte[] blocco = new byte[Math.min(BLOCCO, a - da)];
+        for(int i = da; i < a; i += blocco.length) {
+            final int lunghezza = Math.min(blocco.length, a - i);
+            testo.get(i, blocco, 0, lunghezza);
+            conta(blocco, 0, lunghezza, conteggi);
+        }
+    }
+
+    /**
+     * @brief Conta solo le vocali non ASCII presenti nell'intervallo dato
+     *
+     * @param testo caratteri da analizzare
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    private void contaNonAscii(char[] testo, int da, int a, int[] conteggi) {
+        for(int i = da; i < a; i++) {
+            if(testo[i] >= 128) {
+                final int slot = tabella.getSlot(testo[i]);
+                if(slot != TabellaVocali.NESSUNO)
+                    conteggi[slot]++;
+            }
+        }
+    }
+
+    /**
+     * @brief Conta le vocali ASCII presenti nell'intervallo dato
+     *        di un vettore di byte
+     *
+     * @param testo byte da analizzare
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    private void conta(byte[] testo, int da, int a, int[] conteggi) {
+        final int passo = SPECIE_BYTE.length();
+        final int limite = da + SPECIE_BYTE.loopBound(a - da);
+
+        int i = da;
+        for(; i < limite; i += passo) {
+            final ByteVector v = ByteVector
+                    .fromArray(SPECIE_BYTE, testo, i)
+                    .or((byte) BIT_MINUSCOLA);
+
+            for(int s = 0; s < vocali.length; s++)
+                conteggi[slotVocali[s]] += v.eq((byte) vocali[s]).trueCount();
+        }
+
+        scalare.conta(ByteBuffer.wrap(testo), i, a, conteggi);
+    }
+}
@@ -1,150 +1,775 @@
-/**
- * @author Francesco Ferlin
- * @version 4.0
- */
-package me.ferlin;
-
-import java.util.Scanner;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
-/**
- * Classe dell'entry point che contiene le istruzioni principali del programma.
- * 
- * Il programma è il seguente:
- *      Programma con 5 thread che cercano nella stessa frase memorizzata 
- *      come costante di classe una delle 5 vocali visualizzando la vocale 
- *      ogni volta che viene trovata. Ogni thread cerca una e una sola vocale.
- * 
- *      Ogni thread accetta due possibili opzioni:
- *      - Random Delay: se, dopo il controllo di ogni lettera, utilizzare
- *                      un delay randomico;
- *      - Yield: se, dopo il controllo di ogni lettera, 
- *               richiamare {@link Thread#yield()};
- * 
- *     L'utente, dopo aver digitato la frase, ha 10 secondi per indovinare
- *     la vocale presente più volte.
- */
-public final class Main {
-    private static final char[] VOCALI = new char[] {'a', 'e', 'i', 'o', 'u'};
-    
-    /**
-     * @brief Costruttore privato per prevenire l'istanziamento della classe
-     */
-    private Main() {}
-    
-    
-    /**
-     * @brief Entry point, esegue la logica principale del programma
-     * 
-     * Programma con 5 thread che cercano nella stessa frase memorizzata 
-     * come costante di classe una delle 5 vocali visualizzando la vocale 
-     * ogni volta che viene trovata. Ogni thread cerca una e una sola vocale.
-     * 
-     * Ogni thread accetta due possibili opzioni:
-     * - Random Delay: se, dopo il controllo di ogni lettera, utilizzare
-     *                 un delay randomico;
-     * - Yield: se, dopo il controllo di ogni lettera, 
-     *          richiamare {@link Thread#yield()};
-     * 
-     * L'utente, dopo aver digitato la frase, ha 10 secondi per indovinare
-     * la vocale presente più volte.
-     * 
-     * @param args parametri passati da command line
-     */
-    public static void main(String[] args) {
-        final Scanner sc = new Scanner(System.in);
-        final AsyncScanner asyncSc = new AsyncScanner(System.in);
-        
-        boolean running = true;
-        
-        DatiCondivisi datiCondivisi;
-        Schermo schermo;
-        
-        // Crea i runnables
-        
-        final CercaVocaleRunnable[] runnablesVocali = 
-                new CercaVocaleRunnable[VOCALI.length];
-        
-        for(int i = 0; i < runnablesVocali.length; i++) {
-            final char vocale = VOCALI[i];
-            
-            runnablesVocali[i] = new CercaVocaleRunnable(vocale);
-        }
-        
-        while(running) {
-
-            System.out.print("Vuoi utilizzare il delay randomico? [Y/N] ");
-            boolean delay = (sc.nextLine().toLowerCase().equals("y"));
-            System.out.print("Vuoi utilizzare lo yield? [Y/N] ");
-            boolean yield = (sc.nextLine().toLowerCase().equals("y"));
-            
-            System.out.print("Inserisci la frase in cui cercare: ");
-            final String daAnalizzare = sc.nextLine();
-            
-            try {
-                System.out.print("Hai 10 secondi per trovare la vocale più usata: ");
-                        
-                final char letteraScelta = asyncSc
-                        .nextLine()
-                        .get(10, TimeUnit.SECONDS)
-                        .charAt(0);
-
-                // Fai partire i Thread
-                System.out.println(String.format(
-                        "Cercando vocali nella frase \'%s\' (delay: %s, yield: %s)...",
-                        daAnalizzare, delay, yield
-                ));
-
-                schermo = new Schermo();
-                datiCondivisi = new DatiCondivisi(VOCALI, schermo);
-
-                final Thread[] runningThreads = new Thread[runnablesVocali.length];
-                for (int i = 0; i < runnablesVocali.length; i++) {
-                    final CercaVocaleRunnable runn = runnablesVocali[i];
-
-                    runn.setDaAnalizzare(daAnalizzare);
-                    runn.setPtrDati(datiCondivisi);
-                    runn.setUsaDelay(delay);
-                    runn.setUsaYield(yield);
-
-                    runningThreads[i] = new Thread(runn, "Thread_" + runn.getVocaleDaTrovare());
-                    runningThreads[i].start();
-                }
-
-                while(!datiCondivisi.isAllOver()) {
-                    
-                    schermo.pulisciSchermo();
-                    
-                    synchronized (schermo) {
-                        for(String s : schermo.getMessages())
-                            System.out.println(s);
-                    }
-                }
-                
-                final char mostUsed = datiCondivisi.getPiuUsata();
-                if(mostUsed == letteraScelta)
-                    System.out.println("Hai indovinato!");
-                else
-                    System.out.println("Hai perso :C");
-                System.out.println("La vocale era " + mostUsed);
-            
-            } catch(ExecutionException | InterruptedException ex) {
-                System.out.println();
-                System.out.println("Errore durante la lettura dell'input");
-                ex.printStackTrace();
-                
-            } catch(TimeoutException tookTooLong) {
-                System.out.println();
-                System.out.println("Ci hai impiegato troppo!");
-                
-            }
-
-            System.out.print("Vuoi riprovare? [Y/N] ");
-            running = (sc.nextLine().toLowerCase().equals("y"));
-        }
-        
-        System.out.println("Ci vediamo alla prossima");
-    }
-}
+/**
+ * @author Francesco Ferlin
+ * @version 4.2
+ */
+package me.ferlin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classe dell'entry point che contiene le istruzioni principali del programma.
+ * 
+ * Il programma è il seguente:
+ *      Programma con 5 thread che cercano nella stessa frase memorizzata 
+ *      come costante di classe una delle 5 vocali visualizzando la vocale 
+ *      ogni volta che viene trovata. Ogni thread cerca una e una sola vocale.
+ * 
+ *      Ogni thread accetta due possibili opzioni:
+ *      - Random Delay: se, dopo il controllo di ogni lettera, utilizzare
+ *                      un delay randomico;
+ *      - Yield: se, dopo il controllo di ogni lettera, 
+ *               richiamare {@link Thread#yield()};
+ * 
+ *     In alternativa ai 5 thread e' possibile contare tutte le vocali
+ *     in una sola passata o dividendo la frase in chunk contati in 
+ *     parallelo (vedi {@link ModalitaConteggio}). I runnable possono essere 
+ *     eseguiti su thread di piattaforma, su un pool fisso o su thread 
+ *     virtuali (vedi {@link StrategiaEsecuzione}). I caratteri contati 
+ *     sono configurabili con la proprieta' {@code giocofrase.caratteri}
+ *     e le vocali accentate vengono contate come la vocale base.
+ *     I round vengono eseguiti da un {@link ServizioAnalisi} che riutilizza
+ *     dati condivisi, schermo e runnable invece di ricrearli ogni volta.
+ * 
+ *     L'utente, dopo aver digitato la frase, ha 10 secondi per indovinare
+ *     la vocale presente più volte. Se la proprieta' {@code giocofrase.registro}
+ *     indica un file (ad esempio "risultati.giocofrase"), l'esito di ogni 
+ *     round viene salvato in quel registro a nome del giocatore 
+ *     {@code giocofrase.giocatore} (predefinito l'utente del sistema), di cui
+ *     vengono poi mostrate vittorie e serie di vittorie (vedi 
+ *     {@link RegistroRisultati}); di default nessun file viene creato.
+ *     Con l'opzione {@code --classifica [n]} il programma mostra invece 
+ *     le statistiche del registro e i primi n giocatori (predefinito 10).
+ * 
+ *     Con l'opzione {@code --stream <file|->} il programma non avvia il gioco
+ *     ma conta le vocali del file dato (o dello standard input) 
+ *     leggendolo a blocchi, mostrando i conteggi parziali durante l'analisi.
+ *     Con l'opzione {@code --mmap <file>} il file ASCII/UTF-8 viene invece 
+ *     mappato in memoria e contato in parallelo direttamente sui byte.
+ *     Con l'opzione {@code --campiona <file>} vengono letti solo dei blocchi
+ *     casuali del file, finche' la vocale piu' usata non e' separata dalle
+ *     altre con la confidenza configurata (vedi {@link ContaVocaliCampionato}).
+ *     Con l'opzione {@code --compresso <file>} il file gzip, zip o di testo
+ *     viene decompresso e contato in parallelo, senza scriverlo su disco
+ *     (vedi {@link ContaVocaliCompresso}).
+ *     Con l'opzione {@code --finestra <file|->} il testo viene letto come un
+ *     flusso senza fine e vengono mostrati i conteggi degli ultimi caratteri
+ *     o millisecondi e ogni cambio della vocale piu' usata nella finestra
+ *     (vedi {@link ContaVocaliFinestra}).
+ * 
+ *     Le metriche di tutte le modalita' sono disponibili via JMX e possono
+ *     essere scritte periodicamente (vedi {@link Metriche}). I round, i thread
+ *     e lo schermo emettono eventi JFR disabilitati di default 
+ *     (vedi {@link EventiJfr}).
+ * 
+ *     Con l'opzione {@code --batch <file|->} ogni riga del file (o dello 
+ *     standard input) e' una frase e i risultati vengono scritti senza 
+ *     interazione con l'utente (vedi {@link ElaboratoreBatch}). Opzioni:
+ *     - {@code --output <file|->}: dove scrivere i risultati (predefinito "-");
+ *     - {@code --formato json|csv}: formato dei risultati (predefinito json);
+ *     - {@code --parallelismo <n>}: frasi analizzate contemporaneamente
+ *                                   (predefinito il numero di core);
+ *     - {@code --modalita t|s|f|a|c}: modalita' di conteggio (predefinita s);
+ *     - {@code --cache}: riutilizza i conteggi delle frasi ripetute 
+ *                        (vedi {@link CacheIstogrammi}).
+ *     La cache e' disabilitata di default; la proprieta' 
+ *     {@code giocofrase.cache=true} la abilita anche nel gioco e nel server.
+ * 
+ *     Con l'opzione {@code --simula <seme> <file|->} il round con un thread
+ *     per vocale sul testo dato viene simulato in tempo virtuale, per cui 
+ *     lo stesso seme riproduce sempre lo stesso ordine dei messaggi
+ *     (vedi {@link SimulatoreScheduling}). Opzioni:
+ *     - {@code --delay} e {@code --yield}: opzioni dei thread simulati;
+ *     - {@code --messaggi}: visualizza tutti i messaggi in ordine.
+ * 
+ *     Con l'opzione {@code --server} il gioco viene offerto via TCP a molti
+ *     giocatori contemporaneamente, ognuno con i propri round 
+ *     (vedi {@link ServerGioco}), salvati nello stesso registro del gioco
+ *     se e' stato configurato.
+ */
+public final class Main {
+    /**
+     * Caratteri da contare, configurabili con la proprieta' 
+     * {@code giocofrase.caratteri}; le varianti accentate vengono contate
+     * come la lettera base a meno che {@code giocofrase.accenti} non sia false
+     */
+    private static final char[] VOCALI = Configurazione.getString("caratteri", "aeiou").toCharArray();
+    /**
+     * Numero di volte al secondo in cui vengono visualizzati i nuovi messaggi,
+     * configurabile con la proprieta' {@code giocofrase.schermo.fps}
+     */
+    private static final int FPS = Configurazione.getInt("schermo.fps", 30);
+    /**
+     * Registro in cui vengono salvati i round, configurabile con la 
+     * proprieta' {@code giocofrase.registro}, o null se i round
+     * non vengono salvati
+     */
+    private static final String REGISTRO = Configurazione.getString("registro", null);
+    
+    /**
+     * @brief Costruttore privato per prevenire l'istanziamento della classe
+     */
+    private Main() {}
+    
+    
+    /**
+     * @brief Entry point, esegue la logica principale del programma
+     * 
+     * Programma con 5 thread che cercano nella stessa frase memorizzata 
+     * come costante di classe una delle 5 vocali visualizzando la vocale 
+     * ogni volta che viene trovata. Ogni thread cerca una e una sola vocale.
+     * 
+     * Ogni thread accetta due possibili opzioni:
+     * - Random Delay: se, dopo il controllo di ogni lettera, utilizzare
+     *                 un delay randomico;
+     * - Yield: se, dopo il controllo di ogni lettera, 
+     *          richiamare {@link Thread#yield()};
+     * 
+     * L'utente, dopo aver digitato la frase, ha 10 secondi per indovinare
+     * la vocale presente più volte.
+     * 
+     * @param args parametri passati da command line
+     */
+    public static void main(String[] args) {
+        Metriche.registraJmx();
+        Metriche.avviaDump();
+        
+        if(args.length > 0 && args[0].equals("--stream")) {
+            analizzaStream(args.length > 1 ? args[1] : "-");
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--finestra")) {
+            analizzaFinestra(args.length > 1 ? args[1] : "-");
+            return;
+        }
+        if(args.length > 1 && args[0].equals("--mmap")) {
+            analizzaMappato(args[1]);
+            return;
+        }
+        if(args.length > 1 && args[0].equals("--compresso")) {
+            analizzaCompresso(args[1]);
+            return;
+        }
+        if(args.length > 1 && args[0].equals("--campiona")) {
+            analizzaCampionato(args[1]);
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--server")) {
+            avviaServer();
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--batch")) {
+            analizzaBatch(args);
+            return;
+        }
+        if(args.length > 1 && args[0].equals("--simula")) {
+            simula(args);
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--classifica")) {
+            final int numero = args.length > 1 ? interoPositivo(args[1]) : 10;
+            if(numero > 0)
+                mostraClassifica(numero);
+            else
+                System.err.println("Il numero di giocatori deve essere un intero positivo: " + args[1]);
+            return;
+        }
+        
+        final AsyncScanner asyncSc = new AsyncScanner(System.in);
+        
+        boolean running = true;
+        
+        // La tabella, la cache e il servizio vengono riutilizzati in tutti i round
+        final TabellaVocali tabella = TabellaVocali.configurata(VOCALI);
+        final ServizioAnalisi servizio = new ServizioAnalisi(tabella, CacheIstogrammi.configurata(tabella));
+        final RegistroRisultati registro = apriRegistro(tabella);
+        final String giocatore = Configurazione.getString("giocatore", System.getProperty("user.name"));
+        
+        while(running) {
+
+            System.out.print("Vuoi utilizzare il delay randomico? [Y/N] ");
+            boolean delay = (leggiRiga(asyncSc).toLowerCase().equals("y"));
+            System.out.print("Vuoi utilizzare lo yield? [Y/N] ");
+            boolean yield = (leggiRiga(asyncSc).toLowerCase().equals("y"));
+            System.out.print("Modalita\' di conteggio? [" + ModalitaConteggio.getOpzioni() + "] ");
+            final ModalitaConteggio modalita = ModalitaConteggio.daScelta(leggiRiga(asyncSc));
+            System.out.print("Strategia di esecuzione? [" + StrategiaEsecuzione.getOpzioni() + "] ");
+            final StrategiaEsecuzione strategia = StrategiaEsecuzione.daScelta(leggiRiga(asyncSc));
+            
+            System.out.print("Inserisci la frase in cui cercare: ");
+            final String daAnalizzare = leggiRiga(asyncSc);
+            
+            System.out.print("Hai 10 secondi per trovare la vocale più usata: ");
+            final Future<String> risposta = asyncSc.nextLine();
+            
+            final EventiJfr.Round evento = new EventiJfr.Round();
+            evento.lunghezzaFrase = daAnalizzare.length();
+            evento.delay = delay;
+            evento.yield = yield;
+            evento.modalita = modalita.name();
+            evento.strategia = strategia.name();
+            
+            RegistroRisultati.Esito esito;
+            char letteraScelta = '\0';
+            ServizioAnalisi.Risultato risultato = null;
+            try {
+                letteraScelta = risposta
+                        .get(10, TimeUnit.SECONDS)
+                        .charAt(0);
+
+                // Fai partire i Thread, i cui messaggi restano nello schermo
+                // finche' non vengono visualizzati
+                evento.begin();
+
+                try (ServizioAnalisi.Round round = servizio.avvia(new ServizioAnalisi.Richiesta(
+                        daAnalizzare, modalita, strategia, delay, yield))) {
+                    round.getSchermo().pulisciSchermo();
+                    System.out.println(String.format(
+                            "Cercando vocali nella frase \'%s\' (delay: %s, yield: %s, modalita\': %s, esecuzione: %s)...",
+                            daAnalizzare, delay, yield, modalita, strategia
+                    ));
+                    visualizza(round.getDatiCondivisi(), round.getSchermo(), false);
+                    risultato = round.getRisultato().join();
+                }
+                evento.end();
+                
+                final char mostUsed = risultato.getPiuUsata();
+                final boolean indovinato = tabella.getSlot(mostUsed) == tabella.getSlot(letteraScelta);
+                if(indovinato)
+                    System.out.println("Hai indovinato!");
+                else
+                    System.out.println("Hai perso :C");
+                evento.vocaleScelta = letteraScelta;
+                evento.piuUsata = mostUsed;
+                evento.esito = indovinato ? "indovinato" : "perso";
+                esito = indovinato ? RegistroRisultati.Esito.VINTO : RegistroRisultati.Esito.PERSO;
+                System.out.println("La vocale era " + mostUsed);
+                if(risultato.getCaratteriAllaDecisione() >= 0)
+                    System.out.println(String.format(
+                            "Vocale decisa dopo %d caratteri su %d (%.1f%%)",
+                            risultato.getCaratteriAllaDecisione(), daAnalizzare.length(),
+                            100.0 * risultato.getCaratteriAllaDecisione() / daAnalizzare.length()
+                    ));
+                if(risultato.getStima() != null)
+                    System.out.println("Frequenze: " + risultato.getStima());
+            
+            } catch(ExecutionException | InterruptedException ex) {
+                System.out.println();
+                System.out.println("Errore durante la lettura dell'input");
+                ex.printStackTrace();
+                evento.esito = "errore";
+                esito = RegistroRisultati.Esito.ERRORE;
+                
+            } catch(CompletionException ex) {
+                // Un runnable del round ha lanciato un'eccezione
+                System.out.println();
+                System.out.println("Errore durante il conteggio delle vocali");
+                ex.getCause().printStackTrace();
+                evento.esito = "errore";
+                esito = RegistroRisultati.Esito.ERRORE;
+                
+            } catch(TimeoutException tookTooLong) {
+                // La linea digitata in ritardo passa alla prossima domanda
+                risposta.cancel(false);
+                System.out.println();
+                System.out.println("Ci hai impiegato troppo!");
+                evento.esito = "tempo scaduto";
+                esito = RegistroRisultati.Esito.TEMPO;
+                
+            }
+            evento.commit();
+            
+            if(registro != null)
+                salvaRound(registro, esito, giocatore, daAnalizzare, letteraScelta, risultato);
+
+            System.out.print("Vuoi riprovare? [Y/N] ");
+            running = (leggiRiga(asyncSc).toLowerCase().equals("y"));
+        }
+        
+        servizio.close();
+        if(registro != null)
+            chiudiRegistro(registro);
+        System.out.println("Ci vediamo alla prossima");
+    }
+    
+    /**
+     * @brief Apre il registro dei risultati
+     * 
+     * @see RegistroRisultati
+     * @param tabella tabella delle vocali contate nei round
+     * @return registro aperto o null se non e' stato configurato o non puo'
+     *         essere aperto, nel qual caso i round non vengono salvati
+     */
+    private static RegistroRisultati apriRegistro(TabellaVocali tabella) {
+        if(REGISTRO == null)
+            return null;
+        
+        try {
+            return RegistroRisultati.apri(Paths.get(REGISTRO), tabella);
+        } catch(IOException | RuntimeException ex) {
+            System.out.println("Impossibile aprire il registro " + REGISTRO + ", i round non verranno salvati");
+            System.out.println(ex.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * @brief Rende persistenti i round salvati e chiude il registro
+     * 
+     * @param registro registro da chiudere
+     */
+    private static void chiudiRegistro(RegistroRisultati registro) {
+        try {
+            registro.close();
+        } catch(IOException ex) {
+            System.out.println("Impossibile chiudere il registro " + registro.getPercorso());
+            ex.printStackTrace();
+        }
+    }
+    
+    /**
+     * @brief Salva un round nel registro e mostra le statistiche del giocatore
+     * 
+     * Il round viene reso persistente prima di mostrare le statistiche.
+     * @param registro registro in cui salvare il round
+     * @param esito esito del round
+     * @param giocatore nome del giocatore
+     * @param frase frase del round
+     * @param scelta vocale scelta o 0 se non e' stata scelta
+     * @param risultato risultato del conteggio o null se la frase
+     *                  non e' stata contata
+     */
+    private static void salvaRound(RegistroRisultati registro, RegistroRisultati.Esito esito,
+                                   String giocatore, String frase, char scelta,
+                                   ServizioAnalisi.Risultato risultato) {
+        try {
+            registro.attendi(registro.registra(esito, giocatore, frase, scelta, risultato));
+            System.out.println(registro.getGiocatore(giocatore));
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch(RuntimeException ex) {
+            System.out.println("Impossibile salvare il round nel registro");
+            ex.printStackTrace();
+        }
+    }
+    
+    /**
+     * @brief Converte il valore di un'opzione in un intero positivo
+     * 
+     * @param valore valore digitato dall'utente
+     * @return intero positivo o -1 se il valore non e' un intero positivo
+     */
+    private static int interoPositivo(String valore) {
+        try {
+            final int numero = Integer.parseInt(valore.trim());
+            return numero > 0 ? numero : -1;
+        } catch(NumberFormatException ex) {
+            return -1;
+        }
+    }
+    
+    /**
+     * @brief Mostra le statistiche del registro e i primi giocatori
+     * 
+     * Le statistiche vengono ricostruite all'apertura del registro,
+     * per cui non serve nessun'altra lettura del file.
+     * @param numero numero massimo di giocatori da mostrare
+     */
+    private static void mostraClassifica(int numero) {
+        if(REGISTRO == null) {
+            System.out.println("Nessun registro configurato: usare -Dgiocofrase.registro=<file>");
+            return;
+        }
+        
+        final RegistroRisultati registro = apriRegistro(TabellaVocali.configurata(VOCALI));
+        if(registro == null)
+            return;
+        
+        final RegistroRisultati.Statistiche statistiche = registro.getStatistiche();
+        System.out.println(String.format(
+                "Round: %d (vinti %d, persi %d, scaduti %d, errori %d), giocatori: %d, vittorie: %.1f%%",
+                statistiche.getRound(),
+                statistiche.getRound(RegistroRisultati.Esito.VINTO),
+                statistiche.getRound(RegistroRisultati.Esito.PERSO),
+                statistiche.getRound(RegistroRisultati.Esito.TEMPO),
+                statistiche.getRound(RegistroRisultati.Esito.ERRORE),
+                statistiche.getGiocatori(), statistiche.getPercentualeVittorie()
+        ));
+        System.out.println("Frequenze delle vocali: " + statistiche);
+        
+        final List<RegistroRisultati.Giocatore> classifica = registro.getClassifica(numero);
+        for(int i = 0; i < classifica.size(); i++)
+            System.out.println((i + 1) + ". " + classifica.get(i));
+        chiudiRegistro(registro);
+    }
+    
+    /**
+     * @brief Legge una linea non vuota, aspettando finche' non viene digitata
+     * 
+     * @param asyncSc scanner da cui leggere
+     * @return linea letta
+     * @throws RuntimeException se l'input e' terminato o non e' leggibile
+     */
+    private static String leggiRiga(AsyncScanner asyncSc) {
+        try {
+            return asyncSc.nextLine().get();
+        } catch(ExecutionException ex) {
+            throw new RuntimeException("Impossibile leggere l'input", ex.getCause());
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Lettura dell'input interrotta", ex);
+        }
+    }
+    
+    /**
+     * @brief Visualizza i nuovi messaggi finche' tutti i thread non sono terminati
+     * 
+     * I messaggi vengono visualizzati {@link #FPS} volte al secondo.
+     * I conteggi parziali vengono letti da un'istantanea coerente e
+     * visualizzati solo se sono cambiati dal frame precedente.
+     * @param datiCondivisi dati condivisi con i thread
+     * @param schermo schermo su cui scrivono i thread
+     * @param conteggiParziali se visualizzare ad ogni frame anche i conteggi
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    private static void visualizza(DatiCondivisi datiCondivisi, 
+                                   Schermo schermo,
+                                   boolean conteggiParziali) throws InterruptedException {
+        final long periodoFrame = TimeUnit.SECONDS.toNanos(1) / FPS;
+        final Metriche metriche = Metriche.get();
+        final long inizio = System.nanoTime();
+        long versione = 0;
+        boolean finito;
+        do {
+            finito = datiCondivisi.attendiFine(periodoFrame, TimeUnit.NANOSECONDS);
+            metriche.registraFrame(schermo.getDimensioneCoda());
+            schermo.svuota(System.out::println);
+            
+            if(conteggiParziali && !finito) {
+                final DatiCondivisi.Istantanea istantanea = datiCondivisi.getIstantanea();
+                if(istantanea.getVersione() != versione) {
+                    versione = istantanea.getVersione();
+                    System.out.println(String.format(
+                            "Conteggi parziali: %s (%d caratteri)",
+                            istantanea, istantanea.getCaratteri()
+                    ));
+                }
+            }
+        } while(!finito);
+        metriche.registraVisualizzazione(System.nanoTime() - inizio);
+    }
+    
+    /**
+     * @brief Conta le vocali del file dato senza caricarlo in memoria
+     * 
+     * @see ContaVocaliStream
+     * @param percorso percorso del file o "-" per lo standard input
+     */
+    private static void analizzaStream(String percorso) {
+        final Schermo schermo = new Schermo();
+        final DatiCondivisi datiCondivisi = new DatiCondivisi(VOCALI, schermo);
+        
+        try (ReadableByteChannel sorgente = ContaVocaliStream.apri(percorso)) {
+            final ContaVocaliStream runn = new ContaVocaliStream(sorgente);
+            runn.setPtrDati(datiCondivisi);
+            
+            eseguiAnalisi(runn, "Thread_stream", datiCondivisi, schermo, percorso);
+            
+        } catch(IOException ex) {
+            System.out.println("Impossibile leggere " + percorso);
+            ex.printStackTrace();
+        }
+    }
+    
+    /**
+     * @brief Conta le vocali del file dato mappandolo in memoria
+     * 
+     * @see ContaVocaliMappato
+     * @param percorso percorso del file
+     */
+    private static void analizzaMappato(String percorso) {
+        final Schermo schermo = new Schermo();
+        final DatiCondivisi datiCondivisi = new DatiCondivisi(VOCALI, schermo);
+        
+        final ContaVocaliMappato runn = new ContaVocaliMappato(Paths.get(percorso));
+        runn.setPtrDati(datiCondivisi);
+        
+        eseguiAnalisi(runn, "Thread_mmap", datiCondivisi, schermo, percorso);
+    }
+    
+    /**
+     * @brief Stima la vocale piu' usata del file dato leggendone 
+     *        solo dei blocchi casuali
+     * 
+     * @see ContaVocaliCampionato
+     * @param percorso percorso del file
+     */
+    private static void analizzaCampionato(String percorso) {
+        final Schermo schermo = new Schermo();
+        final DatiCondivisi datiCondivisi = new DatiCondivisi(VOCALI, schermo);
+        
+        final ContaVocaliCampionato runn = new ContaVocaliCampionato();
+        runn.setPercorso(Paths.get(percorso));
+        runn.setPtrDati(datiCondivisi);
+        
+        eseguiAnalisi(runn, "Thread_campionato", datiCondivisi, schermo, percorso);
+    }
+    
+    /**
+     * @brief Decomprime e conta le vocali del file gzip o zip dato
+     * 
+     * @see ContaVocaliCompresso
+     * @param percorso percorso del file
+     */
+    private static void analizzaCompresso(String percorso) {
+        final Schermo schermo = new Schermo();
+        final DatiCondivisi datiCondivisi = new DatiCondivisi(VOCALI, schermo);
+        
+        final ContaVocaliCompresso runn = new ContaVocaliCompresso(Paths.get(percorso));
+        runn.setPtrDati(datiCondivisi);
+        
+        eseguiAnalisi(runn, "Thread_compresso", datiCondivisi, schermo, percorso);
+    }
+    
+    /**
+     * @brief Conta le vocali in una finestra scorrevole del file dato
+     * 
+     * Ogni cambio della vocale piu' usata nella finestra viene scritto
+     * appena avviene.
+     * @see ContaVocaliFinestra
+     * @param percorso percorso del file o "-" per lo standard input
+     */
+    private static void analizzaFinestra(String percorso) {
+        final Schermo schermo = new Schermo();
+        final DatiCondivisi datiCondivisi = new DatiCondivisi(VOCALI, schermo);
+        
+        try (ReadableByteChannel sorgente = ContaVocaliStream.apri(percorso)) {
+            final ContaVocaliFinestra runn = new ContaVocaliFinestra(sorgente);
+            runn.setPtrDati(datiCondivisi);
+            runn.setAscoltatore((precedente, piuUsata, posizione) -> System.out.println(
+                    piuUsata == '\0' ?
+                    "Nessuna vocale nella finestra al carattere " + posizione :
+                    "La vocale più usata nella finestra è ora " + piuUsata + " al carattere " + posizione
+            ));
+            
+            eseguiAnalisi(runn, "Thread_finestra", datiCondivisi, schermo, percorso);
+            
+        } catch(IOException ex) {
+            System.out.println("Impossibile leggere " + percorso);
+            ex.printStackTrace();
+        }
+    }
+    
+    /**
+     * @brief Avvia il server di gioco e lo esegue fino alla terminazione
+     *        del programma
+     * 
+     * @see ServerGioco
+     */
+    private static void avviaServer() {
+        final TabellaVocali tabella = TabellaVocali.configurata(VOCALI);
+        
+        final RegistroRisultati registro = apriRegistro(tabella);
+        
+        try (ServizioAnalisi servizio = new ServizioAnalisi(tabella, CacheIstogrammi.configurata(tabella));
+             ServerGioco server = new ServerGioco(servizio)) {
+            server.setRegistro(registro);
+            System.out.println("Server in ascolto sulla porta " + server.getPorta());
+            server.run();
+        } catch(IOException ex) {
+            System.out.println("Impossibile avviare il server");
+            ex.printStackTrace();
+        } finally {
+            if(registro != null)
+                chiudiRegistro(registro);
+        }
+    }
+    
+    /**
+     * @brief Analizza tutte le frasi dell'input senza interazione con l'utente
+     * 
+     * I risultati vengono scritti nell'output scelto, mentre il numero di 
+     * frasi analizzate al secondo viene scritto sullo standard error.
+     * @see ElaboratoreBatch
+     * @param args parametri passati da command line, a partire da "--batch"
+     */
+    private static void analizzaBatch(String[] args) {
+        String input = "-";
+        String output = "-";
+        ElaboratoreBatch.Formato formato = ElaboratoreBatch.Formato.daNome(
+                Configurazione.getString("batch.formato", "json"));
+        int parallelismo = Configurazione.getInt(
+                "batch.parallelismo", Runtime.getRuntime().availableProcessors());
+        ModalitaConteggio modalita = ModalitaConteggio.PASSATA_SINGOLA;
+        CacheIstogrammi cache = CacheIstogrammi.configurata(TabellaVocali.configurata(VOCALI));
+        
+        for(int i = 1; i < args.length; i++) {
+            final String valore = i + 1 < args.length ? args[i + 1] : null;
+            switch(args[i]) {
+                case "--cache":
+                    cache = new CacheIstogrammi(TabellaVocali.configurata(VOCALI));
+                    continue;
+                case "--output":
+                    output = valore;
+                    i++;
+                    break;
+                case "--formato":
+                    formato = valore == null ? null : ElaboratoreBatch.Formato.daNome(valore);
+                    i++;
+                    break;
+                case "--parallelismo":
+                    parallelismo = valore == null ? -1 : Integer.parseInt(valore);
+                    i++;
+                    break;
+                case "--modalita":
+                    modalita = valore == null ? null : ModalitaConteggio.daScelta(valore);
+                    i++;
+                    break;
+                default:
+                    input = args[i];
+                    continue;
+            }
+            
+            if(valore == null) {
+                System.err.println("Manca il valore dell'opzione " + args[i - 1]);
+                return;
+            }
+        }
+        
+        final ElaboratoreBatch elaboratore = new ElaboratoreBatch(
+                VOCALI, modalita, parallelismo, formato, cache);
+        
+        try (BufferedReader reader = new BufferedReader(Channels.newReader(
+                     ContaVocaliStream.apri(input), StandardCharsets.UTF_8));
+             Writer writer = output.equals("-") ?
+                     new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) :
+                     Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            
+            final long inizio = System.nanoTime();
+            final long frasi = elaboratore.esegui(reader, writer);
+            final double secondi = (System.nanoTime() - inizio) / 1e9;
+            
+            System.err.println(String.format(
+                    "Analizzate %d frasi in %.3f s (%.0f frasi/s, modalita\': %s, parallelismo: %d)",
+                    frasi, secondi, frasi / secondi, modalita, parallelismo
+            ));
+            if(cache != null)
+                System.err.println(cache);
+            
+        } catch(IOException ex) {
+            System.err.println("Errore durante l'analisi di " + input);
+            ex.printStackTrace();
+        } catch(InterruptedException ex) {
+            System.err.println("Analisi interrotta");
+        }
+    }
+    
+    /**
+     * @brief Simula in tempo virtuale un round con un thread per vocale
+     * 
+     * Vengono visualizzati il numero di messaggi, la durata virtuale del round
+     * e l'impronta dell'ordine dei messaggi, che si ripete con lo stesso seme.
+     * @see SimulatoreScheduling
+     * @param args parametri passati da command line, a partire da "--simula"
+     */
+    private static void simula(String[] args) {
+        final long seme = Long.parseLong(args[1]);
+        String input = "-";
+        boolean delay = false;
+        boolean yield = false;
+        boolean messaggi = false;
+        
+        for(int i = 2; i < args.length; i++) {
+            switch(args[i]) {
+                case "--delay":
+                    delay = true;
+                    break;
+                case "--yield":
+                    yield = true;
+                    break;
+                case "--messaggi":
+                    messaggi = true;
+                    break;
+                default:
+                    input = args[i];
+                    break;
+            }
+        }
+        
+        try (ReadableByteChannel sorgente = ContaVocaliStream.apri(input)) {
+            final String testo = new String(
+                    Channels.newInputStream(sorgente).readAllBytes(), StandardCharsets.UTF_8);
+            
+            final long inizio = System.nanoTime();
+            final SimulatoreScheduling.Traccia traccia = new SimulatoreScheduling(seme)
+                    .simula(TabellaVocali.configurata(VOCALI), testo, delay, yield);
+            final double millisecondi = (System.nanoTime() - inizio) / 1e6;
+            
+            if(messaggi)
+                traccia.scrivi(System.out::println);
+            System.out.println(String.format(
+                    "Simulati %d caratteri con seme %d (delay: %s, yield: %s) in %.1f ms: "
+                            + "%d messaggi, durata virtuale %.3f ms, impronta %016x",
+                    testo.length(), seme, delay, yield, millisecondi,
+                    traccia.getNumeroMessaggi(), traccia.getDurata() / 1e6, traccia.getImpronta()
+            ));
+            
+        } catch(IOException ex) {
+            System.out.println("Impossibile leggere " + input);
+            ex.printStackTrace();
+        }
+    }
+    
+    /**
+     * @brief Esegue il runnable dato su un nuovo thread e ne visualizza
+     *        i conteggi parziali e finali
+     * 
+     * @param runn runnable che conta le vocali
+     * @param nomeThread nome del thread che esegue il runnable
+     * @param datiCondivisi dati in cui il runnable scrive i conteggi
+     * @param schermo schermo su cui scrive il runnable
+     * @param percorso percorso del file analizzato
+     */
+    private static void eseguiAnalisi(Runnable runn,
+                                      String nomeThread,
+                                      DatiCondivisi datiCondivisi,
+                                      Schermo schermo,
+                                      String percorso) {
+        try {
+            final Thread th = new Thread(runn, nomeThread);
+            th.setUncaughtExceptionHandler((t, ex) -> {
+                System.err.println("Errore durante la lettura di " + percorso);
+                ex.printStackTrace();
+            });
+            final long inizio = System.nanoTime();
+            th.start();
+            
+            visualizza(datiCondivisi, schermo, true);
+            th.join();
+            Metriche.get().registraRound(System.nanoTime() - inizio);
+            
+            final DatiCondivisi.Istantanea istantanea = datiCondivisi.getIstantanea();
+            System.out.println("Conteggi finali: " + istantanea);
+            System.out.println("La vocale più usata è " + istantanea.getPiuUsata());
+            if(datiCondivisi.getStima() != null)
+                System.out.println("Frequenze: " + datiCondivisi.getStima());
+            
+        } catch(InterruptedException ex) {
+            System.out.println("Analisi interrotta");
+        }
+    }
+}
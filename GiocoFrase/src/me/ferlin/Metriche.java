@@ -0,0 +1,506 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metriche globali del programma: caratteri analizzati da ogni thread,
+ * tempo passato in sleep e yield, code e conflitti degli schermi,
+ * frame visualizzati, durata dei round e sessioni dei server.
+ *
+ * I runnable registrano i propri valori una sola volta alla fine
+ * dell'analisi e gli schermi ad ogni {@link Schermo#svuota}, per cui
+ * le metriche non aggiungono lavoro per ogni carattere analizzato.
+ * Le metriche sono disponibili via JMX (vedi {@link MetricheMXBean}) e
+ * possono essere scritte periodicamente in formato testo o JSON
+ * (vedi {@link #avviaDump()}).
+ */
+public final class Metriche implements MetricheMXBean {
+
+    /**
+     * Nome con cui le metriche vengono registrate via JMX
+     */
+    public static final String NOME_JMX = "me.ferlin:type=Metriche";
+
+    /**
+     * Unica istanza delle metriche
+     */
+    private static final Metriche ISTANZA = new Metriche();
+
+    /**
+     * Numero di thread oltre il quale i lavori dei thread terminati
+     * vengono rimossi da {@link #lavori}
+     */
+    private static final int MAX_THREAD = 1024;
+
+    /**
+     * Caratteri e tempo di analisi di un thread
+     */
+    private static final class Lavoro {
+        /**
+         * Thread che ha svolto il lavoro, debole per non trattenerlo
+         * dopo la fine
+         */
+        private final WeakReference<Thread> thread;
+        /**
+         * Nome del thread all'ultima registrazione
+         */
+        private volatile String nome;
+        /**
+         * Caratteri analizzati dal thread
+         */
+        private final LongAdder caratteri = new LongAdder();
+        /**
+         * Tempo passato dal thread nei runnable
+         */
+        private final LongAdder nanosecondi = new LongAdder();
+
+        /**
+         * @brief Costruisce il lavoro del thread dato
+         *
+         * @param thread thread che svolge il lavoro
+         */
+        private Lavoro(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+            this.nome = thread.getName();
+        }
+
+        /**
+         * @brief Restituisce se il thread e' terminato
+         *
+         * @return true se il thread non e' piu' vivo
+         */
+        private boolean isTerminato() {
+            final Thread th = thread.get();
+            return th == null || !th.isAlive();
+        }
+    }
+
+    /**
+     * Caratteri e tempo di analisi di ogni thread, per id del thread.
+     *
+     * Il nome non basta come chiave: i thread virtuali non hanno nome e
+     * i thread creati ad ogni round possono avere lo stesso nome.
+     */
+    private final Map<Long, Lavoro> lavori = new ConcurrentHashMap<>();
+    /**
+     * Caratteri analizzati da tutti i thread
+     */
+    private final LongAdder caratteri = new LongAdder();
+    /**
+     * Tempo passato in {@link Thread#sleep(long)}
+     */
+    private final LongAdder nanosecondiSleep = new LongAdder();
+    /**
+     * Tempo passato in {@link Thread#yield()}
+     */
+    private final LongAdder nanosecondiYield = new LongAdder();
+    /**
+     * Eventi visualizzati dagli schermi
+     */
+    private final LongAdder eventiSchermo = new LongAdder();
+    /**
+     * Tentativi di push ripetuti per conflitti tra thread
+     */
+    private final LongAdder conflittiSchermo = new LongAdder();
+    /**
+     * Attese dei thread con lo schermo pieno
+     */
+    private final LongAdder atteseSchermo = new LongAdder();
+    /**
+     * Profondita' della coda all'ultimo frame
+     */
+    private volatile int profonditaCoda;
+    /**
+     * Profondita' massima della coda ad un frame
+     */
+    private final LongAccumulator profonditaCodaMassima = new LongAccumulator(Math::max, 0);
+    /**
+     * Frame visualizzati
+     */
+    private final LongAdder frame = new LongAdder();
+    /**
+     * Tempo passato a visualizzare i frame
+     */
+    private final LongAdder nanosecondiVisualizzazione = new LongAdder();
+    /**
+     * Durata dei round
+     */
+    private final IstogrammaLatenze latenzaRound = new IstogrammaLatenze();
+    /**
+     * Sessioni aperte sui server
+     */
+    private final LongAdder sessioniAttive = new LongAdder();
+    /**
+     * Round dei server terminati per tempo scaduto
+     */
+    private final LongAdder tempiScaduti = new LongAdder();
+
+    /**
+     * @brief Costruttore privato, usare {@link #get()}
+     */
+    private Metriche() {}
+
+    /**
+     * @brief Restituisce le metriche globali
+     *
+     * @return unica istanza delle metriche
+     */
+    public static Metriche get() {
+        return ISTANZA;
+    }
+
+    /**
+     * @brief Registra le metriche via JMX se la proprieta'
+     *        {@code giocofrase.metriche.jmx} non e' false
+     *
+     * La registrazione avviene su un thread daemon, dato che inizializzare
+     * il server JMX rallenterebbe l'avvio del programma.
+     * @see Configurazione
+     */
+    public static void registraJmx() {
+        if(!Configurazione.getBoolean("metriche.jmx", true))
+            return;
+
+        final Thread th = new Thread(() -> {
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                final ObjectName nome = new ObjectName(NOME_JMX);
+                if(!server.isRegistered(nome))
+                    server.registerMBean(ISTANZA, nome);
+            } catch(JMException ex) {
+                System.err.println("Impossibile registrare le metriche via JMX");
+                ex.printStackTrace();
+            }
+        }, "Thread_jmx");
+        th.setDaemon(true);
+        th.start();
+    }
+
+    /**
+     * @brief Avvia la scrittura periodica delle metriche
+     *
+     * Il periodo in secondi si configura con {@code giocofrase.metriche.dump}
+     * (se non e' impostato le metriche non vengono scritte),
+     * il formato con {@code giocofrase.metriche.formato} ("testo" o "json")
+     * e il file con {@code giocofrase.metriche.file} ("-", il valore
+     * predefinito, per lo standard error). Nel file vengono aggiunte righe.
+     * @see Configurazione
+     */
+    public static void avviaDump() {
+        final long periodo = Configurazione.getLong("metriche.dump", Long.MAX_VALUE);
+        if(periodo == Long.MAX_VALUE)
+            return;
+
+        final boolean json = Configurazione.getString("metriche.formato", "testo").equalsIgnoreCase("json");
+        final String file = Configurazione.getString("metriche.file", "-");
+
+        final PrintStream output;
+        try {
+            output = file.equals("-") ? System.err : new PrintStream(Files.newOutputStream(
+                    Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.APPEND), true);
+        } catch(IOException ex) {
+            System.err.println("Impossibile scrivere le metriche su " + file);
+            ex.printStackTrace();
+            return;
+        }
+
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread th = new Thread(r, "Thread_metriche");
+            th.setDaemon(true);
+            return th;
+        });
+        timer.scheduleAtFixedRate(
+                () -> output.println(json ? ISTANZA.getJson() : ISTANZA.toString()),
+                periodo, periodo, TimeUnit.SECONDS
+        );
+    }
+
+    /**
+     * @brief Registra l'analisi svolta dal thread corrente
+     *
+     * Quando i thread registrati superano {@link #MAX_THREAD}, ad esempio
+     * con un thread nuovo per ogni round, i lavori dei thread terminati
+     * vengono rimossi.
+     * @param caratteri numero di caratteri analizzati
+     * @param nanosecondi tempo impiegato
+     */
+    public void registraAnalisi(long caratteri, long nanosecondi) {
+        final Thread th = Thread.currentThread();
+        Lavoro lavoro = lavori.get(th.threadId());
+        if(lavoro == null) {
+            if(lavori.size() >= MAX_THREAD)
+                lavori.values().removeIf(Lavoro::isTerminato);
+            lavoro = lavori.computeIfAbsent(th.threadId(), k -> new Lavoro(th));
+        }
+        lavoro.nome = th.getName();
+        lavoro.caratteri.add(caratteri);
+        lavoro.nanosecondi.add(nanosecondi);
+        this.caratteri.add(caratteri);
+    }
+
+    /**
+     * @brief Registra il tempo passato in sleep e yield
+     *
+     * @param sleep nanosecondi passati in {@link Thread#sleep(long)}
+     * @param yield nanosecondi passati in {@link Thread#yield()}
+     */
+    public void registraAttese(long sleep, long yield) {
+        if(sleep > 0)
+            nanosecondiSleep.add(sleep);
+        if(yield > 0)
+            nanosecondiYield.add(yield);
+    }
+
+    /**
+     * @brief Registra gli eventi visualizzati da uno schermo
+     *
+     * @param eventi eventi visualizzati
+     * @param conflitti tentativi di push ripetuti per conflitti tra thread
+     * @param attese attese dei thread con lo schermo pieno
+     */
+    public void registraSchermo(long eventi, long conflitti, long attese) {
+        eventiSchermo.add(eventi);
+        if(conflitti > 0)
+            conflittiSchermo.add(conflitti);
+        if(attese > 0)
+            atteseSchermo.add(attese);
+    }
+
+    /**
+     * @brief Registra un frame
+     *
+     * @param profondita numero di eventi nella coda dello schermo
+     */
+    public void registraFrame(int profondita) {
+        frame.increment();
+        profonditaCoda = profondita;
+        profonditaCodaMassima.accumulate(profondita);
+    }
+
+    /**
+     * @brief Registra la fine di una visualizzazione
+     *
+     * @param nanosecondi tempo passato a visualizzare i frame
+     */
+    public void registraVisualizzazione(long nanosecondi) {
+        nanosecondiVisualizzazione.add(nanosecondi);
+    }
+
+    /**
+     * @brief Registra la durata di un round
+     *
+     * @param nanosecondi durata del round
+     */
+    public void registraRound(long nanosecondi) {
+        latenzaRound.registra(nanosecondi);
+    }
+
+    /**
+     * @brief Registra l'apertura o la chiusura di una sessione di un server
+     *
+     * @param aperta true se la sessione e' stata aperta, false se chiusa
+     */
+    public void registraSessione(boolean aperta) {
+        if(aperta)
+            sessioniAttive.increment();
+        else
+            sessioniAttive.decrement();
+    }
+
+    /**
+     * @brief Registra un round di un server terminato per tempo scaduto
+     */
+    public void registraTempoScaduto() {
+        tempiScaduti.increment();
+    }
+
+    @Override
+    public long getCaratteriAnalizzati() {
+        return caratteri.sum();
+    }
+
+    @Override
+    public Map<String, Double> getCaratteriAlSecondoPerThread() {
+        final Map<String, Double> risultato = new TreeMap<>();
+        for(Map.Entry<Long, Lavoro> e : lavori.entrySet()) {
+            final long ns = e.getValue().nanosecondi.sum();
+            risultato.put(e.getValue().nome + "#" + e.getKey(),
+                    ns == 0 ? 0 : e.getValue().caratteri.sum() * 1e9 / ns);
+        }
+        return risultato;
+    }
+
+    @Override
+    public double getMillisecondiSleep() {
+        return nanosecondiSleep.sum() / 1e6;
+    }
+
+    @Override
+    public double getMillisecondiYield() {
+        return nanosecondiYield.sum() / 1e6;
+    }
+
+    @Override
+    public long getEventiSchermo() {
+        return eventiSchermo.sum();
+    }
+
+    @Override
+    public long getConflittiSchermo() {
+        return conflittiSchermo.sum();
+    }
+
+    @Override
+    public long getAtteseSchermo() {
+        return atteseSchermo.sum();
+    }
+
+    @Override
+    public int getProfonditaCoda() {
+        return profonditaCoda;
+    }
+
+    @Override
+    public int getProfonditaCodaMassima() {
+        return (int) profonditaCodaMassima.get();
+    }
+
+    @Override
+    public long getFrame() {
+        return frame.sum();
+    }
+
+    @Override
+    public double getFramePerSecondo() {
+        final long ns = nanosecondiVisualizzazione.sum();
+        return ns == 0 ? 0 : frame.sum() * 1e9 / ns;
+    }
+
+    @Override
+    public long getRound() {
+        return latenzaRound.getConteggio();
+    }
+
+    @Override
+    public double getLatenzaRound(double percentile) {
+        return latenzaRound.getPercentile(percentile) / 1e6;
+    }
+
+    @Override
+    public double getLatenzaRoundP50() {
+        return getLatenzaRound(50);
+    }
+
+    @Override
+    public double getLatenzaRoundP99() {
+        return getLatenzaRound(99);
+    }
+
+    @Override
+    public double getLatenzaRoundMassima() {
+        return latenzaRound.getMassimo() / 1e6;
+    }
+
+    @Override
+    public long getSessioniAttive() {
+        return sessioniAttive.sum();
+    }
+
+    @Override
+    public long getTempiScaduti() {
+        return tempiScaduti.sum();
+    }
+
+    @Override
+    public String getJson() {
+        final StringBuilder sb = new StringBuilder("{");
+        sb.append("\"caratteri\":").append(getCaratteriAnalizzati());
+        sb.append(",\"caratteriAlSecondo\":{");
+        boolean primo = true;
+        for(Map.Entry<String, Double> e : getCaratteriAlSecondoPerThread().entrySet()) {
+            if(!primo)
+                sb.append(',');
+            primo = false;
+            appendJson(sb, e.getKey());
+            sb.append(':').append(String.format(Locale.ROOT, "%.0f", e.getValue()));
+        }
+        sb.append('}');
+        sb.append(",\"sleepMs\":").append(String.format(Locale.ROOT, "%.3f", getMillisecondiSleep()));
+        sb.append(",\"yieldMs\":").append(String.format(Locale.ROOT, "%.3f", getMillisecondiYield()));
+        sb.append(",\"eventiSchermo\":").append(getEventiSchermo());
+        sb.append(",\"conflittiSchermo\":").append(getConflittiSchermo());
+        sb.append(",\"atteseSchermo\":").append(getAtteseSchermo());
+        sb.append(",\"profonditaCoda\":").append(getProfonditaCoda());
+        sb.append(",\"profonditaCodaMassima\":").append(getProfonditaCodaMassima());
+        sb.append(",\"frame\":").append(getFrame());
+        sb.append(",\"framePerSecondo\":").append(String.format(Locale.ROOT, "%.1f", getFramePerSecondo()));
+        sb.append(",\"round\":").append(getRound());
+        sb.append(",\"latenzaRoundMs\":{\"p50\":").append(String.format(Locale.ROOT, "%.3f", getLatenzaRound(50)))
+          .append(",\"p90\":").append(String.format(Locale.ROOT, "%.3f", getLatenzaRound(90)))
+          .append(",\"p99\":").append(String.format(Locale.ROOT, "%.3f", getLatenzaRound(99)))
+          .append(",\"max\":").append(String.format(Locale.ROOT, "%.3f", getLatenzaRoundMassima()))
+          .append('}');
+        sb.append(",\"sessioniAttive\":").append(getSessioniAttive());
+        sb.append(",\"tempiScaduti\":").append(getTempiScaduti());
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @brief Aggiunge la stringa data come stringa JSON
+     *
+     * @param sb buffer a cui aggiungere la stringa
+     * @param s stringa da aggiungere
+     */
+    private static void appendJson(StringBuilder sb, String s) {
+        sb.append('"');
+        for(int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if(c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if(c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "caratteri: %d (%s/s), sleep: %.1f ms, yield: %.1f ms, "
+                + "schermo: %d eventi, %d conflitti, %d attese, coda %d (max %d), "
+                + "frame: %d (%.1f fps), round: %d (p50 %.3f ms, p99 %.3f ms, max %.3f ms), "
+                + "sessioni: %d, tempi scaduti: %d",
+                getCaratteriAnalizzati(), getCaratteriAlSecondoPerThread(),
+                getMillisecondiSleep(), getMillisecondiYield(),
+                getEventiSchermo(), getConflittiSchermo(), getAtteseSchermo(),
+                getProfonditaCoda(), getProfonditaCodaMassima(),
+                getFrame(), getFramePerSecondo(),
+                getRound(), getLatenzaRound(50), getLatenzaRound(99), getLatenzaRoundMassima(),
+                getSessioniAttive(), getTempiScaduti()
+        );
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.util.Map;
+
+/**
+ * Interfaccia JMX delle {@link Metriche}, registrata con il nome
+ * {@value Metriche#NOME_JMX}
+ */
+public interface MetricheMXBean {
+
+    /**
+     * @brief Restituisce il numero di caratteri analizzati
+     *
+     * @return caratteri analizzati da tutti i thread
+     */
+    long getCaratteriAnalizzati();
+
+    /**
+     * @brief Restituisce i caratteri analizzati al secondo da ogni thread
+     *
+     * Il tempo e' quello passato nei runnable, sleep e yield compresi.
+     * Le chiavi sono nel formato {@code nome#id}, per cui i thread con
+     * lo stesso nome, come i thread virtuali senza nome, restano distinti.
+     * @return caratteri al secondo per nome e id del thread
+     */
+    Map<String, Double> getCaratteriAlSecondoPerThread();
+
+    /**
+     * @brief Restituisce il tempo passato in {@link Thread#sleep(long)}
+     *
+     * @return millisecondi di sleep di tutti i thread
+     */
+    double getMillisecondiSleep();
+
+    /**
+     * @brief Restituisce il tempo passato in {@link Thread#yield()}
+     *
+     * @return millisecondi di yield di tutti i thread
+     */
+    double getMillisecondiYield();
+
+    /**
+     * @brief Restituisce il numero di eventi visualizzati dagli schermi
+     *
+     * @return eventi visualizzati
+     */
+    long getEventiSchermo();
+
+    /**
+     * @brief Restituisce il numero di tentativi di push falliti
+     *        perche' un altro thread ha scritto nello stesso momento
+     *
+     * @return conflitti tra i thread che scrivono sugli schermi
+     */
+    long getConflittiSchermo();
+
+    /**
+     * @brief Restituisce il numero di attese dei thread con lo schermo pieno
+     *
+     * @return attese con {@link Schermo.PoliticaOverflow#BLOCCA}
+     */
+    long getAtteseSchermo();
+
+    /**
+     * @brief Restituisce il numero di eventi nella coda all'ultimo frame
+     *
+     * @return profondita' della coda dello schermo
+     */
+    int getProfonditaCoda();
+
+    /**
+     * @brief Restituisce il numero massimo di eventi trovati
+     *        nella coda ad un frame
+     *
+     * @return profondita' massima della coda dello schermo
+     */
+    int getProfonditaCodaMassima();
+
+    /**
+     * @brief Restituisce il numero di frame visualizzati
+     *
+     * @return frame visualizzati
+     */
+    long getFrame();
+
+    /**
+     * @brief Restituisce i frame visualizzati al secondo durante
+     *        le visualizzazioni
+     *
+     * @return frame al secondo
+     */
+    double getFramePerSecondo();
+
+    /**
+     * @brief Restituisce il numero di round completati
+     *
+     * @return round completati
+     */
+    long getRound();
+
+    /**
+     * @brief Restituisce il percentile dato della durata dei round
+     *
+     * @param percentile percentile da 0 a 100
+     * @return durata in millisecondi
+     */
+    double getLatenzaRound(double percentile);
+
+    /**
+     * @brief Restituisce la mediana della durata dei round
+     *
+     * @return durata in millisecondi
+     */
+    double getLatenzaRoundP50();
+
+    /**
+     * @brief Restituisce il 99-esimo percentile della durata dei round
+     *
+     * @return durata in millisecondi
+     */
+    double getLatenzaRoundP99();
+
+    /**
+     * @brief Restituisce la durata massima dei round
+     *
+     * @return durata in millisecondi
+     */
+    double getLatenzaRoundMassima();
+
+    /**
+     * @brief Restituisce il numero di sessioni aperte su un {@link ServerGioco}
+     *
+     * @return sessioni aperte
+     */
+    long getSessioniAttive();
+
+    /**
+     * @brief Restituisce il numero di round di un {@link ServerGioco}
+     *        terminati perche' il giocatore non ha risposto in tempo
+     *
+     * @return round scaduti
+     */
+    long getTempiScaduti();
+
+    /**
+     * @brief Restituisce tutte le metriche in formato JSON
+     *
+     * @return oggetto JSON su una riga
+     */
+    String getJson();
+}
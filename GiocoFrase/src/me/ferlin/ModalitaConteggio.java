@@ -0,0 +1,113 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+/**
+ * Modalita' con cui vengono contate le vocali presenti nella frase
+ */
+public enum ModalitaConteggio {
+
+    /**
+     * Un thread per ogni vocale, ognuno dei quali analizza tutta la frase
+     *
+     * @see CercaVocaleRunnable
+     */
+    THREAD_PER_VOCALE('t', "thread per vocale"),
+    /**
+     * Un solo thread che conta tutte le vocali in una sola passata
+     *
+     * @see ContaVocaliRunnable
+     */
+    PASSATA_SINGOLA('s', "passata singola"),
+    /**
+     * La frase viene divisa in chunk contati in parallelo su un fork/join pool
+     *
+     * @see ContaVocaliForkJoin
+     */
+    FORK_JOIN('f', "fork/join"),
+    /**
+     * Come {@link #FORK_JOIN}, ma i chunk rimanenti vengono saltati appena
+     * la vocale piu' usata non puo' piu' cambiare; i conteggi sono
+     * quelli dei soli chunk analizzati
+     *
+     * @see ProgressoConteggio
+     */
+    ANTICIPATA('a', "fork/join con terminazione anticipata"),
+    /**
+     * Vengono contati solo dei blocchi casuali della frase, finche' la vocale
+     * piu' usata non e' separata dalle altre con la confidenza configurata;
+     * i conteggi sono quelli dei soli blocchi analizzati
+     *
+     * @see ContaVocaliCampionato
+     */
+    CAMPIONATA('c', "campionamento");
+
+    /**
+     * Carattere che l'utente deve digitare per scegliere la modalita'
+     */
+    private final char scelta;
+    /**
+     * Descrizione della modalita' mostrata all'utente
+     */
+    private final String descrizione;
+
+    /**
+     * @brief Costruisce una modalita' di conteggio
+     *
+     * @param scelta carattere che l'utente deve digitare
+     * @param descrizione descrizione mostrata all'utente
+     */
+    ModalitaConteggio(char scelta, String descrizione) {
+        this.scelta = scelta;
+        this.descrizione = descrizione;
+    }
+
+    /**
+     * @brief Restituisce la modalita' corrispondente alla scelta dell'utente
+     *
+     * @param input stringa digitata dall'utente
+     * @return modalita' scelta o {@link #THREAD_PER_VOCALE} se non valida
+     */
+    public static ModalitaConteggio daScelta(String input) {
+        if(!input.isEmpty()) {
+            final char c = Character.toLowerCase(input.charAt(0));
+            for(ModalitaConteggio m : values())
+                if(m.scelta == c)
+                    return m;
+        }
+        return THREAD_PER_VOCALE;
+    }
+
+    /**
+     * @brief Restituisce la lista delle modalita' da mostrare all'utente
+     *
+     * @return stringa nel formato "t = thread per vocale, ..."
+     */
+    public static String getOpzioni() {
+        final StringBuilder sb = new StringBuilder();
+        for(ModalitaConteggio m : values()) {
+            if(sb.length() > 0)
+                sb.append(", ");
+            sb.append(Character.toUpperCase(m.scelta)).append(" = ").append(m.descrizione);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @brief Restituisce se i conteggi possono essere quelli
+     *        di una sola parte della frase
+     *
+     * @see DatiCondivisi#getCaratteriAllaDecisione()
+     * @return true per {@link #ANTICIPATA} e {@link #CAMPIONATA}
+     */
+    public boolean isParziale() {
+        return this == ANTICIPATA || this == CAMPIONATA;
+    }
+
+    @Override
+    public String toString() {
+        return descrizione;
+    }
+}
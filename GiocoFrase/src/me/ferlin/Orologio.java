@@ -0,0 +1,67 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+/**
+ * Orologio usato dai runnable per le attese del delay randomico e dello yield.
+ *
+ * Sono disponibili due implementazioni:
+ * - {@link OrologioReale}: usa {@link Thread#sleep(long)}, {@link Thread#yield()}
+ *                          e numeri casuali non riproducibili;
+ * - l'orologio virtuale di {@link SimulatoreScheduling}: non attende ma 
+ *   fa avanzare un tempo simulato, con numeri casuali generati da un seme.
+ *
+ * @see #reale()
+ */
+public interface Orologio {
+
+    /**
+     * @brief Restituisce il tempo corrente
+     *
+     * @return tempo in nanosecondi, da usare solo per calcolare differenze
+     */
+    long adesso();
+
+    /**
+     * @brief Attende il tempo dato
+     *
+     * @param millisecondi tempo da attendere
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    void dormi(long millisecondi) throws InterruptedException;
+
+    /**
+     * @brief Lascia eseguire gli altri thread
+     */
+    void cedi();
+
+    /**
+     * @brief Restituisce un numero casuale
+     *
+     * @param limite limite (escluso) del numero, positivo
+     * @return numero casuale tra 0 (incluso) e limite (escluso)
+     */
+    int casuale(int limite);
+
+    /**
+     * @brief Restituisce se il tempo dell'orologio e' simulato
+     *
+     * I runnable non registrano nelle {@link Metriche} globali le analisi
+     * svolte con un orologio virtuale, i cui tempi non sono reali.
+     * @return true se l'orologio non attende realmente
+     */
+    default boolean isVirtuale() {
+        return false;
+    }
+
+    /**
+     * @brief Restituisce l'orologio reale, usato di default dai runnable
+     *
+     * @return orologio che attende realmente
+     */
+    static Orologio reale() {
+        return OrologioReale.ISTANZA;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Orologio che attende realmente, usando lo scheduler del sistema operativo.
+ *
+ * I numeri casuali vengono generati da {@link ThreadLocalRandom}, per cui
+ * lo stesso orologio puo' essere usato da piu' thread.
+ */
+public final class OrologioReale implements Orologio {
+
+    /**
+     * Unica istanza dell'orologio
+     */
+    static final OrologioReale ISTANZA = new OrologioReale();
+
+    /**
+     * @brief Costruisce l'orologio reale
+     *
+     * @see Orologio#reale()
+     */
+    private OrologioReale() {
+    }
+
+    @Override
+    public long adesso() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void dormi(long millisecondi) throws InterruptedException {
+        Thread.sleep(millisecondi);
+    }
+
+    @Override
+    public void cedi() {
+        Thread.yield();
+    }
+
+    @Override
+    public int casuale(int limite) {
+        return ThreadLocalRandom.current().nextInt(limite);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+/**
+ * Conteggi parziali condivisi tra i task di un'analisi con terminazione
+ * anticipata.
+ *
+ * Ogni task aggiunge l'istogramma del proprio chunk e i caratteri analizzati.
+ * La vocale in testa non puo' piu' essere superata quando, anche se tutti
+ * i caratteri non ancora analizzati fossero una stessa altra vocale, questa
+ * non la raggiungerebbe (o la raggiungerebbe perdendo il pareggio, che
+ * come in {@link DatiCondivisi#getPiuUsata()} viene vinto dalla vocale
+ * con lo slot minore). Da quel momento l'analisi e' decisa e i task
+ * non ancora iniziati possono essere saltati.
+ *
+ * Gli aggiornamenti avvengono una volta per chunk, per cui basta un lock.
+ */
+public class ProgressoConteggio {
+
+    /**
+     * Conteggi parziali, ordinati secondo gli slot della tabella
+     */
+    private final long[] conteggi;
+    /**
+     * Numero di caratteri della frase
+     */
+    private final long totale;
+    /**
+     * Numero di caratteri gia' analizzati
+     */
+    private long analizzati;
+    /**
+     * Numero di caratteri analizzati quando la vocale piu' usata
+     * e' diventata certa o -1 se non lo e' ancora
+     */
+    private long analizzatiAllaDecisione = -1;
+    /**
+     * Indica se la vocale piu' usata e' gia' certa
+     */
+    private volatile boolean deciso;
+
+    /**
+     * @brief Costruisce un progresso vuoto
+     *
+     * @param numeroVocali numero di vocali contate
+     * @param totale numero di caratteri della frase
+     */
+    public ProgressoConteggio(int numeroVocali, long totale) {
+        this.conteggi = new long[numeroVocali];
+        this.totale = totale;
+    }
+
+    /**
+     * @brief Aggiunge i conteggi di un chunk analizzato
+     *
+     * @param istogramma conteggi del chunk
+     * @param caratteri numero di caratteri del chunk
+     * @return true se la vocale piu' usata e' certa
+     */
+    public synchronized boolean aggiungi(int[] istogramma, int caratteri) {
+        for(int i = 0; i < conteggi.length; i++)
+            conteggi[i] += istogramma[i];
+        analizzati += caratteri;
+
+        if(!deciso && analizzati < totale && isCerto()) {
+            analizzatiAllaDecisione = analizzati;
+            deciso = true;
+        }
+        return deciso;
+    }
+
+    /**
+     * @brief Restituisce se nessuna vocale puo' piu' superare quella in testa
+     *
+     * @return true se la vocale piu' usata e' certa
+     */
+    private boolean isCerto() {
+        final int testa = getPiuUsata();
+        final long rimanenti = totale - analizzati;
+
+        for(int i = 0; i < conteggi.length; i++) {
+            if(i == testa)
+                continue;
+
+            final long massimo = conteggi[i] + rimanenti;
+            if(massimo > conteggi[testa] || (massimo == conteggi[testa] && i < testa))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @brief Restituisce se la vocale piu' usata e' gia' certa
+     *
+     * @return true se i chunk non ancora analizzati possono essere saltati
+     */
+    public boolean isDeciso() {
+        return deciso;
+    }
+
+    /**
+     * @brief Restituisce lo slot della vocale in testa
+     *
+     * @return slot della vocale con il conteggio parziale piu' alto
+     */
+    public synchronized int getPiuUsata() {
+        int testa = 0;
+        for(int i = 1; i < conteggi.length; i++)
+            if(conteggi[i] > conteggi[testa])
+                testa = i;
+        return testa;
+    }
+
+    /**
+     * @brief Restituisce il numero di caratteri analizzati
+     *
+     * @return caratteri analizzati, compresi quelli dei chunk
+     *         terminati dopo la decisione
+     */
+    public synchronized long getAnalizzati() {
+        return analizzati;
+    }
+
+    /**
+     * @brief Restituisce il numero di caratteri analizzati quando
+     *        la vocale piu' usata e' diventata certa
+     *
+     * @return caratteri analizzati alla decisione o -1 se la vocale
+     *         e' stata decisa solo alla fine della frase
+     */
+    public synchronized long getAnalizzatiAllaDecisione() {
+        return analizzatiAllaDecisione;
+    }
+}
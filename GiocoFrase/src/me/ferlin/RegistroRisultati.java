@@ -0,0 +1,1304 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Registro persistente dei round giocati, con classifica e statistiche.
+ *
+ * Il registro e' un file binario in cui i round vengono solo aggiunti,
+ * ognuno in un record di dimensione fissa che dipende dal numero di vocali:
+ * <pre>
+ *  0  int   CRC32C dei byte successivi del record
+ *  4  byte  esito (0 = record vuoto)
+ *  5  byte  byte dell'inizio della frase
+ *  6  char  vocale scelta o 0
+ *  8  char  vocale piu' usata o 0
+ * 10  byte  byte del nome del giocatore
+ * 12  int   lunghezza della frase in caratteri
+ * 16  long  istante del round, in millisecondi dal 1970
+ * 24  long  durata del conteggio in nanosecondi
+ * 32  long  hash FNV-1a della frase
+ * 40        nome del giocatore in UTF-8, al massimo 32 byte
+ * 72        inizio della frase in UTF-8, al massimo 48 byte
+ * 120 long[] conteggi delle vocali, ordinati secondo gli slot della tabella
+ * </pre>
+ * Il file inizia con un'intestazione che contiene le vocali contate, per cui
+ * un registro puo' essere riaperto solo con la stessa tabella.
+ *
+ * I record vengono scritti in segmenti del file mappati in memoria: scrivere
+ * un round costa una copia di pochi byte, senza chiamate di sistema. I round
+ * diventano persistenti quando le pagine vengono forzate su disco, in gruppo:
+ * {@link #attendi(long)} forza tutti i record scritti fino a quel momento,
+ * per cui i thread che aspettano mentre un altro sta forzando vengono serviti
+ * da una sola forzatura successiva invece che da una ciascuno. Un thread in
+ * background forza inoltre i nuovi record ogni
+ * {@code giocofrase.registro.commit.millisecondi} millisecondi (predefinito 10),
+ * cosi' chi non puo' bloccarsi, come il thread del {@link ServerGioco}, perde
+ * al massimo i round di quell'intervallo.
+ *
+ * Le statistiche globali e dei giocatori vengono aggiornate ad ogni round e
+ * ricostruite all'apertura con una sola lettura sequenziale del file, per cui
+ * le interrogazioni non rileggono mai il registro. La stessa lettura ripara il
+ * registro dopo un crash: il primo record vuoto, incompleto o con il CRC errato
+ * e tutto cio' che segue vengono troncati.
+ *
+ * La dimensione dei segmenti si configura con la proprieta'
+ * {@code giocofrase.registro.segmento} (predefinita 8 MiB).
+ * Tutti i metodi sono thread-safe.
+ */
+public final class RegistroRisultati implements AutoCloseable {
+
+    // Constants
+
+    /**
+     * "GIOCOFR1" in ASCII, all'inizio di ogni registro
+     */
+    private static final long MAGIA = 0x47494F434F465231L;
+    /**
+     * Versione del formato
+     */
+    private static final int VERSIONE = 1;
+    /**
+     * Byte dell'intestazione prima delle vocali
+     */
+    private static final int INTESTAZIONE = 24;
+    /**
+     * Allineamento dell'inizio dei record
+     */
+    private static final int ALLINEAMENTO = 64;
+
+    /**
+     * Posizioni dei campi nel record
+     */
+    private static final int CRC = 0, ESITO = 4, LUNGHEZZA_INIZIO = 5, SCELTA = 6,
+            PIU_USATA = 8, LUNGHEZZA_NOME = 10, LUNGHEZZA_FRASE = 12, ISTANTE = 16,
+            NANOSECONDI = 24, HASH = 32, NOME = 40, INIZIO_FRASE = 72, CONTEGGI = 120;
+    /**
+     * Byte massimi del nome del giocatore
+     */
+    public static final int MAX_NOME = INIZIO_FRASE - NOME;
+    /**
+     * Byte massimi dell'inizio della frase
+     */
+    public static final int MAX_INIZIO = CONTEGGI - INIZIO_FRASE;
+
+    /**
+     * Dimensione predefinita di un segmento mappato
+     */
+    private static final int SEGMENTO_PREDEFINITO = 8 * 1024 * 1024;
+    /**
+     * Intervallo predefinito tra le forzature in background
+     */
+    private static final int COMMIT_PREDEFINITO = 10;
+    /**
+     * Byte letti alla volta durante la ricostruzione
+     */
+    private static final int LETTURA = 1024 * 1024;
+
+
+    // Attributes
+
+    /**
+     * Percorso del registro
+     */
+    private final Path percorso;
+    /**
+     * Vocali contate, ordinate secondo gli slot della tabella
+     */
+    private final char[] vocali;
+    /**
+     * Dimensione di un record
+     */
+    private final int dimensioneRecord;
+    /**
+     * Posizione del primo record
+     */
+    private final long inizio;
+    /**
+     * Record in ogni segmento mappato
+     */
+    private final int recordPerSegmento;
+    /**
+     * Canale del file
+     */
+    private final FileChannel canale;
+    /**
+     * Lock che impedisce ad altri processi di scrivere nel registro
+     */
+    private final FileLock lock;
+    /**
+     * Segmenti mappati, nell'ordine del file
+     */
+    private final List<MappedByteBuffer> segmenti = new ArrayList<>();
+    /**
+     * Thread che forza periodicamente i nuovi record,
+     * avviato da {@link #apri(Path, TabellaVocali)}
+     */
+    private Thread committer;
+    /**
+     * Monitor che protegge lo stato seguente
+     */
+    private final Object monitor = new Object();
+
+    /**
+     * Record scritti
+     */
+    private long scritti;
+    /**
+     * Record forzati su disco
+     */
+    private long durevoli;
+    /**
+     * Indica se un thread sta forzando dei record
+     */
+    private boolean forzando;
+    /**
+     * Numero di forzature eseguite
+     */
+    private long forzature;
+    /**
+     * Indica se il registro e' stato chiuso
+     */
+    private boolean chiuso;
+
+    /**
+     * Round per esito, indicizzati con {@link Esito#ordinal()}
+     */
+    private final long[] esiti = new long[Esito.values().length];
+    /**
+     * Conteggi di tutte le vocali dei round registrati
+     */
+    private final long[] conteggi;
+    /**
+     * Giocatori per nome
+     */
+    private final Map<String, Giocatore> giocatori = new HashMap<>();
+    /**
+     * Giocatori in ordine di classifica
+     */
+    private final TreeSet<Giocatore> classifica = new TreeSet<>(Giocatore.ORDINE);
+
+    /**
+     * @brief Apre il registro dato o lo crea se non esiste
+     *
+     * Se il registro esiste le statistiche vengono ricostruite leggendolo
+     * e l'eventuale record incompleto finale viene troncato. Il thread che
+     * forza i nuovi record viene avviato solo dopo che il registro e' stato
+     * costruito completamente.
+     * @see Configurazione
+     * @param percorso percorso del registro
+     * @param tabella tabella delle vocali contate nei round
+     * @return registro aperto
+     * @throws IOException se il file non puo' essere letto o scritto
+     * @throws RuntimeException se il file non e' un registro, e' stato
+     *                          creato con altre vocali o e' gia' in uso
+     */
+    public static RegistroRisultati apri(Path percorso, TabellaVocali tabella) throws IOException {
+        final RegistroRisultati registro = new RegistroRisultati(percorso, tabella);
+        registro.avvia(TimeUnit.MILLISECONDS.toNanos(
+                Configurazione.getInt("registro.commit.millisecondi", COMMIT_PREDEFINITO)));
+        return registro;
+    }
+
+    /**
+     * @brief Apre il registro dato o lo crea se non esiste,
+     *        senza avviare il thread che forza i nuovi record
+     *
+     * @param percorso percorso del registro
+     * @param tabella tabella delle vocali contate nei round
+     * @throws IOException se il file non puo' essere letto o scritto
+     * @throws RuntimeException se il file non e' un registro, e' stato
+     *                          creato con altre vocali o e' gia' in uso
+     */
+    private RegistroRisultati(Path percorso, TabellaVocali tabella) throws IOException {
+        this.percorso = percorso;
+        this.vocali = new char[tabella.getNumeroVocali()];
+        for(int i = 0; i < vocali.length; i++)
+            vocali[i] = tabella.getVocale(i);
+        this.dimensioneRecord = CONTEGGI + Long.BYTES * vocali.length;
+        this.inizio = (INTESTAZIONE + Character.BYTES * vocali.length + ALLINEAMENTO - 1)
+                / ALLINEAMENTO * ALLINEAMENTO;
+        this.recordPerSegmento = Math.max(1,
+                Configurazione.getInt("registro.segmento", SEGMENTO_PREDEFINITO) / dimensioneRecord);
+        this.conteggi = new long[vocali.length];
+
+        this.canale = FileChannel.open(percorso,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.lock = blocca();
+            if(canale.size() == 0)
+                scriviIntestazione();
+            else
+                leggiIntestazione();
+
+            scritti = durevoli = ricostruisci();
+            canale.truncate(inizio + scritti * dimensioneRecord);
+            for(long s = 0; s <= scritti / recordPerSegmento; s++)
+                segmenti.add(mappa(s));
+        } catch(IOException | RuntimeException ex) {
+            canale.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @brief Avvia il thread che forza periodicamente i nuovi record
+     *
+     * @param periodo intervallo tra due forzature, in nanosecondi
+     */
+    private void avvia(long periodo) {
+        committer = new Thread(() -> committa(periodo), "Thread_registro");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * @brief Acquisisce il lock esclusivo del file
+     *
+     * @return lock acquisito
+     * @throws IOException se il lock non puo' essere richiesto
+     * @throws RuntimeException se il registro e' gia' aperto
+     */
+    private FileLock blocca() throws IOException {
+        FileLock res;
+        try {
+            res = canale.tryLock();
+        } catch(OverlappingFileLockException ex) {
+            res = null;
+        }
+        if(res == null)
+            throw new RuntimeException("Il registro " + percorso + " e\' gia\' in uso.");
+        return res;
+    }
+
+    /**
+     * @brief Scrive l'intestazione di un registro nuovo e la forza su disco
+     *
+     * @throws IOException se il file non puo' essere scritto
+     */
+    private void scriviIntestazione() throws IOException {
+        final ByteBuffer intestazione = ByteBuffer.allocate((int) inizio);
+        intestazione.putLong(MAGIA).putInt(VERSIONE).putInt(dimensioneRecord)
+                .putInt(vocali.length).putInt((int) inizio);
+        for(char c : vocali)
+            intestazione.putChar(c);
+        intestazione.clear();
+        while(intestazione.hasRemaining())
+            canale.write(intestazione, intestazione.position());
+        canale.force(true);
+    }
+
+    /**
+     * @brief Controlla che l'intestazione corrisponda alle vocali contate
+     *
+     * @throws IOException se il file non puo' essere letto
+     * @throws RuntimeException se il file non e' un registro compatibile
+     */
+    private void leggiIntestazione() throws IOException {
+        final ByteBuffer intestazione = ByteBuffer.allocate((int) inizio);
+        while(intestazione.hasRemaining() && canale.read(intestazione, intestazione.position()) >= 0);
+        intestazione.flip();
+
+        if(intestazione.remaining() < INTESTAZIONE || intestazione.getLong() != MAGIA)
+            throw new RuntimeException("Il file " + percorso + " non e\' un registro dei risultati.");
+        if(intestazione.getInt() != VERSIONE)
+            throw new RuntimeException("Il registro " + percorso + " ha una versione non supportata.");
+
+        final int dimensione = intestazione.getInt();
+        final int numero = intestazione.getInt();
+        final int posizione = intestazione.getInt();
+        boolean uguali = dimensione == dimensioneRecord && numero == vocali.length
+                && posizione == inizio && intestazione.remaining() >= Character.BYTES * numero;
+        for(int i = 0; uguali && i < numero; i++)
+            uguali = intestazione.getChar() == vocali[i];
+        if(!uguali)
+            throw new RuntimeException("Il registro " + percorso + " e\' stato creato con altre vocali.");
+    }
+
+    /**
+     * @brief Legge tutti i record validi e ricostruisce le statistiche
+     *
+     * @return numero di record validi, prima del primo vuoto o corrotto
+     * @throws IOException se il file non puo' essere letto
+     */
+    private long ricostruisci() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                Math.max(1, LETTURA / dimensioneRecord) * dimensioneRecord);
+        final CRC32C crc = new CRC32C();
+        long posizione = inizio;
+        long res = 0;
+
+        while(true) {
+            buffer.clear();
+            while(buffer.hasRemaining() && canale.read(buffer, posizione + buffer.position()) >= 0);
+            buffer.flip();
+
+            for(int pos = 0; pos + dimensioneRecord <= buffer.limit(); pos += dimensioneRecord) {
+                final Esito esito = Esito.daCodice(buffer.get(pos + ESITO));
+                crc.reset();
+                crc.update(buffer.array(), pos + ESITO, dimensioneRecord - ESITO);
+                if(esito == null || (int) crc.getValue() != buffer.getInt(pos + CRC))
+                    return res;
+
+                accumula(esito, leggiNome(buffer, pos), buffer, pos);
+                res++;
+            }
+            if(buffer.limit() < buffer.capacity())
+                return res;
+            posizione += buffer.limit();
+        }
+    }
+
+    /**
+     * @brief Mappa un segmento del file
+     *
+     * Il file viene esteso con zeri fino alla fine del segmento, per cui
+     * i record non ancora scritti risultano vuoti.
+     * @param segmento indice del segmento
+     * @return segmento mappato
+     * @throws IOException se il file non puo' essere mappato
+     */
+    private MappedByteBuffer mappa(long segmento) throws IOException {
+        final long dimensione = (long) recordPerSegmento * dimensioneRecord;
+        return canale.map(FileChannel.MapMode.READ_WRITE, inizio + segmento * dimensione, dimensione);
+    }
+
+    /**
+     * @brief Registra un round contato dal {@link ServizioAnalisi}
+     *
+     * @see #registra(Esito, String, CharSequence, char, char, long[], long)
+     * @param esito esito del round
+     * @param giocatore nome del giocatore
+     * @param frase frase del round
+     * @param scelta vocale scelta o 0 se non e' stata scelta
+     * @param risultato risultato del conteggio o null se la frase
+     *                  non e' stata contata
+     * @return indice del record
+     */
+    public long registra(Esito esito, String giocatore, CharSequence frase,
+                         char scelta, ServizioAnalisi.Risultato risultato) {
+        if(risultato == null)
+            return registra(esito, giocatore, frase, scelta, '\0', null, 0);
+
+        final long[] conteggiRound = new long[vocali.length];
+        for(int i = 0; i < conteggiRound.length; i++)
+            conteggiRound[i] = risultato.getConteggio(i);
+        return registra(esito, giocatore, frase, scelta, risultato.getPiuUsata(),
+                conteggiRound, risultato.getNanosecondi());
+    }
+
+    /**
+     * @brief Registra un round e aggiorna le statistiche
+     *
+     * Il record viene solo scritto nella memoria mappata: diventa persistente
+     * con {@link #attendi(long)} o con la successiva forzatura in background.
+     * Il nome del giocatore e l'inizio della frase vengono troncati
+     * a {@link #MAX_NOME} e {@link #MAX_INIZIO} byte.
+     * @param esito esito del round
+     * @param giocatore nome del giocatore
+     * @param frase frase del round
+     * @param scelta vocale scelta o 0 se non e' stata scelta
+     * @param piuUsata vocale piu' usata o 0 se la frase non e' stata contata
+     * @param conteggiRound conteggi delle vocali ordinati secondo gli slot
+     *                      della tabella o null se la frase non e' stata contata
+     * @param nanosecondi durata del conteggio
+     * @return indice del record
+     * @throws RuntimeException se il registro e' chiuso o non puo' essere esteso
+     */
+    public long registra(Esito esito, String giocatore, CharSequence frase, char scelta,
+                         char piuUsata, long[] conteggiRound, long nanosecondi) {
+        final byte[] nome = tronca(giocatore, MAX_NOME);
+        // Non servono piu' di MAX_INIZIO caratteri, senza spezzare una coppia surrogata
+        int caratteri = Math.min(frase.length(), MAX_INIZIO);
+        if(caratteri > 0 && Character.isHighSurrogate(frase.charAt(caratteri - 1)))
+            caratteri--;
+        final byte[] inizioFrase = tronca(frase.subSequence(0, caratteri), MAX_INIZIO);
+
+        final ByteBuffer record = ByteBuffer.allocate(dimensioneRecord);
+        record.put(ESITO, (byte) esito.codice)
+                .put(LUNGHEZZA_INIZIO, (byte) inizioFrase.length)
+                .putChar(SCELTA, scelta)
+                .putChar(PIU_USATA, piuUsata)
+                .put(LUNGHEZZA_NOME, (byte) nome.length)
+                .putInt(LUNGHEZZA_FRASE, frase.length())
+                .putLong(ISTANTE, System.currentTimeMillis())
+                .putLong(NANOSECONDI, nanosecondi)
+                .putLong(HASH, hash(frase))
+                .put(NOME, nome)
+                .put(INIZIO_FRASE, inizioFrase);
+        if(conteggiRound != null)
+            for(int i = 0; i < vocali.length; i++)
+                record.putLong(CONTEGGI + Long.BYTES * i, conteggiRound[i]);
+
+        final CRC32C crc = new CRC32C();
+        crc.update(record.array(), ESITO, dimensioneRecord - ESITO);
+        record.putInt(CRC, (int) crc.getValue());
+
+        final String chiave = new String(nome, StandardCharsets.UTF_8);
+        synchronized(monitor) {
+            if(chiuso)
+                throw new RuntimeException("Il registro e\' chiuso.");
+
+            final int posizione = (int) (scritti % recordPerSegmento) * dimensioneRecord;
+            segmento(scritti).put(posizione, record.array());
+            accumula(esito, chiave, record, 0);
+            return scritti++;
+        }
+    }
+
+    /**
+     * @brief Restituisce il segmento che contiene il record dato,
+     *        mappandolo se e' il primo record del segmento
+     *
+     * Deve essere chiamato tenendo il monitor.
+     * @param indice indice del record
+     * @return segmento del record
+     */
+    private MappedByteBuffer segmento(long indice) {
+        final int s = (int) (indice / recordPerSegmento);
+        try {
+            while(segmenti.size() <= s)
+                segmenti.add(mappa(segmenti.size()));
+        } catch(IOException ex) {
+            throw new RuntimeException("Impossibile estendere il registro " + percorso, ex);
+        }
+        return segmenti.get(s);
+    }
+
+    /**
+     * @brief Aggiorna le statistiche con un round
+     *
+     * Deve essere chiamato tenendo il monitor o durante la costruzione.
+     * @param esito esito del round
+     * @param nome nome del giocatore
+     * @param record buffer che contiene il record
+     * @param posizione posizione del record nel buffer
+     */
+    private void accumula(Esito esito, String nome, ByteBuffer record, int posizione) {
+        esiti[esito.ordinal()]++;
+        for(int i = 0; i < conteggi.length; i++)
+            conteggi[i] += record.getLong(posizione + CONTEGGI + Long.BYTES * i);
+
+        Giocatore giocatore = giocatori.get(nome);
+        if(giocatore == null) {
+            giocatore = new Giocatore(nome);
+            giocatori.put(nome, giocatore);
+        } else if(esito == Esito.VINTO) {
+            // La posizione in classifica cambia solo con le vittorie
+            classifica.remove(giocatore);
+        }
+        giocatore.aggiorna(esito);
+        classifica.add(giocatore);
+    }
+
+    /**
+     * @brief Aspetta che il record dato sia persistente
+     *
+     * Se nessun thread sta forzando il registro, il thread corrente forza
+     * tutti i record scritti finora; altrimenti aspetta la forzatura in corso
+     * e, se non basta, la successiva, che servira' in un colpo solo
+     * tutti i thread arrivati nel frattempo.
+     * @param indice indice del record restituito da {@link #registra}
+     * @throws InterruptedException se il thread viene interrotto
+     * @throws IndexOutOfBoundsException se il record non e' stato scritto
+     * @throws java.io.UncheckedIOException se i record non possono essere forzati
+     */
+    public void attendi(long indice) throws InterruptedException {
+        final long da, a;
+        final MappedByteBuffer[] daForzare;
+        synchronized(monitor) {
+            if(indice >= scritti)
+                throw new IndexOutOfBoundsException("Record " + indice + " non presente nel registro.");
+            while(indice >= durevoli && forzando)
+                monitor.wait();
+            if(indice < durevoli)
+                return;
+
+            forzando = true;
+            da = durevoli;
+            a = scritti;
+            daForzare = segmenti.subList((int) (da / recordPerSegmento),
+                    (int) ((a - 1) / recordPerSegmento) + 1).toArray(new MappedByteBuffer[0]);
+        }
+
+        boolean riuscito = false;
+        try {
+            forza(daForzare, da, a);
+            riuscito = true;
+        } finally {
+            synchronized(monitor) {
+                forzando = false;
+                if(riuscito) {
+                    durevoli = a;
+                    forzature++;
+                }
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @brief Rende persistenti tutti i record scritti finora
+     *
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public void sincronizza() throws InterruptedException {
+        final long ultimo;
+        synchronized(monitor) {
+            ultimo = scritti - 1;
+        }
+        if(ultimo >= 0)
+            attendi(ultimo);
+    }
+
+    /**
+     * @brief Forza su disco le pagine dei record dati
+     *
+     * @param daForzare segmenti dal primo all'ultimo record
+     * @param da indice del primo record
+     * @param a indice successivo all'ultimo record
+     */
+    private void forza(MappedByteBuffer[] daForzare, long da, long a) {
+        for(int s = 0; s < daForzare.length; s++) {
+            final int primo = s == 0 ? (int) (da % recordPerSegmento) : 0;
+            final int ultimo = s == daForzare.length - 1 ?
+                    (int) ((a - 1) % recordPerSegmento) + 1 : recordPerSegmento;
+            daForzare[s].force(primo * dimensioneRecord, (ultimo - primo) * dimensioneRecord);
+        }
+    }
+
+    /**
+     * @brief Forza periodicamente i nuovi record finche' il registro
+     *        non viene chiuso
+     *
+     * @param periodo nanosecondi tra una forzatura e la successiva
+     */
+    private void committa(long periodo) {
+        try {
+            while(true) {
+                synchronized(monitor) {
+                    if(chiuso)
+                        return;
+                }
+                TimeUnit.NANOSECONDS.sleep(periodo);
+                sincronizza();
+            }
+        } catch(InterruptedException ex) {
+            // Il registro e' stato chiuso
+        }
+    }
+
+    /**
+     * @brief Legge un record del registro
+     *
+     * @param indice indice del record
+     * @return round registrato
+     * @throws IndexOutOfBoundsException se il record non esiste
+     */
+    public Voce leggi(long indice) {
+        synchronized(monitor) {
+            if(indice < 0 || indice >= scritti)
+                throw new IndexOutOfBoundsException("Record " + indice + " non presente nel registro.");
+
+            final ByteBuffer record = segmenti.get((int) (indice / recordPerSegmento)).duplicate();
+            final int pos = (int) (indice % recordPerSegmento) * dimensioneRecord;
+            final byte[] inizioFrase = new byte[record.get(pos + LUNGHEZZA_INIZIO) & 0xFF];
+            record.get(pos + INIZIO_FRASE, inizioFrase);
+            final long[] conteggiRound = new long[vocali.length];
+            for(int i = 0; i < conteggiRound.length; i++)
+                conteggiRound[i] = record.getLong(pos + CONTEGGI + Long.BYTES * i);
+
+            return new Voce(
+                    Esito.daCodice(record.get(pos + ESITO)), leggiNome(record, pos),
+                    new String(inizioFrase, StandardCharsets.UTF_8), record.getInt(pos + LUNGHEZZA_FRASE),
+                    record.getLong(pos + HASH), record.getChar(pos + SCELTA), record.getChar(pos + PIU_USATA),
+                    record.getLong(pos + ISTANTE), record.getLong(pos + NANOSECONDI), conteggiRound
+            );
+        }
+    }
+
+    /**
+     * @brief Restituisce le statistiche di tutti i round registrati
+     *
+     * @return copia delle statistiche
+     */
+    public Statistiche getStatistiche() {
+        synchronized(monitor) {
+            return new Statistiche(vocali, esiti, conteggi, giocatori.size());
+        }
+    }
+
+    /**
+     * @brief Restituisce le statistiche di un giocatore
+     *
+     * @param nome nome del giocatore, troncato come in {@link #registra}
+     * @return copia delle statistiche o null se il giocatore non ha
+     *         mai giocato
+     */
+    public Giocatore getGiocatore(String nome) {
+        final String chiave = new String(tronca(nome, MAX_NOME), StandardCharsets.UTF_8);
+        synchronized(monitor) {
+            final Giocatore res = giocatori.get(chiave);
+            return res == null ? null : res.copia();
+        }
+    }
+
+    /**
+     * @brief Restituisce i primi giocatori in classifica
+     *
+     * I giocatori sono ordinati per vittorie, poi per serie di vittorie
+     * piu' lunga e infine per nome. La classifica viene mantenuta ordinata
+     * ad ogni round, per cui il costo dipende solo da {@code numero}.
+     * @param numero numero massimo di giocatori
+     * @return copie delle statistiche dei giocatori, dal primo
+     */
+    public List<Giocatore> getClassifica(int numero) {
+        final List<Giocatore> res = new ArrayList<>(Math.min(numero, 1024));
+        synchronized(monitor) {
+            for(Giocatore giocatore : classifica) {
+                if(res.size() >= numero)
+                    break;
+                res.add(giocatore.copia());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @brief Restituisce il numero di round registrati
+     *
+     * @return record nel registro
+     */
+    public long getNumeroRecord() {
+        synchronized(monitor) {
+            return scritti;
+        }
+    }
+
+    /**
+     * @brief Restituisce il numero di forzature su disco eseguite
+     *
+     * Confrontato con i round registrati indica quanti round vengono
+     * resi persistenti da ogni forzatura.
+     * @return forzature eseguite
+     */
+    public long getForzature() {
+        synchronized(monitor) {
+            return forzature;
+        }
+    }
+
+    /**
+     * @brief Restituisce il percorso del registro
+     *
+     * @return percorso del file
+     */
+    public Path getPercorso() {
+        return percorso;
+    }
+
+    /**
+     * @brief Rende persistenti i record scritti e chiude il registro
+     *
+     * Il file viene troncato all'ultimo record; se il sistema non lo
+     * permette finche' il file e' mappato, la coda vuota viene troncata
+     * alla prossima apertura.
+     * @throws IOException se il file non puo' essere chiuso
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(monitor) {
+            if(chiuso)
+                return;
+            chiuso = true;
+        }
+        committer.interrupt();
+
+        boolean interrotto = false;
+        while(true) {
+            try {
+                committer.join();
+                sincronizza();
+                break;
+            } catch(InterruptedException ex) {
+                interrotto = true;
+            }
+        }
+
+        try {
+            canale.truncate(inizio + scritti * dimensioneRecord);
+        } catch(IOException ex) {
+            // Il file e' ancora mappato
+        }
+        lock.release();
+        canale.close();
+        if(interrotto)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @brief Legge il nome del giocatore di un record
+     *
+     * @param record buffer che contiene il record
+     * @param posizione posizione del record nel buffer
+     * @return nome del giocatore
+     */
+    private static String leggiNome(ByteBuffer record, int posizione) {
+        final byte[] nome = new byte[Math.min(record.get(posizione + LUNGHEZZA_NOME) & 0xFF, MAX_NOME)];
+        record.get(posizione + NOME, nome);
+        return new String(nome, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @brief Codifica un testo in UTF-8 troncandolo senza spezzare i caratteri
+     *
+     * @param testo testo da codificare
+     * @param massimo byte massimi
+     * @return byte del testo, al massimo {@code massimo}
+     */
+    private static byte[] tronca(CharSequence testo, int massimo) {
+        final byte[] res = testo.toString().getBytes(StandardCharsets.UTF_8);
+        if(res.length <= massimo)
+            return res;
+
+        // Un byte di continuazione ha la forma 10xxxxxx
+        int fine = massimo;
+        while(fine > 0 && (res[fine] & 0xC0) == 0x80)
+            fine--;
+        return Arrays.copyOf(res, fine);
+    }
+
+    /**
+     * @brief Calcola l'hash FNV-1a a 64 bit di un testo
+     *
+     * Frasi uguali hanno lo stesso hash, per cui i round sulla stessa
+     * frase possono essere riconosciuti senza salvarla intera.
+     * @param testo testo di cui calcolare l'hash
+     * @return hash del testo
+     */
+    private static long hash(CharSequence testo) {
+        long res = 0xCBF29CE484222325L;
+        for(int i = 0; i < testo.length(); i++) {
+            res ^= testo.charAt(i);
+            res *= 0x100000001B3L;
+        }
+        return res;
+    }
+
+    /**
+     * Esito di un round registrato
+     */
+    public enum Esito {
+        /**
+         * Il giocatore ha indovinato la vocale piu' usata
+         */
+        VINTO(1),
+        /**
+         * Il giocatore ha scelto un'altra vocale
+         */
+        PERSO(2),
+        /**
+         * Il giocatore non ha scelto la vocale in tempo
+         */
+        TEMPO(3),
+        /**
+         * Il round non e' stato completato a causa di un errore
+         */
+        ERRORE(4);
+
+        /**
+         * Codice dell'esito nel record, mai 0
+         */
+        private final int codice;
+
+        /**
+         * @brief Costruisce un esito
+         *
+         * @param codice codice dell'esito nel record
+         */
+        Esito(int codice) {
+            this.codice = codice;
+        }
+
+        /**
+         * @brief Restituisce l'esito con il codice dato
+         *
+         * @param codice codice letto dal record
+         * @return esito o null se il codice non e' valido
+         */
+        private static Esito daCodice(int codice) {
+            for(Esito e : values())
+                if(e.codice == codice)
+                    return e;
+            return null;
+        }
+    }
+
+    /**
+     * Round letto dal registro, immutabile
+     */
+    public static final class Voce {
+
+        /**
+         * Esito del round
+         */
+        private final Esito esito;
+        /**
+         * Nome del giocatore
+         */
+        private final String giocatore;
+        /**
+         * Inizio della frase
+         */
+        private final String inizioFrase;
+        /**
+         * Caratteri della frase intera
+         */
+        private final int lunghezzaFrase;
+        /**
+         * Hash della frase intera
+         */
+        private final long hashFrase;
+        /**
+         * Vocale scelta o 0
+         */
+        private final char scelta;
+        /**
+         * Vocale piu' usata o 0
+         */
+        private final char piuUsata;
+        /**
+         * Istante del round, in millisecondi dal 1970
+         */
+        private final long istante;
+        /**
+         * Durata del conteggio in nanosecondi
+         */
+        private final long nanosecondi;
+        /**
+         * Conteggi delle vocali
+         */
+        private final long[] conteggi;
+
+        /**
+         * @brief Costruisce un round letto
+         *
+         * @param esito esito del round
+         * @param giocatore nome del giocatore
+         * @param inizioFrase inizio della frase
+         * @param lunghezzaFrase caratteri della frase intera
+         * @param hashFrase hash della frase intera
+         * @param scelta vocale scelta o 0
+         * @param piuUsata vocale piu' usata o 0
+         * @param istante istante del round
+         * @param nanosecondi durata del conteggio
+         * @param conteggi conteggi delle vocali
+         */
+        private Voce(Esito esito, String giocatore, String inizioFrase, int lunghezzaFrase,
+                     long hashFrase, char scelta, char piuUsata, long istante,
+                     long nanosecondi, long[] conteggi) {
+            this.esito = esito;
+            this.giocatore = giocatore;
+            this.inizioFrase = inizioFrase;
+            this.lunghezzaFrase = lunghezzaFrase;
+            this.hashFrase = hashFrase;
+            this.scelta = scelta;
+            this.piuUsata = piuUsata;
+            this.istante = istante;
+            this.nanosecondi = nanosecondi;
+            this.conteggi = conteggi;
+        }
+
+        /**
+         * @brief Restituisce l'esito del round
+         *
+         * @return esito del round
+         */
+        public Esito getEsito() {
+            return esito;
+        }
+
+        /**
+         * @brief Restituisce il nome del giocatore
+         *
+         * @return nome del giocatore, eventualmente troncato
+         */
+        public String getGiocatore() {
+            return giocatore;
+        }
+
+        /**
+         * @brief Restituisce l'inizio della frase
+         *
+         * @return al massimo {@link #MAX_INIZIO} byte della frase
+         */
+        public String getInizioFrase() {
+            return inizioFrase;
+        }
+
+        /**
+         * @brief Restituisce la lunghezza della frase
+         *
+         * @return caratteri della frase intera
+         */
+        public int getLunghezzaFrase() {
+            return lunghezzaFrase;
+        }
+
+        /**
+         * @brief Restituisce l'hash della frase intera
+         *
+         * @return hash FNV-1a a 64 bit della frase
+         */
+        public long getHashFrase() {
+            return hashFrase;
+        }
+
+        /**
+         * @brief Restituisce la vocale scelta dal giocatore
+         *
+         * @return vocale scelta o 0 se non e' stata scelta
+         */
+        public char getScelta() {
+            return scelta;
+        }
+
+        /**
+         * @brief Restituisce la vocale piu' usata
+         *
+         * @return vocale piu' usata o 0 se la frase non e' stata contata
+         */
+        public char getPiuUsata() {
+            return piuUsata;
+        }
+
+        /**
+         * @brief Restituisce l'istante del round
+         *
+         * @return millisecondi dal 1970
+         */
+        public long getIstante() {
+            return istante;
+        }
+
+        /**
+         * @brief Restituisce la durata del conteggio
+         *
+         * @return nanosecondi del conteggio
+         */
+        public long getNanosecondi() {
+            return nanosecondi;
+        }
+
+        /**
+         * @brief Restituisce il conteggio della vocale data
+         *
+         * @param index slot della vocale
+         * @return numero di vocali trovate nella frase
+         */
+        public long getConteggio(int index) {
+            return conteggi[index];
+        }
+    }
+
+    /**
+     * Statistiche di tutti i round registrati, immutabili
+     */
+    public static final class Statistiche {
+
+        /**
+         * Vocali contate
+         */
+        private final char[] vocali;
+        /**
+         * Round per esito
+         */
+        private final long[] esiti;
+        /**
+         * Conteggi totali delle vocali
+         */
+        private final long[] conteggi;
+        /**
+         * Somma dei conteggi
+         */
+        private final long totale;
+        /**
+         * Numero di giocatori
+         */
+        private final int giocatori;
+
+        /**
+         * @brief Costruisce le statistiche copiando i dati
+         *
+         * @param vocali vocali contate
+         * @param esiti round per esito
+         * @param conteggi conteggi totali delle vocali
+         * @param giocatori numero di giocatori
+         */
+        private Statistiche(char[] vocali, long[] esiti, long[] conteggi, int giocatori) {
+            this.vocali = vocali;
+            this.esiti = esiti.clone();
+            this.conteggi = conteggi.clone();
+            this.giocatori = giocatori;
+            long somma = 0;
+            for(long c : conteggi)
+                somma += c;
+            this.totale = somma;
+        }
+
+        /**
+         * @brief Restituisce il numero di round con l'esito dato
+         *
+         * @param esito esito dei round
+         * @return round con l'esito dato
+         */
+        public long getRound(Esito esito) {
+            return esiti[esito.ordinal()];
+        }
+
+        /**
+         * @brief Restituisce il numero di round registrati
+         *
+         * @return round con qualsiasi esito
+         */
+        public long getRound() {
+            long res = 0;
+            for(long n : esiti)
+                res += n;
+            return res;
+        }
+
+        /**
+         * @brief Restituisce la percentuale di round vinti
+         *
+         * I round terminati con un errore non vengono considerati.
+         * @return percentuale di vittorie tra 0 e 100, 0 se non ci sono round
+         */
+        public double getPercentualeVittorie() {
+            return percentuale(getRound(Esito.VINTO),
+                    getRound(Esito.VINTO) + getRound(Esito.PERSO) + getRound(Esito.TEMPO));
+        }
+
+        /**
+         * @brief Restituisce il conteggio totale della vocale data
+         *
+         * @param index slot della vocale
+         * @return vocali trovate in tutti i round
+         */
+        public long getConteggio(int index) {
+            return conteggi[index];
+        }
+
+        /**
+         * @brief Restituisce la frequenza della vocale data tra tutte
+         *        le vocali trovate
+         *
+         * @param index slot della vocale
+         * @return frequenza tra 0 e 1, 0 se non sono state trovate vocali
+         */
+        public double getFrequenza(int index) {
+            return totale == 0 ? 0 : (double) conteggi[index] / totale;
+        }
+
+        /**
+         * @brief Restituisce il numero di giocatori diversi
+         *
+         * @return giocatori con almeno un round
+         */
+        public int getGiocatori() {
+            return giocatori;
+        }
+
+        /**
+         * @brief Restituisce le frequenze delle vocali nella forma "a=21.3% e=18.0%"
+         *
+         * @return frequenze delle vocali
+         */
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < vocali.length; i++) {
+                if(i > 0)
+                    sb.append(' ');
+                sb.append(vocali[i]).append('=').append(String.format("%.1f%%", 100 * getFrequenza(i)));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Statistiche di un giocatore.
+     *
+     * Le istanze restituite dal registro sono copie che non vengono
+     * piu' modificate.
+     */
+    public static final class Giocatore {
+
+        /**
+         * Ordine della classifica
+         */
+        private static final Comparator<Giocatore> ORDINE = Comparator
+                .comparingLong((Giocatore g) -> -g.vinti)
+                .thenComparingInt(g -> -g.serieMigliore)
+                .thenComparing(g -> g.nome);
+
+        /**
+         * Nome del giocatore
+         */
+        private final String nome;
+        /**
+         * Round per esito, indicizzati con {@link Esito#ordinal()}
+         */
+        private final long[] esiti;
+        /**
+         * Round vinti
+         */
+        private long vinti;
+        /**
+         * Vittorie consecutive fino all'ultimo round
+         */
+        private int serieCorrente;
+        /**
+         * Serie di vittorie consecutive piu' lunga
+         */
+        private int serieMigliore;
+
+        /**
+         * @brief Costruisce un giocatore senza round
+         *
+         * @param nome nome del giocatore
+         */
+        private Giocatore(String nome) {
+            this.nome = nome;
+            this.esiti = new long[Esito.values().length];
+        }
+
+        /**
+         * @brief Aggiorna le statistiche con un round
+         *
+         * Un errore non interrompe la serie di vittorie.
+         * @param esito esito del round
+         */
+        private void aggiorna(Esito esito) {
+            esiti[esito.ordinal()]++;
+            switch(esito) {
+                case VINTO:
+                    vinti++;
+                    serieMigliore = Math.max(serieMigliore, ++serieCorrente);
+                    break;
+                case PERSO:
+                case TEMPO:
+                    serieCorrente = 0;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * @brief Copia le statistiche
+         *
+         * @return copia delle statistiche
+         */
+        private Giocatore copia() {
+            final Giocatore res = new Giocatore(nome);
+            System.arraycopy(esiti, 0, res.esiti, 0, esiti.length);
+            res.vinti = vinti;
+            res.serieCorrente = serieCorrente;
+            res.serieMigliore = serieMigliore;
+            return res;
+        }
+
+        /**
+         * @brief Restituisce il nome del giocatore
+         *
+         * @return nome del giocatore
+         */
+        public String getNome() {
+            return nome;
+        }
+
+        /**
+         * @brief Restituisce il numero di round con l'esito dato
+         *
+         * @param esito esito dei round
+         * @return round con l'esito dato
+         */
+        public long getRound(Esito esito) {
+            return esiti[esito.ordinal()];
+        }
+
+        /**
+         * @brief Restituisce la percentuale di round vinti
+         *
+         * @see Statistiche#getPercentualeVittorie()
+         * @return percentuale di vittorie tra 0 e 100
+         */
+        public double getPercentualeVittorie() {
+            return percentuale(vinti, vinti + getRound(Esito.PERSO) + getRound(Esito.TEMPO));
+        }
+
+        /**
+         * @brief Restituisce le vittorie consecutive fino all'ultimo round
+         *
+         * @return serie di vittorie in corso
+         */
+        public int getSerieCorrente() {
+            return serieCorrente;
+        }
+
+        /**
+         * @brief Restituisce la serie di vittorie consecutive piu' lunga
+         *
+         * @return serie di vittorie migliore
+         */
+        public int getSerieMigliore() {
+            return serieMigliore;
+        }
+
+        /**
+         * @brief Restituisce le statistiche nella forma
+         *        "nome: 3 vinti su 5 (60.0%), serie 2 (migliore 3)"
+         *
+         * @return statistiche del giocatore
+         */
+        @Override
+        public String toString() {
+            return String.format("%s: %d vinti su %d (%.1f%%), serie %d (migliore %d)",
+                    nome, vinti, vinti + getRound(Esito.PERSO) + getRound(Esito.TEMPO),
+                    getPercentualeVittorie(), serieCorrente, serieMigliore);
+        }
+    }
+
+    /**
+     * @brief Calcola una percentuale
+     *
+     * @param parte numeratore
+     * @param totale denominatore
+     * @return percentuale tra 0 e 100, 0 se il totale e' 0
+     */
+    private static double percentuale(long parte, long totale) {
+        return totale == 0 ? 0 : 100.0 * parte / totale;
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.util.function.Consumer;
+
+/**
+ * Ruota temporale (hashed timing wheel) che gestisce molte scadenze
+ * con un solo thread.
+ *
+ * Il tempo e' diviso in tick di durata fissa e ogni scadenza viene messa
+ * nella lista dello slot corrispondente al suo tick, con il numero di giri
+ * completi della ruota ancora da attendere. Aggiungere e annullare una
+ * scadenza costa O(1) e ad ogni tick viene visitato un solo slot, per cui
+ * decine di migliaia di scadenze non richiedono un thread o un
+ * {@link java.util.concurrent.Future} bloccato ciascuna. Le scadenze
+ * vengono eseguite con un ritardo di al massimo un tick.
+ *
+ * Non e' thread-safe: tutti i metodi devono essere chiamati dallo stesso
+ * thread, ad esempio quello di un {@link java.nio.channels.Selector}.
+ *
+ * @param <T> tipo dell'oggetto associato ad ogni scadenza
+ */
+public class RuotaTemporale<T> {
+
+    /**
+     * Scadenza registrata nella ruota, che puo' essere annullata
+     *
+     * @param <T> tipo dell'oggetto associato
+     */
+    public static final class Scadenza<T> {
+
+        /**
+         * Oggetto associato alla scadenza
+         */
+        private final T valore;
+        /**
+         * Giri completi della ruota ancora da attendere
+         */
+        private long giri;
+        /**
+         * Slot in cui si trova la scadenza o -1 se non e' piu' nella ruota
+         */
+        private int slot;
+        /**
+         * Scadenza precedente nello stesso slot
+         */
+        private Scadenza<T> precedente;
+        /**
+         * Scadenza successiva nello stesso slot
+         */
+        private Scadenza<T> successiva;
+
+        /**
+         * @brief Costruisce una scadenza
+         *
+         * @param valore oggetto associato
+         */
+        private Scadenza(T valore) {
+            this.valore = valore;
+        }
+
+        /**
+         * @brief Restituisce l'oggetto associato alla scadenza
+         *
+         * @return oggetto associato
+         */
+        public T getValore() {
+            return valore;
+        }
+
+        /**
+         * @brief Restituisce se la scadenza e' ancora in attesa
+         *
+         * @return false se e' gia' stata eseguita o annullata
+         */
+        public boolean isAttiva() {
+            return slot >= 0;
+        }
+    }
+
+    /**
+     * Durata di un tick in nanosecondi
+     */
+    private final long nanosecondiTick;
+    /**
+     * Prima scadenza di ogni slot
+     */
+    private final Scadenza<T>[] slot;
+    /**
+     * Maschera per calcolare lo slot di un tick
+     */
+    private final int maschera;
+    /**
+     * Istante da cui vengono contati i tick
+     */
+    private final long inizio;
+    /**
+     * Numero di tick gia' eseguiti
+     */
+    private long tick;
+    /**
+     * Numero di scadenze in attesa
+     */
+    private int dimensione;
+
+    /**
+     * @brief Costruisce una ruota vuota
+     *
+     * @param nanosecondiTick durata di un tick in nanosecondi
+     * @param numeroSlot numero di slot, arrotondato alla potenza di 2 successiva
+     * @param adesso istante corrente, in nanosecondi
+     * @throws RuntimeException se uno dei parametri non e' positivo
+     */
+    @SuppressWarnings("unchecked")
+    public RuotaTemporale(long nanosecondiTick, int numeroSlot, long adesso) {
+        if(nanosecondiTick <= 0)
+            throw new RuntimeException("La durata dei tick deve essere positiva.");
+        if(numeroSlot <= 0 || numeroSlot > 1 << 30)
+            throw new RuntimeException("Il numero di slot non e\' valido.");
+
+        final int potenza = Integer.highestOneBit(numeroSlot) == numeroSlot ?
+                numeroSlot : Integer.highestOneBit(numeroSlot) << 1;
+        this.nanosecondiTick = nanosecondiTick;
+        this.slot = (Scadenza<T>[]) new Scadenza<?>[potenza];
+        this.maschera = potenza - 1;
+        this.inizio = adesso;
+    }
+
+    /**
+     * @brief Aggiunge una scadenza
+     *
+     * @param istante istante della scadenza, in nanosecondi
+     * @param valore oggetto da passare all'esecuzione della scadenza
+     * @return scadenza da usare per annullarla
+     */
+    public Scadenza<T> aggiungi(long istante, T valore) {
+        // Le scadenze nel passato vengono eseguite al prossimo tick
+        final long tickScadenza = Math.max(tick + 1, divisioneEccesso(istante - inizio, nanosecondiTick));
+        final Scadenza<T> scadenza = new Scadenza<>(valore);
+        scadenza.giri = (tickScadenza - tick - 1) / slot.length;
+        scadenza.slot = (int) (tickScadenza & maschera);
+
+        scadenza.successiva = slot[scadenza.slot];
+        if(scadenza.successiva != null)
+            scadenza.successiva.precedente = scadenza;
+        slot[scadenza.slot] = scadenza;
+        dimensione++;
+        return scadenza;
+    }
+
+    /**
+     * @brief Annulla una scadenza
+     *
+     * @param scadenza scadenza da annullare
+     * @return true se la scadenza era ancora in attesa
+     */
+    public boolean annulla(Scadenza<T> scadenza) {
+        if(scadenza == null || !scadenza.isAttiva())
+            return false;
+
+        rimuovi(scadenza);
+        return true;
+    }
+
+    /**
+     * @brief Esegue tutte le scadenze dei tick trascorsi fino all'istante dato
+     *
+     * @param adesso istante corrente, in nanosecondi
+     * @param esecuzione azione eseguita con l'oggetto di ogni scadenza
+     * @return numero di scadenze eseguite
+     */
+    public int avanza(long adesso, Consumer<? super T> esecuzione) {
+        final long ultimo = (adesso - inizio) / nanosecondiTick;
+        int eseguite = 0;
+
+        while(tick < ultimo) {
+            tick++;
+            if(dimensione == 0) {
+                // Nessuna scadenza: i tick rimanenti possono essere saltati
+                tick = ultimo;
+                break;
+            }
+
+            Scadenza<T> scadenza = slot[(int) (tick & maschera)];
+            while(scadenza != null) {
+                final Scadenza<T> successiva = scadenza.successiva;
+                if(scadenza.giri == 0) {
+                    rimuovi(scadenza);
+                    esecuzione.accept(scadenza.valore);
+                    eseguite++;
+                } else {
+                    scadenza.giri--;
+                }
+                scadenza = successiva;
+            }
+        }
+        return eseguite;
+    }
+
+    /**
+     * @brief Restituisce i nanosecondi mancanti al prossimo tick
+     *
+     * Puo' essere usato come timeout di {@link java.nio.channels.Selector#select(long)}.
+     * @param adesso istante corrente, in nanosecondi
+     * @return nanosecondi al prossimo tick o -1 se non ci sono scadenze
+     */
+    public long getAttesa(long adesso) {
+        if(dimensione == 0)
+            return -1;
+        return Math.max(0, inizio + (tick + 1) * nanosecondiTick - adesso);
+    }
+
+    /**
+     * @brief Restituisce il numero di scadenze in attesa
+     *
+     * @return scadenze in attesa
+     */
+    public int getDimensione() {
+        return dimensione;
+    }
+
+    /**
+     * @brief Rimuove una scadenza dalla lista del suo slot
+     *
+     * @param scadenza scadenza da rimuovere
+     */
+    private void rimuovi(Scadenza<T> scadenza) {
+        if(scadenza.precedente != null)
+            scadenza.precedente.successiva = scadenza.successiva;
+        else
+            slot[scadenza.slot] = scadenza.successiva;
+        if(scadenza.successiva != null)
+            scadenza.successiva.precedente = scadenza.precedente;
+
+        scadenza.precedente = null;
+        scadenza.successiva = null;
+        scadenza.slot = -1;
+        dimensione--;
+    }
+
+    /**
+     * @brief Divide arrotondando per eccesso
+     *
+     * @param dividendo dividendo
+     * @param divisore divisore positivo
+     * @return quoziente arrotondato per eccesso
+     */
+    private static long divisioneEccesso(long dividendo, long divisore) {
+        return -Math.floorDiv(-dividendo, divisore);
+    }
+}
@@ -1,68 +1,290 @@
-/**
- * @author Francesco Ferlin
- * @version 1.0
- */
-package me.ferlin;
-
-import java.util.ArrayDeque;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Queue;
-
-/**
- * Classe che gestisce un vettore di stringhe in cui
- * tutti i thread scrivono senza utilizzare direttamente
- * l'output stream di sistema.
- * L'interazione con l'utente viene poi gestita dal main.
- */
-public class Schermo {
-    
-    /**
-     * Coda di stringhe gestita dalla classe
-     */
-    private final Queue<String> messageQueue;
-    
-    private final Collection<String> umnodifiableMessages;
-    
-    /**
-     * @brief Costruisce uno schermo
-     */
-    public Schermo() {
-        messageQueue = new ArrayDeque();
-        umnodifiableMessages = Collections.unmodifiableCollection(messageQueue);
-    }
-    
-    /**
-     * @brief Aggiunge un elemento da visualizzare su schermo in coda
-     * 
-     * L'elemento viene aggiunto a {@link #vect} e viene aggiornato
-     * {@link #numEl} di conseguenza.
-     * @param msg messaggio da visualizzare su schermo
-     * @throws RuntimeException se viene raggiunta la capienza massima {@link #MAXEL}
-     */
-    public synchronized void push(String msg) {
-        messageQueue.offer(msg);        
-    }
-    
-    public Collection<String> getMessages() {
-        return umnodifiableMessages;
-    }
-    
-    /**
-     * @brief Pulisce lo schermo
-     */
-    public void pulisciSchermo() {
-        try {
-            final String os = System.getProperty("os.name");
-            if (os.contains("Windows")) {
-                new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
-            } else {
-                Runtime.getRuntime().exec("clear");
-            }
-            
-        } catch (final Exception e) {
-            System.err.println("Eccezione durante il tentativo di pulire lo schermo");
-            e.printStackTrace();
-        }
-    }
-}
+/**
+ * @author Francesco Ferlin
+ * @version 3.0
+ */
+package me.ferlin;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Classe che gestisce un buffer di eventi in cui
+ * tutti i thread scrivono senza utilizzare direttamente
+ * l'output stream di sistema.
+ * L'interazione con l'utente viene poi gestita dal main.
+ * 
+ * Gli eventi vengono salvati in un {@link AnelloEventi} limitato e 
+ * lock-free come record compatti (vocale, posizione, thread) e il testo 
+ * viene generato solo quando vengono visualizzati, per cui la memoria 
+ * usata non dipende dalla lunghezza della frase.
+ * 
+ * La capacita' e la politica di overflow si configurano con le proprieta'
+ * {@code giocofrase.schermo.capacita} e {@code giocofrase.schermo.overflow}
+ * (vedi {@link Configurazione} e {@link PoliticaOverflow}).
+ */
+public class Schermo {
+    
+    /**
+     * Sequenza ANSI che sposta il cursore in alto a sinistra 
+     * e pulisce lo schermo
+     */
+    private static final String ANSI_PULISCI = "\033[H\033[2J";
+    /**
+     * Capacita' predefinita del buffer
+     */
+    public static final int CAPACITA_PREDEFINITA = 4096;
+    
+    /**
+     * Comportamento di {@link #push(char, long)} quando il buffer e' pieno
+     */
+    public enum PoliticaOverflow {
+        /**
+         * Scarta l'evento piu' vecchio per fare spazio al nuovo
+         */
+        SCARTA_VECCHI,
+        /**
+         * Attende che il consumatore liberi spazio
+         */
+        BLOCCA,
+        /**
+         * Conta l'evento in un contatore per vocale, 
+         * visualizzato come un unico messaggio riassuntivo
+         */
+        AGGREGA;
+        
+        /**
+         * @brief Restituisce la politica con il nome dato
+         * 
+         * @param nome nome della politica (case-insensitive)
+         * @return politica con il nome dato
+         * @throws RuntimeException se la politica non esiste
+         */
+        public static PoliticaOverflow daNome(String nome) {
+            for(PoliticaOverflow p : values())
+                if(p.name().equalsIgnoreCase(nome.trim()))
+                    return p;
+            throw new RuntimeException("Politica di overflow sconosciuta: " + nome);
+        }
+    }
+    
+    /**
+     * Buffer che contiene gli eventi non ancora visualizzati
+     */
+    private final AnelloEventi anello;
+    /**
+     * Comportamento quando {@link #anello} e' pieno
+     */
+    private final PoliticaOverflow politica;
+    /**
+     * Numero di eventi scartati con {@link PoliticaOverflow#SCARTA_VECCHI}
+     */
+    private final LongAdder scartati = new LongAdder();
+    /**
+     * Numero di attese con {@link PoliticaOverflow#BLOCCA}
+     */
+    private final LongAdder attese = new LongAdder();
+    /**
+     * Vocali aggregate con {@link PoliticaOverflow#AGGREGA}
+     */
+    private final Map<Character, LongAdder> aggregati = new ConcurrentHashMap<>();
+    
+    /**
+     * @brief Costruisce uno schermo configurato secondo le proprieta' di sistema
+     * 
+     * @see Configurazione
+     */
+    public Schermo() {
+        this(
+            Configurazione.getInt("schermo.capacita", CAPACITA_PREDEFINITA),
+            PoliticaOverflow.daNome(Configurazione.getString("schermo.overflow", "aggrega"))
+        );
+    }
+    
+    /**
+     * @brief Costruisce uno schermo con la capacita' e la politica date
+     * 
+     * @param capacita numero massimo di eventi non visualizzati
+     * @param politica comportamento quando il buffer e' pieno
+     */
+    public Schermo(int capacita, PoliticaOverflow politica) {
+        this.anello = new AnelloEventi(capacita);
+        this.politica = politica;
+    }
+    
+    /**
+     * @brief Restituisce uno schermo che scarta tutti gli eventi
+     * 
+     * Usato quando i messaggi non vengono visualizzati, 
+     * ad esempio da {@link ElaboratoreBatch}.
+     * @return schermo su cui {@link #push(char, long, long)} non fa nulla
+     */
+    public static Schermo muto() {
+        return new Schermo(1, PoliticaOverflow.SCARTA_VECCHI) {
+            @Override
+            public void push(char vocale, long posizione, long ripetizioni) {
+            }
+        };
+    }
+    
+    /**
+     * @brief Aggiunge in coda l'evento di una vocale trovata
+     * 
+     * @param vocale vocale trovata
+     * @param posizione posizione della vocale nella frase
+     */
+    public void push(char vocale, long posizione) {
+        push(vocale, posizione, 1);
+    }
+    
+    /**
+     * @brief Aggiunge in coda l'evento di una o piu' vocali trovate
+     * 
+     * Se il buffer e' pieno si comporta secondo {@link #politica}.
+     * @param vocale vocale trovata
+     * @param posizione posizione della vocale nella frase o -1 se 
+     *                  l'evento rappresenta piu' vocali
+     * @param ripetizioni numero di vocali rappresentate dall'evento
+     */
+    public void push(char vocale, long posizione, long ripetizioni) {
+        final EventiJfr.Push evento = new EventiJfr.Push();
+        evento.begin();
+        
+        final long threadId = Thread.currentThread().threadId();
+        int tentativi = 0;
+        
+        while(!anello.offri(vocale, posizione, threadId, ripetizioni)) {
+            tentativi++;
+            switch(politica) {
+                case SCARTA_VECCHI:
+                    if(anello.prendi(null))
+                        scartati.increment();
+                    break;
+                case BLOCCA:
+                    attese.increment();
+                    if(tentativi < 100)
+                        Thread.yield();
+                    else
+                        LockSupport.parkNanos(10_000);
+                    break;
+                case AGGREGA:
+                default:
+                    aggregati.computeIfAbsent(vocale, k -> new LongAdder()).add(ripetizioni);
+                    registraPush(evento, vocale, posizione, ripetizioni, tentativi, true);
+                    return;
+            }
+        }
+        
+        registraPush(evento, vocale, posizione, ripetizioni, tentativi, false);
+    }
+    
+    /**
+     * @brief Completa l'evento JFR di una push, se e' abilitato
+     * 
+     * @see EventiJfr.Push
+     * @param evento evento iniziato all'inizio della push
+     * @param vocale vocale trovata
+     * @param posizione posizione della vocale nella frase
+     * @param ripetizioni numero di vocali rappresentate dall'evento
+     * @param tentativi numero di inserimenti falliti con lo schermo pieno
+     * @param aggregato true se l'evento e' stato aggregato
+     */
+    private static void registraPush(EventiJfr.Push evento, char vocale, long posizione,
+                                     long ripetizioni, int tentativi, boolean aggregato) {
+        if(!evento.shouldCommit())
+            return;
+        
+        evento.vocale = vocale;
+        evento.posizione = posizione;
+        evento.ripetizioni = ripetizioni;
+        evento.tentativi = tentativi;
+        evento.aggregato = aggregato;
+        evento.commit();
+    }
+    
+    /**
+     * @brief Passa il testo degli eventi non ancora visualizzati 
+     *        al consumer dato
+     * 
+     * Dopo gli eventi vengono visualizzati i messaggi riassuntivi 
+     * delle vocali aggregate e degli eventi scartati. Il numero di eventi,
+     * di conflitti e di attese viene registrato nelle {@link Metriche}.
+     * Deve essere chiamato da un solo thread alla volta.
+     * @param consumer consumer che visualizza ogni messaggio
+     */
+    public void svuota(Consumer<? super String> consumer) {
+        final StringBuilder sb = new StringBuilder();
+        final long[] eventi = new long[1];
+        
+        svuotaEventi((vocale, posizione, threadId, ripetizioni) -> {
+            eventi[0]++;
+            sb.setLength(0);
+            if(posizione >= 0 && ripetizioni == 1)
+                sb.append("Ho trovato la vocale ").append(vocale)
+                  .append(" in posizione ").append(posizione);
+            else
+                sb.append("Ho trovato ").append(ripetizioni)
+                  .append(" volte la vocale ").append(vocale);
+            sb.append(" (thread ").append(threadId).append(')');
+            
+            consumer.accept(sb.toString());
+        });
+        
+        for(Map.Entry<Character, LongAdder> e : aggregati.entrySet()) {
+            final long n = e.getValue().sumThenReset();
+            if(n > 0)
+                consumer.accept("Ho trovato altre " + n + " volte la vocale " + e.getKey());
+        }
+        
+        final long persi = scartati.sumThenReset();
+        if(persi > 0)
+            consumer.accept("(" + persi + " messaggi scartati)");
+        
+        Metriche.get().registraSchermo(eventi[0], anello.prendiConflitti(), attese.sumThenReset());
+    }
+    
+    /**
+     * @brief Passa gli eventi non ancora visualizzati al visitatore dato
+     * 
+     * Non include le vocali aggregate.
+     * Deve essere chiamato da un solo thread alla volta.
+     * @param visitatore visitatore che riceve ogni evento
+     */
+    void svuotaEventi(AnelloEventi.Visitatore visitatore) {
+        while(anello.prendi(visitatore));
+    }
+    
+    /**
+     * @brief Scarta tutti gli eventi non ancora visualizzati
+     * 
+     * Permette di riutilizzare lo stesso schermo per un altro round. 
+     * Deve essere chiamato solo quando nessun thread sta scrivendo.
+     */
+    public void azzera() {
+        svuotaEventi(null);
+        for(LongAdder n : aggregati.values())
+            n.reset();
+        scartati.reset();
+    }
+    
+    /**
+     * @brief Restituisce il numero di eventi non ancora visualizzati
+     * 
+     * @return numero di eventi nel buffer
+     */
+    public int getDimensioneCoda() {
+        return anello.getDimensione();
+    }
+    
+    /**
+     * @brief Pulisce lo schermo
+     * 
+     * Usa le sequenze di escape ANSI invece di avviare un processo esterno.
+     */
+    public void pulisciSchermo() {
+        System.out.print(ANSI_PULISCI);
+        System.out.flush();
+    }
+}
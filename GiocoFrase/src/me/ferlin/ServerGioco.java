@@ -0,0 +1,834 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server TCP non bloccante che gioca molte partite contemporaneamente.
+ *
+ * Un solo thread gestisce tutte le connessioni con un {@link Selector}.
+ * Ogni connessione e' una sessione indipendente che puo' giocare
+ * piu' round, con un protocollo testuale a righe in UTF-8:
+ * - il server invia {@code BENVENUTO <vocali>} alla connessione;
+ * - {@code FRASE <testo>} avvia un round: il server risponde subito
+ *   {@code INDOVINA <secondi>} e conta le vocali su un {@link ServizioAnalisi};
+ * - {@code VOCALE <c>} indica la vocale scelta: appena il conteggio e' finito
+ *   il server risponde {@code VINTO <vocale>} o {@code PERSO <vocale>},
+ *   dove {@code <vocale>} e' la vocale piu' usata;
+ * - se la vocale non arriva in tempo il server risponde {@code TEMPO <vocale>};
+ * - {@code NOME <nome>} indica il nome con cui vengono registrati i round
+ *   della connessione, troncato a {@link RegistroRisultati#MAX_NOME} byte,
+ *   e il server risponde {@code NOME <nome>}; il nome predefinito e'
+ *   l'indirizzo del client;
+ * - {@code ESCI} chiude la connessione;
+ * - gli errori vengono segnalati con {@code ERRORE <messaggio>}.
+ *
+ * Le scadenze di tutte le sessioni sono gestite da una sola
+ * {@link RuotaTemporale} avanzata dal thread del selector, invece che da
+ * un {@link java.util.concurrent.Future} bloccato per ogni giocatore.
+ * I conteggi vengono avviati con
+ * {@link ServizioAnalisi#analizzaSenzaAttesa(ServizioAnalisi.Richiesta)}:
+ * se tutte le postazioni sono occupate la sessione aspetta in una coda,
+ * che viene svuotata ogni volta che un round termina.
+ *
+ * Se e' stato impostato un {@link RegistroRisultati} l'esito di ogni round
+ * viene registrato senza aspettare che sia persistente, per non bloccare
+ * il thread del selector: ci pensa la forzatura periodica del registro.
+ *
+ * Quando una risposta non puo' essere inviata subito il server smette di
+ * leggere dalla sessione finche' i dati in sospeso non sono stati inviati,
+ * cosi' un client che invia comandi senza leggere le risposte non fa
+ * crescere la memoria del server. Una sessione con piu' di
+ * {@code giocofrase.server.uscita} byte in sospeso viene chiusa.
+ *
+ * La porta, il tempo per rispondere, la lunghezza massima delle righe,
+ * la modalita' di conteggio, la coda delle connessioni e i byte in sospeso
+ * si configurano con le proprieta' {@code giocofrase.server.porta},
+ * {@code giocofrase.server.secondi}, {@code giocofrase.server.frase},
+ * {@code giocofrase.server.modalita}, {@code giocofrase.server.backlog}
+ * e {@code giocofrase.server.uscita} (vedi {@link Configurazione}).
+ */
+public class ServerGioco implements Runnable, AutoCloseable {
+
+    // Constants
+
+    /**
+     * Porta predefinita del server
+     */
+    public static final int PORTA_PREDEFINITA = 4242;
+    /**
+     * Secondi predefiniti entro cui il giocatore deve scegliere la vocale
+     */
+    public static final int SECONDI_PREDEFINITI = 10;
+    /**
+     * Lunghezza massima predefinita di una riga, in byte
+     */
+    public static final int FRASE_PREDEFINITA = 64 * 1024;
+    /**
+     * Lunghezza predefinita della coda delle connessioni da accettare
+     */
+    public static final int BACKLOG_PREDEFINITO = 4096;
+    /**
+     * Byte massimi predefiniti in sospeso per ogni sessione
+     */
+    public static final int USCITA_PREDEFINITA = 1024 * 1024;
+    /**
+     * Durata di un tick della ruota temporale
+     */
+    private static final long NANOSECONDI_TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     * Numero di slot della ruota temporale
+     */
+    private static final int SLOT_RUOTA = 1024;
+    /**
+     * Dimensione del buffer in cui vengono lette le connessioni
+     */
+    private static final int BUFFER_LETTURA = 64 * 1024;
+
+
+    // Attributes
+
+    /**
+     * Servizio su cui vengono contate le vocali
+     */
+    private final ServizioAnalisi servizio;
+    /**
+     * Tabella delle vocali contate
+     */
+    private final TabellaVocali tabella;
+    /**
+     * Modalita' di conteggio dei round
+     */
+    private final ModalitaConteggio modalita;
+    /**
+     * Tempo entro cui il giocatore deve scegliere la vocale, in secondi
+     */
+    private final int secondi;
+    /**
+     * Lunghezza massima di una riga, in byte
+     */
+    private final int maxRiga;
+    /**
+     * Byte massimi in sospeso per ogni sessione
+     */
+    private final int maxUscita;
+    /**
+     * Riga inviata ad ogni nuova connessione
+     */
+    private final String benvenuto;
+    /**
+     * Selector di tutte le connessioni
+     */
+    private final Selector selector;
+    /**
+     * Canale su cui vengono accettate le connessioni
+     */
+    private final ServerSocketChannel server;
+    /**
+     * Scadenze dei round in corso
+     */
+    private final RuotaTemporale<Sessione> ruota;
+    /**
+     * Buffer condiviso in cui vengono lette le connessioni
+     */
+    private final ByteBuffer lettura = ByteBuffer.allocateDirect(BUFFER_LETTURA);
+    /**
+     * Sessioni che aspettano una postazione libera, in ordine di arrivo
+     */
+    private final Queue<Sessione> inAttesa = new ArrayDeque<>();
+    /**
+     * Round terminati dai lavoratori del servizio, da consegnare
+     * al thread del selector
+     */
+    private final Queue<Completamento> completati = new ConcurrentLinkedQueue<>();
+    /**
+     * Indica se il selector e' gia' stato svegliato dopo l'ultima selezione
+     */
+    private final AtomicBoolean svegliato = new AtomicBoolean();
+    /**
+     * Registro dei round o null se i round non vengono registrati
+     */
+    private volatile RegistroRisultati registro;
+    /**
+     * Indica se il server e' stato chiuso
+     */
+    private volatile boolean chiuso;
+
+    /**
+     * @brief Costruisce un server configurato secondo le proprieta' di sistema
+     *
+     * @see Configurazione
+     * @param servizio servizio su cui contare le vocali
+     * @throws IOException se la porta non puo' essere aperta
+     */
+    public ServerGioco(ServizioAnalisi servizio) throws IOException {
+        this(
+            servizio,
+            new InetSocketAddress(Configurazione.getInt("server.porta", PORTA_PREDEFINITA)),
+            ModalitaConteggio.daScelta(Configurazione.getString("server.modalita", "s")),
+            Configurazione.getInt("server.secondi", SECONDI_PREDEFINITI),
+            Configurazione.getInt("server.frase", FRASE_PREDEFINITA)
+        );
+    }
+
+    /**
+     * @brief Costruisce un server con i parametri dati
+     *
+     * @param servizio servizio su cui contare le vocali
+     * @param indirizzo indirizzo su cui accettare le connessioni
+     * @param modalita modalita' di conteggio dei round
+     * @param secondi tempo entro cui il giocatore deve scegliere la vocale
+     * @param maxRiga lunghezza massima di una riga, in byte
+     * @throws IOException se la porta non puo' essere aperta
+     * @throws RuntimeException se uno dei numeri non e' positivo
+     */
+    public ServerGioco(ServizioAnalisi servizio, InetSocketAddress indirizzo,
+                       ModalitaConteggio modalita, int secondi, int maxRiga) throws IOException {
+        if(secondi <= 0)
+            throw new RuntimeException("Il tempo per rispondere deve essere positivo.");
+        if(maxRiga <= 0)
+            throw new RuntimeException("La lunghezza massima delle righe deve essere positiva.");
+
+        this.servizio = servizio;
+        this.tabella = servizio.getTabella();
+        this.modalita = modalita;
+        this.secondi = secondi;
+        this.maxRiga = maxRiga;
+        this.maxUscita = Configurazione.getInt("server.uscita", USCITA_PREDEFINITA);
+        if(maxUscita <= 0)
+            throw new RuntimeException("I byte in sospeso devono essere positivi.");
+        this.ruota = new RuotaTemporale<>(NANOSECONDI_TICK, SLOT_RUOTA, System.nanoTime());
+
+        final StringBuilder sb = new StringBuilder("BENVENUTO ");
+        for(int i = 0; i < tabella.getNumeroVocali(); i++)
+            sb.append(tabella.getVocale(i));
+        this.benvenuto = sb.toString();
+
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(indirizzo, Configurazione.getInt("server.backlog", BACKLOG_PREDEFINITO));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @brief Gestisce le connessioni finche' il server non viene chiuso
+     *
+     * @throws UncheckedIOException se il selector non puo' essere usato
+     */
+    @Override
+    public void run() {
+        try {
+            while(!chiuso) {
+                final long attesa = ruota.getAttesa(System.nanoTime());
+                if(attesa < 0)
+                    selector.select(this::gestisci);
+                else if(attesa == 0)
+                    selector.selectNow(this::gestisci);
+                else
+                    selector.select(this::gestisci, Math.max(1, TimeUnit.NANOSECONDS.toMillis(attesa)));
+                svegliato.set(false);
+
+                Completamento completamento;
+                while((completamento = completati.poll()) != null)
+                    completa(completamento);
+                avviaInAttesa();
+
+                ruota.avanza(System.nanoTime(), this::scaduta);
+            }
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            for(SelectionKey chiave : selector.keys())
+                if(chiave.attachment() instanceof Sessione)
+                    chiudi((Sessione) chiave.attachment());
+            try {
+                selector.close();
+                server.close();
+            } catch(IOException ex) {
+                // Il server sta gia' terminando
+            }
+        }
+    }
+
+    /**
+     * @brief Restituisce la porta su cui il server accetta le connessioni
+     *
+     * @return porta locale
+     * @throws UncheckedIOException se il canale e' stato chiuso
+     */
+    public int getPorta() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @brief Setta il registro in cui salvare i round
+     *
+     * Il registro non viene chiuso dal server.
+     * @param registro registro dei round o null per non registrarli
+     */
+    public void setRegistro(RegistroRisultati registro) {
+        this.registro = registro;
+    }
+
+    /**
+     * @brief Chiude il server e tutte le sessioni
+     *
+     * Puo' essere chiamato da qualsiasi thread; le sessioni vengono chiuse
+     * dal thread del server all'uscita da {@link #run()}.
+     */
+    @Override
+    public void close() {
+        chiuso = true;
+        selector.wakeup();
+    }
+
+    /**
+     * @brief Gestisce una chiave selezionata
+     *
+     * @param chiave chiave pronta
+     */
+    private void gestisci(SelectionKey chiave) {
+        if(!chiave.isValid())
+            return;
+
+        if(chiave.isAcceptable()) {
+            accetta();
+            return;
+        }
+
+        final Sessione sessione = (Sessione) chiave.attachment();
+        try {
+            if(chiave.isReadable())
+                leggi(sessione);
+            if(chiave.isValid() && chiave.isWritable())
+                svuota(sessione);
+        } catch(IOException ex) {
+            chiudi(sessione);
+        }
+    }
+
+    /**
+     * @brief Accetta tutte le connessioni in attesa
+     */
+    private void accetta() {
+        try {
+            SocketChannel canale;
+            while((canale = server.accept()) != null) {
+                canale.configureBlocking(false);
+                canale.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                final Sessione sessione = new Sessione(canale, nomePredefinito(canale));
+                sessione.chiave = canale.register(selector, SelectionKey.OP_READ, sessione);
+                Metriche.get().registraSessione(true);
+                scrivi(sessione, benvenuto);
+            }
+        } catch(IOException ex) {
+            // Connessione chiusa dal client prima di essere accettata
+            // o troppi file aperti: si riprova alla prossima selezione
+        }
+    }
+
+    /**
+     * @brief Restituisce il nome predefinito del giocatore di una connessione
+     *
+     * @param canale canale della connessione
+     * @return indirizzo e porta del client
+     * @throws IOException se la connessione e' gia' stata chiusa
+     */
+    private static String nomePredefinito(SocketChannel canale) throws IOException {
+        final InetSocketAddress remoto = (InetSocketAddress) canale.getRemoteAddress();
+        return remoto.getHostString() + ":" + remoto.getPort();
+    }
+
+    /**
+     * @brief Legge i dati disponibili sulla connessione di una sessione
+     *        e ne esegue le righe complete
+     *
+     * @param sessione sessione da leggere
+     * @throws IOException se la connessione non puo' essere letta
+     */
+    private void leggi(Sessione sessione) throws IOException {
+        // Con risposte in sospeso si smette di leggere: la lettura riprende
+        // da svuota() quando sono state inviate
+        while(sessione.uscita == null) {
+            lettura.clear();
+            final int letti = sessione.canale.read(lettura);
+            if(letti < 0) {
+                chiudi(sessione);
+                return;
+            }
+            if(letti == 0)
+                return;
+
+            lettura.flip();
+            while(lettura.hasRemaining()) {
+                final byte b = lettura.get();
+                if(b != '\n') {
+                    if(!sessione.aggiungi(b, maxRiga)) {
+                        scrivi(sessione, "ERRORE riga troppo lunga");
+                        chiudi(sessione);
+                        return;
+                    }
+                    continue;
+                }
+
+                esegui(sessione, sessione.prendiRiga());
+                if(sessione.chiusa)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * @brief Esegue un comando ricevuto da una sessione
+     *
+     * @param sessione sessione che ha inviato il comando
+     * @param riga riga ricevuta, senza terminatore
+     */
+    private void esegui(Sessione sessione, String riga) {
+        final int spazio = riga.indexOf(' ');
+        final String comando = spazio < 0 ? riga : riga.substring(0, spazio);
+        final String argomento = spazio < 0 ? "" : riga.substring(spazio + 1);
+
+        switch(comando) {
+            case "FRASE":
+                if(sessione.inCorso) {
+                    scrivi(sessione, "ERRORE round gia\' in corso");
+                    return;
+                }
+                sessione.nuovoRound(argomento);
+                sessione.scadenza = ruota.aggiungi(
+                        System.nanoTime() + TimeUnit.SECONDS.toNanos(secondi), sessione);
+                scrivi(sessione, "INDOVINA " + secondi);
+
+                if(inAttesa.isEmpty() && avviaConteggio(sessione))
+                    return;
+                inAttesa.add(sessione);
+                break;
+            case "VOCALE":
+                if(!sessione.inCorso || sessione.scaduto) {
+                    scrivi(sessione, "ERRORE nessun round in corso");
+                    return;
+                }
+                if(sessione.scelta != 0 || argomento.isEmpty()) {
+                    scrivi(sessione, sessione.scelta != 0 ?
+                            "ERRORE vocale gia\' scelta" : "ERRORE vocale mancante");
+                    return;
+                }
+                sessione.scelta = Character.toLowerCase(argomento.charAt(0));
+                ruota.annulla(sessione.scadenza);
+                concludi(sessione);
+                break;
+            case "NOME":
+                if(argomento.isBlank()) {
+                    scrivi(sessione, "ERRORE nome mancante");
+                    return;
+                }
+                sessione.giocatore = argomento.strip();
+                scrivi(sessione, "NOME " + sessione.giocatore);
+                break;
+            case "ESCI":
+                chiudi(sessione);
+                break;
+            default:
+                scrivi(sessione, "ERRORE comando sconosciuto");
+                break;
+        }
+    }
+
+    /**
+     * @brief Avvia il conteggio delle vocali del round di una sessione
+     *
+     * @param sessione sessione il cui round deve essere contato
+     * @return false se tutte le postazioni del servizio sono occupate
+     */
+    private boolean avviaConteggio(Sessione sessione) {
+        final CompletableFuture<ServizioAnalisi.Risultato> risultato = servizio.analizzaSenzaAttesa(
+                new ServizioAnalisi.Richiesta(sessione.frase, modalita));
+        if(risultato == null)
+            return false;
+
+        final int round = sessione.round;
+        risultato.whenComplete((r, ex) -> {
+            completati.add(new Completamento(sessione, round, r, ex));
+            if(svegliato.compareAndSet(false, true))
+                selector.wakeup();
+        });
+        return true;
+    }
+
+    /**
+     * @brief Avvia i conteggi delle sessioni in attesa finche'
+     *        ci sono postazioni libere
+     */
+    private void avviaInAttesa() {
+        Sessione sessione;
+        while((sessione = inAttesa.peek()) != null) {
+            if(!sessione.chiusa && !avviaConteggio(sessione))
+                return;
+            inAttesa.poll();
+        }
+    }
+
+    /**
+     * @brief Consegna a una sessione il risultato del suo conteggio
+     *
+     * @param completamento round terminato
+     */
+    private void completa(Completamento completamento) {
+        final Sessione sessione = completamento.sessione;
+        if(sessione.chiusa || completamento.round != sessione.round)
+            return;
+
+        if(completamento.errore != null) {
+            ruota.annulla(sessione.scadenza);
+            registra(sessione, RegistroRisultati.Esito.ERRORE);
+            sessione.inCorso = false;
+            sessione.frase = null;
+            scrivi(sessione, "ERRORE conteggio non riuscito");
+            return;
+        }
+
+        sessione.risultato = completamento.risultato;
+        concludi(sessione);
+    }
+
+    /**
+     * @brief Segna come scaduto il round di una sessione
+     *
+     * @param sessione sessione il cui tempo e' scaduto
+     */
+    private void scaduta(Sessione sessione) {
+        if(sessione.chiusa)
+            return;
+
+        sessione.scaduto = true;
+        Metriche.get().registraTempoScaduto();
+        concludi(sessione);
+    }
+
+    /**
+     * @brief Invia l'esito del round se il conteggio e' terminato e il
+     *        giocatore ha scelto la vocale o il tempo e' scaduto
+     *
+     * @param sessione sessione da controllare
+     */
+    private void concludi(Sessione sessione) {
+        if(sessione.risultato == null || (sessione.scelta == 0 && !sessione.scaduto))
+            return;
+
+        final char piuUsata = sessione.risultato.getPiuUsata();
+        final RegistroRisultati.Esito esito;
+        if(sessione.scaduto)
+            esito = RegistroRisultati.Esito.TEMPO;
+        else if(tabella.getSlot(piuUsata) == tabella.getSlot(sessione.scelta))
+            esito = RegistroRisultati.Esito.VINTO;
+        else
+            esito = RegistroRisultati.Esito.PERSO;
+
+        registra(sessione, esito);
+        sessione.inCorso = false;
+        sessione.risultato = null;
+        sessione.frase = null;
+        scrivi(sessione, esito.name() + " " + piuUsata);
+    }
+
+    /**
+     * @brief Registra il round concluso di una sessione, se c'e' un registro
+     *
+     * Il round non viene reso persistente subito: basta la forzatura
+     * periodica del registro. Un errore del registro non interrompe il gioco.
+     * @param sessione sessione del round
+     * @param esito esito inviato al giocatore
+     */
+    private void registra(Sessione sessione, RegistroRisultati.Esito esito) {
+        final RegistroRisultati registro = this.registro;
+        if(registro == null)
+            return;
+
+        try {
+            registro.registra(esito, sessione.giocatore, sessione.frase,
+                    sessione.scelta, sessione.risultato);
+        } catch(RuntimeException ex) {
+            // Registro chiuso o disco pieno: il round viene solo giocato
+        }
+    }
+
+    /**
+     * @brief Invia una riga a una sessione
+     *
+     * La riga viene scritta subito se possibile; il resto viene salvato
+     * e inviato quando la connessione torna scrivibile, e intanto la sessione
+     * non viene letta. Se i dati in sospeso superano il massimo la sessione
+     * viene chiusa.
+     * @param sessione sessione destinataria
+     * @param riga riga da inviare, senza terminatore
+     */
+    private void scrivi(Sessione sessione, String riga) {
+        if(sessione.chiusa)
+            return;
+
+        final byte[] dati = (riga + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            if(sessione.uscita == null) {
+                final ByteBuffer buffer = ByteBuffer.wrap(dati);
+                sessione.canale.write(buffer);
+                if(!buffer.hasRemaining())
+                    return;
+                if(buffer.remaining() > maxUscita) {
+                    chiudi(sessione);
+                    return;
+                }
+
+                sessione.uscita = ByteBuffer.allocate(Math.max(buffer.remaining(), 256));
+                sessione.uscita.put(buffer);
+                sessione.chiave.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+
+            if(sessione.uscita.remaining() < dati.length) {
+                final long necessari = (long) sessione.uscita.position() + dati.length;
+                if(necessari > maxUscita) {
+                    chiudi(sessione);
+                    return;
+                }
+                sessione.uscita.flip();
+                final ByteBuffer nuova = ByteBuffer.allocate((int) Math.min(2 * necessari, maxUscita));
+                sessione.uscita = nuova.put(sessione.uscita);
+            }
+            sessione.uscita.put(dati);
+        } catch(IOException ex) {
+            chiudi(sessione);
+        }
+    }
+
+    /**
+     * @brief Invia i dati rimasti in sospeso a una sessione
+     *
+     * Quando sono stati inviati tutti la sessione torna ad essere letta.
+     * @param sessione sessione scrivibile
+     * @throws IOException se la connessione non puo' essere scritta
+     */
+    private void svuota(Sessione sessione) throws IOException {
+        if(sessione.uscita == null)
+            return;
+
+        sessione.uscita.flip();
+        sessione.canale.write(sessione.uscita);
+        if(sessione.uscita.hasRemaining()) {
+            sessione.uscita.compact();
+            return;
+        }
+
+        sessione.uscita = null;
+        sessione.chiave.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * @brief Chiude la connessione di una sessione
+     *
+     * Un eventuale conteggio in corso viene completato dal servizio
+     * e il suo risultato ignorato.
+     * @param sessione sessione da chiudere
+     */
+    private void chiudi(Sessione sessione) {
+        if(sessione.chiusa)
+            return;
+
+        sessione.chiusa = true;
+        ruota.annulla(sessione.scadenza);
+        sessione.chiave.cancel();
+        try {
+            sessione.canale.close();
+        } catch(IOException ex) {
+            // La connessione e' gia' chiusa
+        }
+        Metriche.get().registraSessione(false);
+    }
+
+    /**
+     * Stato di una connessione, usato solo dal thread del selector
+     */
+    private static final class Sessione {
+
+        /**
+         * Canale della connessione
+         */
+        private final SocketChannel canale;
+        /**
+         * Chiave della connessione nel selector
+         */
+        private SelectionKey chiave;
+        /**
+         * Byte della riga in lettura
+         */
+        private byte[] riga = new byte[64];
+        /**
+         * Numero di byte della riga in lettura
+         */
+        private int lunghezzaRiga;
+        /**
+         * Dati da inviare rimasti in sospeso o null se non ce ne sono
+         */
+        private ByteBuffer uscita;
+        /**
+         * Numero del round corrente, usato per scartare i risultati
+         * dei round precedenti
+         */
+        private int round;
+        /**
+         * Indica se un round e' in corso
+         */
+        private boolean inCorso;
+        /**
+         * Frase del round in corso o null
+         */
+        private String frase;
+        /**
+         * Nome con cui vengono registrati i round
+         */
+        private String giocatore;
+        /**
+         * Risultato del conteggio o null se non e' ancora terminato
+         */
+        private ServizioAnalisi.Risultato risultato;
+        /**
+         * Vocale scelta dal giocatore o 0 se non l'ha ancora scelta
+         */
+        private char scelta;
+        /**
+         * Indica se il tempo per scegliere la vocale e' scaduto
+         */
+        private boolean scaduto;
+        /**
+         * Scadenza del round corrente
+         */
+        private RuotaTemporale.Scadenza<Sessione> scadenza;
+        /**
+         * Indica se la connessione e' stata chiusa
+         */
+        private boolean chiusa;
+
+        /**
+         * @brief Costruisce una sessione
+         *
+         * @param canale canale della connessione
+         * @param giocatore nome predefinito del giocatore
+         */
+        private Sessione(SocketChannel canale, String giocatore) {
+            this.canale = canale;
+            this.giocatore = giocatore;
+        }
+
+        /**
+         * @brief Aggiunge un byte alla riga in lettura
+         *
+         * @param b byte letto
+         * @param massimo lunghezza massima della riga
+         * @return false se la riga supera la lunghezza massima
+         */
+        private boolean aggiungi(byte b, int massimo) {
+            if(lunghezzaRiga == massimo)
+                return false;
+            if(lunghezzaRiga == riga.length)
+                riga = Arrays.copyOf(riga, Math.min(massimo, 2 * riga.length));
+            riga[lunghezzaRiga++] = b;
+            return true;
+        }
+
+        /**
+         * @brief Restituisce la riga letta e ne inizia una nuova
+         *
+         * @return riga decodificata da UTF-8, senza {@code \r} finale
+         */
+        private String prendiRiga() {
+            int fine = lunghezzaRiga;
+            if(fine > 0 && riga[fine - 1] == '\r')
+                fine--;
+
+            final String res = new String(riga, 0, fine, StandardCharsets.UTF_8);
+            lunghezzaRiga = 0;
+            if(riga.length > 1024)
+                riga = new byte[64];
+            return res;
+        }
+
+        /**
+         * @brief Inizia un nuovo round con la frase data
+         *
+         * @param frase frase del round
+         */
+        private void nuovoRound(String frase) {
+            round++;
+            inCorso = true;
+            this.frase = frase;
+            risultato = null;
+            scelta = 0;
+            scaduto = false;
+        }
+    }
+
+    /**
+     * Round terminato da un lavoratore del servizio, immutabile
+     */
+    private static final class Completamento {
+
+        /**
+         * Sessione del round
+         */
+        private final Sessione sessione;
+        /**
+         * Numero del round nella sessione
+         */
+        private final int round;
+        /**
+         * Risultato del conteggio o null in caso di errore
+         */
+        private final ServizioAnalisi.Risultato risultato;
+        /**
+         * Errore del conteggio o null
+         */
+        private final Throwable errore;
+
+        /**
+         * @brief Costruisce un completamento
+         *
+         * @param sessione sessione del round
+         * @param round numero del round nella sessione
+         * @param risultato risultato del conteggio o null
+         * @param errore errore del conteggio o null
+         */
+        private Completamento(Sessione sessione, int round,
+                              ServizioAnalisi.Risultato risultato, Throwable errore) {
+            this.sessione = sessione;
+            this.round = round;
+            this.risultato = risultato;
+            this.errore = errore;
+        }
+    }
+}
@@ -0,0 +1,722 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Servizio di lunga durata che esegue i round di analisi.
+ *
+ * Il servizio possiede dei thread lavoratori gia' avviati e un numero fisso
+ * di postazioni, ognuna con i propri {@link DatiCondivisi}, {@link Schermo} e
+ * runnable, che vengono azzerati e riutilizzati ad ogni round invece di
+ * essere ricreati. Ogni round viene descritto da una {@link Richiesta}
+ * immutabile.
+ *
+ * Una postazione appartiene ad un solo round alla volta: viene presa da una
+ * coda bloccante, configurata dal thread che avvia il round e passata ai
+ * lavoratori attraverso la coda dell'esecutore, per cui i valori settati
+ * nei runnable sono visibili ai lavoratori senza altra sincronizzazione.
+ * Viene restituita alla coda solo quando tutti i runnable sono usciti
+ * da {@link Runnable#run()}.
+ *
+ * I runnable fork/join di tutte le postazioni condividono un solo
+ * {@link ForkJoinPool}, per cui i round contemporanei non moltiplicano
+ * i thread per il numero di postazioni.
+ *
+ * Il numero di postazioni e di lavoratori si configura con le proprieta'
+ * {@code giocofrase.servizio.postazioni} e {@code giocofrase.servizio.lavoratori}
+ * (vedi {@link Configurazione}); il pool fork/join con le proprieta' lette
+ * da {@link ContaVocaliForkJoin#ContaVocaliForkJoin()}.
+ */
+public class ServizioAnalisi implements AutoCloseable {
+
+    /**
+     * Numero predefinito di postazioni
+     */
+    public static final int POSTAZIONI_PREDEFINITE = 4;
+
+    /**
+     * Tabella delle vocali contate in tutti i round
+     */
+    private final TabellaVocali tabella;
+    /**
+     * Cache usata dai round in {@link ModalitaConteggio#PASSATA_SINGOLA}
+     * o null se non deve essere usata
+     */
+    private final CacheIstogrammi cache;
+    /**
+     * Thread lavoratori, usati dai round con {@link StrategiaEsecuzione#POOL_FISSO}
+     */
+    private final ThreadPoolExecutor lavoratori;
+    /**
+     * Pool condiviso dai runnable fork/join delle postazioni
+     */
+    private final ForkJoinPool poolForkJoin;
+    /**
+     * Numero massimo di caratteri analizzati da ogni task fork/join
+     */
+    private final int chunkForkJoin;
+    /**
+     * Postazioni non usate da nessun round
+     */
+    private final BlockingQueue<Postazione> libere;
+    /**
+     * Indica se il servizio e' stato chiuso
+     */
+    private volatile boolean chiuso;
+
+    /**
+     * @brief Costruisce un servizio configurato secondo le proprieta' di sistema
+     *
+     * @see Configurazione
+     * @param tabella tabella delle vocali da contare
+     * @param cache cache degli istogrammi o null se non deve essere usata
+     */
+    public ServizioAnalisi(TabellaVocali tabella, CacheIstogrammi cache) {
+        this(
+            tabella,
+            cache,
+            Configurazione.getInt("servizio.postazioni", POSTAZIONI_PREDEFINITE),
+            Configurazione.getInt("servizio.lavoratori",
+                    Math.max(tabella.getNumeroVocali(), Runtime.getRuntime().availableProcessors()))
+        );
+    }
+
+    /**
+     * @brief Costruisce un servizio con il numero di postazioni
+     *        e di lavoratori dati
+     *
+     * I lavoratori vengono avviati subito.
+     * @param tabella tabella delle vocali da contare
+     * @param cache cache degli istogrammi o null se non deve essere usata
+     * @param postazioni numero massimo di round contemporanei
+     * @param lavoratori numero di thread lavoratori
+     * @throws RuntimeException se uno dei numeri non e' positivo o
+     *                          se la cache conta un numero di vocali diverso
+     */
+    public ServizioAnalisi(TabellaVocali tabella, CacheIstogrammi cache,
+                           int postazioni, int lavoratori) {
+        if(postazioni <= 0)
+            throw new RuntimeException("Il numero di postazioni deve essere positivo.");
+        if(lavoratori <= 0)
+            throw new RuntimeException("Il numero di lavoratori deve essere positivo.");
+        if(cache != null && cache.getNumeroVocali() != tabella.getNumeroVocali())
+            throw new RuntimeException("La cache non corrisponde alle vocali della tabella.");
+
+        this.tabella = tabella;
+        this.cache = cache;
+
+        final AtomicInteger numero = new AtomicInteger();
+        this.lavoratori = new ThreadPoolExecutor(
+                lavoratori, lavoratori, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    final Thread th = new Thread(r, "Thread_servizio_" + numero.getAndIncrement());
+                    th.setDaemon(true);
+                    return th;
+                }
+        );
+        this.lavoratori.prestartAllCoreThreads();
+
+        this.poolForkJoin = new ForkJoinPool(
+                Configurazione.getInt("forkjoin.parallelismo", Runtime.getRuntime().availableProcessors()));
+        this.chunkForkJoin = Configurazione.getInt("forkjoin.chunk", ContaVocaliForkJoin.CHUNK_PREDEFINITO);
+
+        this.libere = new ArrayBlockingQueue<>(postazioni);
+        for(int i = 0; i < postazioni; i++)
+            libere.add(new Postazione());
+    }
+
+    /**
+     * Round da eseguire, immutabile
+     */
+    public static final class Richiesta {
+
+        /**
+         * Frase da analizzare
+         */
+        private final String frase;
+        /**
+         * Modalita' di conteggio
+         */
+        private final ModalitaConteggio modalita;
+        /**
+         * Strategia con cui eseguire i runnable
+         */
+        private final StrategiaEsecuzione strategia;
+        /**
+         * Indica se i runnable devono usare il delay randomico
+         */
+        private final boolean usaDelay;
+        /**
+         * Indica se i runnable devono usare lo yield
+         */
+        private final boolean usaYield;
+
+        /**
+         * @brief Costruisce una richiesta eseguita dai lavoratori del servizio,
+         *        senza delay ne' yield
+         *
+         * @param frase frase da analizzare
+         * @param modalita modalita' di conteggio
+         * @throws RuntimeException se frase o modalita sono null
+         */
+        public Richiesta(String frase, ModalitaConteggio modalita) {
+            this(frase, modalita, StrategiaEsecuzione.POOL_FISSO, false, false);
+        }
+
+        /**
+         * @brief Costruisce una richiesta
+         *
+         * Con {@link StrategiaEsecuzione#POOL_FISSO} i runnable vengono eseguiti
+         * dai lavoratori del servizio, gia' avviati; con le altre strategie
+         * vengono avviati nuovi thread, ma le postazioni vengono comunque riutilizzate.
+         * @param frase frase da analizzare
+         * @param modalita modalita' di conteggio
+         * @param strategia strategia con cui eseguire i runnable
+         * @param usaDelay true se i runnable devono usare il delay randomico
+         * @param usaYield true se i runnable devono usare lo yield
+         * @throws RuntimeException se frase, modalita o strategia sono null
+         */
+        public Richiesta(String frase, ModalitaConteggio modalita, StrategiaEsecuzione strategia,
+                         boolean usaDelay, boolean usaYield) {
+            if(frase == null)
+                throw new RuntimeException("L'oggetto frase non puo\' essere null.");
+            if(modalita == null)
+                throw new RuntimeException("L'oggetto modalita non puo\' essere null.");
+            if(strategia == null)
+                throw new RuntimeException("L'oggetto strategia non puo\' essere null.");
+
+            this.frase = frase;
+            this.modalita = modalita;
+            this.strategia = strategia;
+            this.usaDelay = usaDelay;
+            this.usaYield = usaYield;
+        }
+
+        /**
+         * @brief Restituisce la frase da analizzare
+         *
+         * @return frase da analizzare
+         */
+        public String getFrase() {
+            return frase;
+        }
+
+        /**
+         * @brief Restituisce la modalita' di conteggio
+         *
+         * @return modalita' di conteggio
+         */
+        public ModalitaConteggio getModalita() {
+            return modalita;
+        }
+
+        /**
+         * @brief Restituisce la strategia con cui eseguire i runnable
+         *
+         * @return strategia di esecuzione
+         */
+        public StrategiaEsecuzione getStrategia() {
+            return strategia;
+        }
+
+        /**
+         * @brief Restituisce se i runnable devono usare il delay randomico
+         *
+         * @return true se i runnable devono usare il delay randomico
+         */
+        public boolean isUsaDelay() {
+            return usaDelay;
+        }
+
+        /**
+         * @brief Restituisce se i runnable devono usare lo yield
+         *
+         * @return true se i runnable devono usare lo yield
+         */
+        public boolean isUsaYield() {
+            return usaYield;
+        }
+    }
+
+    /**
+     * Risultato di un round, immutabile
+     */
+    public static final class Risultato {
+
+        /**
+         * Conteggi delle vocali, ordinati secondo gli slot della tabella
+         */
+        private final long[] conteggi;
+        /**
+         * Vocale piu' usata
+         */
+        private final char piuUsata;
+        /**
+         * Durata del round in nanosecondi
+         */
+        private final long nanosecondi;
+        /**
+         * Caratteri analizzati quando la vocale piu' usata e' diventata certa
+         * o -1 se e' stata analizzata tutta la frase
+         */
+        private final long caratteriAllaDecisione;
+        /**
+         * Frequenze stimate dal campionamento o null
+         */
+        private final StimaVocali stima;
+
+        /**
+         * @brief Costruisce il risultato leggendo i dati condivisi dati
+         *
+         * @param dati dati condivisi del round terminato
+         * @param nanosecondi durata del round
+         */
+        private Risultato(DatiCondivisi dati, long nanosecondi) {
+            final DatiCondivisi.Istantanea istantanea = dati.getIstantanea();
+            this.conteggi = new long[dati.getTabella().getNumeroVocali()];
+            for(int i = 0; i < conteggi.length; i++)
+                conteggi[i] = istantanea.getConteggio(i);
+            this.piuUsata = istantanea.getPiuUsata();
+            this.nanosecondi = nanosecondi;
+            this.caratteriAllaDecisione = dati.getCaratteriAllaDecisione();
+            this.stima = dati.getStima();
+        }
+
+        /**
+         * @brief Restituisce il conteggio della vocale data
+         *
+         * @param index slot della vocale
+         * @return numero di vocali trovate
+         */
+        public long getConteggio(int index) {
+            return conteggi[index];
+        }
+
+        /**
+         * @brief Restituisce la vocale piu' usata
+         *
+         * @return vocale piu' usata
+         */
+        public char getPiuUsata() {
+            return piuUsata;
+        }
+
+        /**
+         * @brief Restituisce la durata del round
+         *
+         * @return nanosecondi dall'avvio dei runnable alla fine dell'ultimo
+         */
+        public long getNanosecondi() {
+            return nanosecondi;
+        }
+
+        /**
+         * @brief Restituisce il punto in cui la vocale piu' usata e' diventata certa
+         *
+         * @see ModalitaConteggio#ANTICIPATA
+         * @see ModalitaConteggio#CAMPIONATA
+         * @return caratteri analizzati alla decisione o -1 se e' stata
+         *         analizzata tutta la frase
+         */
+        public long getCaratteriAllaDecisione() {
+            return caratteriAllaDecisione;
+        }
+
+        /**
+         * @brief Restituisce le frequenze stimate dal campionamento
+         *
+         * @see ModalitaConteggio#CAMPIONATA
+         * @return frequenze stimate o null se la frase
+         *         non e' stata campionata
+         */
+        public StimaVocali getStima() {
+            return stima;
+        }
+    }
+
+    /**
+     * Round in esecuzione su una postazione.
+     *
+     * Deve essere chiuso per restituire la postazione al servizio.
+     */
+    public final class Round implements AutoCloseable {
+
+        /**
+         * Postazione usata dal round
+         */
+        private final Postazione postazione;
+        /**
+         * Dati condivisi in cui scrivono i runnable
+         */
+        private final DatiCondivisi dati;
+        /**
+         * Promessa completata quando tutti i runnable sono usciti da run()
+         */
+        private final CompletableFuture<Risultato> risultato = new CompletableFuture<>();
+        /**
+         * Indica se il round e' stato chiuso
+         */
+        private final AtomicBoolean chiuso = new AtomicBoolean();
+
+        /**
+         * @brief Costruisce un round sulla postazione data
+         *
+         * @param postazione postazione usata dal round
+         * @param dati dati condivisi in cui scrivono i runnable
+         */
+        private Round(Postazione postazione, DatiCondivisi dati) {
+            this.postazione = postazione;
+            this.dati = dati;
+        }
+
+        /**
+         * @brief Restituisce i dati condivisi in cui scrivono i runnable
+         *
+         * Non devono essere usati dopo la chiusura del round.
+         * @return dati condivisi del round
+         */
+        public DatiCondivisi getDatiCondivisi() {
+            return dati;
+        }
+
+        /**
+         * @brief Restituisce lo schermo su cui scrivono i runnable
+         *
+         * Non deve essere usato dopo la chiusura del round.
+         * @return schermo del round
+         */
+        public Schermo getSchermo() {
+            return dati.getSchermo();
+        }
+
+        /**
+         * @brief Restituisce la promessa del risultato del round
+         *
+         * @return promessa completata quando tutti i runnable sono terminati,
+         *         o completata con l'eccezione lanciata da un runnable
+         */
+        public CompletableFuture<Risultato> getRisultato() {
+            return risultato;
+        }
+
+        /**
+         * @brief Attende la fine dei runnable e restituisce la postazione
+         *        al servizio
+         *
+         * Le chiamate successive alla prima non fanno nulla.
+         */
+        @Override
+        public void close() {
+            if(!chiuso.compareAndSet(false, true))
+                return;
+
+            try {
+                risultato.join();
+            } catch(CompletionException ex) {
+                // L'errore viene restituito da getRisultato()
+            }
+            libere.add(postazione);
+            terminaForkJoinSeLibero();
+        }
+    }
+
+    /**
+     * Stato riutilizzato tra i round: dati condivisi, schermi e runnable
+     */
+    private final class Postazione {
+
+        /**
+         * Dati condivisi dei round i cui messaggi vengono visualizzati
+         */
+        private final DatiCondivisi dati = new DatiCondivisi(tabella, new Schermo());
+        /**
+         * Dati condivisi dei round i cui messaggi vengono scartati
+         */
+        private final DatiCondivisi datiMuti = new DatiCondivisi(tabella, Schermo.muto());
+        /**
+         * Runnable della modalita' {@link ModalitaConteggio#THREAD_PER_VOCALE}
+         */
+        private final CercaVocaleRunnable[] perVocale = new CercaVocaleRunnable[tabella.getNumeroVocali()];
+        /**
+         * Runnable della modalita' {@link ModalitaConteggio#PASSATA_SINGOLA}
+         */
+        private final ContaVocaliRunnable passataSingola = new ContaVocaliRunnable();
+        /**
+         * Runnable delle modalita' {@link ModalitaConteggio#FORK_JOIN}
+         * e {@link ModalitaConteggio#ANTICIPATA}
+         */
+        private final ContaVocaliForkJoin forkJoin = new ContaVocaliForkJoin(poolForkJoin, chunkForkJoin);
+        /**
+         * Runnable della modalita' {@link ModalitaConteggio#CAMPIONATA}
+         */
+        private final ContaVocaliCampionato campionato = new ContaVocaliCampionato();
+        /**
+         * Compiti che eseguono {@link #perVocale}
+         */
+        private final Runnable[] compitiPerVocale = new Runnable[perVocale.length];
+        /**
+         * Compito che esegue {@link #passataSingola}
+         */
+        private final Runnable compitoPassataSingola = () -> esegui(passataSingola);
+        /**
+         * Compito che esegue {@link #forkJoin}
+         */
+        private final Runnable compitoForkJoin = () -> esegui(forkJoin);
+        /**
+         * Compito che esegue {@link #campionato}
+         */
+        private final Runnable compitoCampionato = () -> esegui(campionato);
+        /**
+         * Numero di runnable del round corrente non ancora terminati
+         */
+        private final AtomicInteger attivi = new AtomicInteger();
+        /**
+         * Prima eccezione lanciata da un runnable del round corrente
+         */
+        private final AtomicReference<Throwable> errore = new AtomicReference<>();
+        /**
+         * Round corrente
+         */
+        private Round round;
+        /**
+         * Istante di avvio del round corrente
+         */
+        private long inizio;
+
+        /**
+         * @brief Costruisce una postazione con tutti i runnable
+         */
+        private Postazione() {
+            for(int i = 0; i < perVocale.length; i++) {
+                final CercaVocaleRunnable runn = new CercaVocaleRunnable(tabella.getVocale(i));
+                perVocale[i] = runn;
+                compitiPerVocale[i] = () -> esegui(runn);
+            }
+            passataSingola.setCache(cache);
+        }
+
+        /**
+         * @brief Azzera la postazione e avvia i runnable del round dato
+         *
+         * @param richiesta round da eseguire
+         * @param muto true se i messaggi devono essere scartati
+         * @return round avviato
+         */
+        private Round avvia(Richiesta richiesta, boolean muto) {
+            final DatiCondivisi ptrDati = muto ? datiMuti : dati;
+            ptrDati.azzera();
+            ptrDati.getSchermo().azzera();
+            errore.set(null);
+            round = new Round(this, ptrDati);
+
+            final String frase = richiesta.getFrase();
+            final StrategiaEsecuzione strategia = richiesta.getStrategia();
+            inizio = System.nanoTime();
+
+            switch(richiesta.getModalita()) {
+                case PASSATA_SINGOLA:
+                    passataSingola.setDaAnalizzare(frase);
+                    passataSingola.setPtrDati(ptrDati);
+                    passataSingola.setUsaDelay(richiesta.isUsaDelay());
+                    passataSingola.setUsaYield(richiesta.isUsaYield());
+                    attivi.set(1);
+                    lancia(compitoPassataSingola, strategia, "Thread_passataSingola");
+                    break;
+                case FORK_JOIN:
+                case ANTICIPATA:
+                    forkJoin.setDaAnalizzare(frase);
+                    forkJoin.setPtrDati(ptrDati);
+                    forkJoin.setTerminazioneAnticipata(richiesta.getModalita() == ModalitaConteggio.ANTICIPATA);
+                    attivi.set(1);
+                    lancia(compitoForkJoin, strategia, "Thread_forkJoin");
+                    break;
+                case CAMPIONATA:
+                    campionato.setDaAnalizzare(frase);
+                    campionato.setPtrDati(ptrDati);
+                    attivi.set(1);
+                    lancia(compitoCampionato, strategia, "Thread_campionato");
+                    break;
+                case THREAD_PER_VOCALE:
+                default:
+                    for(CercaVocaleRunnable runn : perVocale) {
+                        runn.setDaAnalizzare(frase);
+                        runn.setPtrDati(ptrDati);
+                        runn.setUsaDelay(richiesta.isUsaDelay());
+                        runn.setUsaYield(richiesta.isUsaYield());
+                    }
+                    attivi.set(perVocale.length);
+                    for(int i = 0; i < perVocale.length; i++)
+                        lancia(compitiPerVocale[i], strategia, "Thread_" + perVocale[i].getVocaleDaTrovare());
+                    break;
+            }
+
+            return round;
+        }
+
+        /**
+         * @brief Esegue il compito dato secondo la strategia data
+         *
+         * @param compito compito da eseguire
+         * @param strategia strategia della richiesta
+         * @param nome nome del thread, se non viene eseguito da un lavoratore
+         */
+        private void lancia(Runnable compito, StrategiaEsecuzione strategia, String nome) {
+            if(strategia == StrategiaEsecuzione.POOL_FISSO)
+                lavoratori.execute(compito);
+            else
+                strategia.avvia(compito, nome);
+        }
+
+        /**
+         * @brief Esegue un runnable del round e, se e' l'ultimo a terminare,
+         *        completa il round
+         *
+         * @param runnable runnable da eseguire
+         */
+        private void esegui(Runnable runnable) {
+            try {
+                runnable.run();
+            } catch(Throwable ex) {
+                errore.compareAndSet(null, ex);
+            } finally {
+                if(attivi.decrementAndGet() == 0)
+                    termina();
+            }
+        }
+
+        /**
+         * @brief Completa il round corrente con il risultato o con l'errore
+         *
+         * In caso di errore tutte le vocali vengono segnate come terminate,
+         * perche' il runnable che ha lanciato l'eccezione non l'ha fatto e
+         * chi aspetta la fine dei dati condivisi non resti bloccato.
+         */
+        private void termina() {
+            final long nanosecondi = System.nanoTime() - inizio;
+            final Throwable ex = errore.get();
+            if(ex != null) {
+                round.dati.terminaTutti();
+                round.risultato.completeExceptionally(ex);
+                return;
+            }
+
+            Metriche.get().registraRound(nanosecondi);
+            round.risultato.complete(new Risultato(round.dati, nanosecondi));
+        }
+    }
+
+    /**
+     * @brief Avvia un round i cui messaggi vengono visualizzati
+     *
+     * Attende che una postazione sia libera. Il round restituito deve essere
+     * chiuso, ad esempio con un try-with-resources, dopo averne letto
+     * i messaggi e il risultato.
+     * @param richiesta round da eseguire
+     * @return round avviato
+     * @throws InterruptedException se il thread viene interrotto in attesa
+     * @throws RuntimeException se il servizio e' stato chiuso
+     */
+    public Round avvia(Richiesta richiesta) throws InterruptedException {
+        return prendiPostazione().avvia(richiesta, false);
+    }
+
+    /**
+     * @brief Esegue un round scartandone i messaggi
+     *
+     * Attende che una postazione sia libera; la postazione viene restituita
+     * automaticamente al termine del round.
+     * @param richiesta round da eseguire
+     * @return promessa del risultato del round
+     * @throws InterruptedException se il thread viene interrotto in attesa
+     * @throws RuntimeException se il servizio e' stato chiuso
+     */
+    public CompletableFuture<Risultato> analizza(Richiesta richiesta) throws InterruptedException {
+        final Round round = prendiPostazione().avvia(richiesta, true);
+        return round.risultato.whenComplete((r, ex) -> round.close());
+    }
+
+    /**
+     * @brief Esegue un round scartandone i messaggi solo se una postazione
+     *        e' libera
+     *
+     * Non attende mai, per cui puo' essere chiamato da un thread che non
+     * deve bloccarsi, come quello di un {@link ServerGioco}.
+     * @param richiesta round da eseguire
+     * @return promessa del risultato del round o null se tutte
+     *         le postazioni sono occupate
+     * @throws RuntimeException se il servizio e' stato chiuso
+     */
+    public CompletableFuture<Risultato> analizzaSenzaAttesa(Richiesta richiesta) {
+        if(chiuso)
+            throw new RuntimeException("Il servizio e\' stato chiuso.");
+
+        final Postazione postazione = libere.poll();
+        if(postazione == null)
+            return null;
+
+        final Round round = postazione.avvia(richiesta, true);
+        return round.risultato.whenComplete((r, ex) -> round.close());
+    }
+
+    /**
+     * @brief Prende una postazione libera, attendendo se necessario
+     *
+     * @return postazione libera
+     * @throws InterruptedException se il thread viene interrotto in attesa
+     * @throws RuntimeException se il servizio e' stato chiuso
+     */
+    private Postazione prendiPostazione() throws InterruptedException {
+        if(chiuso)
+            throw new RuntimeException("Il servizio e\' stato chiuso.");
+        return libere.take();
+    }
+
+    /**
+     * @brief Restituisce la tabella delle vocali contate
+     *
+     * @return tabella delle vocali
+     */
+    public TabellaVocali getTabella() {
+        return tabella;
+    }
+
+    /**
+     * @brief Chiude il servizio
+     *
+     * I round gia' avviati vengono completati, mentre i lavoratori
+     * terminano quando non hanno piu' compiti. Il pool fork/join viene
+     * terminato quando tutte le postazioni sono libere.
+     */
+    @Override
+    public void close() {
+        chiuso = true;
+        lavoratori.shutdown();
+        terminaForkJoinSeLibero();
+    }
+
+    /**
+     * @brief Termina il pool fork/join se il servizio e' chiuso
+     *        e nessun round sta usando una postazione
+     *
+     * Viene chiamato sia da {@link #close()} sia alla restituzione di ogni
+     * postazione, per cui il pool viene terminato da chi arriva per ultimo.
+     */
+    private void terminaForkJoinSeLibero() {
+        if(chiuso && libere.remainingCapacity() == 0)
+            poolForkJoin.shutdown();
+    }
+}
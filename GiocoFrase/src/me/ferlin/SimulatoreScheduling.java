@@ -0,0 +1,497 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.1
+ */
+package me.ferlin;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Simulatore deterministico dei round con un thread per vocale.
+ *
+ * Ogni {@link CercaVocaleRunnable} usa un orologio virtuale: il delay
+ * randomico e lo yield non attendono ma fanno avanzare un tempo simulato,
+ * con numeri casuali generati a partire da un seme. I runnable vengono
+ * eseguiti uno dopo l'altro sul thread chiamante e ogni messaggio scritto
+ * sullo {@link Schermo} viene registrato con il tempo virtuale in cui
+ * sarebbe stato scritto; alla fine i messaggi di tutti i thread vengono
+ * uniti in ordine di tempo. Siccome i thread non si influenzano a vicenda,
+ * il risultato e' lo stesso di un'esecuzione concorrente con quei tempi.
+ *
+ * Il tempo virtuale di ogni thread e' la somma di:
+ * - un ritardo di avvio casuale fino a {@link #setNanosecondiAvvio(long)};
+ * - {@link #setNanosecondiCarattere(long)} per ogni carattere analizzato;
+ * - il delay scelto dal runnable, piu' un ritardo di risveglio casuale
+ *   fino a {@link #setNanosecondiRisveglio(long)};
+ * - per ogni yield, il tempo lasciato agli altri thread, casuale fino a
+ *   {@link #setNanosecondiYield(long)}.
+ *
+ * Lo stesso seme e la stessa frase producono sempre la stessa
+ * {@link Traccia}, per cui un ordine dei messaggi puo' essere riprodotto
+ * conoscendo solo il seme. Milioni di caratteri vengono simulati in
+ * pochi millisecondi. I round simulati non vengono registrati nelle
+ * {@link Metriche} globali.
+ */
+public class SimulatoreScheduling {
+
+    /**
+     * Tempo virtuale predefinito per analizzare un carattere
+     */
+    public static final long NANOSECONDI_CARATTERE = 20;
+    /**
+     * Ritardo di avvio massimo predefinito di ogni thread
+     */
+    public static final long NANOSECONDI_AVVIO = 50_000;
+    /**
+     * Tempo massimo predefinito lasciato agli altri thread ad ogni yield
+     */
+    public static final long NANOSECONDI_YIELD = 5_000;
+    /**
+     * Ritardo massimo predefinito del risveglio dopo ogni delay
+     */
+    public static final long NANOSECONDI_RISVEGLIO = 60_000;
+
+    /**
+     * Costante usata per ricavare dal seme quello di ogni thread
+     */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Seme da cui vengono generati i numeri casuali
+     */
+    private final long seme;
+    /**
+     * Tempo virtuale per analizzare un carattere
+     */
+    private long nanosecondiCarattere = NANOSECONDI_CARATTERE;
+    /**
+     * Ritardo di avvio massimo di ogni thread
+     */
+    private long nanosecondiAvvio = NANOSECONDI_AVVIO;
+    /**
+     * Tempo massimo lasciato agli altri thread ad ogni yield
+     */
+    private long nanosecondiYield = NANOSECONDI_YIELD;
+    /**
+     * Ritardo massimo del risveglio dopo ogni delay
+     */
+    private long nanosecondiRisveglio = NANOSECONDI_RISVEGLIO;
+
+    /**
+     * @brief Costruisce un simulatore con il seme dato
+     *
+     * @param seme seme da cui vengono generati i numeri casuali
+     */
+    public SimulatoreScheduling(long seme) {
+        this.seme = seme;
+    }
+
+    /**
+     * Orologio virtuale di un thread, che registra anche i messaggi
+     * scritti dal thread
+     */
+    private final class OrologioVirtuale implements Orologio {
+
+        /**
+         * Generatore dei numeri casuali del thread
+         */
+        private final SplittableRandom random;
+        /**
+         * Tempo virtuale passato in attese, compreso il ritardo di avvio
+         */
+        private long tempo;
+        /**
+         * Tempo virtuale di ogni messaggio
+         */
+        private long[] tempi = new long[16];
+        /**
+         * Posizione di ogni messaggio
+         */
+        private long[] posizioni = new long[16];
+        /**
+         * Numero di vocali rappresentate da ogni messaggio
+         */
+        private long[] ripetizioni = new long[16];
+        /**
+         * Numero di messaggi registrati
+         */
+        private int messaggi;
+
+        /**
+         * @brief Costruisce l'orologio del thread con indice dato
+         *
+         * @param indice indice del thread
+         */
+        private OrologioVirtuale(int indice) {
+            this.random = new SplittableRandom(seme + (indice + 1) * GAMMA);
+            this.tempo = casuale(nanosecondiAvvio);
+        }
+
+        /**
+         * @brief Restituisce un numero casuale tra 0 e il massimo dato
+         *
+         * @param massimo massimo (incluso) del numero
+         * @return numero casuale
+         */
+        private long casuale(long massimo) {
+            return massimo == 0 ? 0 : random.nextLong(massimo + 1);
+        }
+
+        @Override
+        public long adesso() {
+            return tempo;
+        }
+
+        @Override
+        public void dormi(long millisecondi) {
+            tempo += millisecondi * 1_000_000 + casuale(nanosecondiRisveglio);
+        }
+
+        @Override
+        public void cedi() {
+            tempo += casuale(nanosecondiYield);
+        }
+
+        @Override
+        public int casuale(int limite) {
+            return random.nextInt(limite);
+        }
+
+        @Override
+        public boolean isVirtuale() {
+            return true;
+        }
+
+        /**
+         * @brief Registra un messaggio scritto dal thread
+         *
+         * Il tempo del messaggio e' quello passato in attese piu' quello
+         * dei caratteri analizzati fino alla posizione data.
+         * @param posizione posizione della vocale trovata
+         * @param n numero di vocali rappresentate dal messaggio
+         */
+        private void registra(long posizione, long n) {
+            if(messaggi == tempi.length) {
+                tempi = Arrays.copyOf(tempi, messaggi * 2);
+                posizioni = Arrays.copyOf(posizioni, messaggi * 2);
+                ripetizioni = Arrays.copyOf(ripetizioni, messaggi * 2);
+            }
+            tempi[messaggi] = tempo + (Math.max(posizione, 0) + 1) * nanosecondiCarattere;
+            posizioni[messaggi] = posizione;
+            ripetizioni[messaggi] = n;
+            messaggi++;
+        }
+    }
+
+    /**
+     * @brief Simula un round con un thread per vocale
+     *
+     * @param tabella tabella delle vocali da cercare, una per thread
+     * @param frase frase da analizzare
+     * @param delay true se i thread usano il delay randomico
+     * @param yield true se i thread usano lo yield
+     * @return messaggi scritti dai thread, in ordine di tempo virtuale
+     */
+    public Traccia simula(TabellaVocali tabella, String frase, boolean delay, boolean yield) {
+        final int numeroVocali = tabella.getNumeroVocali();
+        final OrologioVirtuale[] orologi = new OrologioVirtuale[numeroVocali];
+        final OrologioVirtuale[] corrente = new OrologioVirtuale[1];
+
+        // I runnable vengono eseguiti sul thread chiamante, quindi lo schermo
+        // attribuisce ogni messaggio all'orologio del runnable in esecuzione
+        final Schermo schermo = new Schermo(1, Schermo.PoliticaOverflow.SCARTA_VECCHI) {
+            @Override
+            public void push(char vocale, long posizione, long ripetizioni) {
+                corrente[0].registra(posizione, ripetizioni);
+            }
+        };
+        final DatiCondivisi datiCondivisi = new DatiCondivisi(tabella, schermo);
+
+        final long[] fine = new long[numeroVocali];
+        for(int i = 0; i < numeroVocali; i++) {
+            orologi[i] = new OrologioVirtuale(i);
+            corrente[0] = orologi[i];
+
+            final CercaVocaleRunnable runn = new CercaVocaleRunnable(tabella.getVocale(i), frase);
+            runn.setPtrDati(datiCondivisi);
+            runn.setUsaDelay(delay);
+            runn.setUsaYield(yield);
+            runn.setOrologio(orologi[i]);
+            runn.run();
+
+            fine[i] = orologi[i].tempo + frase.length() * nanosecondiCarattere;
+        }
+
+        return unisci(tabella, orologi, fine);
+    }
+
+    /**
+     * @brief Unisce i messaggi di tutti i thread in ordine di tempo virtuale
+     *
+     * I messaggi di ogni thread sono gia' in ordine, per cui ad ogni passo
+     * viene scelto il primo messaggio con il tempo piu' basso tra quelli
+     * dei thread; a parita' di tempo viene scelto il thread con indice minore.
+     * @param tabella tabella delle vocali cercate
+     * @param orologi orologi dei thread con i messaggi registrati
+     * @param fine tempo virtuale in cui termina ogni thread
+     * @return traccia dei messaggi uniti
+     */
+    private Traccia unisci(TabellaVocali tabella, OrologioVirtuale[] orologi, long[] fine) {
+        int totale = 0;
+        for(OrologioVirtuale orologio : orologi)
+            totale += orologio.messaggi;
+
+        final Traccia traccia = new Traccia(seme, totale, fine);
+        final int[] prossimo = new int[orologi.length];
+
+        for(int m = 0; m < totale; m++) {
+            int scelto = -1;
+            long tempoScelto = Long.MAX_VALUE;
+            for(int i = 0; i < orologi.length; i++) {
+                if(prossimo[i] < orologi[i].messaggi && orologi[i].tempi[prossimo[i]] < tempoScelto) {
+                    scelto = i;
+                    tempoScelto = orologi[i].tempi[prossimo[i]];
+                }
+            }
+
+            final OrologioVirtuale orologio = orologi[scelto];
+            final int k = prossimo[scelto]++;
+            traccia.vocali[m] = tabella.getVocale(scelto);
+            traccia.posizioni[m] = orologio.posizioni[k];
+            traccia.ripetizioni[m] = orologio.ripetizioni[k];
+            traccia.tempi[m] = tempoScelto;
+        }
+
+        return traccia;
+    }
+
+    /**
+     * Messaggi scritti sullo schermo durante un round simulato,
+     * in ordine di tempo virtuale
+     */
+    public static final class Traccia {
+
+        /**
+         * Seme usato per la simulazione
+         */
+        private final long seme;
+        /**
+         * Vocale di ogni messaggio
+         */
+        private final char[] vocali;
+        /**
+         * Posizione di ogni messaggio
+         */
+        private final long[] posizioni;
+        /**
+         * Numero di vocali rappresentate da ogni messaggio
+         */
+        private final long[] ripetizioni;
+        /**
+         * Tempo virtuale di ogni messaggio
+         */
+        private final long[] tempi;
+        /**
+         * Tempo virtuale in cui termina il thread di ogni vocale
+         */
+        private final long[] fine;
+
+        /**
+         * @brief Costruisce una traccia vuota
+         *
+         * @param seme seme usato per la simulazione
+         * @param messaggi numero di messaggi
+         * @param fine tempo virtuale in cui termina il thread di ogni vocale
+         */
+        private Traccia(long seme, int messaggi, long[] fine) {
+            this.seme = seme;
+            this.vocali = new char[messaggi];
+            this.posizioni = new long[messaggi];
+            this.ripetizioni = new long[messaggi];
+            this.tempi = new long[messaggi];
+            this.fine = fine;
+        }
+
+        /**
+         * @brief Restituisce il seme usato per la simulazione
+         *
+         * @return seme da passare a {@link SimulatoreScheduling}
+         *         per riprodurre la traccia
+         */
+        public long getSeme() {
+            return seme;
+        }
+
+        /**
+         * @brief Restituisce il numero di messaggi
+         *
+         * @return numero di messaggi scritti dai thread
+         */
+        public int getNumeroMessaggi() {
+            return vocali.length;
+        }
+
+        /**
+         * @brief Restituisce la vocale del messaggio dato
+         *
+         * @param indice indice del messaggio
+         * @return vocale trovata
+         */
+        public char getVocale(int indice) {
+            return vocali[indice];
+        }
+
+        /**
+         * @brief Restituisce la posizione del messaggio dato
+         *
+         * @param indice indice del messaggio
+         * @return posizione della vocale nella frase
+         */
+        public long getPosizione(int indice) {
+            return posizioni[indice];
+        }
+
+        /**
+         * @brief Restituisce il tempo virtuale del messaggio dato
+         *
+         * @param indice indice del messaggio
+         * @return nanosecondi dall'inizio del round
+         */
+        public long getTempo(int indice) {
+            return tempi[indice];
+        }
+
+        /**
+         * @brief Restituisce la durata virtuale del round
+         *
+         * @return nanosecondi fino alla fine dell'ultimo thread
+         */
+        public long getDurata() {
+            long durata = 0;
+            for(long t : fine)
+                durata = Math.max(durata, t);
+            return durata;
+        }
+
+        /**
+         * @brief Restituisce l'ordine delle vocali dei messaggi
+         *
+         * @return stringa con la vocale di ogni messaggio
+         */
+        public String getOrdine() {
+            return new String(vocali);
+        }
+
+        /**
+         * @brief Restituisce un'impronta dell'ordine dei messaggi
+         *
+         * Due tracce con la stessa impronta hanno, con altissima probabilita',
+         * gli stessi messaggi nello stesso ordine.
+         * @return hash FNV-1a delle vocali e delle posizioni dei messaggi
+         */
+        public long getImpronta() {
+            long h = 0xCBF29CE484222325L;
+            for(int i = 0; i < vocali.length; i++) {
+                h = (h ^ vocali[i]) * 0x100000001B3L;
+                h = (h ^ posizioni[i]) * 0x100000001B3L;
+            }
+            return h;
+        }
+
+        /**
+         * @brief Passa il testo di ogni messaggio al consumer dato
+         *
+         * Il testo e' quello di {@link Schermo#svuota(java.util.function.Consumer)},
+         * preceduto dal tempo virtuale.
+         * @param consumer consumer che riceve ogni messaggio
+         */
+        public void scrivi(Consumer<? super String> consumer) {
+            final StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < vocali.length; i++) {
+                sb.setLength(0);
+                final long micro = tempi[i] / 1_000;
+                sb.append('[').append(micro / 1_000).append('.');
+                final long resto = micro % 1_000;
+                if(resto < 100)
+                    sb.append('0');
+                if(resto < 10)
+                    sb.append('0');
+                sb.append(resto).append(" ms] ");
+
+                if(posizioni[i] >= 0 && ripetizioni[i] == 1)
+                    sb.append("Ho trovato la vocale ").append(vocali[i])
+                      .append(" in posizione ").append(posizioni[i]);
+                else
+                    sb.append("Ho trovato ").append(ripetizioni[i])
+                      .append(" volte la vocale ").append(vocali[i]);
+                sb.append(" (thread Thread_").append(vocali[i]).append(')');
+
+                consumer.accept(sb.toString());
+            }
+        }
+    }
+
+    /**
+     * @brief Restituisce il seme del simulatore
+     *
+     * @return seme da cui vengono generati i numeri casuali
+     */
+    public long getSeme() {
+        return seme;
+    }
+
+    /**
+     * @brief Setta il tempo virtuale per analizzare un carattere
+     *
+     * @param nanosecondiCarattere nanosecondi per carattere
+     * @throws RuntimeException se il tempo e' negativo
+     */
+    public void setNanosecondiCarattere(long nanosecondiCarattere) {
+        this.nanosecondiCarattere = nonNegativo(nanosecondiCarattere);
+    }
+
+    /**
+     * @brief Setta il ritardo di avvio massimo di ogni thread
+     *
+     * @param nanosecondiAvvio nanosecondi di ritardo massimo
+     * @throws RuntimeException se il tempo e' negativo
+     */
+    public void setNanosecondiAvvio(long nanosecondiAvvio) {
+        this.nanosecondiAvvio = nonNegativo(nanosecondiAvvio);
+    }
+
+    /**
+     * @brief Setta il tempo massimo lasciato agli altri thread ad ogni yield
+     *
+     * @param nanosecondiYield nanosecondi massimi per yield
+     * @throws RuntimeException se il tempo e' negativo
+     */
+    public void setNanosecondiYield(long nanosecondiYield) {
+        this.nanosecondiYield = nonNegativo(nanosecondiYield);
+    }
+
+    /**
+     * @brief Setta il ritardo massimo del risveglio dopo ogni delay
+     *
+     * @param nanosecondiRisveglio nanosecondi di ritardo massimo
+     * @throws RuntimeException se il tempo e' negativo
+     */
+    public void setNanosecondiRisveglio(long nanosecondiRisveglio) {
+        this.nanosecondiRisveglio = nonNegativo(nanosecondiRisveglio);
+    }
+
+    /**
+     * @brief Controlla che il tempo dato non sia negativo
+     *
+     * @param nanosecondi tempo da controllare
+     * @return il tempo dato
+     * @throws RuntimeException se il tempo e' negativo
+     */
+    private static long nonNegativo(long nanosecondi) {
+        if(nanosecondi < 0)
+            throw new RuntimeException("Il tempo non puo\' essere negativo.");
+        return nanosecondi;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+/**
+ * Stima immutabile delle frequenze delle vocali prodotta da
+ * {@link ContaVocaliCampionato}.
+ *
+ * Per ogni vocale contiene la frequenza stimata sui blocchi campionati
+ * (vocali per carattere) e la semiampiezza dell'intervallo di confidenza.
+ * Se il campionamento non e' bastato a separare la vocale piu' usata
+ * dalle altre il testo viene contato tutto e la stima e' esatta,
+ * con semiampiezze nulle.
+ */
+public class StimaVocali {
+
+    /**
+     * Vocali stimate, ordinate secondo gli slot della tabella
+     */
+    private final char[] vocali;
+    /**
+     * Frequenza stimata di ogni vocale
+     */
+    private final double[] frequenze;
+    /**
+     * Semiampiezza dell'intervallo di confidenza di ogni frequenza
+     */
+    private final double[] semiampiezze;
+    /**
+     * Livello di confidenza degli intervalli
+     */
+    private final double confidenza;
+    /**
+     * Numero di caratteri analizzati
+     */
+    private final long caratteriAnalizzati;
+    /**
+     * Numero di blocchi analizzati
+     */
+    private final int blocchiAnalizzati;
+    /**
+     * Numero di blocchi del testo
+     */
+    private final int blocchiTotali;
+    /**
+     * Indica se il testo e' stato contato tutto
+     */
+    private final boolean esatta;
+
+    /**
+     * @brief Costruisce una stima
+     *
+     * @param tabella tabella delle vocali stimate
+     * @param frequenze frequenza stimata di ogni vocale
+     * @param semiampiezze semiampiezza dell'intervallo di ogni frequenza
+     * @param confidenza livello di confidenza degli intervalli
+     * @param caratteriAnalizzati numero di caratteri analizzati
+     * @param blocchiAnalizzati numero di blocchi analizzati
+     * @param blocchiTotali numero di blocchi del testo
+     * @param esatta true se il testo e' stato contato tutto
+     */
+    public StimaVocali(TabellaVocali tabella, double[] frequenze, double[] semiampiezze,
+            double confidenza, long caratteriAnalizzati, int blocchiAnalizzati,
+            int blocchiTotali, boolean esatta) {
+        this.vocali = new char[tabella.getNumeroVocali()];
+        for(int i = 0; i < vocali.length; i++)
+            vocali[i] = tabella.getVocale(i);
+
+        this.frequenze = frequenze.clone();
+        this.semiampiezze = semiampiezze.clone();
+        this.confidenza = confidenza;
+        this.caratteriAnalizzati = caratteriAnalizzati;
+        this.blocchiAnalizzati = blocchiAnalizzati;
+        this.blocchiTotali = blocchiTotali;
+        this.esatta = esatta;
+    }
+
+    /**
+     * @brief Restituisce il numero di vocali stimate
+     *
+     * @return numero di vocali
+     */
+    public int getNumeroVocali() {
+        return vocali.length;
+    }
+
+    /**
+     * @brief Restituisce la vocale dello slot dato
+     *
+     * @param slot slot della vocale
+     * @return vocale
+     */
+    public char getVocale(int slot) {
+        return vocali[slot];
+    }
+
+    /**
+     * @brief Restituisce la frequenza stimata della vocale dello slot dato
+     *
+     * @param slot slot della vocale
+     * @return vocali per carattere
+     */
+    public double getFrequenza(int slot) {
+        return frequenze[slot];
+    }
+
+    /**
+     * @brief Restituisce la semiampiezza dell'intervallo di confidenza
+     *        della vocale dello slot dato
+     *
+     * @param slot slot della vocale
+     * @return semiampiezza, 0 se la stima e' esatta
+     */
+    public double getSemiampiezza(int slot) {
+        return semiampiezze[slot];
+    }
+
+    /**
+     * @brief Restituisce il livello di confidenza degli intervalli
+     *
+     * @return confidenza, ad esempio 0.99
+     */
+    public double getConfidenza() {
+        return confidenza;
+    }
+
+    /**
+     * @brief Restituisce il numero di caratteri analizzati
+     *
+     * @return caratteri analizzati
+     */
+    public long getCaratteriAnalizzati() {
+        return caratteriAnalizzati;
+    }
+
+    /**
+     * @brief Restituisce il numero di blocchi analizzati
+     *
+     * @return blocchi analizzati
+     */
+    public int getBlocchiAnalizzati() {
+        return blocchiAnalizzati;
+    }
+
+    /**
+     * @brief Restituisce il numero di blocchi del testo
+     *
+     * @return blocchi del testo
+     */
+    public int getBlocchiTotali() {
+        return blocchiTotali;
+    }
+
+    /**
+     * @brief Restituisce se il testo e' stato contato tutto
+     *
+     * @return true se le frequenze sono esatte
+     */
+    public boolean isEsatta() {
+        return esatta;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < vocali.length; i++) {
+            if(i > 0)
+                sb.append(", ");
+            sb.append(String.format("%c = %.3f%%", vocali[i], 100 * frequenze[i]));
+            if(!esatta)
+                sb.append(String.format(" ± %.3f%%", 100 * semiampiezze[i]));
+        }
+
+        if(esatta)
+            sb.append(String.format(" (esatta, %d blocchi)", blocchiTotali));
+        else
+            sb.append(String.format(
+                    " (confidenza %.1f%%, %d/%d blocchi)",
+                    100 * confidenza, blocchiAnalizzati, blocchiTotali
+            ));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * @author Francesco Ferlin
+ * @version 1.0
+ */
+package me.ferlin;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Strategia con cui vengono eseguiti i runnable che contano le vocali
+ */
+public enum StrategiaEsecuzione {
+
+    /**
+     * Un nuovo thread di piattaforma per ogni runnable
+     */
+    PIATTAFORMA('p', "thread di piattaforma"),
+    /**
+     * Un pool di thread di piattaforma riusati tra un round e l'altro,
+     * di dimensione configurabile con la proprieta'
+     * {@code giocofrase.esecuzione.pool}
+     */
+    POOL_FISSO('f', "pool fisso"),
+    /**
+     * Un nuovo thread virtuale per ogni runnable.
+     *
+     * I thread virtuali che aspettano in {@link Thread#sleep(long)}
+     * non occupano un thread del sistema operativo, per cui possono
+     * essere eseguite migliaia di analisi con il delay randomico.
+     */
+    VIRTUALE('v', "thread virtuali");
+
+    /**
+     * Carattere che l'utente deve digitare per scegliere la strategia
+     */
+    private final char scelta;
+    /**
+     * Descrizione della strategia mostrata all'utente
+     */
+    private final String descrizione;
+
+    /**
+     * @brief Costruisce una strategia di esecuzione
+     *
+     * @param scelta carattere che l'utente deve digitare
+     * @param descrizione descrizione mostrata all'utente
+     */
+    StrategiaEsecuzione(char scelta, String descrizione) {
+        this.scelta = scelta;
+        this.descrizione = descrizione;
+    }
+
+    /**
+     * Pool condiviso usato da {@link #POOL_FISSO},
+     * creato solo al primo utilizzo
+     */
+    private static final class PoolFisso {
+        /**
+         * Pool di thread demone
+         */
+        private static final ExecutorService POOL = Executors.newFixedThreadPool(
+                Configurazione.getInt("esecuzione.pool",
+                        Math.max(5, Runtime.getRuntime().availableProcessors())),
+                r -> {
+                    final Thread th = new Thread(r);
+                    th.setDaemon(true);
+                    return th;
+                }
+        );
+    }
+
+    /**
+     * @brief Restituisce l'esecutore che applica questa strategia
+     *
+     * @return esecutore dei runnable
+     */
+    public Executor getEsecutore() {
+        switch(this) {
+            case POOL_FISSO:
+                return PoolFisso.POOL;
+            case VIRTUALE:
+                return r -> Thread.ofVirtual().start(r);
+            case PIATTAFORMA:
+            default:
+                return r -> new Thread(r).start();
+        }
+    }
+
+    /**
+     * @brief Esegue il runnable dato secondo questa strategia
+     *
+     * Durante l'esecuzione il thread ha il nome dato.
+     * @param runnable runnable da eseguire
+     * @param nome nome del thread
+     */
+    public void avvia(Runnable runnable, String nome) {
+        getEsecutore().execute(() -> {
+            final Thread th = Thread.currentThread();
+            final String nomePrecedente = th.getName();
+
+            th.setName(nome);
+            try {
+                runnable.run();
+            } finally {
+                th.setName(nomePrecedente);
+            }
+        });
+    }
+
+    /**
+     * @brief Restituisce la strategia corrispondente alla scelta dell'utente
+     *
+     * @param input stringa digitata dall'utente
+     * @return strategia scelta o {@link #PIATTAFORMA} se non valida
+     */
+    public static StrategiaEsecuzione daScelta(String input) {
+        if(!input.isEmpty()) {
+            final char c = Character.toLowerCase(input.charAt(0));
+            for(StrategiaEsecuzione s : values())
+                if(s.scelta == c)
+                    return s;
+        }
+        return PIATTAFORMA;
+    }
+
+    /**
+     * @brief Restituisce la lista delle strategie da mostrare all'utente
+     *
+     * @return stringa nel formato "P = thread di piattaforma, ..."
+     */
+    public static String getOpzioni() {
+        final StringBuilder sb = new StringBuilder();
+        for(StrategiaEsecuzione s : values()) {
+            if(sb.length() > 0)
+                sb.append(", ");
+            sb.append(Character.toUpperCase(s.scelta)).append(" = ").append(s.descrizione);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return descrizione;
+    }
+}
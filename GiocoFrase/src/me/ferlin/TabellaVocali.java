@@ -0,0 +1,243 @@
+/**
+ * @author Francesco Ferlin
+ * @version 2.0
+ */
+package me.ferlin;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Tabella di lookup che associa ad ogni carattere l'indice (slot)
+ * della vocale corrispondente.
+ *
+ * La tabella viene precalcolata una sola volta e contiene sia le vocali
+ * minuscole che quelle maiuscole, in modo da non dover convertire
+ * la frase in lower-case prima di analizzarla. Le "vocali" possono essere
+ * caratteri qualsiasi del Basic Multilingual Plane e, se richiesto, anche
+ * le loro varianti accentate (ad esempio à, È, é) vengono associate
+ * allo slot della lettera base.
+ *
+ * La tabella e' un vettore denso di short indicizzato per carattere,
+ * lungo quanto il carattere piu' alto presente, per cui ogni ricerca
+ * e' un solo accesso indipendentemente dal numero di vocali.
+ */
+public final class TabellaVocali {
+
+    /**
+     * Valore restituito da {@link #getSlot(char)}
+     * per i caratteri che non sono vocali
+     */
+    public static final int NESSUNO = -1;
+    /**
+     * Numero massimo di vocali gestite dalla tabella
+     */
+    public static final int MAX_VOCALI = Short.MAX_VALUE;
+    /**
+     * Primo carattere non considerato quando vengono cercate le varianti
+     * accentate delle vocali: include gli alfabeti latini estesi, 
+     * il greco e il cirillico
+     */
+    private static final char LIMITE_ACCENTI = '\u2000';
+
+    /**
+     * Vocali minuscole (in lower-case) gestite dalla tabella
+     */
+    private final char[] vocali;
+    /**
+     * Vettore indicizzato per carattere che contiene lo slot della vocale
+     * o {@link #NESSUNO} se il carattere non e' una vocale
+     */
+    private final short[] slots;
+    /**
+     * Indica se tutte le vocali della tabella sono caratteri ASCII
+     */
+    private final boolean ascii;
+
+    /**
+     * @brief Costruisce la tabella per le vocali date
+     *
+     * Le vocali sono case-insensitive.
+     * @param vocali vocali da inserire nella tabella
+     * @throws RuntimeException se una vocale e' presente piu' volte
+     */
+    public TabellaVocali(char[] vocali) {
+        this(vocali, false);
+    }
+
+    /**
+     * @brief Costruisce la tabella per le vocali date
+     *
+     * Le vocali sono case-insensitive. Se piegaAccenti e' true, ogni lettera
+     * la cui decomposizione canonica (NFD) inizia con una vocale viene 
+     * associata allo slot di quella vocale, a meno che non sia 
+     * a sua volta una vocale della tabella.
+     * @param vocali vocali da inserire nella tabella
+     * @param piegaAccenti se contare le varianti accentate come la vocale base
+     * @throws RuntimeException se una vocale e' presente piu' volte
+     *                          o se le vocali sono troppe
+     */
+    public TabellaVocali(char[] vocali, boolean piegaAccenti) {
+        if(vocali.length > MAX_VOCALI)
+            throw new RuntimeException("Troppe vocali: " + vocali.length);
+
+        this.vocali = new char[vocali.length];
+
+        final short[] tutti = new short[Character.MAX_VALUE + 1];
+        Arrays.fill(tutti, (short) NESSUNO);
+
+        for(int i = 0; i < vocali.length; i++) {
+            final char minuscola = Character.toLowerCase(vocali[i]);
+            if(tutti[minuscola] != NESSUNO)
+                throw new RuntimeException("La vocale " + minuscola + " e\' duplicata.");
+
+            this.vocali[i] = minuscola;
+            tutti[minuscola] = (short) i;
+            tutti[Character.toUpperCase(minuscola)] = (short) i;
+        }
+
+        if(piegaAccenti)
+            aggiungiAccenti(tutti);
+
+        int max = 0;
+        for(int c = 0; c < tutti.length; c++)
+            if(tutti[c] != NESSUNO)
+                max = c;
+
+        this.slots = Arrays.copyOf(tutti, max + 1);
+        this.ascii = max < 128;
+    }
+
+    /**
+     * @brief Costruisce la tabella per le vocali date configurata 
+     *        secondo le proprieta' di sistema
+     *
+     * Le varianti accentate vengono contate come la vocale base a meno che
+     * la proprieta' {@code giocofrase.accenti} non sia false
+     * (vedi {@link Configurazione}).
+     * @param vocali vocali da inserire nella tabella
+     * @return tabella delle vocali
+     */
+    public static TabellaVocali configurata(char[] vocali) {
+        return new TabellaVocali(vocali, Configurazione.getBoolean("accenti", true));
+    }
+
+    /**
+     * @brief Associa le varianti accentate allo slot della vocale base
+     *
+     * Considera solo i caratteri minori di {@link #LIMITE_ACCENTI}.
+     * @param tutti tabella di tutti i caratteri da completare
+     */
+    private static void aggiungiAccenti(short[] tutti) {
+        for(char c = 128; c < LIMITE_ACCENTI; c++) {
+            if(tutti[c] != NESSUNO || !Character.isLetter(c))
+                continue;
+
+            final String decomposto = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            if(decomposto.length() > 1) {
+                final char base = Character.toLowerCase(decomposto.charAt(0));
+                if(base != c && tutti[base] != NESSUNO)
+                    tutti[c] = tutti[base];
+            }
+        }
+    }
+
+    /**
+     * @brief Restituisce lo slot della vocale data
+     *
+     * @param carattere carattere (case-insensitive) da cercare
+     * @return indice della vocale o {@link #NESSUNO} se non e' una vocale
+     */
+    public int getSlot(char carattere) {
+        return carattere < slots.length ? slots[carattere] : NESSUNO;
+    }
+
+    /**
+     * @brief Restituisce la vocale minuscola nello slot dato
+     *
+     * @param slot indice della vocale
+     * @return vocale minuscola
+     */
+    public char getVocale(int slot) {
+        return vocali[slot];
+    }
+
+    /**
+     * @brief Restituisce la lunghezza della tabella
+     *
+     * Tutti i caratteri maggiori o uguali a questo valore non sono vocali.
+     * @return numero di caratteri nella tabella
+     */
+    public int getLunghezza() {
+        return slots.length;
+    }
+
+    /**
+     * @brief Restituisce il numero di vocali presenti nella tabella
+     *
+     * @return numero di vocali
+     */
+    public int getNumeroVocali() {
+        return vocali.length;
+    }
+
+    /**
+     * @brief Restituisce se tutte le vocali della tabella sono caratteri ASCII
+     *
+     * Solo in questo caso e' possibile usare
+     * {@link KernelConteggio#conta(java.nio.ByteBuffer, int, int, int[])} su testo UTF-8,
+     * dato che in UTF-8 i byte dei caratteri non ASCII sono tutti maggiori di 127.
+     * @return true se le vocali sono tutte ASCII
+     */
+    public boolean isAscii() {
+        return ascii;
+    }
+
+    /**
+     * @brief Restituisce se i caratteri ASCII della tabella sono solo lettere,
+     *        ognuna insieme alla propria maiuscola
+     *
+     * In questo caso un carattere ASCII e' una vocale se e solo se, 
+     * dopo aver settato il bit 0x20, e' uguale alla vocale minuscola (vedi
+     * {@link KernelVettoriale}). I caratteri non ASCII della tabella 
+     * possono essere qualsiasi.
+     * @return true se i caratteri ASCII della tabella sono solo lettere
+     */
+    public boolean isSoloLettereAscii() {
+        for(int c = 0; c < Math.min(128, slots.length); c++) {
+            final int slot = slots[c];
+            if(slot == NESSUNO)
+                continue;
+
+            final char minuscola = (char) (c | 0x20);
+            if(minuscola < 'a' || minuscola > 'z' || vocali[slot] != minuscola)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @brief Conta in una sola passata tutte le vocali presenti
+     *        nell'intervallo dato
+     *
+     * I conteggi vengono sommati a quelli gia' presenti nel vettore dato,
+     * ordinati secondo gli slot della tabella.
+     * @param testo testo da analizzare
+     * @param da indice (incluso) da cui iniziare
+     * @param a indice (escluso) a cui fermarsi
+     * @param conteggi istogramma a cui aggiungere i conteggi
+     */
+    public void conta(CharSequence testo, int da, int a, int[] conteggi) {
+        final short[] tab = slots;
+        final int lunghezzaTab = tab.length;
+
+        for(int i = da; i < a; i++) {
+            final char c = testo.charAt(i);
+            if(c < lunghezzaTab) {
+                final int slot = tab[c];
+                if(slot != NESSUNO)
+                    conteggi[slot]++;
+            }
+        }
+    }
+}